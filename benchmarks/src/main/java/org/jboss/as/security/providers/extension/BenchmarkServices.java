@@ -0,0 +1,162 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.msc.service.AbstractServiceListener;
+import org.jboss.msc.service.ServiceContainer;
+import org.jboss.msc.service.ServiceController;
+import org.jboss.msc.service.ServiceController.Mode;
+import org.jboss.msc.service.ServiceController.State;
+import org.jboss.msc.service.ServiceName;
+
+/**
+ * A standalone MSC container with the subsystem executor and timer services, used to run the provider services in benchmarks.
+ *
+ * @author Josef Cacek
+ */
+final class BenchmarkServices {
+
+    private static final long TIMEOUT_SECONDS = 60L;
+
+    private final ServiceContainer container = ServiceContainer.Factory.create("security-providers-benchmark");
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Creates the container and starts the executor and timer services in it.
+     *
+     * @throws InterruptedException
+     */
+    BenchmarkServices() throws InterruptedException {
+        install(SecurityProvidersExecutorService.SERVICE_NAME, new SecurityProvidersExecutorService());
+        install(SecurityProvidersExecutorService.TIMER_SERVICE_NAME, SecurityProvidersExecutorService.createTimer());
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Installs a simple provider service and waits until it's up.
+     *
+     * @param className
+     * @param options
+     * @return
+     * @throws InterruptedException
+     */
+    ServiceController<ProviderServiceIndex> installSimpleProvider(String className, ProviderOptions options)
+            throws InterruptedException {
+        return installProvider(SimpleProviderService.createServiceName(className), new SimpleProviderService(className,
+                options));
+    }
+
+    /**
+     * Installs a provider service and waits until it's up.
+     *
+     * @param name
+     * @param service
+     * @return
+     * @throws InterruptedException
+     */
+    ServiceController<ProviderServiceIndex> installProvider(ServiceName name, AbstractProviderService service)
+            throws InterruptedException {
+        final StateLatch latch = new StateLatch(State.UP);
+        final ServiceController<ProviderServiceIndex> controller = container.addService(name, service)
+                .addDependency(SecurityProvidersExecutorService.SERVICE_NAME, ScheduledExecutorService.class,
+                        service.getExecutorInjector())
+                .addDependency(SecurityProvidersExecutorService.TIMER_SERVICE_NAME, ScheduledExecutorService.class,
+                        service.getTimerInjector()).addListener(latch).setInitialMode(Mode.ACTIVE).install();
+        latch.await(controller);
+        return controller;
+    }
+
+    /**
+     * Removes the service and waits until it's removed.
+     *
+     * @param controller
+     * @throws InterruptedException
+     */
+    void remove(ServiceController<?> controller) throws InterruptedException {
+        final StateLatch latch = new StateLatch(State.REMOVED);
+        controller.addListener(latch);
+        controller.setMode(Mode.REMOVE);
+        latch.await(controller);
+    }
+
+    /**
+     * Shuts down the container.
+     *
+     * @throws InterruptedException
+     */
+    void shutdown() throws InterruptedException {
+        container.shutdown();
+        container.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // Private methods -------------------------------------------------------
+
+    private <T> void install(ServiceName name, org.jboss.msc.service.Service<T> service) throws InterruptedException {
+        final StateLatch latch = new StateLatch(State.UP);
+        latch.await(container.addService(name, service).addListener(latch).setInitialMode(Mode.ACTIVE).install());
+    }
+
+    // Embedded classes ------------------------------------------------------
+
+    /**
+     * Listener which waits until the service reaches the given state.
+     */
+    private static class StateLatch extends AbstractServiceListener<Object> {
+
+        private final State state;
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        StateLatch(State state) {
+            this.state = state;
+        }
+
+        @Override
+        public void listenerAdded(ServiceController<? extends Object> controller) {
+            checkState(controller);
+        }
+
+        @Override
+        public void transition(ServiceController<? extends Object> controller, ServiceController.Transition transition) {
+            checkState(controller);
+        }
+
+        private void checkState(ServiceController<? extends Object> controller) {
+            final State current = controller.getState();
+            if (current == state || current == State.START_FAILED) {
+                latch.countDown();
+            }
+        }
+
+        void await(ServiceController<?> controller) throws InterruptedException {
+            if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS) || controller.getState() != state) {
+                throw new IllegalStateException("Service " + controller.getName() + " is in state " + controller.getState()
+                        + " instead of " + state, controller.getStartException());
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.jboss.msc.service.ServiceController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures throughput and latency of common algorithms. With the <code>BC</code> provider, the BouncyCastle provider is
+ * registered by a {@link SimpleProviderService} and engines are bound to it; with the <code>JDK</code> provider, the
+ * default JCA lookup selects the JDK providers.
+ *
+ * @author Josef Cacek
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CryptoBenchmark {
+
+    private static final String BOUNCY_CASTLE = "org.bouncycastle.jce.provider.BouncyCastleProvider";
+    private static final int GCM_TAG_BITS = 128;
+    private static final int GCM_IV_BYTES = 12;
+
+    /**
+     * Registers the benchmarked provider.
+     */
+    @State(Scope.Benchmark)
+    public static class ProviderState {
+
+        @Param({ "JDK", "BC" })
+        public String provider;
+
+        private BenchmarkServices services;
+        private ServiceController<ProviderServiceIndex> controller;
+
+        Provider getProvider() {
+            return controller == null ? null : controller.getValue().getProvider();
+        }
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            if ("BC".equals(provider)) {
+                services = new BenchmarkServices();
+                controller = services.installSimpleProvider(BOUNCY_CASTLE, null);
+            } else if (!"JDK".equals(provider)) {
+                throw new IllegalArgumentException("Unknown provider " + provider);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            if (services != null) {
+                services.remove(controller);
+                services.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Per-thread engine instances and keys.
+     */
+    @State(Scope.Thread)
+    public static class Engines {
+
+        @Param({ "1024" })
+        public int payloadSize;
+
+        private byte[] payload;
+        private byte[] iv;
+        private SecretKey aesKey;
+        private Cipher aesGcm;
+        private MessageDigest sha256;
+        private Mac hmacSha256;
+        private KeyPair rsaKeyPair;
+        private Signature rsaSignature;
+        private byte[] rsaSigned;
+        private KeyPair ecKeyPair;
+        private Signature ecdsaSignature;
+        private byte[] ecdsaSigned;
+
+        @Setup(Level.Trial)
+        public void setUp(ProviderState state) throws Exception {
+            final Provider provider = state.getProvider();
+            final SecureRandom random = new SecureRandom();
+            payload = new byte[payloadSize];
+            random.nextBytes(payload);
+            iv = new byte[GCM_IV_BYTES];
+            random.nextBytes(iv);
+
+            final KeyGenerator aesKeyGenerator = provider == null ? KeyGenerator.getInstance("AES") : KeyGenerator
+                    .getInstance("AES", provider);
+            aesKeyGenerator.init(128);
+            aesKey = aesKeyGenerator.generateKey();
+            aesGcm = provider == null ? Cipher.getInstance("AES/GCM/NoPadding") : Cipher.getInstance("AES/GCM/NoPadding",
+                    provider);
+            sha256 = provider == null ? MessageDigest.getInstance("SHA-256") : MessageDigest.getInstance("SHA-256", provider);
+            hmacSha256 = provider == null ? Mac.getInstance("HmacSHA256") : Mac.getInstance("HmacSHA256", provider);
+            hmacSha256.init(aesKey);
+
+            final KeyPairGenerator rsaGenerator = provider == null ? KeyPairGenerator.getInstance("RSA") : KeyPairGenerator
+                    .getInstance("RSA", provider);
+            rsaGenerator.initialize(2048);
+            rsaKeyPair = rsaGenerator.generateKeyPair();
+            rsaSignature = provider == null ? Signature.getInstance("SHA256withRSA") : Signature.getInstance(
+                    "SHA256withRSA", provider);
+            rsaSigned = sign(rsaSignature, rsaKeyPair, payload);
+
+            final KeyPairGenerator ecGenerator = provider == null ? KeyPairGenerator.getInstance("EC") : KeyPairGenerator
+                    .getInstance("EC", provider);
+            ecGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+            ecKeyPair = ecGenerator.generateKeyPair();
+            ecdsaSignature = provider == null ? Signature.getInstance("SHA256withECDSA") : Signature.getInstance(
+                    "SHA256withECDSA", provider);
+            ecdsaSigned = sign(ecdsaSignature, ecKeyPair, payload);
+        }
+
+        /**
+         * Returns a new GCM IV - an IV can't be reused for the encryption with the same key.
+         *
+         * @return
+         */
+        GCMParameterSpec nextGcmParameters() {
+            int i = iv.length - 1;
+            while (i >= 0 && ++iv[i] == 0) {
+                i--;
+            }
+            return new GCMParameterSpec(GCM_TAG_BITS, iv);
+        }
+    }
+
+    @Benchmark
+    public byte[] aesGcmEncrypt(Engines engines) throws GeneralSecurityException {
+        engines.aesGcm.init(Cipher.ENCRYPT_MODE, engines.aesKey, engines.nextGcmParameters());
+        return engines.aesGcm.doFinal(engines.payload);
+    }
+
+    @Benchmark
+    public byte[] sha256(Engines engines) {
+        return engines.sha256.digest(engines.payload);
+    }
+
+    @Benchmark
+    public byte[] hmacSha256(Engines engines) {
+        return engines.hmacSha256.doFinal(engines.payload);
+    }
+
+    @Benchmark
+    public byte[] rsaSign(Engines engines) throws GeneralSecurityException {
+        return sign(engines.rsaSignature, engines.rsaKeyPair, engines.payload);
+    }
+
+    @Benchmark
+    public boolean rsaVerify(Engines engines) throws GeneralSecurityException {
+        return verify(engines.rsaSignature, engines.rsaKeyPair, engines.payload, engines.rsaSigned);
+    }
+
+    @Benchmark
+    public byte[] ecdsaSign(Engines engines) throws GeneralSecurityException {
+        return sign(engines.ecdsaSignature, engines.ecKeyPair, engines.payload);
+    }
+
+    @Benchmark
+    public boolean ecdsaVerify(Engines engines) throws GeneralSecurityException {
+        return verify(engines.ecdsaSignature, engines.ecKeyPair, engines.payload, engines.ecdsaSigned);
+    }
+
+    private static byte[] sign(Signature signature, KeyPair keyPair, byte[] data) throws GeneralSecurityException {
+        signature.initSign(keyPair.getPrivate());
+        signature.update(data);
+        return signature.sign();
+    }
+
+    private static boolean verify(Signature signature, KeyPair keyPair, byte[] data, byte[] signed)
+            throws GeneralSecurityException {
+        signature.initVerify(keyPair.getPublic());
+        signature.update(data);
+        return signature.verify(signed);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.Signature;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.msc.service.ServiceController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares RSA signature operations bound directly to the "hardware" provider with the same operations going through a
+ * {@link HybridProvider}. The BouncyCastle provider (registered by a {@link SimpleProviderService}) stands in for the
+ * hardware provider and <code>SunRsaSign</code> is the software provider, so the keys generated in software are routed
+ * to the software provider by the hybrid one.
+ *
+ * @author Josef Cacek
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HybridProviderBenchmark {
+
+    private static final String BOUNCY_CASTLE = "org.bouncycastle.jce.provider.BouncyCastleProvider";
+    private static final String ALGORITHM = "SHA256withRSA";
+
+    @Param({ "hardware", "hybrid" })
+    public String route;
+
+    @Param({ "1024" })
+    public int payloadSize;
+
+    private BenchmarkServices services;
+    private ServiceController<ProviderServiceIndex> controller;
+    private Provider provider;
+    private KeyPair keyPair;
+    private byte[] payload;
+    private byte[] signed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        services = new BenchmarkServices();
+        controller = services.installSimpleProvider(BOUNCY_CASTLE, null);
+        final Provider hardware = controller.getValue().getProvider();
+        if ("hybrid".equals(route)) {
+            provider = new HybridProvider("benchmark", hardware, Security.getProvider("SunRsaSign"),
+                    Collections.singleton("MessageDigest"));
+        } else if ("hardware".equals(route)) {
+            provider = hardware;
+        } else {
+            throw new IllegalArgumentException("Unknown route " + route);
+        }
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA", "SunRsaSign");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+        payload = new byte[payloadSize];
+        new SecureRandom().nextBytes(payload);
+        signed = rsaSign();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        services.remove(controller);
+        services.shutdown();
+    }
+
+    @Benchmark
+    public byte[] rsaSign() throws GeneralSecurityException {
+        final Signature signature = Signature.getInstance(ALGORITHM, provider);
+        signature.initSign(keyPair.getPrivate());
+        signature.update(payload);
+        return signature.sign();
+    }
+
+    @Benchmark
+    public boolean rsaVerify() throws GeneralSecurityException {
+        final Signature signature = Signature.getInstance(ALGORITHM, provider);
+        signature.initVerify(keyPair.getPublic());
+        signature.update(payload);
+        return signature.verify(signed);
+    }
+}
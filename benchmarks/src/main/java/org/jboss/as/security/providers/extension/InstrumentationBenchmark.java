@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Provider;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.msc.service.ServiceController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the overhead of the latency recording of an {@link InstrumentedProvider}. The BouncyCastle provider is
+ * registered by a {@link SimpleProviderService} as is and in the instrumented mode; the engine instances are reused, so
+ * the results compare the cost of the operations themselves. The small input size shows the worst case, where the two
+ * {@link System#nanoTime()} calls per operation are the most visible. The slow-log mode adds a {@link SlowOperationLog}
+ * with a threshold no operation reaches (it's used by the SunPKCS11 provider, so the plain BouncyCastle provider is
+ * wrapped directly) without the histograms, which shows the cost of the timing and the threshold check.
+ *
+ * @author Josef Cacek
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstrumentationBenchmark {
+
+    private static final String BOUNCY_CASTLE = "org.bouncycastle.jce.provider.BouncyCastleProvider";
+
+    @Param({ "plain", "instrumented", "slow-log" })
+    public String mode;
+
+    @Param({ "64", "1024" })
+    public int size;
+
+    private BenchmarkServices services;
+    private ServiceController<ProviderServiceIndex> controller;
+    private byte[] data;
+    private MessageDigest digest;
+    private Signature signature;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final ProviderOptions options = new ProviderOptions();
+        if ("instrumented".equals(mode)) {
+            options.setInstrumented(true);
+        } else if (!"plain".equals(mode) && !"slow-log".equals(mode)) {
+            throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+        services = new BenchmarkServices();
+        controller = services.installProvider(SimpleProviderService.createServiceName(BOUNCY_CASTLE),
+                new SimpleProviderService(BOUNCY_CASTLE, options));
+        final Provider registered = controller.getValue().getProvider();
+        final Provider provider = "slow-log".equals(mode) ? new InstrumentedProvider(registered, false,
+                new SlowOperationLog(1000L, 100)) : registered;
+        data = new byte[size];
+        digest = MessageDigest.getInstance("SHA-256", provider);
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", provider);
+        generator.initialize(256);
+        signature = Signature.getInstance("SHA256withECDSA", provider);
+        signature.initSign(generator.generateKeyPair().getPrivate());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        services.remove(controller);
+        services.shutdown();
+    }
+
+    @Benchmark
+    public byte[] digest() {
+        return digest.digest(data);
+    }
+
+    @Benchmark
+    public byte[] sign() throws GeneralSecurityException {
+        signature.update(data);
+        return signature.sign();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.msc.service.ServiceController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the eager and the lazy provider start. The <code>startStop</code> benchmark shows the time saved at boot, the
+ * <code>startFirstCall</code> benchmark adds the first request for a provider service, so the difference of the two shows
+ * the first call latency.
+ * <p>
+ * The <code>bc</code> provider advertises the services cached by an eager start done in the setup. The
+ * <code>sunpkcs11-nss</code> provider advertises the configured lazy services and needs the <code>nssLibraryDirectory</code>
+ * parameter (see {@link ProviderServiceBenchmark}).
+ *
+ * @author Josef Cacek
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LazyProviderBenchmark {
+
+    private static final String BOUNCY_CASTLE = "org.bouncycastle.jce.provider.BouncyCastleProvider";
+
+    @Param({ "bc" })
+    public String provider;
+
+    @Param({ "false", "true" })
+    public boolean lazy;
+
+    @Param({ "" })
+    public String nssLibraryDirectory;
+
+    private BenchmarkServices services;
+    private ProviderOptions options;
+    private String providerName;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        services = new BenchmarkServices();
+        // the eager start caches the provider manifest
+        final ServiceController<ProviderServiceIndex> controller = install(new ProviderOptions());
+        providerName = controller.getValue().getProviderName();
+        services.remove(controller);
+
+        options = new ProviderOptions();
+        options.setLazy(lazy);
+        options.getLazyServices().add("MessageDigest.SHA-256");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        services.shutdown();
+    }
+
+    @Benchmark
+    public ServiceController<?> startStop() throws Exception {
+        final ServiceController<ProviderServiceIndex> controller = install(options);
+        services.remove(controller);
+        return controller;
+    }
+
+    @Benchmark
+    public MessageDigest startFirstCall() throws Exception {
+        final ServiceController<ProviderServiceIndex> controller = install(options);
+        final MessageDigest digest = MessageDigest.getInstance("SHA-256", providerName);
+        services.remove(controller);
+        return digest;
+    }
+
+    // Private methods -------------------------------------------------------
+
+    private ServiceController<ProviderServiceIndex> install(ProviderOptions providerOptions) throws Exception {
+        if ("bc".equals(provider)) {
+            return services.installSimpleProvider(BOUNCY_CASTLE, providerOptions);
+        } else if ("sunpkcs11-nss".equals(provider)) {
+            final Map<String, String> attributes = new HashMap<String, String>();
+            attributes.put("nssLibraryDirectory", nssLibraryDirectory);
+            attributes.put("nssDbMode", "noDb");
+            return services.installProvider(SunPKCS11Service.createServiceName("benchmark"), new SunPKCS11Service(
+                    "benchmark", attributes, providerOptions));
+        }
+        throw new IllegalArgumentException("Unknown provider " + provider);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.msc.service.ServiceController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the start of a lazy provider after a server restart with a cold and a warm manifest. The in-memory
+ * {@link ProviderManifestCache} is cleared before each start, so the <code>cold</code> start (no persisted manifest)
+ * constructs the provider eagerly, while the <code>warm</code> start reads the persisted manifest and registers only the
+ * placeholder. The <code>startFirstCall</code> benchmark adds the first request for a provider service.
+ *
+ * @author Josef Cacek
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManifestCacheBenchmark {
+
+    private static final String BOUNCY_CASTLE = "org.bouncycastle.jce.provider.BouncyCastleProvider";
+
+    @Param({ "cold", "warm" })
+    public String manifest;
+
+    private BenchmarkServices services;
+    private ProviderOptions options;
+    private String providerName;
+    private File directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        services = new BenchmarkServices();
+        directory = File.createTempFile("manifests", "");
+        directory.delete();
+        ProviderManifestCache.setDirectory(directory);
+        options = new ProviderOptions();
+        options.setLazy(true);
+        // the first start persists the manifest
+        final ServiceController<ProviderServiceIndex> controller = services.installSimpleProvider(BOUNCY_CASTLE, options);
+        providerName = controller.getValue().getProviderName();
+        services.remove(controller);
+        for (int i = 0; i < 500 && (directory.list() == null || directory.list().length == 0); i++) {
+            Thread.sleep(10L);
+        }
+        if ("cold".equals(manifest)) {
+            ProviderManifestCache.setDirectory(null);
+        } else if (!"warm".equals(manifest)) {
+            throw new IllegalArgumentException("Unknown manifest " + manifest);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        services.shutdown();
+        ProviderManifestCache.setDirectory(null);
+        ProviderManifestCache.clear();
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public ServiceController<?> startStop() throws Exception {
+        ProviderManifestCache.clear();
+        final ServiceController<ProviderServiceIndex> controller = services.installSimpleProvider(BOUNCY_CASTLE, options);
+        services.remove(controller);
+        return controller;
+    }
+
+    @Benchmark
+    public MessageDigest startFirstCall() throws Exception {
+        ProviderManifestCache.clear();
+        final ServiceController<ProviderServiceIndex> controller = services.installSimpleProvider(BOUNCY_CASTLE, options);
+        final MessageDigest digest = MessageDigest.getInstance("SHA-256", providerName);
+        services.remove(controller);
+        return digest;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+
+import org.jboss.msc.service.ServiceController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares ways of obtaining a Cipher engine of a provider registered by the extension (BouncyCastle): the global JCA
+ * lookup by provider name, the lookup with the provider instance, the {@link ProviderServiceIndex} (SPI instance) and a
+ * {@link CryptoPool}. The plain <code>Cipher.getInstance(algorithm)</code> walk of the provider list is the baseline.
+ *
+ * @author Josef Cacek
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProviderLookupBenchmark {
+
+    private static final String BOUNCY_CASTLE = "org.bouncycastle.jce.provider.BouncyCastleProvider";
+
+    @Param({ "AES/GCM/NoPadding" })
+    public String transformation;
+
+    private BenchmarkServices services;
+    private ServiceController<ProviderServiceIndex> controller;
+    private ProviderServiceIndex index;
+    private String serviceAlgorithm;
+    private CryptoPool<Cipher> pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        services = new BenchmarkServices();
+        controller = services.installSimpleProvider(BOUNCY_CASTLE, null);
+        index = controller.getValue();
+        serviceAlgorithm = EngineType.CIPHER.getServiceAlgorithm(transformation);
+        pool = new CryptoPool<Cipher>(Cipher.class, EngineType.CIPHER, transformation, index.getProvider(), Runtime
+                .getRuntime().availableProcessors(), 8, 1000L, 0L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pool.close();
+        services.remove(controller);
+        services.shutdown();
+    }
+
+    @Benchmark
+    public Cipher getInstance() throws GeneralSecurityException {
+        return Cipher.getInstance(transformation);
+    }
+
+    @Benchmark
+    public Cipher getInstanceByProviderName() throws GeneralSecurityException {
+        return Cipher.getInstance(transformation, index.getProviderName());
+    }
+
+    @Benchmark
+    public Cipher getInstanceByProvider() throws GeneralSecurityException {
+        return Cipher.getInstance(transformation, index.getProvider());
+    }
+
+    @Benchmark
+    public Object indexNewInstance() throws GeneralSecurityException {
+        return index.newInstance("Cipher", serviceAlgorithm, null);
+    }
+
+    @Benchmark
+    public Cipher poolBorrowRelease() throws GeneralSecurityException {
+        final CryptoPool.PooledInstance<Cipher> cipher = pool.borrow();
+        cipher.release();
+        return cipher.get();
+    }
+}
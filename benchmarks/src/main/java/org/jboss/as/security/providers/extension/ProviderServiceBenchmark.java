@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.jboss.msc.service.ServiceController;
+
+/**
+ * Measures the cost of starting (constructing and registering the provider) and stopping a provider service in an MSC
+ * container.
+ * <p>
+ * The default <code>bc</code> provider uses BouncyCastle through a {@link SimpleProviderService}. The
+ * <code>sunpkcs11-nss</code> provider uses a {@link SunPKCS11Service} with NSS in the no-database mode and needs the
+ * <code>nssLibraryDirectory</code> parameter (e.g. <code>-p provider=sunpkcs11-nss -p
+ * nssLibraryDirectory=/usr/lib/x86_64-linux-gnu</code>).
+ *
+ * @author Josef Cacek
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProviderServiceBenchmark {
+
+    private static final String BOUNCY_CASTLE = "org.bouncycastle.jce.provider.BouncyCastleProvider";
+
+    @Param({ "bc" })
+    public String provider;
+
+    @Param({ "false", "true" })
+    public boolean asyncStart;
+
+    @Param({ "" })
+    public String nssLibraryDirectory;
+
+    private BenchmarkServices services;
+    private ProviderOptions options;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        services = new BenchmarkServices();
+        options = new ProviderOptions();
+        options.setAsyncStart(asyncStart);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        services.shutdown();
+    }
+
+    @Benchmark
+    public int startStop() throws Exception {
+        final ServiceController<ProviderServiceIndex> controller;
+        if ("bc".equals(provider)) {
+            controller = services.installSimpleProvider(BOUNCY_CASTLE, options);
+        } else if ("sunpkcs11-nss".equals(provider)) {
+            final Map<String, String> attributes = new HashMap<String, String>();
+            attributes.put("nssLibraryDirectory", nssLibraryDirectory);
+            attributes.put("nssDbMode", "noDb");
+            controller = services.installProvider(SunPKCS11Service.createServiceName("benchmark"), new SunPKCS11Service(
+                    "benchmark", attributes, options));
+        } else {
+            throw new IllegalArgumentException("Unknown provider " + provider);
+        }
+        final int size = controller.getValue().size();
+        services.remove(controller);
+        return size;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.Signature;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares signing by a new {@link Signature} instance per request with signing through a {@link SigningPipeline} at
+ * several batch sizes and linger times. The throughput shows the amortized engine creation and key initialization, the
+ * sample time shows the latency added by waiting for a batch. The JDK <code>SunRsaSign</code> provider has cheap
+ * initialization, so the differences are much bigger with a SunPKCS11 provider.
+ *
+ * @author Josef Cacek
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+public class SigningPipelineBenchmark {
+
+    private static final String ALGORITHM = "SHA256withRSA";
+
+    @Param({ "1", "8", "32" })
+    public int maxBatchSize;
+
+    @Param({ "0", "1" })
+    public long lingerTime;
+
+    @Param({ "256" })
+    public int payloadSize;
+
+    private Provider provider;
+    private KeyPair keyPair;
+    private byte[] payload;
+    private ScheduledThreadPoolExecutor executor;
+    private SigningPipeline pipeline;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        provider = Security.getProvider("SunRsaSign");
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA", provider);
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+        payload = new byte[payloadSize];
+        new SecureRandom().nextBytes(payload);
+        executor = new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors());
+        pipeline = new SigningPipeline(ALGORITHM, provider, maxBatchSize, lingerTime, executor, executor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pipeline.close();
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public byte[] direct() throws GeneralSecurityException {
+        final Signature signature = Signature.getInstance(ALGORITHM, provider);
+        signature.initSign(keyPair.getPrivate());
+        signature.update(payload);
+        return signature.sign();
+    }
+
+    @Benchmark
+    public byte[] pipeline() throws InterruptedException, ExecutionException {
+        return pipeline.sign(keyPair.getPrivate(), payload).get();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+
+import org.jboss.msc.service.ServiceController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares concurrent service lookups in a provider registered as is with the lookups in its {@link SnapshotProvider}
+ * copy. The BouncyCastle provider is registered by a {@link SimpleProviderService} in both modes; many threads look up
+ * the same services, so the contention on the provider monitor shows in the results. Run with <code>-t</code> to compare
+ * other thread counts.
+ *
+ * @author Josef Cacek
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+public class SnapshotProviderBenchmark {
+
+    private static final String BOUNCY_CASTLE = "org.bouncycastle.jce.provider.BouncyCastleProvider";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    @Param({ "plain", "snapshot" })
+    public String mode;
+
+    private BenchmarkServices services;
+    private ServiceController<ProviderServiceIndex> controller;
+    private Provider provider;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final boolean snapshot;
+        if ("snapshot".equals(mode)) {
+            snapshot = true;
+        } else if ("plain".equals(mode)) {
+            snapshot = false;
+        } else {
+            throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+        services = new BenchmarkServices();
+        controller = services.installProvider(SimpleProviderService.createServiceName(BOUNCY_CASTLE),
+                new SimpleProviderService(BOUNCY_CASTLE, new ProviderOptions(), snapshot));
+        provider = controller.getValue().getProvider();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        services.remove(controller);
+        services.shutdown();
+    }
+
+    @Benchmark
+    public Provider.Service getService() {
+        return provider.getService("Cipher", "AES");
+    }
+
+    @Benchmark
+    public Provider.Service getServiceByAlias() {
+        return provider.getService("MessageDigest", "SHA256");
+    }
+
+    @Benchmark
+    public Cipher cipherGetInstance() throws GeneralSecurityException {
+        return Cipher.getInstance(TRANSFORMATION, provider);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import static org.jboss.as.controller.descriptions.ModelDescriptionConstants.OP;
+import static org.jboss.as.controller.descriptions.ModelDescriptionConstants.OP_ADDR;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.PathElement;
+import org.jboss.as.controller.persistence.SubsystemMarshallingContext;
+import org.jboss.dmr.ModelNode;
+import org.jboss.staxmapper.XMLElementWriter;
+import org.jboss.staxmapper.XMLExtendedStreamWriter;
+import org.jboss.staxmapper.XMLMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading and writing of subsystem configurations with the given number of provider-class and sunpkcs11 elements.
+ *
+ * @author Josef Cacek
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubsystemParserBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int providers;
+
+    private final SecurityProvidersExtension.SubsystemParser parser = new SecurityProvidersExtension.SubsystemParser(
+            SecurityProvidersExtension.NAMESPACE);
+    private final XMLMapper mapper = XMLMapper.Factory.create();
+    private final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+    private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+    private String xml;
+    private ModelNode model;
+
+    @Setup
+    public void setUp() throws Exception {
+        mapper.registerRootElement(new QName(SecurityProvidersExtension.NAMESPACE, "subsystem"), parser);
+        final StringBuilder sb = new StringBuilder();
+        sb.append("<subsystem xmlns=\"").append(SecurityProvidersExtension.NAMESPACE).append("\"><security-providers>");
+        for (int i = 0; i < providers; i++) {
+            sb.append("<provider-class position=\"").append(i + 1).append("\" async-start=\"true\">org.example.Provider")
+                    .append(i).append("</provider-class>");
+        }
+        for (int i = 0; i < providers; i++) {
+            sb.append("<sunpkcs11 name=\"token").append(i).append("\" start-timeout=\"30000\">")
+                    .append("<attribute name=\"library\" value=\"/usr/lib/pkcs11/lib").append(i).append(".so\"/>")
+                    .append("<attribute name=\"slotListIndex\" value=\"").append(i).append("\"/>")
+                    .append("<attribute name=\"attributes\" value=\"compatibility\"/></sunpkcs11>");
+        }
+        sb.append("</security-providers></subsystem>");
+        xml = sb.toString();
+        model = toModel(read());
+    }
+
+    @Benchmark
+    public List<ModelNode> read() throws XMLStreamException {
+        final List<ModelNode> operations = new ArrayList<ModelNode>();
+        mapper.parseDocument(operations, inputFactory.createXMLStreamReader(new StringReader(xml)));
+        return operations;
+    }
+
+    @Benchmark
+    public String write() throws XMLStreamException {
+        final StringWriter stringWriter = new StringWriter();
+        final XMLStreamWriter streamWriter = outputFactory.createXMLStreamWriter(stringWriter);
+        mapper.deparseDocument(new XMLElementWriter<ModelNode>() {
+            public void writeContent(XMLExtendedStreamWriter writer, ModelNode value) throws XMLStreamException {
+                parser.writeContent(writer, new SubsystemMarshallingContext(value, writer));
+            }
+        }, model, streamWriter);
+        streamWriter.close();
+        return stringWriter.toString();
+    }
+
+    /**
+     * Creates the subsystem model from the add operations.
+     *
+     * @param operations
+     * @return
+     */
+    private static ModelNode toModel(List<ModelNode> operations) {
+        final ModelNode result = new ModelNode();
+        for (ModelNode operation : operations) {
+            final PathAddress address = PathAddress.pathAddress(operation.get(OP_ADDR));
+            if (address.size() < 2) {
+                continue;
+            }
+            final PathElement element = address.getLastElement();
+            final ModelNode resource = operation.clone();
+            resource.remove(OP);
+            resource.remove(OP_ADDR);
+            result.get(element.getKey(), element.getValue()).set(resource);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,641 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.io.IOException;
+import java.security.AccessController;
+import java.security.PrivilegedExceptionAction;
+import java.security.Provider;
+import java.security.Security;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jboss.logging.Logger;
+import org.jboss.msc.inject.Injector;
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
+import org.jboss.msc.value.InjectedValue;
+
+/**
+ * Base class for services which construct a Java Security Provider and register it in the JCA provider list. The provider
+ * can be either started on the MSC thread or (in the async-start mode) on the subsystem executor, so slow providers are
+ * initialized in parallel. In the lazy mode only a {@link LazyProvider} placeholder is registered and the provider is
+ * constructed when one of its services is requested for the first time. If warm-up services are configured, they are
+ * exercised by a {@link ProviderWarmup} when the provider is registered, either as a part of the start or in the
+ * background. In the instrumented mode an {@link InstrumentedProvider} wrapping the constructed provider is registered,
+ * so the latencies of its operations are recorded.
+ * <p>
+ * The service value is a {@link ProviderServiceIndex} of the registered provider, so dependent services can create SPI
+ * instances directly without a lookup in the JCA provider list.
+ *
+ * @author Josef Cacek
+ */
+public abstract class AbstractProviderService implements Service<ProviderServiceIndex> {
+
+    private static final Logger LOGGER = Logger.getLogger(AbstractProviderService.class);
+
+    private final InjectedValue<ScheduledExecutorService> executor = new InjectedValue<ScheduledExecutorService>();
+    private final InjectedValue<ScheduledExecutorService> timer = new InjectedValue<ScheduledExecutorService>();
+    private final ProviderOptions options;
+
+    private volatile Provider registeredProvider;
+    private volatile String providerName;
+    private volatile long startDuration = -1L;
+    private volatile ProviderServiceIndex index;
+    private volatile long warmupDuration = -1L;
+    private volatile Future<?> warmupTask;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new AbstractProviderService.
+     *
+     * @param options
+     */
+    protected AbstractProviderService(ProviderOptions options) {
+        this.options = options != null ? options : new ProviderOptions();
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Constructs and registers the Java Security Provider. In the async-start mode the work is done on the subsystem
+     * executor and the service fails if it doesn't complete within the configured start timeout. The timeout is enforced by
+     * the subsystem timer, so it fires even if all the executor threads are blocked.
+     *
+     * @param context
+     * @throws StartException
+     * @see org.jboss.msc.service.Service#start(org.jboss.msc.service.StartContext)
+     */
+    public void start(final StartContext context) throws StartException {
+        LOGGER.info("Adding " + getDescription());
+        if (options.isLazy()) {
+            final ProviderManifest manifest = getLazyManifest();
+            if (manifest != null) {
+                addLazyProvider(manifest);
+                return;
+            }
+            LOGGER.info("Services of " + getDescription() + " are not known yet, the provider is constructed eagerly.");
+        }
+        if (!options.isAsyncStart()) {
+            try {
+                registerProvider();
+            } catch (Exception e) {
+                LOGGER.error("Adding " + getDescription() + " failed.", e);
+                throw new StartException("Unable to register " + getDescription(), e);
+            }
+            warmUp();
+            return;
+        }
+
+        final ScheduledExecutorService executorService = executor.getValue();
+        final long startTimeout = options.getStartTimeout();
+        final AtomicBoolean finished = new AtomicBoolean();
+        context.asynchronous();
+        final Future<?> task = executorService.submit(new Runnable() {
+            public void run() {
+                try {
+                    final long start = System.nanoTime();
+                    final Provider provider = constructProvider();
+                    if (finished.compareAndSet(false, true)) {
+                        addProvider(provider, start);
+                        warmUp();
+                        context.complete();
+                    } else {
+                        LOGGER.warn("Construction of " + getDescription() + " finished after the start timeout, dropping it.");
+                        releaseProvider(provider);
+                    }
+                } catch (Exception e) {
+                    if (finished.compareAndSet(false, true)) {
+                        LOGGER.error("Adding " + getDescription() + " failed.", e);
+                        context.failed(new StartException("Unable to register " + getDescription(), e));
+                    }
+                }
+            }
+        });
+        if (startTimeout > 0L) {
+            timer.getValue().schedule(new Runnable() {
+                public void run() {
+                    if (finished.compareAndSet(false, true)) {
+                        task.cancel(true);
+                        LOGGER.error("Adding " + getDescription() + " timed out after " + startTimeout + " ms.");
+                        context.failed(new StartException("Start of " + getDescription() + " timed out after " + startTimeout
+                                + " ms"));
+                    }
+                }
+            }, startTimeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Removes the registered Java Security Provider.
+     *
+     * @param context
+     * @see org.jboss.msc.service.Service#stop(org.jboss.msc.service.StopContext)
+     */
+    public synchronized void stop(StopContext context) {
+        LOGGER.info("Removing " + getDescription());
+        final Future<?> warmup = warmupTask;
+        if (warmup != null) {
+            warmup.cancel(true);
+            warmupTask = null;
+        }
+        warmupDuration = -1L;
+        final String name = providerName;
+        if (name == null) {
+            index = null;
+            return;
+        }
+        final Provider provider = getConstructedProvider(registeredProvider);
+        index = null;
+        providerRemoved();
+        ProviderRegistrar.removeProvider(name);
+        if (provider != null) {
+            releaseProvider(provider);
+        }
+        registeredProvider = null;
+        providerName = null;
+        startDuration = -1L;
+    }
+
+    /**
+     * Returns the service index of the registered provider.
+     *
+     * @return
+     * @throws IllegalStateException if no provider is registered by this service
+     * @see org.jboss.msc.value.Value#getValue()
+     */
+    public ProviderServiceIndex getValue() throws IllegalStateException, IllegalArgumentException {
+        ProviderServiceIndex result = index;
+        final Provider provider = registeredProvider;
+        if (result == null && provider instanceof LazyProvider) {
+            // dependent services need the real provider
+            ((LazyProvider) provider).initialize();
+            result = index;
+        }
+        if (result == null) {
+            throw new IllegalStateException(getDescription() + " is not registered");
+        }
+        return result;
+    }
+
+    /**
+     * Returns injector for the subsystem executor.
+     *
+     * @return
+     */
+    public Injector<ScheduledExecutorService> getExecutorInjector() {
+        return executor;
+    }
+
+    /**
+     * Returns injector for the subsystem timer.
+     *
+     * @return
+     */
+    public Injector<ScheduledExecutorService> getTimerInjector() {
+        return timer;
+    }
+
+    /**
+     * Returns name of the registered provider or <code>null</code> if no provider is registered.
+     *
+     * @return
+     */
+    public String getProviderName() {
+        return providerName;
+    }
+
+    /**
+     * Returns number of services of the registered provider or -1 if no provider is registered or it was not initialized
+     * yet (in the lazy mode).
+     *
+     * @return
+     */
+    public int getServiceCount() {
+        final ProviderServiceIndex result = index;
+        return result == null ? -1 : result.size();
+    }
+
+    /**
+     * Returns time (in milliseconds) spent by constructing and registering the provider, or -1 if the provider is not
+     * registered or it was not initialized yet (in the lazy mode).
+     *
+     * @return
+     */
+    public long getStartDuration() {
+        return startDuration;
+    }
+
+    /**
+     * Returns time (in milliseconds) spent by the provider warm-up, or -1 if the warm-up is not configured or it didn't
+     * finish yet.
+     *
+     * @return
+     */
+    public long getWarmupDuration() {
+        return warmupDuration;
+    }
+
+    /**
+     * Returns true if the provider is ready to serve requests at full speed - its warm-up finished or no warm-up is
+     * configured.
+     *
+     * @return
+     */
+    public boolean isWarmedUp() {
+        return options.getWarmupServices().isEmpty() || warmupDuration >= 0L;
+    }
+
+    // Protected methods -----------------------------------------------------
+
+    /**
+     * Constructs a new provider instance. Called within a privileged block.
+     *
+     * @return
+     * @throws Exception
+     */
+    protected abstract Provider createProvider() throws Exception;
+
+    /**
+     * Returns a human readable description of the provider used in log messages.
+     *
+     * @return
+     */
+    protected abstract String getDescription();
+
+    /**
+     * Returns the key of the {@link ProviderManifestCache} entry which describes the provider. It has to change when a
+     * configuration change can affect the provider services. The description is used by default.
+     *
+     * @return
+     */
+    protected String getManifestKey() {
+        return getDescription();
+    }
+
+    /**
+     * Returns the name of the provider constructed by this service if it's known before the construction, otherwise
+     * <code>null</code> (default).
+     *
+     * @return
+     */
+    protected String getExpectedProviderName() {
+        return null;
+    }
+
+    /**
+     * Called when the provider constructed by this service was registered (or initialized in the lazy mode). Does nothing
+     * by default.
+     *
+     * @param provider
+     */
+    protected void providerRegistered(Provider provider) {
+    }
+
+    /**
+     * Called before the provider registered by this service is removed. Does nothing by default.
+     */
+    protected void providerRemoved() {
+    }
+
+    /**
+     * Called when a provider constructed by {@link #createProvider()} is not used anymore - after it was removed from the
+     * JCA provider list or when it was not registered at all. Does nothing by default.
+     *
+     * @param provider
+     */
+    protected void releaseProvider(Provider provider) {
+    }
+
+    /**
+     * Replaces the provider registered by this service with the given one at the same position of the JCA provider list.
+     * The service value is updated, but dependent services which already obtained the previous value keep using the
+     * previous provider instance, so the caller should replace only a provider without dependents. The given provider is
+     * wrapped by {@link #wrapProvider(Provider)}.
+     *
+     * @param newProvider
+     * @return the replaced provider or <code>null</code> if no provider is registered by this service (the given provider
+     *         is not used then)
+     * @throws IllegalStateException if the given provider can't be installed
+     */
+    protected synchronized Provider replaceProvider(Provider newProvider) throws IllegalStateException {
+        final Provider registered = registeredProvider;
+        if (registered == null) {
+            return null;
+        }
+        final Provider provider = wrapProvider(newProvider);
+        final Provider oldProvider = getConstructedProvider(registered);
+        providerRemoved();
+        final int position = ProviderRegistrar.replaceProvider(providerName, provider);
+        if (position == -1) {
+            if (oldProvider != null) {
+                providerRegistered(oldProvider);
+            }
+            throw new IllegalStateException("Unable to replace " + getDescription() + ", provider " + provider.getName()
+                    + " is already installed");
+        }
+        index = ProviderServiceIndex.create(provider);
+        registeredProvider = provider;
+        providerName = provider.getName();
+        LOGGER.info(getDescription() + " replaced at position " + position + " (" + index.size() + " services)");
+        cacheManifest(ProviderManifest.create(index));
+        providerRegistered(provider);
+        return oldProvider;
+    }
+
+    /**
+     * Returns the provider which is registered instead of the given constructed one. In the instrumented mode it's an
+     * {@link InstrumentedProvider} wrapping the constructed provider, otherwise the constructed provider itself.
+     *
+     * @param provider
+     * @return
+     */
+    protected Provider wrapProvider(Provider provider) {
+        return options.isInstrumented() ? new InstrumentedProvider(provider) : provider;
+    }
+
+    /**
+     * Returns the options of this provider service.
+     *
+     * @return
+     */
+    protected ProviderOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Returns the subsystem executor.
+     *
+     * @return
+     */
+    protected ScheduledExecutorService getExecutor() {
+        return executor.getValue();
+    }
+
+    /**
+     * Returns the subsystem timer. Only short non-blocking tasks may run on it.
+     *
+     * @return
+     */
+    protected ScheduledExecutorService getTimer() {
+        return timer.getValue();
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Returns the registered (or initialized lazy) provider if it records latency histograms, otherwise <code>null</code>.
+     *
+     * @return
+     */
+    InstrumentedProvider getInstrumentedProvider() {
+        final ProviderServiceIndex current = index;
+        if (current == null || !(current.getProvider() instanceof InstrumentedProvider)) {
+            return null;
+        }
+        final InstrumentedProvider provider = (InstrumentedProvider) current.getProvider();
+        return provider.isRecordingHistograms() ? provider : null;
+    }
+
+    // Private methods -------------------------------------------------------
+
+    /**
+     * Constructs and adds the provider on the calling thread.
+     *
+     * @throws Exception
+     */
+    private void registerProvider() throws Exception {
+        final long start = System.nanoTime();
+        addProvider(constructProvider(), start);
+    }
+
+    /**
+     * Calls {@link #createProvider()} (within a privileged block if a security manager is installed) and wraps the provider
+     * by {@link #wrapProvider(Provider)}. The construction is reported as a
+     * {@link FlightRecorderEvents#PROVIDER_CONSTRUCTION} event while a flight recording is running.
+     *
+     * @return
+     * @throws Exception
+     */
+    private Provider constructProvider() throws Exception {
+        final Object event = FlightRecorderEvents.begin(FlightRecorderEvents.PROVIDER_CONSTRUCTION);
+        final Provider provider;
+        try {
+            SecurityManager sm = System.getSecurityManager();
+            if (sm != null) {
+                provider = AccessController.doPrivileged(new PrivilegedExceptionAction<Provider>() {
+                    public Provider run() throws Exception {
+                        return createProvider();
+                    }
+                });
+            } else {
+                provider = createProvider();
+            }
+        } catch (Exception e) {
+            FlightRecorderEvents.commit(event, getDescription(), null, e.toString());
+            throw e;
+        }
+        FlightRecorderEvents.commit(event, getDescription(), provider.getName(), null);
+        return wrapProvider(provider);
+    }
+
+    /**
+     * Adds the given provider to the JCA provider list.
+     *
+     * @param provider
+     * @param start {@link System#nanoTime()} when the provider construction started
+     */
+    private synchronized void addProvider(final Provider provider, long start) {
+        final int position = ProviderRegistrar.addProvider(provider, options.getPosition());
+        if (position == -1) {
+            // the provider is not owned by this service (so it's not removed on stop), but dependents can still use it
+            final Provider installed = Security.getProvider(provider.getName());
+            index = ProviderServiceIndex.create(installed != null ? installed : provider);
+            releaseProvider(provider);
+            return;
+        }
+        index = ProviderServiceIndex.create(provider);
+        registeredProvider = provider;
+        providerName = provider.getName();
+        startDuration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOGGER.info(getDescription() + " registered as " + providerName + " at position " + position + " in "
+                + startDuration + " ms (" + index.size() + " services)");
+        cacheManifest(ProviderManifest.create(index));
+        providerRegistered(provider);
+    }
+
+    /**
+     * Runs the configured warm-up of the registered provider on the calling thread or (in the background mode) on a thread
+     * dedicated to the warm-up, so a long warm-up doesn't hold the threads shared by the subsystem services. The thread
+     * terminates when the warm-up finishes. A lazy provider placeholder is not warmed up, it would construct the provider.
+     * The warm-up uses the constructed provider, not its {@link InstrumentedProvider} wrapper, so the synthetic operations
+     * are not recorded in the latency histograms and the slow operation log.
+     */
+    private void warmUp() {
+        final List<String> services = options.getWarmupServices();
+        final ProviderServiceIndex current = index;
+        if (services.isEmpty() || current == null) {
+            return;
+        }
+        final ProviderWarmup warmup = new ProviderWarmup(InstrumentedProvider.unwrap(current.getProvider()), services, options.getWarmupIterations());
+        if (!options.isWarmupBackground()) {
+            warmupFinished(warmup.run());
+            return;
+        }
+        final ExecutorService warmupExecutor = SecurityProvidersExecutorService.newBoundedExecutor(1,
+                "security-providers-warmup-" + current.getProviderName() + "-");
+        try {
+            warmupTask = warmupExecutor.submit(new Runnable() {
+                public void run() {
+                    warmupFinished(warmup.run());
+                }
+            });
+        } finally {
+            warmupExecutor.shutdown();
+        }
+    }
+
+    private void warmupFinished(long duration) {
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        warmupDuration = duration;
+        LOGGER.info(getDescription() + " warmed up in " + duration + " ms");
+    }
+
+    /**
+     * Caches the manifest of the constructed provider and persists it on the subsystem executor. The persisted manifest is
+     * compared with the new one in the background, so a stale manifest (e.g. after a token firmware update) is replaced
+     * without delaying the provider start.
+     *
+     * @param manifest
+     */
+    private void cacheManifest(final ProviderManifest manifest) {
+        final String key = getManifestKey();
+        ProviderManifestCache.put(key, manifest);
+        if (ProviderManifestCache.getDirectory() == null) {
+            return;
+        }
+        try {
+            executor.getValue().execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (ProviderManifestCache.store(key, manifest)) {
+                            LOGGER.debug("Manifest of " + getDescription() + " persisted.");
+                        }
+                    } catch (IOException e) {
+                        LOGGER.warn("Unable to persist manifest of " + getDescription(), e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Manifest of " + getDescription() + " not persisted, the executor is shut down.");
+        }
+    }
+
+    /**
+     * Returns the manifest advertised by the lazy provider placeholder - the configured lazy services (if any) or the
+     * cached manifest of a previous provider start.
+     *
+     * @return the manifest or <code>null</code> if the provider services or name are not known
+     */
+    private ProviderManifest getLazyManifest() {
+        final ProviderManifest cached = ProviderManifestCache.get(getManifestKey());
+        final List<String> services = options.getLazyServices();
+        if (services.isEmpty()) {
+            return cached;
+        }
+        final String name = cached != null ? cached.getProviderName() : getExpectedProviderName();
+        if (name == null) {
+            return null;
+        }
+        return new ProviderManifest(name, cached != null ? cached.getVersion() : 1.0, services);
+    }
+
+    /**
+     * Adds a {@link LazyProvider} placeholder to the JCA provider list.
+     *
+     * @param manifest
+     */
+    private synchronized void addLazyProvider(final ProviderManifest manifest) {
+        final LazyProvider provider = new LazyProvider(manifest, new Callable<Provider>() {
+            public Provider call() throws Exception {
+                final long start = System.nanoTime();
+                final Provider realProvider = constructProvider();
+                lazyProviderInitialized(realProvider, manifest.getProviderName(), start);
+                return realProvider;
+            }
+        });
+        final int position = ProviderRegistrar.addProvider(provider, options.getPosition());
+        if (position == -1) {
+            final Provider installed = Security.getProvider(provider.getName());
+            if (installed != null) {
+                index = ProviderServiceIndex.create(installed);
+            }
+            return;
+        }
+        registeredProvider = provider;
+        providerName = provider.getName();
+        LOGGER.info(getDescription() + " registered lazily as " + providerName + " at position " + position + " ("
+                + manifest.getServices().size() + " services advertised)");
+    }
+
+    /**
+     * Called by the {@link LazyProvider} placeholder when the real provider is constructed.
+     *
+     * @param provider
+     * @param registeredName name of the placeholder
+     * @param start {@link System#nanoTime()} when the provider construction started
+     */
+    private void lazyProviderInitialized(Provider provider, String registeredName, long start) {
+        if (!provider.getName().equals(registeredName)) {
+            LOGGER.warn(getDescription() + " is registered as " + registeredName + ", but its real name is "
+                    + provider.getName());
+        }
+        final ProviderServiceIndex newIndex = ProviderServiceIndex.create(provider);
+        index = newIndex;
+        startDuration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOGGER.info(getDescription() + " initialized in " + startDuration + " ms (" + newIndex.size() + " services)");
+        cacheManifest(ProviderManifest.create(newIndex));
+        providerRegistered(provider);
+    }
+
+    /**
+     * Returns the provider constructed by this service for the registered one. In case of a {@link LazyProvider}
+     * placeholder, it's closed and its real provider (if already initialized) is returned.
+     *
+     * @param registered
+     * @return
+     */
+    private Provider getConstructedProvider(Provider registered) {
+        return registered instanceof LazyProvider ? ((LazyProvider) registered).close() : registered;
+    }
+}
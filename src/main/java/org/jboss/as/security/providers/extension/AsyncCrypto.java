@@ -0,0 +1,361 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Cipher;
+
+/**
+ * Runs blocking operations of a single provider (e.g. a SunPKCS11 backed by an HSM) on a dedicated bounded thread pool,
+ * so request threads don't pile up behind a saturated token. The number of threads should match the number of sessions
+ * the token can serve concurrently. Operations which don't get a thread wait in a bounded queue; when the queue is full,
+ * the {@link SaturationPolicy} decides whether the operation is rejected, run by the caller or the caller waits.
+ * <p>
+ * The operations return futures. Engine instances are created for each operation, callers which keep their own engines
+ * (e.g. from a {@link CryptoPool}) can use {@link #submit(Callable)}.
+ *
+ * @author Josef Cacek
+ */
+public final class AsyncCrypto {
+
+    private final String name;
+    private final Provider provider;
+    private final SaturationPolicy policy;
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong saturations = new AtomicLong();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new AsyncCrypto.
+     *
+     * @param name name used in thread names
+     * @param provider
+     * @param threads number of threads
+     * @param queueSize capacity of the queue, 0 means operations are only handed over to idle threads
+     * @param policy policy applied when the threads are busy and the queue is full
+     */
+    AsyncCrypto(String name, Provider provider, int threads, int queueSize, SaturationPolicy policy) {
+        this.name = name;
+        this.provider = provider;
+        this.policy = policy;
+        final BlockingQueue<Runnable> queue = queueSize > 0 ? new ArrayBlockingQueue<Runnable>(queueSize)
+                : new SynchronousQueue<Runnable>();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue,
+                new SecurityProvidersExecutorService.DaemonThreadFactory("security-providers-async-" + name + "-"),
+                new SaturationHandler());
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Submits the task to the pool.
+     *
+     * @param task
+     * @return
+     * @throws RejectedExecutionException if the pool is saturated and the policy is {@link SaturationPolicy#ABORT} or if
+     *         the pool is closed
+     */
+    public <T> Future<T> submit(Callable<T> task) throws RejectedExecutionException {
+        return executor.submit(new TimedTask<T>(task));
+    }
+
+    /**
+     * Signs the data with the private key.
+     *
+     * @param algorithm Signature algorithm
+     * @param key
+     * @param data
+     * @return future of the signature bytes
+     */
+    public Future<byte[]> sign(final String algorithm, final PrivateKey key, final byte[] data) {
+        return submit(new Callable<byte[]>() {
+            public byte[] call() throws GeneralSecurityException {
+                final Signature signature = Signature.getInstance(algorithm, provider);
+                signature.initSign(key);
+                signature.update(data);
+                return signature.sign();
+            }
+        });
+    }
+
+    /**
+     * Verifies the signature of the data with the public key.
+     *
+     * @param algorithm Signature algorithm
+     * @param key
+     * @param data
+     * @param signatureBytes
+     * @return future of the verification result
+     */
+    public Future<Boolean> verify(final String algorithm, final PublicKey key, final byte[] data, final byte[] signatureBytes) {
+        return submit(new Callable<Boolean>() {
+            public Boolean call() throws GeneralSecurityException {
+                final Signature signature = Signature.getInstance(algorithm, provider);
+                signature.initVerify(key);
+                signature.update(data);
+                return Boolean.valueOf(signature.verify(signatureBytes));
+            }
+        });
+    }
+
+    /**
+     * Encrypts the data.
+     *
+     * @param transformation Cipher transformation
+     * @param key
+     * @param parameters algorithm parameters, may be <code>null</code>
+     * @param data
+     * @return future of the encrypted bytes
+     */
+    public Future<byte[]> encrypt(String transformation, Key key, AlgorithmParameterSpec parameters, byte[] data) {
+        return doFinal(Cipher.ENCRYPT_MODE, transformation, key, parameters, data);
+    }
+
+    /**
+     * Decrypts the data.
+     *
+     * @param transformation Cipher transformation
+     * @param key
+     * @param parameters algorithm parameters, may be <code>null</code>
+     * @param data
+     * @return future of the decrypted bytes
+     */
+    public Future<byte[]> decrypt(String transformation, Key key, AlgorithmParameterSpec parameters, byte[] data) {
+        return doFinal(Cipher.DECRYPT_MODE, transformation, key, parameters, data);
+    }
+
+    /**
+     * Wraps the key.
+     *
+     * @param transformation Cipher transformation
+     * @param wrappingKey
+     * @param parameters algorithm parameters, may be <code>null</code>
+     * @param key the key to wrap
+     * @return future of the wrapped key bytes
+     */
+    public Future<byte[]> wrap(final String transformation, final Key wrappingKey, final AlgorithmParameterSpec parameters,
+            final Key key) {
+        return submit(new Callable<byte[]>() {
+            public byte[] call() throws GeneralSecurityException {
+                return initCipher(Cipher.WRAP_MODE, transformation, wrappingKey, parameters).wrap(key);
+            }
+        });
+    }
+
+    /**
+     * Unwraps the key.
+     *
+     * @param transformation Cipher transformation
+     * @param unwrappingKey
+     * @param parameters algorithm parameters, may be <code>null</code>
+     * @param wrappedKey
+     * @param wrappedKeyAlgorithm
+     * @param wrappedKeyType one of {@link Cipher#SECRET_KEY}, {@link Cipher#PRIVATE_KEY} and {@link Cipher#PUBLIC_KEY}
+     * @return future of the unwrapped key
+     */
+    public Future<Key> unwrap(final String transformation, final Key unwrappingKey, final AlgorithmParameterSpec parameters,
+            final byte[] wrappedKey, final String wrappedKeyAlgorithm, final int wrappedKeyType) {
+        return submit(new Callable<Key>() {
+            public Key call() throws GeneralSecurityException {
+                return initCipher(Cipher.UNWRAP_MODE, transformation, unwrappingKey, parameters).unwrap(wrappedKey,
+                        wrappedKeyAlgorithm, wrappedKeyType);
+            }
+        });
+    }
+
+    /**
+     * Returns the provider used by the operations.
+     *
+     * @return
+     */
+    public Provider getProvider() {
+        return provider;
+    }
+
+    /**
+     * Returns the policy applied when the pool is saturated.
+     *
+     * @return
+     */
+    public SaturationPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns number of operations waiting in the queue.
+     *
+     * @return
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns number of threads running an operation.
+     *
+     * @return
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Returns number of operations submitted when all the threads were busy and the queue was full.
+     *
+     * @return
+     */
+    public long getSaturationCount() {
+        return saturations.get();
+    }
+
+    /**
+     * Returns average time (milliseconds) the operations waited for a thread or -1 if no operation started yet.
+     *
+     * @return
+     */
+    public long getAverageWaitTime() {
+        final long count = started.get();
+        return count > 0L ? TimeUnit.NANOSECONDS.toMillis(waitNanos.get() / count) : -1L;
+    }
+
+    /**
+     * Returns the longest time (milliseconds) an operation waited for a thread.
+     *
+     * @return
+     */
+    public long getMaxWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Stops accepting new operations. The queued operations are still executed.
+     */
+    void close() {
+        executor.shutdown();
+    }
+
+    // Private methods -------------------------------------------------------
+
+    private Future<byte[]> doFinal(final int mode, final String transformation, final Key key,
+            final AlgorithmParameterSpec parameters, final byte[] data) {
+        return submit(new Callable<byte[]>() {
+            public byte[] call() throws GeneralSecurityException {
+                return initCipher(mode, transformation, key, parameters).doFinal(data);
+            }
+        });
+    }
+
+    private Cipher initCipher(int mode, String transformation, Key key, AlgorithmParameterSpec parameters)
+            throws GeneralSecurityException {
+        final Cipher cipher = Cipher.getInstance(transformation, provider);
+        if (parameters == null) {
+            cipher.init(mode, key);
+        } else {
+            cipher.init(mode, key, parameters);
+        }
+        return cipher;
+    }
+
+    private void recordWait(long nanos) {
+        started.incrementAndGet();
+        waitNanos.addAndGet(nanos);
+        long max = maxWaitNanos.get();
+        while (nanos > max && !maxWaitNanos.compareAndSet(max, nanos)) {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    // Embedded classes ------------------------------------------------------
+
+    /**
+     * Task which records the time it waited for a thread.
+     */
+    private class TimedTask<T> implements Callable<T> {
+
+        private final Callable<T> delegate;
+        private final long submitted = System.nanoTime();
+
+        TimedTask(Callable<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        public T call() throws Exception {
+            recordWait(System.nanoTime() - submitted);
+            return delegate.call();
+        }
+    }
+
+    /**
+     * Applies the {@link SaturationPolicy} to operations which don't fit to the pool.
+     */
+    private class SaturationHandler implements RejectedExecutionHandler {
+
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Asynchronous executor " + name + " is closed");
+            }
+            saturations.incrementAndGet();
+            switch (policy) {
+                case CALLER_RUNS:
+                    r.run();
+                    break;
+                case BLOCK:
+                    try {
+                        executor.getQueue().put(r);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for asynchronous executor " + name);
+                    }
+                    if (executor.isShutdown() && executor.remove(r)) {
+                        throw new RejectedExecutionException("Asynchronous executor " + name + " is closed");
+                    }
+                    break;
+                default:
+                    throw new RejectedExecutionException("Asynchronous executor " + name + " is saturated");
+            }
+        }
+    }
+}
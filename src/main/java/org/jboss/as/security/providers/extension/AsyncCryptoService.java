@@ -0,0 +1,141 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import org.jboss.logging.Logger;
+import org.jboss.msc.inject.Injector;
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
+import org.jboss.msc.value.InjectedValue;
+
+/**
+ * The AsyncCryptoService provides an {@link AsyncCrypto} bound to a SunPKCS11 provider registered by this subsystem.
+ *
+ * @author Josef Cacek
+ */
+public class AsyncCryptoService implements Service<AsyncCrypto> {
+
+    private static final Logger LOGGER = Logger.getLogger(AsyncCryptoService.class);
+
+    private final InjectedValue<ProviderServiceIndex> providerIndex = new InjectedValue<ProviderServiceIndex>();
+
+    private final String name;
+    private final int threads;
+    private final int queueSize;
+    private final SaturationPolicy policy;
+
+    private volatile AsyncCrypto asyncCrypto;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new AsyncCryptoService.
+     *
+     * @param name name of the SunPKCS11 provider resource
+     * @param threads number of threads
+     * @param queueSize capacity of the queue of waiting operations
+     * @param policy policy applied when the threads are busy and the queue is full
+     */
+    public AsyncCryptoService(String name, int threads, int queueSize, SaturationPolicy policy) {
+        this.name = name;
+        this.threads = threads;
+        this.queueSize = queueSize;
+        this.policy = policy;
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Creates a service name for the asynchronous executor of the given SunPKCS11 provider.
+     *
+     * @param providerName
+     * @return
+     */
+    public static ServiceName createServiceName(final String providerName) {
+        return SunPKCS11Service.createServiceName(providerName).append("async");
+    }
+
+    /**
+     * Returns the asynchronous executor.
+     *
+     * @return
+     * @throws IllegalStateException
+     * @throws IllegalArgumentException
+     * @see org.jboss.msc.value.Value#getValue()
+     */
+    public AsyncCrypto getValue() throws IllegalStateException, IllegalArgumentException {
+        final AsyncCrypto value = asyncCrypto;
+        if (value == null) {
+            throw new IllegalStateException("Asynchronous executor of " + name + " is not started");
+        }
+        return value;
+    }
+
+    /**
+     * Creates the thread pool bound to the provider.
+     *
+     * @param context
+     * @throws StartException
+     * @see org.jboss.msc.service.Service#start(org.jboss.msc.service.StartContext)
+     */
+    public void start(StartContext context) throws StartException {
+        final ProviderServiceIndex index = providerIndex.getValue();
+        LOGGER.debug("Starting asynchronous executor of provider " + index.getProviderName() + " with " + threads
+                + " threads and queue size " + queueSize);
+        asyncCrypto = new AsyncCrypto(name, index.getProvider(), threads, queueSize, policy);
+    }
+
+    /**
+     * Stops accepting new operations, the queued ones are still executed.
+     *
+     * @param context
+     * @see org.jboss.msc.service.Service#stop(org.jboss.msc.service.StopContext)
+     */
+    public void stop(StopContext context) {
+        final AsyncCrypto value = asyncCrypto;
+        asyncCrypto = null;
+        if (value != null) {
+            value.close();
+        }
+    }
+
+    /**
+     * Returns injector for the service index of the provider.
+     *
+     * @return
+     */
+    public Injector<ProviderServiceIndex> getProviderIndexInjector() {
+        return providerIndex;
+    }
+
+    /**
+     * Returns the running asynchronous executor or <code>null</code> if the service is not started.
+     *
+     * @return
+     */
+    AsyncCrypto getAsyncCrypto() {
+        return asyncCrypto;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+/**
+ * Circuit breaker driven by the results of provider health probes. It opens after the configured number of consecutive
+ * failures. An open breaker turns half-open after a successful probe and closes after the next successful one, a failure
+ * in the half-open state opens it again. State changes are reported to the {@link Listener} in the order they happen.
+ *
+ * @author Josef Cacek
+ */
+final class CircuitBreaker {
+
+    /**
+     * Breaker states.
+     */
+    enum State {
+        /** The provider is healthy. */
+        CLOSED,
+        /** The provider failed, the fallback is in use. */
+        OPEN,
+        /** The provider passed a probe after a failure, the fallback is still in use. */
+        HALF_OPEN
+    }
+
+    /**
+     * Receives the breaker state changes.
+     */
+    interface Listener {
+
+        /**
+         * Called (while the breaker lock is held) when the breaker state changes.
+         *
+         * @param from
+         * @param to
+         */
+        void stateChanged(State from, State to);
+    }
+
+    private final int failureThreshold;
+    private final Listener listener;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long failureCount;
+    private long transitionCount;
+    private long lastTransitionTime = -1L;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new CircuitBreaker.
+     *
+     * @param failureThreshold number of consecutive failures which opens the breaker
+     * @param listener
+     */
+    CircuitBreaker(int failureThreshold, Listener listener) {
+        this.failureThreshold = Math.max(failureThreshold, 1);
+        this.listener = listener;
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Records a successful probe.
+     */
+    synchronized void success() {
+        consecutiveFailures = 0;
+        if (state == State.OPEN) {
+            transition(State.HALF_OPEN);
+        } else if (state == State.HALF_OPEN) {
+            transition(State.CLOSED);
+        }
+    }
+
+    /**
+     * Records a failed (or timed out) probe.
+     */
+    synchronized void failure() {
+        consecutiveFailures++;
+        failureCount++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            transition(State.OPEN);
+        }
+    }
+
+    /**
+     * Closes the breaker without a probe (e.g. when the monitored provider is removed).
+     */
+    synchronized void reset() {
+        consecutiveFailures = 0;
+        if (state != State.CLOSED) {
+            transition(State.CLOSED);
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the total number of failed probes.
+     *
+     * @return
+     */
+    synchronized long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Returns number of the state changes.
+     *
+     * @return
+     */
+    synchronized long getTransitionCount() {
+        return transitionCount;
+    }
+
+    /**
+     * Returns time (milliseconds since the epoch) of the last state change or -1 if the state never changed.
+     *
+     * @return
+     */
+    synchronized long getLastTransitionTime() {
+        return lastTransitionTime;
+    }
+
+    // Private methods -------------------------------------------------------
+
+    private void transition(State newState) {
+        final State oldState = state;
+        state = newState;
+        transitionCount++;
+        lastTransitionTime = System.currentTimeMillis();
+        if (listener != null) {
+            listener.stateChanged(oldState, newState);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.client.helpers.MeasurementUnit;
+import org.jboss.as.controller.operations.validation.IntRangeValidator;
+import org.jboss.as.controller.operations.validation.LongRangeValidator;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+
+/**
+ * Attribute definitions shared by the provider resources (<code>sunpkcs11</code> and <code>simple-provider</code>).
+ *
+ * @author Josef Cacek
+ */
+final class CommonAttributes {
+
+    /**
+     * If true, the provider is constructed and registered on the subsystem executor instead of the MSC thread.
+     */
+    static final SimpleAttributeDefinition ASYNC_START = new SimpleAttributeDefinitionBuilder("async-start", ModelType.BOOLEAN,
+            true).setDefaultValue(new ModelNode(false)).setAllowExpression(true).build();
+
+    /**
+     * Maximal time (in milliseconds) an asynchronous provider start may take. Undefined means no limit.
+     */
+    static final SimpleAttributeDefinition START_TIMEOUT = new SimpleAttributeDefinitionBuilder("start-timeout", ModelType.LONG,
+            true).setAllowExpression(true).setMeasurementUnit(MeasurementUnit.MILLISECONDS)
+            .setValidator(new LongRangeValidator(1, Long.MAX_VALUE, true, true)).build();
+
+    /**
+     * Preferred (1-based) position of the provider in the JCA provider list. Undefined means the provider is appended to the
+     * end of the list.
+     */
+    static final SimpleAttributeDefinition POSITION = new SimpleAttributeDefinitionBuilder("position", ModelType.INT, true)
+            .setAllowExpression(true).setValidator(new IntRangeValidator(1, true, true)).build();
+
+    /**
+     * If true, a placeholder provider is registered and the real provider is constructed when one of its services is
+     * requested for the first time.
+     */
+    static final SimpleAttributeDefinition LAZY = new SimpleAttributeDefinitionBuilder("lazy", ModelType.BOOLEAN, true)
+            .setDefaultValue(new ModelNode(false)).setAllowExpression(true).build();
+
+    /**
+     * Comma separated list of services (in form <code>Type.Algorithm</code>) advertised by the placeholder provider in the
+     * lazy mode. Undefined means the services of the previous start of the provider are advertised.
+     */
+    static final SimpleAttributeDefinition LAZY_SERVICES = new SimpleAttributeDefinitionBuilder("lazy-services",
+            ModelType.STRING, true).setAllowExpression(true).build();
+
+    /**
+     * If true, the provider service is installed in the on-demand mode, so it starts only when a service which depends on
+     * it (e.g. a deployment declaring the provider) starts.
+     */
+    static final SimpleAttributeDefinition ON_DEMAND = new SimpleAttributeDefinitionBuilder("on-demand", ModelType.BOOLEAN,
+            true).setDefaultValue(new ModelNode(false)).setAllowExpression(true).build();
+
+    /**
+     * Comma separated list of services (in form <code>Type.Algorithm</code>) exercised on synthetic data when the provider
+     * is registered. Undefined means no warm-up.
+     */
+    static final SimpleAttributeDefinition WARMUP_SERVICES = new SimpleAttributeDefinitionBuilder("warmup-services",
+            ModelType.STRING, true).setAllowExpression(true).build();
+
+    /**
+     * Number of warm-up operations per service.
+     */
+    static final SimpleAttributeDefinition WARMUP_ITERATIONS = new SimpleAttributeDefinitionBuilder("warmup-iterations",
+            ModelType.INT, true).setDefaultValue(new ModelNode(1000)).setAllowExpression(true)
+            .setValidator(new IntRangeValidator(1, true, true)).build();
+
+    /**
+     * If true, the warm-up runs on the subsystem executor after the provider service is started. Otherwise the service
+     * start includes the warm-up.
+     */
+    static final SimpleAttributeDefinition WARMUP_BACKGROUND = new SimpleAttributeDefinitionBuilder("warmup-background",
+            ModelType.BOOLEAN, true).setDefaultValue(new ModelNode(false)).setAllowExpression(true).build();
+
+    /**
+     * If true, an {@link InstrumentedProvider} wrapping the provider is registered, so latency histograms of the provider
+     * operations are recorded. It's not one of the {@link #PROVIDER_ATTRIBUTES}, only the <code>sunpkcs11</code> and
+     * <code>simple-provider</code> resources have it.
+     */
+    static final SimpleAttributeDefinition INSTRUMENTED = new SimpleAttributeDefinitionBuilder("instrumented",
+            ModelType.BOOLEAN, true).setDefaultValue(new ModelNode(false)).setAllowExpression(true).build();
+
+    /**
+     * Attributes common to all provider resources, in the order they are marshalled to XML.
+     */
+    static final SimpleAttributeDefinition[] PROVIDER_ATTRIBUTES = { POSITION, ASYNC_START, START_TIMEOUT, LAZY,
+            LAZY_SERVICES, ON_DEMAND, WARMUP_SERVICES, WARMUP_ITERATIONS, WARMUP_BACKGROUND };
+
+    // Constructors ----------------------------------------------------------
+
+    private CommonAttributes() {
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.Provider;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of JCA engine instances (e.g. {@link javax.crypto.Cipher}) bound to a single provider. The pool is split to stripes
+ * selected by the calling thread, so concurrent threads rarely compete for the same lock. Each stripe holds at most
+ * <code>stripeSize</code> instances; if all of them are borrowed, the caller waits up to the borrow timeout. Instances
+ * which stay idle longer than the idle timeout are dropped by {@link #evictIdle()}.
+ * <p>
+ * Instances borrowed by {@link #borrow()} keep their state, so callers are expected to (re)initialize them before use.
+ * Signature and Mac instances can be borrowed by {@link #borrow(Key)} instead - the pool prefers an idle instance already
+ * initialized with the same key (compared by identity) and initializes the instance only if there is none, so the
+ * repeated key initialization (with SunPKCS11 the key conversion and the <code>C_*Init</code> round-trips) is skipped.
+ *
+ * @author Josef Cacek
+ */
+public class CryptoPool<T> {
+
+    private final Class<T> engineClass;
+    private final EngineType type;
+    private final String algorithm;
+    private final Provider provider;
+    private final Stripe<T>[] stripes;
+    private final long borrowTimeout;
+    private final long idleTimeoutNanos;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong inits = new AtomicLong();
+
+    private volatile boolean closed;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new CryptoPool.
+     *
+     * @param engineClass
+     * @param type
+     * @param algorithm
+     * @param provider
+     * @param stripes number of stripes
+     * @param stripeSize maximal number of instances in a stripe
+     * @param borrowTimeout maximal time (milliseconds) to wait for an instance
+     * @param idleTimeout time (milliseconds) after which an idle instance can be evicted, values less than 1 disable eviction
+     */
+    CryptoPool(Class<T> engineClass, EngineType type, String algorithm, Provider provider, int stripes, int stripeSize,
+            long borrowTimeout, long idleTimeout) {
+        this.engineClass = engineClass;
+        this.type = type;
+        this.algorithm = algorithm;
+        this.provider = provider;
+        // generic arrays can't be created, the array holds only Stripe<T> instances
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        final Stripe<T>[] stripeArray = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            stripeArray[i] = new Stripe<T>(stripeSize);
+        }
+        this.stripes = stripeArray;
+        this.borrowTimeout = borrowTimeout;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Borrows an instance from the stripe of the current thread. The instance has to be returned by
+     * {@link PooledInstance#release()} (or dropped by {@link PooledInstance#invalidate()}).
+     *
+     * @return
+     * @throws GeneralSecurityException if the instance can't be created or no instance is available within the borrow
+     *         timeout
+     */
+    public PooledInstance<T> borrow() throws GeneralSecurityException {
+        return borrow(null, false);
+    }
+
+    /**
+     * Borrows an instance initialized with the given key from the stripe of the current thread. The instance has to be
+     * used without re-initialization and returned by {@link PooledInstance#release()}; if it's initialized differently
+     * (or its state is unknown after a failure), it has to be dropped by {@link PooledInstance#invalidate()}.
+     *
+     * @param key the key, a private key initializes a Signature for signing, a public key for verification
+     * @return
+     * @throws GeneralSecurityException if the instance can't be created or initialized or no instance is available within
+     *         the borrow timeout
+     * @throws UnsupportedOperationException for Cipher pools, which need an operation mode and parameters too
+     */
+    public PooledInstance<T> borrow(Key key) throws GeneralSecurityException {
+        if (key == null) {
+            throw new InvalidKeyException("Key must not be null");
+        }
+        if (type == EngineType.CIPHER) {
+            throw new UnsupportedOperationException("Cipher instances need an operation mode and parameters, use borrow()");
+        }
+        final PooledInstance<T> pooled = borrow(key, true);
+        if (pooled.key != key) {
+            try {
+                type.init(pooled.instance, key);
+            } catch (GeneralSecurityException e) {
+                pooled.invalidate();
+                throw e;
+            } catch (RuntimeException e) {
+                pooled.invalidate();
+                throw e;
+            }
+            pooled.key = key;
+            inits.incrementAndGet();
+        }
+        return pooled;
+    }
+
+    /**
+     * Returns this pool typed to the given engine class.
+     *
+     * @param clazz
+     * @return
+     * @throws ClassCastException if the pool holds instances of another engine class
+     */
+    @SuppressWarnings("unchecked")
+    public <E> CryptoPool<E> as(Class<E> clazz) {
+        if (!clazz.equals(engineClass)) {
+            throw new ClassCastException("The pool holds " + engineClass.getName() + " instances");
+        }
+        return (CryptoPool<E>) this;
+    }
+
+    /**
+     * Returns the engine type.
+     *
+     * @return
+     */
+    public EngineType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the algorithm (or cipher transformation) of the pooled instances.
+     *
+     * @return
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Returns the provider of the pooled instances.
+     *
+     * @return
+     */
+    public Provider getProvider() {
+        return provider;
+    }
+
+    /**
+     * Returns number of borrows served by an idle instance.
+     *
+     * @return
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns number of borrows which had to create a new instance.
+     *
+     * @return
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns number of borrows which had to wait for an instance to be returned.
+     *
+     * @return
+     */
+    public long getWaitCount() {
+        return waits.get();
+    }
+
+    /**
+     * Returns number of key initializations done by {@link #borrow(Key)}, i.e. the keyed borrows which found no idle
+     * instance initialized with the key.
+     *
+     * @return
+     */
+    public long getInitCount() {
+        return inits.get();
+    }
+
+    /**
+     * Returns number of idle instances in the pool.
+     *
+     * @return
+     */
+    public int getIdleCount() {
+        int result = 0;
+        for (Stripe<T> stripe : stripes) {
+            synchronized (stripe) {
+                result += stripe.idle.size();
+            }
+        }
+        return result;
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Drops the instances idle for longer than the idle timeout.
+     *
+     * @return number of evicted instances
+     */
+    int evictIdle() {
+        if (idleTimeoutNanos <= 0L) {
+            return 0;
+        }
+        final long now = System.nanoTime();
+        int result = 0;
+        for (Stripe<T> stripe : stripes) {
+            synchronized (stripe) {
+                // the idle deque is LIFO, so the oldest instances are at its end
+                PooledInstance<T> pooled = stripe.idle.peekLast();
+                while (pooled != null && now - pooled.lastUsed > idleTimeoutNanos) {
+                    stripe.idle.pollLast();
+                    result++;
+                    pooled = stripe.idle.peekLast();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Closes the pool and drops the idle instances. Borrowed instances are dropped when they're released.
+     */
+    void close() {
+        closed = true;
+        for (Stripe<T> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.idle.clear();
+            }
+        }
+    }
+
+    // Private methods -------------------------------------------------------
+
+    /**
+     * Borrows an instance from the stripe of the current thread.
+     *
+     * @param key key of the instance preferred for a keyed borrow
+     * @param keyed true if the instance is borrowed by {@link #borrow(Key)}
+     * @return
+     * @throws GeneralSecurityException
+     */
+    private PooledInstance<T> borrow(Key key, boolean keyed) throws GeneralSecurityException {
+        if (closed) {
+            throw new IllegalStateException("The pool for " + getDescription() + " is closed");
+        }
+        final Stripe<T> stripe = stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+        if (!stripe.permits.tryAcquire()) {
+            waits.incrementAndGet();
+            boolean acquired = false;
+            try {
+                acquired = stripe.permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!acquired) {
+                throw new GeneralSecurityException("No pooled instance of " + getDescription() + " available within "
+                        + borrowTimeout + " ms");
+            }
+        }
+        PooledInstance<T> pooled;
+        synchronized (stripe) {
+            pooled = keyed ? pollInitialized(stripe, key) : stripe.idle.pollFirst();
+            if (pooled != null) {
+                pooled.borrowed = true;
+            }
+        }
+        if (pooled != null) {
+            if (!keyed) {
+                // the caller initializes the instance on its own
+                pooled.key = null;
+            }
+            hits.incrementAndGet();
+            return pooled;
+        }
+        misses.incrementAndGet();
+        try {
+            pooled = new PooledInstance<T>(this, engineClass.cast(type.getInstance(algorithm, provider)), stripe);
+        } catch (GeneralSecurityException e) {
+            stripe.permits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            stripe.permits.release();
+            throw e;
+        }
+        return pooled;
+    }
+
+    /**
+     * Removes an idle instance initialized with the given key from the stripe or, if there is none, the most recently used
+     * idle instance. The caller holds the stripe lock.
+     *
+     * @param stripe
+     * @param key
+     * @return the instance or <code>null</code> if the stripe has no idle instance
+     */
+    private static <T> PooledInstance<T> pollInitialized(Stripe<T> stripe, Key key) {
+        for (Iterator<PooledInstance<T>> it = stripe.idle.iterator(); it.hasNext();) {
+            final PooledInstance<T> pooled = it.next();
+            if (pooled.key == key) {
+                it.remove();
+                return pooled;
+            }
+        }
+        return stripe.idle.pollFirst();
+    }
+
+    private String getDescription() {
+        return type.getServiceType() + "." + algorithm + " (" + provider.getName() + ")";
+    }
+
+    // Embedded classes ------------------------------------------------------
+
+    /**
+     * Pool stripe - the stripe instance itself guards the idle deque.
+     */
+    private static class Stripe<T> {
+        private final Semaphore permits;
+        private final ArrayDeque<PooledInstance<T>> idle;
+
+        Stripe(int size) {
+            permits = new Semaphore(size);
+            idle = new ArrayDeque<PooledInstance<T>>(size);
+        }
+    }
+
+    /**
+     * Engine instance borrowed from a {@link CryptoPool}.
+     */
+    public static final class PooledInstance<T> {
+        private final CryptoPool<T> pool;
+        private final T instance;
+        private final Stripe<T> stripe;
+        private boolean borrowed = true;
+        private long lastUsed;
+        /** Key the instance is initialized with by the pool, guarded by the borrowing (or by the stripe if idle). */
+        private Key key;
+
+        PooledInstance(CryptoPool<T> pool, T instance, Stripe<T> stripe) {
+            this.pool = pool;
+            this.instance = instance;
+            this.stripe = stripe;
+        }
+
+        /**
+         * Returns the pooled engine instance.
+         *
+         * @return
+         */
+        public T get() {
+            return instance;
+        }
+
+        /**
+         * Returns the instance to the pool.
+         */
+        public void release() {
+            synchronized (stripe) {
+                checkBorrowed();
+                lastUsed = System.nanoTime();
+                if (!pool.closed) {
+                    stripe.idle.addFirst(this);
+                }
+            }
+            stripe.permits.release();
+        }
+
+        /**
+         * Drops the instance (e.g. when it's in an inconsistent state after a failure).
+         */
+        public void invalidate() {
+            synchronized (stripe) {
+                checkBorrowed();
+            }
+            stripe.permits.release();
+        }
+
+        private void checkBorrowed() {
+            if (!borrowed) {
+                throw new IllegalStateException("The pooled instance was already returned");
+            }
+            borrowed = false;
+        }
+    }
+}
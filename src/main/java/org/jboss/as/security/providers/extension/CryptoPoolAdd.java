@@ -0,0 +1,113 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.jboss.as.controller.AbstractAddStepHandler;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.ServiceVerificationHandler;
+import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
+import org.jboss.dmr.ModelNode;
+import org.jboss.msc.service.ServiceController;
+import org.jboss.msc.service.ServiceController.Mode;
+
+/**
+ * A handler for adding a crypto pool.
+ *
+ * @author Josef Cacek
+ */
+class CryptoPoolAdd extends AbstractAddStepHandler {
+
+    public static final CryptoPoolAdd INSTANCE = new CryptoPoolAdd();
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Private ctor.
+     */
+    private CryptoPoolAdd() {
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Model population.
+     *
+     * @param operation
+     * @param model
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractAddStepHandler#populateModel(org.jboss.dmr.ModelNode, org.jboss.dmr.ModelNode)
+     */
+    @Override
+    protected void populateModel(ModelNode operation, ModelNode model) throws OperationFailedException {
+        for (AttributeDefinition attribute : CryptoPoolResourceDefinition.ATTRIBUTES) {
+            attribute.validateAndSet(operation, model);
+        }
+    }
+
+    /**
+     * Creates and registers {@link CryptoPoolService} instance depending on the referenced provider service.
+     *
+     * @param context
+     * @param operation
+     * @param model
+     * @param verificationHandler
+     * @param newControllers
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractAddStepHandler#performRuntime(org.jboss.as.controller.OperationContext,
+     *      org.jboss.dmr.ModelNode, org.jboss.dmr.ModelNode, org.jboss.as.controller.ServiceVerificationHandler,
+     *      java.util.List)
+     */
+    @Override
+    protected void performRuntime(OperationContext context, ModelNode operation, ModelNode model,
+            ServiceVerificationHandler verificationHandler, List<ServiceController<?>> newControllers)
+            throws OperationFailedException {
+        final String poolName = PathAddress.pathAddress(operation.get(ModelDescriptionConstants.ADDRESS)).getLastElement()
+                .getValue();
+        final ModelNode provider = CryptoPoolResourceDefinition.PROVIDER.resolveModelAttribute(context, model);
+        final ModelNode type = CryptoPoolResourceDefinition.TYPE.resolveModelAttribute(context, model);
+        final EngineType engineType = EngineType.forServiceType(type.asString());
+        if (engineType == null) {
+            throw new OperationFailedException("Unsupported engine type " + type.asString(), new ModelNode().set(
+                    "Unsupported engine type " + type.asString()));
+        }
+        final ModelNode stripes = CryptoPoolResourceDefinition.STRIPES.resolveModelAttribute(context, model);
+        final CryptoPoolService service = new CryptoPoolService(poolName, engineType,
+                CryptoPoolResourceDefinition.ALGORITHM.resolveModelAttribute(context, model).asString(),
+                stripes.isDefined() ? stripes.asInt() : Runtime.getRuntime().availableProcessors(),
+                CryptoPoolResourceDefinition.STRIPE_SIZE.resolveModelAttribute(context, model).asInt(),
+                CryptoPoolResourceDefinition.BORROW_TIMEOUT.resolveModelAttribute(context, model).asLong(),
+                CryptoPoolResourceDefinition.IDLE_TIMEOUT.resolveModelAttribute(context, model).asLong());
+        ServiceController<CryptoPool<?>> controller = context.getServiceTarget()
+                .addService(CryptoPoolService.createServiceName(poolName), service)
+                .addDependency(ProviderReference.resolveServiceName(provider), ProviderServiceIndex.class,
+                        service.getProviderIndexInjector())
+                .addDependency(SecurityProvidersExecutorService.SERVICE_NAME, ScheduledExecutorService.class,
+                        service.getExecutorInjector()).addListener(verificationHandler).setInitialMode(Mode.ACTIVE).install();
+        newControllers.add(controller);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.SimpleResourceDefinition;
+import org.jboss.as.controller.client.helpers.MeasurementUnit;
+import org.jboss.as.controller.operations.validation.AllowedValuesValidator;
+import org.jboss.as.controller.operations.validation.IntRangeValidator;
+import org.jboss.as.controller.operations.validation.LongRangeValidator;
+import org.jboss.as.controller.operations.validation.ModelTypeValidator;
+import org.jboss.as.controller.registry.ManagementResourceRegistration;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+
+/**
+ * A ResourceDefinition for pools of JCA engine instances (Cipher, Signature, Mac) bound to a provider registered by this
+ * subsystem.
+ *
+ * @author Josef Cacek
+ */
+public class CryptoPoolResourceDefinition extends SimpleResourceDefinition {
+
+    /** Reference to the provider resource - <code>sunpkcs11=&lt;name&gt;</code> or <code>simple-provider=&lt;class&gt;</code>. */
+    static final SimpleAttributeDefinition PROVIDER = new SimpleAttributeDefinitionBuilder("provider", ModelType.STRING, false)
+            .setAllowExpression(true).setValidator(ProviderReference.VALIDATOR).build();
+
+    static final SimpleAttributeDefinition TYPE = new SimpleAttributeDefinitionBuilder("type", ModelType.STRING, false)
+            .setAllowExpression(true).setValidator(new EngineTypeValidator()).build();
+
+    static final SimpleAttributeDefinition ALGORITHM = new SimpleAttributeDefinitionBuilder("algorithm", ModelType.STRING,
+            false).setAllowExpression(true).build();
+
+    /** Number of stripes, undefined means one stripe per available processor. */
+    static final SimpleAttributeDefinition STRIPES = new SimpleAttributeDefinitionBuilder("stripes", ModelType.INT, true)
+            .setAllowExpression(true).setValidator(new IntRangeValidator(1, true, true)).build();
+
+    static final SimpleAttributeDefinition STRIPE_SIZE = new SimpleAttributeDefinitionBuilder("stripe-size", ModelType.INT,
+            true).setDefaultValue(new ModelNode(8)).setAllowExpression(true)
+            .setValidator(new IntRangeValidator(1, true, true)).build();
+
+    static final SimpleAttributeDefinition IDLE_TIMEOUT = new SimpleAttributeDefinitionBuilder("idle-timeout", ModelType.LONG,
+            true).setDefaultValue(new ModelNode(300000L)).setAllowExpression(true)
+            .setMeasurementUnit(MeasurementUnit.MILLISECONDS)
+            .setValidator(new LongRangeValidator(0, Long.MAX_VALUE, true, true)).build();
+
+    static final SimpleAttributeDefinition BORROW_TIMEOUT = new SimpleAttributeDefinitionBuilder("borrow-timeout",
+            ModelType.LONG, true).setDefaultValue(new ModelNode(5000L)).setAllowExpression(true)
+            .setMeasurementUnit(MeasurementUnit.MILLISECONDS)
+            .setValidator(new LongRangeValidator(0, Long.MAX_VALUE, true, true)).build();
+
+    /**
+     * Configuration attributes, in the order they are marshalled to XML.
+     */
+    static final SimpleAttributeDefinition[] ATTRIBUTES = { PROVIDER, TYPE, ALGORITHM, STRIPES, STRIPE_SIZE, IDLE_TIMEOUT,
+            BORROW_TIMEOUT };
+
+    static final SimpleAttributeDefinition HIT_COUNT = new SimpleAttributeDefinitionBuilder("hit-count", ModelType.LONG, true)
+            .setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition MISS_COUNT = new SimpleAttributeDefinitionBuilder("miss-count", ModelType.LONG,
+            true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition WAIT_COUNT = new SimpleAttributeDefinitionBuilder("wait-count", ModelType.LONG,
+            true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition INIT_COUNT = new SimpleAttributeDefinitionBuilder("init-count", ModelType.LONG,
+            true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition[] METRICS = { HIT_COUNT, MISS_COUNT, WAIT_COUNT, INIT_COUNT };
+
+    // Constructors ----------------------------------------------------------
+
+    CryptoPoolResourceDefinition() {
+        super(SecurityProvidersExtension.CRYPTO_POOL_PATH, SecurityProvidersExtension
+                .getResourceDescriptionResolver(SecurityProvidersExtension.CRYPTO_POOL), CryptoPoolAdd.INSTANCE,
+                CryptoPoolRemove.INSTANCE);
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Registers the pool configuration attributes and the pool metrics.
+     *
+     * @param resourceRegistration
+     * @see org.jboss.as.controller.SimpleResourceDefinition#registerAttributes(org.jboss.as.controller.registry.ManagementResourceRegistration)
+     */
+    @Override
+    public void registerAttributes(ManagementResourceRegistration resourceRegistration) {
+        for (AttributeDefinition attribute : ATTRIBUTES) {
+            resourceRegistration.registerReadOnlyAttribute(attribute, null);
+        }
+        for (AttributeDefinition metric : METRICS) {
+            resourceRegistration.registerMetric(metric, CryptoPoolMetricsHandler.INSTANCE);
+        }
+    }
+
+    // Embedded classes ------------------------------------------------------
+
+    /**
+     * Validates the engine type names (see {@link EngineType#getServiceType()}).
+     */
+    private static class EngineTypeValidator extends ModelTypeValidator implements AllowedValuesValidator {
+
+        public EngineTypeValidator() {
+            super(ModelType.STRING, false, true);
+        }
+
+        @Override
+        public void validateParameter(String parameterName, ModelNode value) throws OperationFailedException {
+            super.validateParameter(parameterName, value);
+            if (value.isDefined() && value.getType() != ModelType.EXPRESSION
+                    && EngineType.forServiceType(value.asString()) == null) {
+                final String message = "Invalid value " + value.asString() + " for " + parameterName + "; legal values are "
+                        + getAllowedValues();
+                throw new OperationFailedException(message, new ModelNode().set(message));
+            }
+        }
+
+        public List<ModelNode> getAllowedValues() {
+            final List<ModelNode> result = new ArrayList<ModelNode>();
+            for (EngineType type : EngineType.values()) {
+                result.add(new ModelNode(type.getServiceType()));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.logging.Logger;
+import org.jboss.msc.inject.Injector;
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
+import org.jboss.msc.value.InjectedValue;
+
+/**
+ * The CryptoPoolService provides a {@link CryptoPool} of engine instances bound to a provider registered by this subsystem.
+ *
+ * @author Josef Cacek
+ */
+public class CryptoPoolService implements Service<CryptoPool<?>> {
+
+    private static final Logger LOGGER = Logger.getLogger(CryptoPoolService.class);
+
+    /** Minimal period (milliseconds) of the idle instances eviction. */
+    private static final long MIN_EVICTION_PERIOD = 1000L;
+
+    private final InjectedValue<ProviderServiceIndex> providerIndex = new InjectedValue<ProviderServiceIndex>();
+    private final InjectedValue<ScheduledExecutorService> executor = new InjectedValue<ScheduledExecutorService>();
+
+    private final String name;
+    private final EngineType type;
+    private final String algorithm;
+    private final int stripes;
+    private final int stripeSize;
+    private final long borrowTimeout;
+    private final long idleTimeout;
+
+    private volatile CryptoPool<?> pool;
+    private volatile ScheduledFuture<?> evictionTask;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new CryptoPoolService.
+     *
+     * @param name
+     * @param type
+     * @param algorithm
+     * @param stripes
+     * @param stripeSize
+     * @param borrowTimeout
+     * @param idleTimeout
+     */
+    public CryptoPoolService(String name, EngineType type, String algorithm, int stripes, int stripeSize, long borrowTimeout,
+            long idleTimeout) {
+        this.name = name;
+        this.type = type;
+        this.algorithm = algorithm;
+        this.stripes = stripes;
+        this.stripeSize = stripeSize;
+        this.borrowTimeout = borrowTimeout;
+        this.idleTimeout = idleTimeout;
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Returns the pool.
+     *
+     * @return
+     * @throws IllegalStateException
+     * @throws IllegalArgumentException
+     * @see org.jboss.msc.value.Value#getValue()
+     */
+    public CryptoPool<?> getValue() throws IllegalStateException, IllegalArgumentException {
+        final CryptoPool<?> value = pool;
+        if (value == null) {
+            throw new IllegalStateException("Crypto pool " + name + " is not started");
+        }
+        return value;
+    }
+
+    /**
+     * Creates the pool and schedules the idle instances eviction.
+     *
+     * @param context
+     * @throws StartException
+     * @see org.jboss.msc.service.Service#start(org.jboss.msc.service.StartContext)
+     */
+    public void start(StartContext context) throws StartException {
+        final ProviderServiceIndex index = providerIndex.getValue();
+        if (index.getService(type.getServiceType(), type.getServiceAlgorithm(algorithm)) == null) {
+            throw new StartException(type.getServiceType() + "." + algorithm + " is not supported by provider "
+                    + index.getProviderName());
+        }
+        LOGGER.debug("Starting crypto pool " + name + " for " + type.getServiceType() + "." + algorithm + " ("
+                + index.getProviderName() + ")");
+        final CryptoPool<?> newPool = createPool(type.getEngineClass(), index);
+        if (idleTimeout > 0L) {
+            final long period = Math.max(idleTimeout / 2, MIN_EVICTION_PERIOD);
+            evictionTask = executor.getValue().scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    final int evicted = newPool.evictIdle();
+                    if (evicted > 0 && LOGGER.isTraceEnabled()) {
+                        LOGGER.trace("Evicted " + evicted + " idle instances from crypto pool " + name);
+                    }
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+        pool = newPool;
+    }
+
+    /**
+     * Cancels the eviction and closes the pool.
+     *
+     * @param context
+     * @see org.jboss.msc.service.Service#stop(org.jboss.msc.service.StopContext)
+     */
+    public void stop(StopContext context) {
+        LOGGER.debug("Stopping crypto pool " + name);
+        final ScheduledFuture<?> task = evictionTask;
+        if (task != null) {
+            task.cancel(false);
+            evictionTask = null;
+        }
+        pool.close();
+        pool = null;
+    }
+
+    /**
+     * Returns injector for the index of the pooled provider.
+     *
+     * @return
+     */
+    public Injector<ProviderServiceIndex> getProviderIndexInjector() {
+        return providerIndex;
+    }
+
+    /**
+     * Returns injector for the subsystem executor.
+     *
+     * @return
+     */
+    public Injector<ScheduledExecutorService> getExecutorInjector() {
+        return executor;
+    }
+
+    /**
+     * Creates a service name for the given crypto pool name.
+     *
+     * @param poolName
+     * @return
+     */
+    public static ServiceName createServiceName(final String poolName) {
+        return ServiceName.JBOSS.append("security-providers", "crypto-pool", poolName);
+    }
+
+    // Private methods -------------------------------------------------------
+
+    private <T> CryptoPool<T> createPool(Class<T> engineClass, ProviderServiceIndex index) {
+        return new CryptoPool<T>(engineClass, type, algorithm, index.getProvider(), stripes, stripeSize, borrowTimeout,
+                idleTimeout);
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Front provider of a group of member providers (e.g. SunPKCS11 providers bound to different slots of one HSM). It offers
+ * the union of the member services and each SPI instance is created by a member selected by the {@link BalancingPolicy},
+ * so the load of the engine instances is spread over the members.
+ * <p>
+ * An SPI instance stays bound to the member which created it. Keys which live on a token have to be available on all the
+ * member slots.
+ * <p>
+ * A JDK which requires signed JCE providers (e.g. Oracle JDK) rejects JCE services (Cipher, Mac, ...) of this unsigned
+ * provider. For the JCE types, {@link #getService(String, String)} returns the own service of the selected member instead.
+ *
+ * @author Josef Cacek
+ */
+final class DispatchingProvider extends Provider {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String ALIAS_PREFIX = "Alg.Alias.";
+
+    /** Engine types of the javax.crypto package, their providers have to be signed on some JDKs. */
+    private static final Set<String> JCE_TYPES = new HashSet<String>(Arrays.asList("CIPHER", "MAC", "KEYAGREEMENT",
+            "KEYGENERATOR", "SECRETKEYFACTORY", "EXEMPTIONMECHANISM"));
+
+    private final transient Provider[] members;
+    private final transient SunPKCS11Statistics[] statistics;
+    private final transient BalancingPolicy policy;
+    private final transient AtomicLongArray dispatchCounts;
+    private final transient AtomicInteger next = new AtomicInteger();
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new DispatchingProvider.
+     *
+     * @param name
+     * @param info
+     * @param members member providers, at least one
+     * @param policy
+     */
+    DispatchingProvider(String name, String info, List<Provider> members, BalancingPolicy policy) {
+        super(name, members.get(0).getVersion(), info);
+        this.members = members.toArray(new Provider[members.size()]);
+        this.policy = policy;
+        this.dispatchCounts = new AtomicLongArray(this.members.length);
+        this.statistics = new SunPKCS11Statistics[this.members.length];
+        final Map<String, DispatchingService> services = new LinkedHashMap<String, DispatchingService>();
+        for (int i = 0; i < this.members.length; i++) {
+            final Provider member = this.members[i];
+            if (policy == BalancingPolicy.LEAST_OUTSTANDING) {
+                statistics[i] = SunPKCS11Statistics.create(member);
+            }
+            final Map<String, List<String>> aliases = getAliases(member);
+            for (Service service : member.getServices()) {
+                final String key = toKey(service.getType(), service.getAlgorithm());
+                DispatchingService dispatchingService = services.get(key);
+                if (dispatchingService == null) {
+                    dispatchingService = new DispatchingService(this, service, aliases.get(key));
+                    services.put(key, dispatchingService);
+                }
+                dispatchingService.delegates[i] = service;
+            }
+        }
+        for (DispatchingService service : services.values()) {
+            putService(service);
+        }
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Returns the dispatching service, or for the JCE types the service of a member selected by the balancing policy.
+     *
+     * @param type
+     * @param algorithm
+     * @return
+     * @see java.security.Provider#getService(java.lang.String, java.lang.String)
+     */
+    @Override
+    public Service getService(String type, String algorithm) {
+        final Service service = super.getService(type, algorithm);
+        if (service instanceof DispatchingService && isJceType(service.getType())) {
+            final DispatchingService dispatchingService = (DispatchingService) service;
+            final int member = select(dispatchingService.delegates);
+            dispatchCounts.incrementAndGet(member);
+            return dispatchingService.delegates[member];
+        }
+        return service;
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Returns the member providers.
+     *
+     * @return
+     */
+    Provider[] getMembers() {
+        return members.clone();
+    }
+
+    /**
+     * Returns number of SPI instances created by each member.
+     *
+     * @return
+     */
+    long[] getDispatchCounts() {
+        final long[] result = new long[dispatchCounts.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = dispatchCounts.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the algorithm aliases of the given provider (<code>TYPE.ALGORITHM</code> key -> aliases).
+     *
+     * @param provider
+     * @return
+     */
+    static Map<String, List<String>> getAliases(Provider provider) {
+        final Map<String, List<String>> result = new LinkedHashMap<String, List<String>>();
+        for (Object key : provider.keySet().toArray()) {
+            if (!(key instanceof String) || !((String) key).startsWith(ALIAS_PREFIX)) {
+                continue;
+            }
+            final String typeAndAlias = ((String) key).substring(ALIAS_PREFIX.length());
+            final int dot = typeAndAlias.indexOf('.');
+            final Object algorithm = provider.get(key);
+            if (dot < 1 || !(algorithm instanceof String)) {
+                continue;
+            }
+            final String serviceKey = toKey(typeAndAlias.substring(0, dot), (String) algorithm);
+            List<String> aliases = result.get(serviceKey);
+            if (aliases == null) {
+                aliases = new ArrayList<String>();
+                result.put(serviceKey, aliases);
+            }
+            aliases.add(typeAndAlias.substring(dot + 1));
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the given service type is a JCE engine type (e.g. Cipher or Mac).
+     *
+     * @param type
+     * @return
+     */
+    static boolean isJceType(String type) {
+        return JCE_TYPES.contains(type.toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Returns the case insensitive service key in form <code>TYPE.ALGORITHM</code>.
+     *
+     * @param type
+     * @param algorithm
+     * @return
+     */
+    static String toKey(String type, String algorithm) {
+        return (type + "." + algorithm).toUpperCase(Locale.ENGLISH);
+    }
+
+    // Private methods -------------------------------------------------------
+
+    /**
+     * Selects the member for creating a new SPI instance.
+     *
+     * @param delegates member services (<code>null</code> if the member doesn't support the service)
+     * @return index of the selected member
+     */
+    private int select(Service[] delegates) {
+        final int count = delegates.length;
+        final int start = (next.getAndIncrement() & Integer.MAX_VALUE) % count;
+        int selected = -1;
+        int selectedLoad = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            final int member = (start + i) % count;
+            if (delegates[member] == null) {
+                continue;
+            }
+            if (policy == BalancingPolicy.ROUND_ROBIN) {
+                return member;
+            }
+            final int load = getLoad(member);
+            if (load < selectedLoad) {
+                selected = member;
+                selectedLoad = load;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Returns number of sessions in use of the given member or 0 if the statistics are not available.
+     *
+     * @param member
+     * @return
+     */
+    private int getLoad(int member) {
+        final SunPKCS11Statistics stats = statistics[member];
+        if (stats == null) {
+            return 0;
+        }
+        return Math.max(stats.getActiveSessions(), 0);
+    }
+
+    // Embedded classes ------------------------------------------------------
+
+    /**
+     * Service which creates the SPI instances by a member selected by the balancing policy.
+     */
+    private static class DispatchingService extends Service {
+
+        private final DispatchingProvider provider;
+        private final Service[] delegates;
+
+        DispatchingService(DispatchingProvider provider, Service template, List<String> aliases) {
+            super(provider, template.getType(), template.getAlgorithm(), template.getClassName(), aliases, null);
+            this.provider = provider;
+            this.delegates = new Service[provider.members.length];
+        }
+
+        @Override
+        public Object newInstance(Object constructorParameter) throws NoSuchAlgorithmException {
+            final int member = provider.select(delegates);
+            final Object result = delegates[member].newInstance(constructorParameter);
+            provider.dispatchCounts.incrementAndGet(member);
+            return result;
+        }
+
+        @Override
+        public boolean supportsParameter(Object parameter) {
+            for (Service delegate : delegates) {
+                if (delegate != null) {
+                    return delegate.supportsParameter(parameter);
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Signature;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+
+/**
+ * Types of the JCA engine classes which can be pooled by a {@link CryptoPool}.
+ *
+ * @author Josef Cacek
+ */
+public enum EngineType {
+
+    CIPHER("Cipher", Cipher.class) {
+        @Override
+        Object getInstance(String algorithm, Provider provider) throws GeneralSecurityException {
+            return Cipher.getInstance(algorithm, provider);
+        }
+
+        @Override
+        void init(Object instance, Key key) {
+            throw new UnsupportedOperationException("Cipher instances need an operation mode and parameters, initialize them"
+                    + " after borrowing");
+        }
+    },
+    SIGNATURE("Signature", Signature.class) {
+        @Override
+        Object getInstance(String algorithm, Provider provider) throws GeneralSecurityException {
+            return Signature.getInstance(algorithm, provider);
+        }
+
+        @Override
+        void init(Object instance, Key key) throws GeneralSecurityException {
+            if (key instanceof PrivateKey) {
+                ((Signature) instance).initSign((PrivateKey) key);
+            } else if (key instanceof PublicKey) {
+                ((Signature) instance).initVerify((PublicKey) key);
+            } else {
+                throw new InvalidKeyException("Signature needs a private or public key");
+            }
+        }
+    },
+    MAC("Mac", Mac.class) {
+        @Override
+        Object getInstance(String algorithm, Provider provider) throws GeneralSecurityException {
+            return Mac.getInstance(algorithm, provider);
+        }
+
+        @Override
+        void init(Object instance, Key key) throws GeneralSecurityException {
+            ((Mac) instance).init(key);
+        }
+    };
+
+    private final String serviceType;
+    private final Class<?> engineClass;
+
+    // Constructors ----------------------------------------------------------
+
+    private EngineType(String serviceType, Class<?> engineClass) {
+        this.serviceType = serviceType;
+        this.engineClass = engineClass;
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Returns the engine type for the given JCA service type name (case insensitive) or <code>null</code> if the type is
+     * not supported.
+     *
+     * @param serviceType
+     * @return
+     */
+    public static EngineType forServiceType(String serviceType) {
+        for (EngineType type : values()) {
+            if (type.serviceType.equalsIgnoreCase(serviceType)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the JCA service type name (e.g. "Cipher").
+     *
+     * @return
+     */
+    public String getServiceType() {
+        return serviceType;
+    }
+
+    /**
+     * Returns the JCA engine class (e.g. {@link Cipher}).
+     *
+     * @return
+     */
+    public Class<?> getEngineClass() {
+        return engineClass;
+    }
+
+    /**
+     * Returns the name under which the given algorithm (or cipher transformation) is registered as a provider service.
+     *
+     * @param algorithm
+     * @return
+     */
+    public String getServiceAlgorithm(String algorithm) {
+        final int slash = algorithm.indexOf('/');
+        return this == CIPHER && slash > 0 ? algorithm.substring(0, slash) : algorithm;
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Creates a new engine instance for the given algorithm bound to the given provider.
+     *
+     * @param algorithm
+     * @param provider
+     * @return
+     * @throws GeneralSecurityException
+     */
+    abstract Object getInstance(String algorithm, Provider provider) throws GeneralSecurityException;
+
+    /**
+     * Initializes the given engine instance with the key. A Signature is initialized for signing with a private key and for
+     * verification with a public key. The instance stays initialized with the key after a completed operation.
+     *
+     * @param instance
+     * @param key
+     * @throws GeneralSecurityException
+     * @throws UnsupportedOperationException for Cipher, which needs an operation mode and parameters too
+     */
+    abstract void init(Object instance, Key key) throws GeneralSecurityException;
+}
@@ -0,0 +1,65 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import org.jboss.as.controller.AbstractRuntimeOnlyHandler;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * Handler of the subsystem operation which evicts SunPKCS11 providers not used by any service from the
+ * {@link SunPKCS11ProviderCache}. The operation result is the number of evicted providers.
+ *
+ * @author Josef Cacek
+ */
+class EvictProviderCacheHandler extends AbstractRuntimeOnlyHandler {
+
+    public static final String OPERATION_NAME = "evict-provider-cache";
+
+    public static final EvictProviderCacheHandler INSTANCE = new EvictProviderCacheHandler();
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Private ctor.
+     */
+    private EvictProviderCacheHandler() {
+    }
+
+    // Protected methods -----------------------------------------------------
+
+    /**
+     * Evicts the unused providers.
+     *
+     * @param context
+     * @param operation
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractRuntimeOnlyHandler#executeRuntimeStep(org.jboss.as.controller.OperationContext,
+     *      org.jboss.dmr.ModelNode)
+     */
+    @Override
+    protected void executeRuntimeStep(OperationContext context, ModelNode operation) throws OperationFailedException {
+        context.getResult().set(SunPKCS11ProviderCache.evictUnused());
+        context.completeStep();
+    }
+}
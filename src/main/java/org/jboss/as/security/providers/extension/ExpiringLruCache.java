@@ -0,0 +1,136 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size bounded LRU cache with an optional time-to-live of the entries. Expired entries are evicted when they are looked up.
+ * The cache counts hits, misses and evictions.
+ *
+ * @author Josef Cacek
+ */
+final class ExpiringLruCache<K, V> {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<K, CacheEntry<V>> entries;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new ExpiringLruCache.
+     *
+     * @param maxEntries maximal number of entries, 0 disables the caching
+     * @param ttl time-to-live of an entry in milliseconds, values less than 1 mean the entries don't expire
+     */
+    ExpiringLruCache(final int maxEntries, long ttl) {
+        this.maxEntries = Math.max(maxEntries, 0);
+        this.ttlNanos = ttl > 0L ? TimeUnit.MILLISECONDS.toNanos(ttl) : 0L;
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                if (size() > ExpiringLruCache.this.maxEntries) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Returns the cached value or <code>null</code> if the key is not cached or its entry expired.
+     *
+     * @param key
+     * @return
+     */
+    synchronized V get(K key) {
+        final CacheEntry<V> entry = entries.get(key);
+        if (entry != null && ttlNanos > 0L && System.nanoTime() - entry.created > ttlNanos) {
+            entries.remove(key);
+            evictionCount++;
+        } else if (entry != null) {
+            hitCount++;
+            return entry.value;
+        }
+        missCount++;
+        return null;
+    }
+
+    /**
+     * Caches the value, the least recently used entry is evicted if the cache is full.
+     *
+     * @param key
+     * @param value
+     */
+    synchronized void put(K key, V value) {
+        if (maxEntries > 0) {
+            entries.put(key, new CacheEntry<V>(value));
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    synchronized long getMissCount() {
+        return missCount;
+    }
+
+    synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    // Embedded classes ------------------------------------------------------
+
+    /**
+     * Cached value with its creation time.
+     */
+    private static final class CacheEntry<V> {
+
+        final V value;
+        final long created = System.nanoTime();
+
+        CacheEntry(V value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Custom JDK Flight Recorder events of the subsystem - the provider construction, the changes of the JCA provider list and
+ * the operations of the {@link InstrumentedProvider}s. The events are defined at runtime by <code>jdk.jfr.EventFactory</code>
+ * through reflection, so the subsystem still runs on JDKs without the flight recorder (the events are just not emitted
+ * there). A listener registered in the flight recorder tracks whether a recording is running; until then
+ * {@link #begin(EventType)} costs a volatile read and the event types are not even registered.
+ * <p>
+ * The events are in the "JBoss / Security Providers" category and they can be configured as any other event (e.g.
+ * <code>org.jboss.as.security.providers.CryptoOperation#threshold=1 ms</code>). The crypto operations are recorded only
+ * if they take longer than their threshold, 10 ms by default.
+ *
+ * @author Josef Cacek
+ */
+final class FlightRecorderEvents {
+
+    private static final Logger LOGGER = Logger.getLogger(FlightRecorderEvents.class);
+
+    private static final String EVENT_PREFIX = "org.jboss.as.security.providers.";
+    private static final String[] CATEGORY = { "JBoss", "Security Providers" };
+
+    /** Construction of a provider by a provider service: service description, provider name and failure. */
+    static final EventType PROVIDER_CONSTRUCTION = new EventType("ProviderConstruction", "Security Provider Construction",
+            "Construction of a security provider", null, new String[] { "service", "provider", "failure" }, new Class<?>[] {
+                    String.class, String.class, String.class });
+
+    /** A change of the JCA provider list: provider name, action (add, remove or replace), position and failure. */
+    static final EventType PROVIDER_REGISTRATION = new EventType("ProviderRegistration", "Security Provider Registration",
+            "Change of the JCA provider list", null, new String[] { "provider", "action", "position", "failure" },
+            new Class<?>[] { String.class, String.class, int.class, String.class });
+
+    /** An operation of an instrumented provider: provider name, operation (Type.Algorithm.operation) and key size. */
+    static final EventType CRYPTO_OPERATION = new EventType("CryptoOperation", "Crypto Operation",
+            "Operation of an instrumented security provider", "10 ms", new String[] { "provider", "operation", "keySize" },
+            new Class<?>[] { String.class, String.class, int.class });
+
+    private static volatile boolean recording;
+
+    private static final Reflection JFR = Reflection.load();
+
+    // Constructors ----------------------------------------------------------
+
+    private FlightRecorderEvents() {
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Returns true if a flight recording is running.
+     *
+     * @return
+     */
+    static boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Starts timing of a new event of the given type.
+     *
+     * @param type
+     * @return the event or <code>null</code> if no recording is running
+     */
+    static Object begin(EventType type) {
+        if (!recording) {
+            return null;
+        }
+        final Object factory = type.getFactory();
+        if (factory == null) {
+            return null;
+        }
+        try {
+            final Object event = JFR.newEvent.invoke(factory);
+            JFR.begin.invoke(event);
+            return event;
+        } catch (Exception e) {
+            LOGGER.debug("Unable to create flight recorder event " + type.name, e);
+            return null;
+        }
+    }
+
+    /**
+     * Ends the given event and commits it with the given field values (in the order of the event type fields), if it's
+     * enabled and it passes the threshold.
+     *
+     * @param event event returned by {@link #begin(EventType)}, may be <code>null</code>
+     * @param values
+     */
+    static void commit(Object event, Object... values) {
+        if (event == null) {
+            return;
+        }
+        try {
+            JFR.end.invoke(event);
+            if (!((Boolean) JFR.shouldCommit.invoke(event)).booleanValue()) {
+                return;
+            }
+            for (int i = 0; i < values.length; i++) {
+                JFR.set.invoke(event, Integer.valueOf(i), values[i]);
+            }
+            JFR.commit.invoke(event);
+        } catch (Exception e) {
+            LOGGER.debug("Unable to commit flight recorder event", e);
+        }
+    }
+
+    // Private methods -------------------------------------------------------
+
+    /**
+     * Updates the recording flag - it's set if any recording is in the RUNNING state.
+     *
+     * @param jfr
+     */
+    private static void updateRecording(Reflection jfr) {
+        boolean running = false;
+        try {
+            final Object recorder = jfr.getFlightRecorder.invoke(null);
+            for (Object recording : (List<?>) jfr.getRecordings.invoke(recorder)) {
+                if ("RUNNING".equals(String.valueOf(jfr.getState.invoke(recording)))) {
+                    running = true;
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Unable to read the flight recorder state", e);
+        }
+        if (running != recording) {
+            LOGGER.debug("Flight recording " + (running ? "started" : "stopped") + ", security provider events "
+                    + (running ? "enabled" : "disabled"));
+        }
+        recording = running;
+    }
+
+    // Embedded classes ------------------------------------------------------
+
+    /**
+     * Definition of an event type. The type is registered in the flight recorder when its first event is created.
+     */
+    static final class EventType {
+
+        private final String name;
+        private final String label;
+        private final String description;
+        private final String threshold;
+        private final String[] fieldNames;
+        private final Class<?>[] fieldTypes;
+
+        private volatile Object factory;
+        private volatile boolean failed;
+
+        EventType(String name, String label, String description, String threshold, String[] fieldNames,
+                Class<?>[] fieldTypes) {
+            this.name = EVENT_PREFIX + name;
+            this.label = label;
+            this.description = description;
+            this.threshold = threshold;
+            this.fieldNames = fieldNames;
+            this.fieldTypes = fieldTypes;
+        }
+
+        /**
+         * Returns the <code>jdk.jfr.EventFactory</code> of this type or <code>null</code> if it can't be created. Once the
+         * factory is resolved, it's returned by a volatile read without locking.
+         *
+         * @return
+         */
+        Object getFactory() {
+            final Object result = factory;
+            if (result != null || failed) {
+                return result;
+            }
+            return createFactory();
+        }
+
+        /**
+         * Creates and registers the factory of this type unless another thread already did it.
+         *
+         * @return
+         */
+        private synchronized Object createFactory() {
+            if (factory == null && !failed) {
+                if (JFR == null) {
+                    failed = true;
+                    return null;
+                }
+                try {
+                    factory = JFR.createFactory(this);
+                } catch (Exception e) {
+                    failed = true;
+                    LOGGER.warn("Unable to register flight recorder event " + name, e);
+                }
+            }
+            return factory;
+        }
+    }
+
+    /**
+     * The reflective access to the <code>jdk.jfr</code> API.
+     */
+    private static final class Reflection {
+
+        private final Class<? extends Annotation> nameAnnotation;
+        private final Class<? extends Annotation> labelAnnotation;
+        private final Class<? extends Annotation> descriptionAnnotation;
+        private final Class<? extends Annotation> categoryAnnotation;
+        private final Class<? extends Annotation> thresholdAnnotation;
+        private final Class<?> annotationElement;
+        private final Class<?> valueDescriptor;
+        private final Method createFactory;
+        private final Method newEvent;
+        private final Method begin;
+        private final Method end;
+        private final Method shouldCommit;
+        private final Method set;
+        private final Method commit;
+        private final Method getFlightRecorder;
+        private final Method getRecordings;
+        private final Method getState;
+
+        private Reflection() throws Exception {
+            nameAnnotation = Class.forName("jdk.jfr.Name").asSubclass(Annotation.class);
+            labelAnnotation = Class.forName("jdk.jfr.Label").asSubclass(Annotation.class);
+            descriptionAnnotation = Class.forName("jdk.jfr.Description").asSubclass(Annotation.class);
+            categoryAnnotation = Class.forName("jdk.jfr.Category").asSubclass(Annotation.class);
+            thresholdAnnotation = Class.forName("jdk.jfr.Threshold").asSubclass(Annotation.class);
+            annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+            valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+            final Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+            createFactory = eventFactory.getMethod("create", List.class, List.class);
+            newEvent = eventFactory.getMethod("newEvent");
+            final Class<?> event = Class.forName("jdk.jfr.Event");
+            begin = event.getMethod("begin");
+            end = event.getMethod("end");
+            shouldCommit = event.getMethod("shouldCommit");
+            set = event.getMethod("set", int.class, Object.class);
+            commit = event.getMethod("commit");
+            final Class<?> flightRecorder = Class.forName("jdk.jfr.FlightRecorder");
+            getFlightRecorder = flightRecorder.getMethod("getFlightRecorder");
+            getRecordings = flightRecorder.getMethod("getRecordings");
+            getState = Class.forName("jdk.jfr.Recording").getMethod("getState");
+        }
+
+        /**
+         * Loads the flight recorder API and registers the listener which tracks the running recordings.
+         *
+         * @return the API or <code>null</code> if the JDK doesn't have the flight recorder
+         */
+        static Reflection load() {
+            try {
+                final Reflection result = new Reflection();
+                final Class<?> flightRecorder = Class.forName("jdk.jfr.FlightRecorder");
+                final Class<?> listenerClass = Class.forName("jdk.jfr.FlightRecorderListener");
+                final Object listener = Proxy.newProxyInstance(listenerClass.getClassLoader(), new Class<?>[] { listenerClass },
+                        new RecordingListener(result));
+                flightRecorder.getMethod("addListener", listenerClass).invoke(null, listener);
+                if (((Boolean) flightRecorder.getMethod("isInitialized").invoke(null)).booleanValue()) {
+                    // the JFR listener is only called for state changes, the recordings may already run
+                    updateRecording(result);
+                }
+                return result;
+            } catch (Throwable e) {
+                LOGGER.debug("JDK Flight Recorder is not available, security provider events are disabled.");
+                return null;
+            }
+        }
+
+        /**
+         * Creates and registers the <code>jdk.jfr.EventFactory</code> for the given event type.
+         *
+         * @param type
+         * @return
+         * @throws Exception
+         */
+        Object createFactory(EventType type) throws Exception {
+            final List<Object> annotations = new ArrayList<Object>();
+            annotations.add(newAnnotation(nameAnnotation, type.name));
+            annotations.add(newAnnotation(labelAnnotation, type.label));
+            annotations.add(newAnnotation(descriptionAnnotation, type.description));
+            annotations.add(newAnnotation(categoryAnnotation, CATEGORY));
+            if (type.threshold != null) {
+                annotations.add(newAnnotation(thresholdAnnotation, type.threshold));
+            }
+            final List<Object> fields = new ArrayList<Object>();
+            for (int i = 0; i < type.fieldNames.length; i++) {
+                fields.add(valueDescriptor.getConstructor(Class.class, String.class).newInstance(type.fieldTypes[i],
+                        type.fieldNames[i]));
+            }
+            return createFactory.invoke(null, Collections.unmodifiableList(annotations),
+                    Collections.unmodifiableList(fields));
+        }
+
+        private Object newAnnotation(Class<? extends Annotation> annotationType, Object value) throws Exception {
+            return annotationElement.getConstructor(Class.class, Object.class).newInstance(annotationType, value);
+        }
+    }
+
+    /**
+     * Handler of the <code>jdk.jfr.FlightRecorderListener</code> proxy, which updates the recording flag when a recording
+     * changes its state.
+     */
+    private static final class RecordingListener implements InvocationHandler {
+
+        private final Reflection jfr;
+
+        RecordingListener(Reflection jfr) {
+            this.jfr = jfr;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(method.getName())) {
+                    return Boolean.valueOf(proxy == args[0]);
+                } else if ("hashCode".equals(method.getName())) {
+                    return Integer.valueOf(System.identityHashCode(proxy));
+                }
+                return getClass().getName();
+            }
+            if ("recordingStateChanged".equals(method.getName())) {
+                updateRecording(jfr);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * Holder of the health check options of a SunPKCS11 provider (see {@link SunPKCS11ResourceDefinition#HEALTH_ATTRIBUTES}).
+ *
+ * @author Josef Cacek
+ */
+public class HealthCheckOptions {
+
+    private long interval;
+    private long timeout = 5000L;
+    private int failureThreshold = 3;
+    private String fallback;
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Creates options from the given resource model.
+     *
+     * @param context
+     * @param model
+     * @return
+     * @throws OperationFailedException
+     */
+    static HealthCheckOptions resolve(OperationContext context, ModelNode model) throws OperationFailedException {
+        final HealthCheckOptions options = new HealthCheckOptions();
+        final ModelNode interval = SunPKCS11ResourceDefinition.HEALTH_CHECK_INTERVAL.resolveModelAttribute(context, model);
+        if (interval.isDefined()) {
+            options.setInterval(interval.asLong());
+        }
+        options.setTimeout(SunPKCS11ResourceDefinition.HEALTH_CHECK_TIMEOUT.resolveModelAttribute(context, model).asLong());
+        options.setFailureThreshold(SunPKCS11ResourceDefinition.FAILURE_THRESHOLD.resolveModelAttribute(context, model)
+                .asInt());
+        final ModelNode fallback = SunPKCS11ResourceDefinition.FALLBACK.resolveModelAttribute(context, model);
+        if (fallback.isDefined()) {
+            options.setFallback(fallback.asString());
+        }
+        return options;
+    }
+
+    /**
+     * Returns true if the health check is enabled (i.e. the interval is positive).
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+        return interval > 0L;
+    }
+
+    /**
+     * Returns time (milliseconds) between two health probes, values less than 1 mean the health check is disabled.
+     *
+     * @return
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Returns maximal duration (milliseconds) of a successful health probe.
+     *
+     * @return
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns number of consecutive failed probes which opens the circuit breaker.
+     *
+     * @return
+     */
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * Returns reference to the fallback provider resource (see {@link ProviderReference}) or <code>null</code> if no
+     * fallback is configured.
+     *
+     * @return
+     */
+    public String getFallback() {
+        return fallback;
+    }
+
+    public void setFallback(String fallback) {
+        this.fallback = fallback;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.MessageDigest;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Periodically probes a provider with a low-cost operation (a digest of a few bytes or a small random generation) and
+ * reports the results to a {@link CircuitBreaker}. The checks are scheduled on the subsystem timer and the probe runs on a
+ * single thread owned by the monitor, so a probe hanging in a native call blocks neither the other subsystem tasks nor the
+ * checks. It's detected by the timeout: each check finding the probe still running after the timeout counts as a failure
+ * and no other probe is started until it returns.
+ *
+ * @author Josef Cacek
+ */
+final class HealthMonitor {
+
+    private static final Logger LOGGER = Logger.getLogger(HealthMonitor.class);
+
+    private static final String[] DIGEST_ALGORITHMS = { "SHA-256", "SHA-1", "MD5" };
+    private static final byte[] PROBE_DATA = new byte[16];
+    /** Size of the random probe, bigger than the random buffer of the SunPKCS11 provider so the token is really called. */
+    private static final int PROBE_RANDOM_SIZE = 64;
+
+    private final Provider provider;
+    private final CircuitBreaker breaker;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService probeExecutor;
+    private final long timeoutNanos;
+    private final String digestAlgorithm;
+    private final String randomAlgorithm;
+    private final Runnable probeTask = new Runnable() {
+        public void run() {
+            runProbe();
+        }
+    };
+
+    private final Object lock = new Object();
+    private boolean probeRunning;
+    private boolean timeoutReported;
+    private long probeStart;
+    private boolean stopped;
+    private ScheduledFuture<?> task;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new HealthMonitor.
+     *
+     * @param provider the monitored provider
+     * @param breaker
+     * @param timer executor scheduling the checks
+     * @param timeout maximal probe duration in milliseconds
+     */
+    HealthMonitor(Provider provider, CircuitBreaker breaker, ScheduledExecutorService timer, long timeout) {
+        this(provider, breaker, timer, Executors.newSingleThreadExecutor(
+                new SecurityProvidersExecutorService.DaemonThreadFactory("security-providers-health-" + provider.getName()
+                        + "-")), timeout);
+    }
+
+    /**
+     * Create a new HealthMonitor.
+     *
+     * @param provider the monitored provider
+     * @param breaker
+     * @param timer executor scheduling the checks
+     * @param probeExecutor executor running the probes, it's shut down when the monitor stops
+     * @param timeout maximal probe duration in milliseconds
+     */
+    HealthMonitor(Provider provider, CircuitBreaker breaker, ScheduledExecutorService timer, ExecutorService probeExecutor,
+            long timeout) {
+        this.provider = provider;
+        this.breaker = breaker;
+        this.timer = timer;
+        this.probeExecutor = probeExecutor;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        this.digestAlgorithm = findAlgorithm(provider, "MessageDigest", DIGEST_ALGORITHMS);
+        this.randomAlgorithm = digestAlgorithm != null ? null : findAlgorithm(provider, "SecureRandom", null);
+        if (digestAlgorithm == null && randomAlgorithm == null) {
+            LOGGER.warn("Provider " + provider.getName() + " has neither a MessageDigest nor a SecureRandom service, "
+                    + "its health can't be probed.");
+        }
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Schedules the periodic checks.
+     *
+     * @param interval milliseconds between two checks
+     */
+    void start(long interval) {
+        synchronized (lock) {
+            task = timer.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    check();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Cancels the periodic checks and shuts down the probe executor. A running probe is not interrupted, but its result is
+     * ignored.
+     */
+    void stop() {
+        synchronized (lock) {
+            stopped = true;
+            if (task != null) {
+                task.cancel(false);
+                task = null;
+            }
+        }
+        probeExecutor.shutdown();
+    }
+
+    /**
+     * Starts a new probe or, if the previous one still runs, checks its timeout.
+     */
+    void check() {
+        synchronized (lock) {
+            if (stopped) {
+                return;
+            }
+            if (probeRunning) {
+                if (System.nanoTime() - probeStart > timeoutNanos) {
+                    LOGGER.debug("Health probe of " + provider.getName() + " is running longer than the timeout");
+                    timeoutReported = true;
+                    breaker.failure();
+                }
+                return;
+            }
+            probeRunning = true;
+            timeoutReported = false;
+            probeStart = System.nanoTime();
+        }
+        try {
+            probeExecutor.execute(probeTask);
+        } catch (RejectedExecutionException e) {
+            synchronized (lock) {
+                probeRunning = false;
+            }
+        }
+    }
+
+    // Private methods -------------------------------------------------------
+
+    /**
+     * Runs the probe and reports its result.
+     */
+    private void runProbe() {
+        boolean passed = false;
+        try {
+            probe();
+            passed = true;
+        } catch (Throwable t) {
+            LOGGER.debug("Health probe of " + provider.getName() + " failed", t);
+        }
+        synchronized (lock) {
+            probeRunning = false;
+            if (stopped) {
+                return;
+            }
+            if (passed && System.nanoTime() - probeStart <= timeoutNanos) {
+                breaker.success();
+            } else if (!timeoutReported) {
+                breaker.failure();
+            }
+        }
+    }
+
+    private void probe() throws Exception {
+        if (digestAlgorithm != null) {
+            MessageDigest.getInstance(digestAlgorithm, provider).digest(PROBE_DATA);
+        } else if (randomAlgorithm != null) {
+            SecureRandom.getInstance(randomAlgorithm, provider).nextBytes(new byte[PROBE_RANDOM_SIZE]);
+        }
+    }
+
+    /**
+     * Returns the first of the preferred algorithms of given type supported by the provider. If no algorithms are preferred,
+     * any algorithm of the type is returned.
+     *
+     * @param provider
+     * @param type
+     * @param preferred preferred algorithms or <code>null</code>
+     * @return the algorithm or <code>null</code> if the provider doesn't support any
+     */
+    private static String findAlgorithm(Provider provider, String type, String[] preferred) {
+        if (preferred != null) {
+            for (String algorithm : preferred) {
+                if (provider.getService(type, algorithm) != null) {
+                    return algorithm;
+                }
+            }
+            return null;
+        }
+        for (Provider.Service service : provider.getServices()) {
+            if (type.equals(service.getType())) {
+                return service.getAlgorithm();
+            }
+        }
+        return null;
+    }
+}
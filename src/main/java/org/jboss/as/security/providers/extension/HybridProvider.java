@@ -0,0 +1,420 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.nio.ByteBuffer;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.InvalidParameterException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.ProviderException;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.SignatureSpi;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provider which routes operations between a hardware provider (e.g. SunPKCS11) and a software provider (e.g. the JDK
+ * providers). It offers the services of the hardware provider:
+ * <ul>
+ * <li>services of the software types (e.g. MessageDigest) which touch no key material are created by the software
+ * provider,</li>
+ * <li>Signature instances are bound to a provider when they're initialized - verification with a public key and signing
+ * with a software private key run in the software provider, signing with a token-resident key runs in the hardware
+ * provider,</li>
+ * <li>all the other services are created by the hardware provider.</li>
+ * </ul>
+ * The JCE types (Cipher, Mac, ...) are not offered, as a JDK which requires signed JCE providers rejects services of this
+ * provider; they have to be used from the hardware provider directly.
+ * <p>
+ * A key is considered token-resident if its class is implemented in the package of the hardware provider (or of a member
+ * of a sunpkcs11 group). The key material is never read for the decision. If the software provider rejects a key, the
+ * hardware provider is used.
+ *
+ * @author Josef Cacek
+ */
+final class HybridProvider extends Provider {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String SIGNATURE = "Signature";
+
+    private final transient Provider hardware;
+    private final transient Provider software;
+    private final transient Set<String> hardwarePackages;
+    private final transient AtomicLong softwareCount = new AtomicLong();
+    private final transient AtomicLong hardwareCount = new AtomicLong();
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new HybridProvider.
+     *
+     * @param name
+     * @param hardware provider of the token-resident key operations
+     * @param software provider of the operations without secret key material
+     * @param softwareTypes service types (e.g. MessageDigest) always created by the software provider
+     */
+    HybridProvider(String name, Provider hardware, Provider software, Set<String> softwareTypes) {
+        super(name, hardware.getVersion(), "Routes operations without token-resident keys from " + hardware.getName()
+                + " to " + software.getName());
+        this.hardware = hardware;
+        this.software = software;
+        this.hardwarePackages = getPackageNames(hardware);
+        final Set<String> types = new LinkedHashSet<String>();
+        for (String type : softwareTypes) {
+            types.add(type.toUpperCase(Locale.ENGLISH));
+        }
+        final Map<String, List<String>> aliases = DispatchingProvider.getAliases(hardware);
+        for (Service service : hardware.getServices()) {
+            final String type = service.getType();
+            if (DispatchingProvider.isJceType(type)) {
+                continue;
+            }
+            final String algorithm = service.getAlgorithm();
+            final List<String> serviceAliases = aliases.get(DispatchingProvider.toKey(type, algorithm));
+            final Service softwareService = software.getService(type, algorithm);
+            if (softwareService == null) {
+                putService(new RoutingService(this, service, serviceAliases, service, hardwareCount));
+            } else if (types.contains(type.toUpperCase(Locale.ENGLISH))) {
+                putService(new RoutingService(this, service, serviceAliases, softwareService, softwareCount));
+            } else if (SIGNATURE.equals(type)) {
+                putService(new RoutingSignatureService(this, service, serviceAliases));
+            } else {
+                putService(new RoutingService(this, service, serviceAliases, service, hardwareCount));
+            }
+        }
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Returns the hardware provider.
+     *
+     * @return
+     */
+    Provider getHardware() {
+        return hardware;
+    }
+
+    /**
+     * Returns the software provider.
+     *
+     * @return
+     */
+    Provider getSoftware() {
+        return software;
+    }
+
+    /**
+     * Returns number of SPI instances created (or Signatures initialized) by the software provider.
+     *
+     * @return
+     */
+    long getSoftwareCount() {
+        return softwareCount.get();
+    }
+
+    /**
+     * Returns number of SPI instances created (or Signatures initialized) by the hardware provider.
+     *
+     * @return
+     */
+    long getHardwareCount() {
+        return hardwareCount.get();
+    }
+
+    /**
+     * Returns true if the given key lives on the token of the hardware provider.
+     *
+     * @param key
+     * @return
+     */
+    boolean isTokenKey(Key key) {
+        return hardwarePackages.contains(getPackageName(key.getClass()));
+    }
+
+    // Private methods -------------------------------------------------------
+
+    /**
+     * Returns the packages of the keys created by the given provider - an instrumented provider still creates keys of the
+     * wrapped provider, a sunpkcs11 group keys of its members.
+     *
+     * @param provider
+     * @return
+     */
+    private static Set<String> getPackageNames(Provider provider) {
+        final Provider unwrapped = InstrumentedProvider.unwrap(provider);
+        final Set<String> result = new HashSet<String>();
+        if (unwrapped instanceof DispatchingProvider) {
+            for (Provider member : ((DispatchingProvider) unwrapped).getMembers()) {
+                result.addAll(getPackageNames(member));
+            }
+        } else {
+            result.add(getPackageName(unwrapped.getClass()));
+        }
+        return result;
+    }
+
+    private static String getPackageName(Class<?> clazz) {
+        final String className = clazz.getName();
+        final int dot = className.lastIndexOf('.');
+        return dot < 0 ? "" : className.substring(0, dot);
+    }
+
+    // Embedded classes ------------------------------------------------------
+
+    /**
+     * Service which creates the SPI instances by a fixed delegate service.
+     */
+    private static class RoutingService extends Service {
+
+        private final Service delegate;
+        private final AtomicLong counter;
+
+        RoutingService(HybridProvider provider, Service template, List<String> aliases, Service delegate, AtomicLong counter) {
+            super(provider, template.getType(), template.getAlgorithm(), template.getClassName(), aliases, null);
+            this.delegate = delegate;
+            this.counter = counter;
+        }
+
+        @Override
+        public Object newInstance(Object constructorParameter) throws NoSuchAlgorithmException {
+            final Object result = delegate.newInstance(constructorParameter);
+            counter.incrementAndGet();
+            return result;
+        }
+
+        @Override
+        public boolean supportsParameter(Object parameter) {
+            return delegate.supportsParameter(parameter);
+        }
+    }
+
+    /**
+     * Signature service which creates {@link RoutingSignatureSpi} instances.
+     */
+    private static class RoutingSignatureService extends Service {
+
+        private final HybridProvider provider;
+
+        RoutingSignatureService(HybridProvider provider, Service template, List<String> aliases) {
+            super(provider, template.getType(), template.getAlgorithm(), RoutingSignatureSpi.class.getName(), aliases, null);
+            this.provider = provider;
+        }
+
+        @Override
+        public Object newInstance(Object constructorParameter) throws NoSuchAlgorithmException {
+            return new RoutingSignatureSpi(provider, getAlgorithm());
+        }
+
+        @Override
+        public boolean supportsParameter(Object parameter) {
+            return true;
+        }
+    }
+
+    /**
+     * SignatureSpi which delegates to a Signature of the provider selected by the key passed to the init methods. The
+     * delegates are created lazily and reused for subsequent initializations.
+     */
+    static final class RoutingSignatureSpi extends SignatureSpi {
+
+        private final HybridProvider provider;
+        private final String algorithm;
+        private AlgorithmParameterSpec parameterSpec;
+        private Signature softwareSignature;
+        private Signature hardwareSignature;
+        private Signature delegate;
+
+        RoutingSignatureSpi(HybridProvider provider, String algorithm) {
+            this.provider = provider;
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        protected void engineInitVerify(PublicKey publicKey) throws InvalidKeyException {
+            if (!provider.isTokenKey(publicKey)) {
+                try {
+                    getSoftwareSignature().initVerify(publicKey);
+                    select(softwareSignature, provider.softwareCount);
+                    return;
+                } catch (InvalidKeyException e) {
+                    // the hardware provider may still accept the key
+                }
+            }
+            getHardwareSignature().initVerify(publicKey);
+            select(hardwareSignature, provider.hardwareCount);
+        }
+
+        @Override
+        protected void engineInitSign(PrivateKey privateKey) throws InvalidKeyException {
+            engineInitSign(privateKey, null);
+        }
+
+        @Override
+        protected void engineInitSign(PrivateKey privateKey, SecureRandom random) throws InvalidKeyException {
+            if (!provider.isTokenKey(privateKey)) {
+                try {
+                    initSign(getSoftwareSignature(), privateKey, random);
+                    select(softwareSignature, provider.softwareCount);
+                    return;
+                } catch (InvalidKeyException e) {
+                    // the hardware provider may still accept the key
+                }
+            }
+            initSign(getHardwareSignature(), privateKey, random);
+            select(hardwareSignature, provider.hardwareCount);
+        }
+
+        @Override
+        protected void engineUpdate(byte b) throws SignatureException {
+            getDelegate().update(b);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] b, int off, int len) throws SignatureException {
+            getDelegate().update(b, off, len);
+        }
+
+        @Override
+        protected void engineUpdate(ByteBuffer input) {
+            try {
+                getDelegate().update(input);
+            } catch (SignatureException e) {
+                throw new ProviderException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        protected byte[] engineSign() throws SignatureException {
+            return getDelegate().sign();
+        }
+
+        @Override
+        protected int engineSign(byte[] outbuf, int offset, int len) throws SignatureException {
+            return getDelegate().sign(outbuf, offset, len);
+        }
+
+        @Override
+        protected boolean engineVerify(byte[] sigBytes) throws SignatureException {
+            return getDelegate().verify(sigBytes);
+        }
+
+        @Override
+        protected boolean engineVerify(byte[] sigBytes, int offset, int length) throws SignatureException {
+            return getDelegate().verify(sigBytes, offset, length);
+        }
+
+        @Override
+        protected void engineSetParameter(AlgorithmParameterSpec params) throws InvalidAlgorithmParameterException {
+            if (softwareSignature != null) {
+                softwareSignature.setParameter(params);
+            }
+            if (hardwareSignature != null) {
+                hardwareSignature.setParameter(params);
+            }
+            parameterSpec = params;
+        }
+
+        @Override
+        protected AlgorithmParameters engineGetParameters() {
+            return delegate == null ? null : delegate.getParameters();
+        }
+
+        @Override
+        @Deprecated
+        protected void engineSetParameter(String param, Object value) throws InvalidParameterException {
+            throw new InvalidParameterException("Parameter " + param + " is not supported");
+        }
+
+        @Override
+        @Deprecated
+        protected Object engineGetParameter(String param) throws InvalidParameterException {
+            throw new InvalidParameterException("Parameter " + param + " is not supported");
+        }
+
+        private Signature getSoftwareSignature() throws InvalidKeyException {
+            if (softwareSignature == null) {
+                softwareSignature = createSignature(provider.software);
+            }
+            return softwareSignature;
+        }
+
+        private Signature getHardwareSignature() throws InvalidKeyException {
+            if (hardwareSignature == null) {
+                hardwareSignature = createSignature(provider.hardware);
+            }
+            return hardwareSignature;
+        }
+
+        private Signature createSignature(Provider delegateProvider) throws InvalidKeyException {
+            try {
+                final Signature signature = Signature.getInstance(algorithm, delegateProvider);
+                if (parameterSpec != null) {
+                    signature.setParameter(parameterSpec);
+                }
+                return signature;
+            } catch (GeneralSecurityException e) {
+                final InvalidKeyException ike = new InvalidKeyException("Unable to create Signature." + algorithm + " ("
+                        + delegateProvider.getName() + ")");
+                ike.initCause(e);
+                throw ike;
+            }
+        }
+
+        private void select(Signature signature, AtomicLong counter) {
+            delegate = signature;
+            counter.incrementAndGet();
+        }
+
+        private Signature getDelegate() throws SignatureException {
+            if (delegate == null) {
+                throw new SignatureException("Signature object is not initialized");
+            }
+            return delegate;
+        }
+
+        private static void initSign(Signature signature, PrivateKey privateKey, SecureRandom random)
+                throws InvalidKeyException {
+            if (random == null) {
+                signature.initSign(privateKey);
+            } else {
+                signature.initSign(privateKey, random);
+            }
+        }
+    }
+}
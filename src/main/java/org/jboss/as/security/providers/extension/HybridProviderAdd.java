@@ -0,0 +1,113 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.jboss.as.controller.AbstractAddStepHandler;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.ServiceVerificationHandler;
+import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
+import org.jboss.dmr.ModelNode;
+import org.jboss.msc.service.ServiceController;
+
+/**
+ * A handler for adding a hybrid provider.
+ *
+ * @author Josef Cacek
+ */
+class HybridProviderAdd extends AbstractAddStepHandler {
+
+    public static final HybridProviderAdd INSTANCE = new HybridProviderAdd();
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Private ctor.
+     */
+    private HybridProviderAdd() {
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Model population.
+     *
+     * @param operation
+     * @param model
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractAddStepHandler#populateModel(org.jboss.dmr.ModelNode, org.jboss.dmr.ModelNode)
+     */
+    @Override
+    protected void populateModel(ModelNode operation, ModelNode model) throws OperationFailedException {
+        for (AttributeDefinition attribute : HybridProviderResourceDefinition.HYBRID_ATTRIBUTES) {
+            attribute.validateAndSet(operation, model);
+        }
+        for (AttributeDefinition attribute : CommonAttributes.PROVIDER_ATTRIBUTES) {
+            attribute.validateAndSet(operation, model);
+        }
+    }
+
+    /**
+     * Creates and registers {@link HybridProviderService} instance depending on the referenced hardware and software
+     * provider services.
+     *
+     * @param context
+     * @param operation
+     * @param model
+     * @param verificationHandler
+     * @param newControllers
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractAddStepHandler#performRuntime(org.jboss.as.controller.OperationContext,
+     *      org.jboss.dmr.ModelNode, org.jboss.dmr.ModelNode, org.jboss.as.controller.ServiceVerificationHandler,
+     *      java.util.List)
+     */
+    @Override
+    protected void performRuntime(OperationContext context, ModelNode operation, ModelNode model,
+            ServiceVerificationHandler verificationHandler, List<ServiceController<?>> newControllers)
+            throws OperationFailedException {
+        final String hybridName = PathAddress.pathAddress(operation.get(ModelDescriptionConstants.ADDRESS)).getLastElement()
+                .getValue();
+        final ModelNode hardware = HybridProviderResourceDefinition.HARDWARE.resolveModelAttribute(context, model);
+        final ModelNode software = HybridProviderResourceDefinition.SOFTWARE.resolveModelAttribute(context, model);
+        final ProviderOptions options = ProviderOptions.resolve(context, model);
+        final HybridProviderService service = new HybridProviderService(hybridName,
+                HybridProviderResourceDefinition.toTypeSet(HybridProviderResourceDefinition.SOFTWARE_TYPES
+                        .resolveModelAttribute(context, model)), options);
+        final ServiceController<ProviderServiceIndex> controller = context.getServiceTarget()
+                .addService(HybridProviderService.createServiceName(hybridName), service)
+                .addDependency(ProviderReference.resolveServiceName(hardware), ProviderServiceIndex.class,
+                        service.getHardwareIndexInjector())
+                .addDependency(ProviderReference.resolveServiceName(software), ProviderServiceIndex.class,
+                        service.getSoftwareIndexInjector())
+                .addDependency(SecurityProvidersExecutorService.SERVICE_NAME, ScheduledExecutorService.class,
+                        service.getExecutorInjector())
+                .addDependency(SecurityProvidersExecutorService.TIMER_SERVICE_NAME, ScheduledExecutorService.class,
+                        service.getTimerInjector()).addListener(verificationHandler)
+                .setInitialMode(options.getInitialMode()).install();
+        newControllers.add(controller);
+    }
+}
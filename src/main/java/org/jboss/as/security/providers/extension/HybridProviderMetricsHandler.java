@@ -0,0 +1,102 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import org.jboss.as.controller.AbstractRuntimeOnlyHandler;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
+import org.jboss.dmr.ModelNode;
+import org.jboss.msc.service.ServiceController;
+
+/**
+ * Reads the runtime metrics of a hybrid provider.
+ *
+ * @author Josef Cacek
+ */
+class HybridProviderMetricsHandler extends AbstractRuntimeOnlyHandler {
+
+    public static final HybridProviderMetricsHandler INSTANCE = new HybridProviderMetricsHandler();
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Private ctor.
+     */
+    private HybridProviderMetricsHandler() {
+    }
+
+    // Protected methods -----------------------------------------------------
+
+    /**
+     * Sets the requested metric of the registered hybrid provider as the operation result. The result is undefined if the
+     * provider is not registered.
+     *
+     * @param context
+     * @param operation
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractRuntimeOnlyHandler#executeRuntimeStep(org.jboss.as.controller.OperationContext,
+     *      org.jboss.dmr.ModelNode)
+     */
+    @Override
+    protected void executeRuntimeStep(OperationContext context, ModelNode operation) throws OperationFailedException {
+        final String hybridName = PathAddress.pathAddress(operation.get(ModelDescriptionConstants.OP_ADDR)).getLastElement()
+                .getValue();
+        final String metric = operation.require(ModelDescriptionConstants.NAME).asString();
+        final ServiceController<?> controller = context.getServiceRegistry(false).getService(
+                HybridProviderService.createServiceName(hybridName));
+        if (controller != null && controller.getState() == ServiceController.State.UP) {
+            final HybridProviderService service = (HybridProviderService) controller.getService();
+            final ModelNode result = context.getResult();
+            if (SunPKCS11ResourceDefinition.INIT_TIME.getName().equals(metric)) {
+                final long startDuration = service.getStartDuration();
+                if (startDuration >= 0L) {
+                    result.set(startDuration);
+                }
+            } else if (SunPKCS11ResourceDefinition.WARMUP_TIME.getName().equals(metric)) {
+                final long warmupDuration = service.getWarmupDuration();
+                if (warmupDuration >= 0L) {
+                    result.set(warmupDuration);
+                }
+            } else if (SunPKCS11ResourceDefinition.WARMED_UP.getName().equals(metric)) {
+                result.set(service.isWarmedUp());
+            } else if (SunPKCS11ResourceDefinition.SERVICE_COUNT.getName().equals(metric)) {
+                final int serviceCount = service.getServiceCount();
+                if (serviceCount >= 0) {
+                    result.set(serviceCount);
+                }
+            } else if (HybridProviderResourceDefinition.SOFTWARE_COUNT.getName().equals(metric)) {
+                final long softwareCount = service.getSoftwareCount();
+                if (softwareCount >= 0L) {
+                    result.set(softwareCount);
+                }
+            } else if (HybridProviderResourceDefinition.HARDWARE_COUNT.getName().equals(metric)) {
+                final long hardwareCount = service.getHardwareCount();
+                if (hardwareCount >= 0L) {
+                    result.set(hardwareCount);
+                }
+            }
+        }
+        context.completeStep();
+    }
+}
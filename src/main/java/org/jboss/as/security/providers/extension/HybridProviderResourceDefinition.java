@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.SimpleResourceDefinition;
+import org.jboss.as.controller.registry.ManagementResourceRegistration;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+
+/**
+ * A ResourceDefinition for a provider which routes operations without token-resident keys from a hardware provider to a
+ * software provider.
+ *
+ * @author Josef Cacek
+ */
+public class HybridProviderResourceDefinition extends SimpleResourceDefinition {
+
+    /** Reference to the provider of the token-resident key operations. */
+    static final SimpleAttributeDefinition HARDWARE = new SimpleAttributeDefinitionBuilder("hardware", ModelType.STRING, false)
+            .setAllowExpression(true).setValidator(ProviderReference.VALIDATOR).build();
+
+    /** Reference to the provider of the operations without secret key material. */
+    static final SimpleAttributeDefinition SOFTWARE = new SimpleAttributeDefinitionBuilder("software", ModelType.STRING, false)
+            .setAllowExpression(true).setValidator(ProviderReference.VALIDATOR).build();
+
+    /** Comma separated service types which are always created by the software provider. */
+    static final SimpleAttributeDefinition SOFTWARE_TYPES = new SimpleAttributeDefinitionBuilder("software-types",
+            ModelType.STRING, true).setDefaultValue(new ModelNode("MessageDigest")).setAllowExpression(true).build();
+
+    /**
+     * Hybrid provider specific configuration attributes, in the order they are marshalled to XML.
+     */
+    static final SimpleAttributeDefinition[] HYBRID_ATTRIBUTES = { HARDWARE, SOFTWARE, SOFTWARE_TYPES };
+
+    static final SimpleAttributeDefinition SOFTWARE_COUNT = new SimpleAttributeDefinitionBuilder("software-count",
+            ModelType.LONG, true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition HARDWARE_COUNT = new SimpleAttributeDefinitionBuilder("hardware-count",
+            ModelType.LONG, true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition[] METRICS = { SunPKCS11ResourceDefinition.INIT_TIME,
+            SunPKCS11ResourceDefinition.WARMUP_TIME, SunPKCS11ResourceDefinition.WARMED_UP,
+            SunPKCS11ResourceDefinition.SERVICE_COUNT, SOFTWARE_COUNT, HARDWARE_COUNT };
+
+    // Constructors ----------------------------------------------------------
+
+    HybridProviderResourceDefinition() {
+        super(SecurityProvidersExtension.HYBRID_PROVIDER_PATH, SecurityProvidersExtension
+                .getResourceDescriptionResolver(SecurityProvidersExtension.HYBRID_PROVIDER), HybridProviderAdd.INSTANCE,
+                HybridProviderRemove.INSTANCE);
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Registers the hybrid provider attributes, the attributes common for all providers and the routing metrics.
+     *
+     * @param resourceRegistration
+     * @see org.jboss.as.controller.SimpleResourceDefinition#registerAttributes(org.jboss.as.controller.registry.ManagementResourceRegistration)
+     */
+    @Override
+    public void registerAttributes(ManagementResourceRegistration resourceRegistration) {
+        for (AttributeDefinition attribute : HYBRID_ATTRIBUTES) {
+            resourceRegistration.registerReadOnlyAttribute(attribute, null);
+        }
+        for (AttributeDefinition attribute : CommonAttributes.PROVIDER_ATTRIBUTES) {
+            resourceRegistration.registerReadOnlyAttribute(attribute, null);
+        }
+        for (AttributeDefinition metric : METRICS) {
+            resourceRegistration.registerMetric(metric, HybridProviderMetricsHandler.INSTANCE);
+        }
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Splits the resolved value of the {@link #SOFTWARE_TYPES} attribute.
+     *
+     * @param softwareTypes
+     * @return
+     */
+    static Set<String> toTypeSet(ModelNode softwareTypes) {
+        final Set<String> result = new LinkedHashSet<String>();
+        for (String type : softwareTypes.asString().split(",")) {
+            if (type.trim().length() > 0) {
+                result.add(type.trim());
+            }
+        }
+        return result;
+    }
+}
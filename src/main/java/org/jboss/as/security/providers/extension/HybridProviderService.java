@@ -0,0 +1,171 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.Provider;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.jboss.logging.Logger;
+import org.jboss.msc.inject.Injector;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.value.InjectedValue;
+
+/**
+ * The HybridProviderService registers a {@link HybridProvider} which routes the operations between a hardware and a
+ * software provider registered by this subsystem.
+ *
+ * @author Josef Cacek
+ */
+public class HybridProviderService extends AbstractProviderService {
+
+    private static final Logger LOGGER = Logger.getLogger(HybridProviderService.class);
+
+    private final InjectedValue<ProviderServiceIndex> hardwareIndex = new InjectedValue<ProviderServiceIndex>();
+    private final InjectedValue<ProviderServiceIndex> softwareIndex = new InjectedValue<ProviderServiceIndex>();
+
+    private final String name;
+    private final Set<String> softwareTypes;
+
+    private volatile HybridProvider hybridProvider;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new HybridProviderService.
+     *
+     * @param name
+     * @param softwareTypes service types always created by the software provider
+     * @param options
+     */
+    public HybridProviderService(String name, Set<String> softwareTypes, ProviderOptions options) {
+        super(options);
+        LOGGER.debug("Creating hybrid provider service: " + name);
+        this.name = name;
+        this.softwareTypes = new LinkedHashSet<String>(softwareTypes);
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Creates a service name for the given hybrid provider name.
+     *
+     * @param hybridName
+     * @return
+     */
+    public static ServiceName createServiceName(final String hybridName) {
+        return ServiceName.JBOSS.append("security-providers", "hybrid-provider", hybridName);
+    }
+
+    /**
+     * Returns injector for the index of the hardware provider.
+     *
+     * @return
+     */
+    public Injector<ProviderServiceIndex> getHardwareIndexInjector() {
+        return hardwareIndex;
+    }
+
+    /**
+     * Returns injector for the index of the software provider.
+     *
+     * @return
+     */
+    public Injector<ProviderServiceIndex> getSoftwareIndexInjector() {
+        return softwareIndex;
+    }
+
+    /**
+     * Returns number of operations routed to the software provider or -1 if the hybrid provider is not registered.
+     *
+     * @return
+     */
+    public long getSoftwareCount() {
+        final HybridProvider provider = hybridProvider;
+        return provider == null ? -1L : provider.getSoftwareCount();
+    }
+
+    /**
+     * Returns number of operations routed to the hardware provider or -1 if the hybrid provider is not registered.
+     *
+     * @return
+     */
+    public long getHardwareCount() {
+        final HybridProvider provider = hybridProvider;
+        return provider == null ? -1L : provider.getHardwareCount();
+    }
+
+    // Protected methods -----------------------------------------------------
+
+    /**
+     * Creates the {@link HybridProvider} on top of the injected providers.
+     *
+     * @return
+     * @throws Exception
+     * @see org.jboss.as.security.providers.extension.AbstractProviderService#createProvider()
+     */
+    @Override
+    protected Provider createProvider() throws Exception {
+        return new HybridProvider(getExpectedProviderName(), hardwareIndex.getValue().getProvider(), softwareIndex.getValue()
+                .getProvider(), softwareTypes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String getDescription() {
+        return "hybrid provider " + name;
+    }
+
+    /**
+     * Returns the hybrid provider name - the configured name with the "Hybrid-" prefix.
+     *
+     * @return
+     * @see org.jboss.as.security.providers.extension.AbstractProviderService#getExpectedProviderName()
+     */
+    @Override
+    protected String getExpectedProviderName() {
+        return "Hybrid-" + name;
+    }
+
+    /**
+     * Keeps the registered provider for the metrics.
+     *
+     * @param provider
+     * @see org.jboss.as.security.providers.extension.AbstractProviderService#providerRegistered(java.security.Provider)
+     */
+    @Override
+    protected void providerRegistered(Provider provider) {
+        if (provider instanceof HybridProvider) {
+            hybridProvider = (HybridProvider) provider;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void providerRemoved() {
+        hybridProvider = null;
+    }
+}
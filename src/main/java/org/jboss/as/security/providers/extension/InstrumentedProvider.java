@@ -0,0 +1,668 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.nio.ByteBuffer;
+import java.security.AlgorithmParameters;
+import java.security.DigestException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.InvalidParameterException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyPairGeneratorSpi;
+import java.security.MessageDigest;
+import java.security.MessageDigestSpi;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.ProviderException;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.SignatureSpi;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Provider registered in the JCA provider list instead of the wrapped provider, which records latency of the operations
+ * done by its MessageDigest, Signature and KeyPairGenerator services. There is a {@link LatencyHistogram} for each (type,
+ * algorithm, operation) triple, e.g. <code>Signature.SHA256withRSA.sign</code>. The SPI instances of the instrumented
+ * types delegate to engine objects of the wrapped provider; the recorded latency of an operation is the sum of the
+ * durations of its engine calls (the <code>update</code> calls and the final call, e.g. <code>digest()</code>,
+ * <code>sign()</code>), so the time the caller spends between the calls is not counted. The recording costs two
+ * {@link System#nanoTime()} calls per engine call and doesn't allocate. An operation which fails is not recorded. The histograms are resolved when an SPI instance is created, not per operation. If a
+ * {@link SlowOperationLog} is given, the operations longer than its threshold are recorded in it too; a provider
+ * created just for the slow operation log doesn't fill the histograms. While a JDK Flight Recorder recording is running,
+ * each operation is also reported as a {@link FlightRecorderEvents#CRYPTO_OPERATION} event.
+ * <p>
+ * Services of the other types are returned as they are, so their SPI instances belong to the wrapped provider. Services
+ * added to the wrapped provider later are not visible. The JCE types (Cipher, Mac, KeyAgreement, ...) are out of scope:
+ * a JDK which requires signed JCE providers rejects SPIs created by this unsigned provider, so their operations (e.g.
+ * encryption, decryption, key unwrapping, MAC computation) are neither in the histograms nor in the slow operation log.
+ * The provider warm-up doesn't use this wrapper, so the histograms hold just the real operations.
+ *
+ * @author Josef Cacek
+ */
+final class InstrumentedProvider extends Provider {
+
+    private static final long serialVersionUID = 1L;
+
+    static final String MESSAGE_DIGEST = "MessageDigest";
+    static final String SIGNATURE = "Signature";
+    static final String KEY_PAIR_GENERATOR = "KeyPairGenerator";
+
+    static final String OP_DIGEST = "digest";
+    static final String OP_SIGN = "sign";
+    static final String OP_VERIFY = "verify";
+    static final String OP_GENERATE = "generate";
+
+    private final transient Provider delegate;
+    private final transient ProviderServiceIndex index;
+    private final transient Map<Service, Service> instrumentedServices;
+    private final transient Set<Service> services;
+    private final transient ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final transient boolean recordHistograms;
+    private final transient SlowOperationLog slowOperations;
+    private final transient long slowThreshold;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new InstrumentedProvider with the name, version and properties of the given provider.
+     *
+     * @param delegate
+     */
+    InstrumentedProvider(Provider delegate) {
+        this(delegate, true, null);
+    }
+
+    /**
+     * Create a new InstrumentedProvider with the name, version and properties of the given provider, which records the slow
+     * operations in the given log.
+     *
+     * @param delegate
+     * @param recordHistograms if false, the operations are only compared with the slow operation threshold
+     * @param slowOperations log of the slow operations, may be <code>null</code>
+     */
+    InstrumentedProvider(Provider delegate, boolean recordHistograms, SlowOperationLog slowOperations) {
+        super(delegate.getName(), delegate.getVersion(), delegate.getInfo());
+        this.delegate = delegate;
+        this.recordHistograms = recordHistograms;
+        this.slowOperations = slowOperations;
+        this.slowThreshold = slowOperations != null ? slowOperations.getThreshold() : Long.MAX_VALUE;
+        this.index = ProviderServiceIndex.create(delegate);
+        this.instrumentedServices = new IdentityHashMap<Service, Service>();
+        final Map<String, List<String>> aliases = DispatchingProvider.getAliases(delegate);
+        final Map<String, Map<String, String>> attributes = getAttributes(delegate);
+        final Set<Service> allServices = new LinkedHashSet<Service>();
+        for (Service service : delegate.getServices()) {
+            final String type = service.getType();
+            if (MESSAGE_DIGEST.equals(type) || SIGNATURE.equals(type) || KEY_PAIR_GENERATOR.equals(type)) {
+                final String key = DispatchingProvider.toKey(type, service.getAlgorithm());
+                final Service instrumented = new InstrumentedService(this, service, aliases.get(key), attributes.get(key));
+                instrumentedServices.put(service, instrumented);
+                allServices.add(instrumented);
+            } else {
+                allServices.add(service);
+            }
+        }
+        this.services = Collections.unmodifiableSet(allServices);
+        // the properties are used by the provider filters, e.g. Security.getProviders("Cipher.AES")
+        putAll(delegate);
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Returns the instrumented service for the MessageDigest, Signature and KeyPairGenerator types, the service of the
+     * wrapped provider otherwise.
+     *
+     * @param type
+     * @param algorithm
+     * @return
+     * @see java.security.Provider#getService(java.lang.String, java.lang.String)
+     */
+    @Override
+    public Service getService(String type, String algorithm) {
+        final Service service = index.getService(type, algorithm);
+        if (service == null) {
+            return null;
+        }
+        final Service instrumented = instrumentedServices.get(service);
+        return instrumented != null ? instrumented : service;
+    }
+
+    /**
+     * Returns the services of the wrapped provider, the instrumented types are replaced by the instrumented services.
+     *
+     * @return
+     * @see java.security.Provider#getServices()
+     */
+    @Override
+    public Set<Service> getServices() {
+        return services;
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Returns the wrapped provider.
+     *
+     * @return
+     */
+    Provider getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Returns the wrapped provider if the given one is an {@link InstrumentedProvider}, the given provider otherwise.
+     *
+     * @param provider
+     * @return
+     */
+    static Provider unwrap(Provider provider) {
+        return provider instanceof InstrumentedProvider ? ((InstrumentedProvider) provider).delegate : provider;
+    }
+
+    /**
+     * Returns true if the latency histograms are recorded, false if the operations are only checked for the slow
+     * operation log.
+     *
+     * @return
+     */
+    boolean isRecordingHistograms() {
+        return recordHistograms;
+    }
+
+    /**
+     * Returns a sorted snapshot of the histograms (key in form <code>Type.Algorithm.operation</code> -> histogram) of the
+     * operations done so far.
+     *
+     * @return
+     */
+    SortedMap<String, LatencyHistogram> getHistograms() {
+        return new TreeMap<String, LatencyHistogram>(histograms);
+    }
+
+    /**
+     * Returns the log of the slow operations or <code>null</code> if they're not recorded.
+     *
+     * @return
+     */
+    SlowOperationLog getSlowOperations() {
+        return slowOperations;
+    }
+
+    /**
+     * Clears all the recorded latencies.
+     */
+    void resetHistograms() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Returns the histogram for the given operation, it's created if it doesn't exist yet.
+     *
+     * @param type
+     * @param algorithm
+     * @param operation
+     * @return
+     */
+    LatencyHistogram getHistogram(String type, String algorithm, String operation) {
+        final String key = type + "." + algorithm + "." + operation;
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            final LatencyHistogram newHistogram = new LatencyHistogram(key);
+            histogram = histograms.putIfAbsent(key, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Records the duration of a finished operation in its histogram (if they're recorded) and, if it exceeds the threshold,
+     * in the slow operation log. The flight recorder event of the operation (if any) is committed. The histogram also
+     * names the operation.
+     *
+     * @param histogram
+     * @param duration duration in nanoseconds
+     * @param key the key used by the operation, may be <code>null</code>
+     * @param event the flight recorder event started with the operation, may be <code>null</code>
+     */
+    void record(LatencyHistogram histogram, long duration, Key key, Object event) {
+        if (recordHistograms) {
+            histogram.record(duration);
+        }
+        if (duration > slowThreshold) {
+            slowOperations.record(histogram.getName(), key, duration);
+        }
+        if (event != null) {
+            FlightRecorderEvents.commit(event, delegate.getName(), histogram.getName(),
+                    Integer.valueOf(SlowOperationLog.getKeySize(key)));
+        }
+    }
+
+    // Private methods -------------------------------------------------------
+
+    /**
+     * Returns the service attributes (e.g. SupportedModes) defined by the provider properties in form
+     * <code>Type.Algorithm Attribute=value</code>, grouped by the {@link DispatchingProvider#toKey(String, String)} keys.
+     *
+     * @param provider
+     * @return
+     */
+    private static Map<String, Map<String, String>> getAttributes(Provider provider) {
+        final Map<String, Map<String, String>> result = new HashMap<String, Map<String, String>>();
+        for (Map.Entry<Object, Object> entry : provider.entrySet()) {
+            if (!(entry.getKey() instanceof String) || !(entry.getValue() instanceof String)) {
+                continue;
+            }
+            final String key = ((String) entry.getKey()).trim();
+            final int space = key.indexOf(' ');
+            final int dot = key.indexOf('.');
+            if (space < 0 || dot < 1 || dot > space) {
+                continue;
+            }
+            final String serviceKey = DispatchingProvider.toKey(key.substring(0, dot), key.substring(dot + 1, space));
+            Map<String, String> serviceAttributes = result.get(serviceKey);
+            if (serviceAttributes == null) {
+                serviceAttributes = new HashMap<String, String>();
+                result.put(serviceKey, serviceAttributes);
+            }
+            serviceAttributes.put(key.substring(space + 1).trim(), (String) entry.getValue());
+        }
+        return result;
+    }
+
+    // Embedded classes ------------------------------------------------------
+
+    /**
+     * Service which creates the instrumented SPI instances. It has the attributes (e.g. SupportedModes) of the service of the
+     * wrapped provider, so JCA selects the same services as for the wrapped provider.
+     */
+    private static class InstrumentedService extends Service {
+
+        private final InstrumentedProvider provider;
+        private final Service delegate;
+
+        InstrumentedService(InstrumentedProvider provider, Service delegate, List<String> aliases,
+                Map<String, String> attributes) {
+            super(provider, delegate.getType(), delegate.getAlgorithm(), delegate.getClassName(), aliases, attributes);
+            this.provider = provider;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Object newInstance(Object constructorParameter) throws NoSuchAlgorithmException {
+            final String type = getType();
+            final String algorithm = getAlgorithm();
+            if (MESSAGE_DIGEST.equals(type)) {
+                return new InstrumentedMessageDigestSpi(provider, MessageDigest.getInstance(algorithm, provider.delegate),
+                        provider.getHistogram(type, algorithm, OP_DIGEST));
+            } else if (SIGNATURE.equals(type)) {
+                return new InstrumentedSignatureSpi(provider, Signature.getInstance(algorithm, provider.delegate),
+                        provider.getHistogram(type, algorithm, OP_SIGN), provider.getHistogram(type, algorithm, OP_VERIFY));
+            }
+            return new InstrumentedKeyPairGeneratorSpi(provider, KeyPairGenerator.getInstance(algorithm, provider.delegate),
+                    provider.getHistogram(type, algorithm, OP_GENERATE));
+        }
+
+        @Override
+        public boolean supportsParameter(Object parameter) {
+            return delegate.supportsParameter(parameter);
+        }
+
+    }
+
+    /**
+     * MessageDigestSpi which records the latency of the digests computed by a MessageDigest of the wrapped provider.
+     */
+    static final class InstrumentedMessageDigestSpi extends MessageDigestSpi implements Cloneable {
+
+        private final InstrumentedProvider provider;
+        private final LatencyHistogram histogram;
+        private MessageDigest delegate;
+        private long elapsed;
+        private Object event;
+        private boolean running;
+
+        InstrumentedMessageDigestSpi(InstrumentedProvider provider, MessageDigest delegate, LatencyHistogram histogram) {
+            this.provider = provider;
+            this.delegate = delegate;
+            this.histogram = histogram;
+        }
+
+        @Override
+        protected int engineGetDigestLength() {
+            return delegate.getDigestLength();
+        }
+
+        @Override
+        protected void engineUpdate(byte input) {
+            final long start = start();
+            delegate.update(input);
+            elapsed += System.nanoTime() - start;
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int len) {
+            final long start = start();
+            delegate.update(input, offset, len);
+            elapsed += System.nanoTime() - start;
+        }
+
+        @Override
+        protected void engineUpdate(ByteBuffer input) {
+            final long start = start();
+            delegate.update(input);
+            elapsed += System.nanoTime() - start;
+        }
+
+        @Override
+        protected byte[] engineDigest() {
+            final long start = start();
+            try {
+                final byte[] result = delegate.digest();
+                stop(start);
+                return result;
+            } finally {
+                reset();
+            }
+        }
+
+        @Override
+        protected int engineDigest(byte[] buf, int offset, int len) throws DigestException {
+            final long start = start();
+            try {
+                final int result = delegate.digest(buf, offset, len);
+                stop(start);
+                return result;
+            } finally {
+                reset();
+            }
+        }
+
+        @Override
+        protected void engineReset() {
+            delegate.reset();
+            reset();
+        }
+
+        @Override
+        public Object clone() throws CloneNotSupportedException {
+            final InstrumentedMessageDigestSpi result = (InstrumentedMessageDigestSpi) super.clone();
+            result.event = null;
+            result.delegate = (MessageDigest) delegate.clone();
+            return result;
+        }
+
+        /**
+         * Starts the operation if it's not running yet and returns the start time of the current engine call.
+         *
+         * @return
+         */
+        private long start() {
+            if (!running) {
+                running = true;
+                elapsed = 0L;
+                event = FlightRecorderEvents.begin(FlightRecorderEvents.CRYPTO_OPERATION);
+            }
+            return System.nanoTime();
+        }
+
+        /**
+         * Records the time spent in the engine calls of the operation, the time between the calls (e.g. the I/O of a
+         * DigestInputStream) is not counted.
+         *
+         * @param start start time of the final call
+         */
+        private void stop(long start) {
+            provider.record(histogram, elapsed + System.nanoTime() - start, null, event);
+        }
+
+        /**
+         * Ends the running operation, the next update starts a new one. It's called also if the delegate fails, so the
+         * failed operation isn't measured together with the next one.
+         */
+        private void reset() {
+            running = false;
+            event = null;
+        }
+    }
+
+    /**
+     * SignatureSpi which records the latency of the signatures created and verified by a Signature of the wrapped provider.
+     */
+    static final class InstrumentedSignatureSpi extends SignatureSpi {
+
+        private final InstrumentedProvider provider;
+        private final Signature delegate;
+        private final LatencyHistogram signHistogram;
+        private final LatencyHistogram verifyHistogram;
+        private Key key;
+        private long elapsed;
+        private Object event;
+        private boolean running;
+
+        InstrumentedSignatureSpi(InstrumentedProvider provider, Signature delegate, LatencyHistogram signHistogram,
+                LatencyHistogram verifyHistogram) {
+            this.provider = provider;
+            this.delegate = delegate;
+            this.signHistogram = signHistogram;
+            this.verifyHistogram = verifyHistogram;
+        }
+
+        @Override
+        protected void engineInitVerify(PublicKey publicKey) throws InvalidKeyException {
+            delegate.initVerify(publicKey);
+            key = publicKey;
+            reset();
+        }
+
+        @Override
+        protected void engineInitSign(PrivateKey privateKey) throws InvalidKeyException {
+            delegate.initSign(privateKey);
+            key = privateKey;
+            reset();
+        }
+
+        @Override
+        protected void engineInitSign(PrivateKey privateKey, SecureRandom random) throws InvalidKeyException {
+            delegate.initSign(privateKey, random);
+            key = privateKey;
+            reset();
+        }
+
+        @Override
+        protected void engineUpdate(byte b) throws SignatureException {
+            final long start = start();
+            delegate.update(b);
+            elapsed += System.nanoTime() - start;
+        }
+
+        @Override
+        protected void engineUpdate(byte[] b, int off, int len) throws SignatureException {
+            final long start = start();
+            delegate.update(b, off, len);
+            elapsed += System.nanoTime() - start;
+        }
+
+        @Override
+        protected void engineUpdate(ByteBuffer input) {
+            final long start = start();
+            try {
+                delegate.update(input);
+            } catch (SignatureException e) {
+                throw new ProviderException(e.getMessage(), e);
+            }
+            elapsed += System.nanoTime() - start;
+        }
+
+        @Override
+        protected byte[] engineSign() throws SignatureException {
+            final long start = start();
+            try {
+                final byte[] result = delegate.sign();
+                stop(signHistogram, start);
+                return result;
+            } finally {
+                reset();
+            }
+        }
+
+        @Override
+        protected int engineSign(byte[] outbuf, int offset, int len) throws SignatureException {
+            final long start = start();
+            try {
+                final int result = delegate.sign(outbuf, offset, len);
+                stop(signHistogram, start);
+                return result;
+            } finally {
+                reset();
+            }
+        }
+
+        @Override
+        protected boolean engineVerify(byte[] sigBytes) throws SignatureException {
+            final long start = start();
+            try {
+                final boolean result = delegate.verify(sigBytes);
+                stop(verifyHistogram, start);
+                return result;
+            } finally {
+                reset();
+            }
+        }
+
+        @Override
+        protected boolean engineVerify(byte[] sigBytes, int offset, int length) throws SignatureException {
+            final long start = start();
+            try {
+                final boolean result = delegate.verify(sigBytes, offset, length);
+                stop(verifyHistogram, start);
+                return result;
+            } finally {
+                reset();
+            }
+        }
+
+        @Override
+        protected void engineSetParameter(AlgorithmParameterSpec params) throws InvalidAlgorithmParameterException {
+            delegate.setParameter(params);
+        }
+
+        @Override
+        protected AlgorithmParameters engineGetParameters() {
+            return delegate.getParameters();
+        }
+
+        @Override
+        @Deprecated
+        protected void engineSetParameter(String param, Object value) throws InvalidParameterException {
+            delegate.setParameter(param, value);
+        }
+
+        @Override
+        @Deprecated
+        protected Object engineGetParameter(String param) throws InvalidParameterException {
+            return delegate.getParameter(param);
+        }
+
+        /**
+         * See {@link InstrumentedMessageDigestSpi#start()}.
+         *
+         * @return
+         */
+        private long start() {
+            if (!running) {
+                running = true;
+                elapsed = 0L;
+                event = FlightRecorderEvents.begin(FlightRecorderEvents.CRYPTO_OPERATION);
+            }
+            return System.nanoTime();
+        }
+
+        private void stop(LatencyHistogram histogram, long start) {
+            provider.record(histogram, elapsed + System.nanoTime() - start, key, event);
+        }
+
+        /**
+         * Ends the running operation, see {@link InstrumentedMessageDigestSpi#reset()}.
+         */
+        private void reset() {
+            running = false;
+            event = null;
+        }
+    }
+
+    /**
+     * KeyPairGeneratorSpi which records the latency of the key pairs generated by a KeyPairGenerator of the wrapped provider.
+     */
+    static final class InstrumentedKeyPairGeneratorSpi extends KeyPairGeneratorSpi {
+
+        private final InstrumentedProvider provider;
+        private final KeyPairGenerator delegate;
+        private final LatencyHistogram histogram;
+
+        InstrumentedKeyPairGeneratorSpi(InstrumentedProvider provider, KeyPairGenerator delegate, LatencyHistogram histogram) {
+            this.provider = provider;
+            this.delegate = delegate;
+            this.histogram = histogram;
+        }
+
+        @Override
+        public void initialize(int keysize, SecureRandom random) {
+            delegate.initialize(keysize, random);
+        }
+
+        @Override
+        public void initialize(AlgorithmParameterSpec params, SecureRandom random) throws InvalidAlgorithmParameterException {
+            delegate.initialize(params, random);
+        }
+
+        @Override
+        public KeyPair generateKeyPair() {
+            final Object event = FlightRecorderEvents.begin(FlightRecorderEvents.CRYPTO_OPERATION);
+            final long startTime = System.nanoTime();
+            final KeyPair result = delegate.generateKeyPair();
+            provider.record(histogram, System.nanoTime() - startTime, result.getPublic(), event);
+            return result;
+        }
+    }
+}
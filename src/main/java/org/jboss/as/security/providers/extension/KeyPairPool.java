@@ -0,0 +1,306 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Provider;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Bounded queue of key pairs pre-generated in the background by a single provider. When the number of queued pairs drops
+ * below the low-water mark, up to <code>workers</code> generation tasks are submitted to the executor; each task generates
+ * one pair and resubmits itself until the queue is full, so long generations don't occupy the executor threads for the
+ * whole refill.
+ * <p>
+ * A caller which finds the queue empty waits up to the take timeout for a pair being generated and then generates a pair
+ * itself.
+ *
+ * @author Josef Cacek
+ */
+public final class KeyPairPool {
+
+    private static final Logger LOGGER = Logger.getLogger(KeyPairPool.class);
+
+    private final String algorithm;
+    private final int keySize;
+    private final Provider provider;
+    private final BlockingQueue<KeyPair> queue;
+    private final int lowWaterMark;
+    private final int maxWorkers;
+    private final long takeTimeout;
+    private final Executor executor;
+
+    private final AtomicInteger workers = new AtomicInteger();
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong generationNanos = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong inlineGenerated = new AtomicLong();
+    private final long startTime = System.currentTimeMillis();
+
+    private final Runnable worker = new Runnable() {
+        public void run() {
+            generate();
+        }
+    };
+
+    private volatile boolean closed;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new KeyPairPool.
+     *
+     * @param algorithm KeyPairGenerator algorithm
+     * @param keySize key size, values less than 1 mean the provider default
+     * @param provider
+     * @param capacity maximal number of queued key pairs
+     * @param lowWaterMark number of queued pairs below which the queue is refilled
+     * @param maxWorkers maximal number of concurrently running generation tasks
+     * @param takeTimeout maximal time (milliseconds) to wait for a pair when the queue is empty
+     * @param executor executor of the generation tasks
+     */
+    KeyPairPool(String algorithm, int keySize, Provider provider, int capacity, int lowWaterMark, int maxWorkers,
+            long takeTimeout, Executor executor) {
+        this.algorithm = algorithm;
+        this.keySize = keySize;
+        this.provider = provider;
+        this.queue = new ArrayBlockingQueue<KeyPair>(capacity);
+        this.lowWaterMark = lowWaterMark;
+        this.maxWorkers = maxWorkers;
+        this.takeTimeout = takeTimeout;
+        this.executor = executor;
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Takes a pre-generated key pair from the pool. If the pool is empty, it waits for a pair up to the take timeout and
+     * then generates the pair in the calling thread. A pair is never returned twice.
+     *
+     * @return
+     * @throws GeneralSecurityException if the key pair can't be generated
+     */
+    public KeyPair take() throws GeneralSecurityException {
+        if (closed) {
+            throw new IllegalStateException("The key pair pool for " + getDescription() + " is closed");
+        }
+        KeyPair keyPair = queue.poll();
+        if (keyPair == null) {
+            waits.incrementAndGet();
+            startWorkers();
+            if (takeTimeout > 0L) {
+                try {
+                    keyPair = queue.poll(takeTimeout, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (keyPair == null) {
+                inlineGenerated.incrementAndGet();
+                return createGenerator().generateKeyPair();
+            }
+        }
+        if (queue.size() < lowWaterMark) {
+            startWorkers();
+        }
+        return keyPair;
+    }
+
+    /**
+     * Returns the KeyPairGenerator algorithm.
+     *
+     * @return
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Returns the key size or 0 if the provider default is used.
+     *
+     * @return
+     */
+    public int getKeySize() {
+        return Math.max(keySize, 0);
+    }
+
+    /**
+     * Returns the provider of the generated key pairs.
+     *
+     * @return
+     */
+    public Provider getProvider() {
+        return provider;
+    }
+
+    /**
+     * Returns number of key pairs available in the pool.
+     *
+     * @return
+     */
+    public int getDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Returns number of key pairs generated in the background.
+     *
+     * @return
+     */
+    public long getGeneratedCount() {
+        return generated.get();
+    }
+
+    /**
+     * Returns number of key pairs generated in the background per second since the pool was created.
+     *
+     * @return
+     */
+    public double getGenerationRate() {
+        final long duration = System.currentTimeMillis() - startTime;
+        return duration > 0L ? generated.get() * 1000d / duration : 0d;
+    }
+
+    /**
+     * Returns average duration (milliseconds) of a background key pair generation or -1 if no pair was generated yet.
+     *
+     * @return
+     */
+    public long getAverageGenerationTime() {
+        final long count = generated.get();
+        return count > 0L ? TimeUnit.NANOSECONDS.toMillis(generationNanos.get() / count) : -1L;
+    }
+
+    /**
+     * Returns number of takes which found the pool empty.
+     *
+     * @return
+     */
+    public long getWaitCount() {
+        return waits.get();
+    }
+
+    /**
+     * Returns number of key pairs generated in the calling thread, because no pair was available within the take timeout.
+     *
+     * @return
+     */
+    public long getInlineCount() {
+        return inlineGenerated.get();
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Starts generation tasks until the number of running tasks reaches the maximum or the running tasks will fill the
+     * queue.
+     */
+    void startWorkers() {
+        while (!closed) {
+            final int running = workers.get();
+            if (running >= maxWorkers || queue.remainingCapacity() <= running) {
+                return;
+            }
+            if (workers.compareAndSet(running, running + 1) && !submit()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops the generation and drops the queued key pairs.
+     */
+    void close() {
+        closed = true;
+        queue.clear();
+    }
+
+    // Private methods -------------------------------------------------------
+
+    /**
+     * Submits the worker, the caller has already counted it in {@link #workers}.
+     *
+     * @return false if the executor rejected the worker
+     */
+    private boolean submit() {
+        try {
+            executor.execute(worker);
+            return true;
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Key pair generation task rejected", e);
+            workers.decrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Generates one key pair and resubmits the worker if the queue still has room for the pairs of all the running tasks.
+     */
+    private void generate() {
+        boolean resubmit = false;
+        try {
+            if (!closed) {
+                final long start = System.nanoTime();
+                final KeyPair keyPair = createGenerator().generateKeyPair();
+                generationNanos.addAndGet(System.nanoTime() - start);
+                generated.incrementAndGet();
+                if (!closed) {
+                    queue.offer(keyPair);
+                }
+                resubmit = !closed && queue.remainingCapacity() >= workers.get();
+            }
+        } catch (GeneralSecurityException e) {
+            LOGGER.warn("Background generation of a key pair (" + getDescription() + ") failed", e);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Background generation of a key pair (" + getDescription() + ") failed", e);
+        } finally {
+            if (!resubmit) {
+                workers.decrementAndGet();
+            }
+        }
+        if (resubmit) {
+            submit();
+        }
+    }
+
+    private KeyPairGenerator createGenerator() throws GeneralSecurityException {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm, provider);
+        if (keySize > 0) {
+            generator.initialize(keySize);
+        }
+        return generator;
+    }
+
+    private String getDescription() {
+        return "KeyPairGenerator." + algorithm + (keySize > 0 ? "/" + keySize : "") + " (" + provider.getName() + ")";
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import org.jboss.as.controller.AbstractRuntimeOnlyHandler;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
+import org.jboss.dmr.ModelNode;
+import org.jboss.msc.service.ServiceController;
+
+/**
+ * Reads the runtime metrics of a key pair pool.
+ *
+ * @author Josef Cacek
+ */
+class KeyPairPoolMetricsHandler extends AbstractRuntimeOnlyHandler {
+
+    public static final KeyPairPoolMetricsHandler INSTANCE = new KeyPairPoolMetricsHandler();
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Private ctor.
+     */
+    private KeyPairPoolMetricsHandler() {
+    }
+
+    // Protected methods -----------------------------------------------------
+
+    /**
+     * Sets the requested metric of the running pool as the operation result. The result is undefined if the pool is not
+     * started.
+     *
+     * @param context
+     * @param operation
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractRuntimeOnlyHandler#executeRuntimeStep(org.jboss.as.controller.OperationContext,
+     *      org.jboss.dmr.ModelNode)
+     */
+    @Override
+    protected void executeRuntimeStep(OperationContext context, ModelNode operation) throws OperationFailedException {
+        final String poolName = PathAddress.pathAddress(operation.get(ModelDescriptionConstants.OP_ADDR)).getLastElement()
+                .getValue();
+        final String metric = operation.require(ModelDescriptionConstants.NAME).asString();
+        final ServiceController<?> controller = context.getServiceRegistry(false).getService(
+                KeyPairPoolService.createServiceName(poolName));
+        if (controller != null && controller.getState() == ServiceController.State.UP) {
+            final KeyPairPool pool = (KeyPairPool) controller.getValue();
+            final ModelNode result = context.getResult();
+            if (KeyPairPoolResourceDefinition.POOL_DEPTH.getName().equals(metric)) {
+                result.set(pool.getDepth());
+            } else if (KeyPairPoolResourceDefinition.GENERATED_COUNT.getName().equals(metric)) {
+                result.set(pool.getGeneratedCount());
+            } else if (KeyPairPoolResourceDefinition.GENERATION_RATE.getName().equals(metric)) {
+                result.set(pool.getGenerationRate());
+            } else if (KeyPairPoolResourceDefinition.AVERAGE_GENERATION_TIME.getName().equals(metric)) {
+                final long averageTime = pool.getAverageGenerationTime();
+                if (averageTime >= 0L) {
+                    result.set(averageTime);
+                }
+            } else if (KeyPairPoolResourceDefinition.WAIT_COUNT.getName().equals(metric)) {
+                result.set(pool.getWaitCount());
+            } else if (KeyPairPoolResourceDefinition.INLINE_COUNT.getName().equals(metric)) {
+                result.set(pool.getInlineCount());
+            }
+        }
+        context.completeStep();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.SimpleResourceDefinition;
+import org.jboss.as.controller.client.helpers.MeasurementUnit;
+import org.jboss.as.controller.operations.validation.IntRangeValidator;
+import org.jboss.as.controller.operations.validation.LongRangeValidator;
+import org.jboss.as.controller.registry.ManagementResourceRegistration;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+
+/**
+ * A ResourceDefinition for pools of key pairs pre-generated in the background by a provider registered by this subsystem.
+ *
+ * @author Josef Cacek
+ */
+public class KeyPairPoolResourceDefinition extends SimpleResourceDefinition {
+
+    /** Reference to the provider resource - <code>sunpkcs11=&lt;name&gt;</code> or <code>simple-provider=&lt;class&gt;</code>. */
+    static final SimpleAttributeDefinition PROVIDER = new SimpleAttributeDefinitionBuilder("provider", ModelType.STRING, false)
+            .setAllowExpression(true).setValidator(ProviderReference.VALIDATOR).build();
+
+    static final SimpleAttributeDefinition ALGORITHM = new SimpleAttributeDefinitionBuilder("algorithm", ModelType.STRING,
+            false).setAllowExpression(true).build();
+
+    /** Key size, undefined means the provider default. */
+    static final SimpleAttributeDefinition KEY_SIZE = new SimpleAttributeDefinitionBuilder("key-size", ModelType.INT, true)
+            .setAllowExpression(true).setValidator(new IntRangeValidator(1, true, true)).build();
+
+    static final SimpleAttributeDefinition CAPACITY = new SimpleAttributeDefinitionBuilder("capacity", ModelType.INT, true)
+            .setDefaultValue(new ModelNode(16)).setAllowExpression(true).setValidator(new IntRangeValidator(1, true, true))
+            .build();
+
+    /** Number of queued key pairs below which the pool is refilled, undefined means half of the capacity. */
+    static final SimpleAttributeDefinition LOW_WATER_MARK = new SimpleAttributeDefinitionBuilder("low-water-mark",
+            ModelType.INT, true).setAllowExpression(true).setValidator(new IntRangeValidator(0, true, true)).build();
+
+    static final SimpleAttributeDefinition WORKERS = new SimpleAttributeDefinitionBuilder("workers", ModelType.INT, true)
+            .setDefaultValue(new ModelNode(1)).setAllowExpression(true).setValidator(new IntRangeValidator(1, true, true))
+            .build();
+
+    static final SimpleAttributeDefinition TAKE_TIMEOUT = new SimpleAttributeDefinitionBuilder("take-timeout", ModelType.LONG,
+            true).setDefaultValue(new ModelNode(5000L)).setAllowExpression(true)
+            .setMeasurementUnit(MeasurementUnit.MILLISECONDS)
+            .setValidator(new LongRangeValidator(0, Long.MAX_VALUE, true, true)).build();
+
+    /**
+     * Configuration attributes, in the order they are marshalled to XML.
+     */
+    static final SimpleAttributeDefinition[] ATTRIBUTES = { PROVIDER, ALGORITHM, KEY_SIZE, CAPACITY, LOW_WATER_MARK, WORKERS,
+            TAKE_TIMEOUT };
+
+    static final SimpleAttributeDefinition POOL_DEPTH = new SimpleAttributeDefinitionBuilder("pool-depth", ModelType.INT, true)
+            .setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition GENERATED_COUNT = new SimpleAttributeDefinitionBuilder("generated-count",
+            ModelType.LONG, true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition GENERATION_RATE = new SimpleAttributeDefinitionBuilder("generation-rate",
+            ModelType.DOUBLE, true).setStorageRuntime().setMeasurementUnit(MeasurementUnit.PER_SECOND).build();
+
+    static final SimpleAttributeDefinition AVERAGE_GENERATION_TIME = new SimpleAttributeDefinitionBuilder(
+            "average-generation-time", ModelType.LONG, true).setStorageRuntime()
+            .setMeasurementUnit(MeasurementUnit.MILLISECONDS).build();
+
+    static final SimpleAttributeDefinition WAIT_COUNT = new SimpleAttributeDefinitionBuilder("wait-count", ModelType.LONG,
+            true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition INLINE_COUNT = new SimpleAttributeDefinitionBuilder("inline-count",
+            ModelType.LONG, true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition[] METRICS = { POOL_DEPTH, GENERATED_COUNT, GENERATION_RATE,
+            AVERAGE_GENERATION_TIME, WAIT_COUNT, INLINE_COUNT };
+
+    // Constructors ----------------------------------------------------------
+
+    KeyPairPoolResourceDefinition() {
+        super(SecurityProvidersExtension.KEYPAIR_POOL_PATH, SecurityProvidersExtension
+                .getResourceDescriptionResolver(SecurityProvidersExtension.KEYPAIR_POOL), KeyPairPoolAdd.INSTANCE,
+                KeyPairPoolRemove.INSTANCE);
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Registers the pool configuration attributes and the pool metrics.
+     *
+     * @param resourceRegistration
+     * @see org.jboss.as.controller.SimpleResourceDefinition#registerAttributes(org.jboss.as.controller.registry.ManagementResourceRegistration)
+     */
+    @Override
+    public void registerAttributes(ManagementResourceRegistration resourceRegistration) {
+        for (AttributeDefinition attribute : ATTRIBUTES) {
+            resourceRegistration.registerReadOnlyAttribute(attribute, null);
+        }
+        for (AttributeDefinition metric : METRICS) {
+            resourceRegistration.registerMetric(metric, KeyPairPoolMetricsHandler.INSTANCE);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.concurrent.ExecutorService;
+
+import org.jboss.logging.Logger;
+import org.jboss.msc.inject.Injector;
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
+import org.jboss.msc.value.InjectedValue;
+
+/**
+ * The KeyPairPoolService provides a {@link KeyPairPool} of key pairs generated in the background by a provider registered by
+ * this subsystem.
+ *
+ * @author Josef Cacek
+ */
+public class KeyPairPoolService implements Service<KeyPairPool> {
+
+    private static final Logger LOGGER = Logger.getLogger(KeyPairPoolService.class);
+
+    private static final String SERVICE_TYPE = "KeyPairGenerator";
+
+    private final InjectedValue<ProviderServiceIndex> providerIndex = new InjectedValue<ProviderServiceIndex>();
+
+    private final String name;
+    private final String algorithm;
+    private final int keySize;
+    private final int capacity;
+    private final int lowWaterMark;
+    private final int workers;
+    private final long takeTimeout;
+
+    private volatile KeyPairPool pool;
+    private volatile ExecutorService workerExecutor;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new KeyPairPoolService.
+     *
+     * @param name
+     * @param algorithm
+     * @param keySize key size, values less than 1 mean the provider default
+     * @param capacity
+     * @param lowWaterMark
+     * @param workers
+     * @param takeTimeout
+     */
+    public KeyPairPoolService(String name, String algorithm, int keySize, int capacity, int lowWaterMark, int workers,
+            long takeTimeout) {
+        this.name = name;
+        this.algorithm = algorithm;
+        this.keySize = keySize;
+        this.capacity = capacity;
+        this.lowWaterMark = lowWaterMark;
+        this.workers = workers;
+        this.takeTimeout = takeTimeout;
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Returns the pool.
+     *
+     * @return
+     * @throws IllegalStateException
+     * @throws IllegalArgumentException
+     * @see org.jboss.msc.value.Value#getValue()
+     */
+    public KeyPairPool getValue() throws IllegalStateException, IllegalArgumentException {
+        final KeyPairPool value = pool;
+        if (value == null) {
+            throw new IllegalStateException("Key pair pool " + name + " is not started");
+        }
+        return value;
+    }
+
+    /**
+     * Creates the pool and starts its initial fill in the background. The key pairs are generated on threads owned by this
+     * service (one per worker), so a slow generation burst doesn't hold the threads shared by the subsystem services.
+     *
+     * @param context
+     * @throws StartException
+     * @see org.jboss.msc.service.Service#start(org.jboss.msc.service.StartContext)
+     */
+    public void start(StartContext context) throws StartException {
+        final ProviderServiceIndex index = providerIndex.getValue();
+        if (index.getService(SERVICE_TYPE, algorithm) == null) {
+            throw new StartException(SERVICE_TYPE + "." + algorithm + " is not supported by provider "
+                    + index.getProviderName());
+        }
+        LOGGER.debug("Starting key pair pool " + name + " for " + SERVICE_TYPE + "." + algorithm + " ("
+                + index.getProviderName() + ")");
+        final ExecutorService newWorkerExecutor = SecurityProvidersExecutorService.newBoundedExecutor(workers,
+                "security-providers-keypair-" + name + "-");
+        final KeyPairPool newPool = new KeyPairPool(algorithm, keySize, index.getProvider(), capacity, lowWaterMark, workers,
+                takeTimeout, newWorkerExecutor);
+        newPool.startWorkers();
+        workerExecutor = newWorkerExecutor;
+        pool = newPool;
+    }
+
+    /**
+     * Stops the generation, drops the queued key pairs and shuts down the worker threads.
+     *
+     * @param context
+     * @see org.jboss.msc.service.Service#stop(org.jboss.msc.service.StopContext)
+     */
+    public void stop(StopContext context) {
+        LOGGER.debug("Stopping key pair pool " + name);
+        pool.close();
+        pool = null;
+        workerExecutor.shutdown();
+        workerExecutor = null;
+    }
+
+    /**
+     * Returns injector for the index of the provider generating the key pairs.
+     *
+     * @return
+     */
+    public Injector<ProviderServiceIndex> getProviderIndexInjector() {
+        return providerIndex;
+    }
+
+    /**
+     * Creates a service name for the given key pair pool name.
+     *
+     * @param poolName
+     * @return
+     */
+    public static ServiceName createServiceName(final String poolName) {
+        return ServiceName.JBOSS.append("security-providers", "keypair-pool", poolName);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import org.jboss.as.controller.AbstractRuntimeOnlyHandler;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
+import org.jboss.dmr.ModelNode;
+import org.jboss.msc.service.ServiceController;
+
+/**
+ * Reads the runtime metrics of a SunPKCS11 keystore.
+ *
+ * @author Josef Cacek
+ */
+class KeyStoreMetricsHandler extends AbstractRuntimeOnlyHandler {
+
+    public static final KeyStoreMetricsHandler INSTANCE = new KeyStoreMetricsHandler();
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Private ctor.
+     */
+    private KeyStoreMetricsHandler() {
+    }
+
+    // Protected methods -----------------------------------------------------
+
+    /**
+     * Sets the requested metric of the loaded keystore as the operation result. The result is undefined if the keystore is
+     * not loaded.
+     *
+     * @param context
+     * @param operation
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractRuntimeOnlyHandler#executeRuntimeStep(org.jboss.as.controller.OperationContext,
+     *      org.jboss.dmr.ModelNode)
+     */
+    @Override
+    protected void executeRuntimeStep(OperationContext context, ModelNode operation) throws OperationFailedException {
+        final PathAddress address = PathAddress.pathAddress(operation.get(ModelDescriptionConstants.OP_ADDR));
+        final String metric = operation.require(ModelDescriptionConstants.NAME).asString();
+        final ServiceController<?> controller = context.getServiceRegistry(false).getService(
+                KeyStoreService.createServiceName(address.getElement(address.size() - 2).getValue(), address
+                        .getLastElement().getValue()));
+        if (controller != null && controller.getState() == ServiceController.State.UP) {
+            final KeyStoreService service = (KeyStoreService) controller.getService();
+            final TokenKeyStore keyStore = service.getValue();
+            final ModelNode result = context.getResult();
+            if (KeyStoreResourceDefinition.ALIAS_COUNT.getName().equals(metric)) {
+                result.set(keyStore.getAliases().size());
+            } else if (KeyStoreResourceDefinition.LOAD_TIME.getName().equals(metric)) {
+                result.set(service.getLoadTime());
+            } else if (KeyStoreResourceDefinition.HIT_COUNT.getName().equals(metric)) {
+                result.set(keyStore.getHitCount());
+            } else if (KeyStoreResourceDefinition.MISS_COUNT.getName().equals(metric)) {
+                result.set(keyStore.getMissCount());
+            } else if (KeyStoreResourceDefinition.EVICTION_COUNT.getName().equals(metric)) {
+                result.set(keyStore.getEvictionCount());
+            }
+        }
+        context.completeStep();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.SimpleResourceDefinition;
+import org.jboss.as.controller.client.helpers.MeasurementUnit;
+import org.jboss.as.controller.operations.validation.IntRangeValidator;
+import org.jboss.as.controller.operations.validation.LongRangeValidator;
+import org.jboss.as.controller.registry.ManagementResourceRegistration;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+
+/**
+ * A ResourceDefinition for the KeyStore of a SunPKCS11 provider loaded once and shared with cached key handles.
+ *
+ * @author Josef Cacek
+ */
+public class KeyStoreResourceDefinition extends SimpleResourceDefinition {
+
+    /** PIN of the token, undefined if the token doesn't require a login. */
+    static final SimpleAttributeDefinition PASSWORD = new SimpleAttributeDefinitionBuilder("password", ModelType.STRING, true)
+            .setAllowExpression(true).build();
+
+    /** Maximal number of cached key handles, 0 disables the caching. */
+    static final SimpleAttributeDefinition MAX_ENTRIES = new SimpleAttributeDefinitionBuilder("max-entries", ModelType.INT,
+            true).setDefaultValue(new ModelNode(1000)).setAllowExpression(true)
+            .setValidator(new IntRangeValidator(0, true, true)).build();
+
+    /** Time-to-live of the cached handles, undefined means the handles don't expire. */
+    static final SimpleAttributeDefinition ENTRY_TTL = new SimpleAttributeDefinitionBuilder("entry-ttl", ModelType.LONG, true)
+            .setAllowExpression(true).setMeasurementUnit(MeasurementUnit.MILLISECONDS)
+            .setValidator(new LongRangeValidator(1, Long.MAX_VALUE, true, true)).build();
+
+    /**
+     * Configuration attributes, in the order they are marshalled to XML.
+     */
+    static final SimpleAttributeDefinition[] ATTRIBUTES = { PASSWORD, MAX_ENTRIES, ENTRY_TTL };
+
+    static final SimpleAttributeDefinition ALIAS_COUNT = new SimpleAttributeDefinitionBuilder("alias-count", ModelType.INT,
+            true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition LOAD_TIME = new SimpleAttributeDefinitionBuilder("load-time", ModelType.LONG, true)
+            .setMeasurementUnit(MeasurementUnit.MILLISECONDS).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition HIT_COUNT = new SimpleAttributeDefinitionBuilder("hit-count", ModelType.LONG, true)
+            .setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition MISS_COUNT = new SimpleAttributeDefinitionBuilder("miss-count", ModelType.LONG,
+            true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition EVICTION_COUNT = new SimpleAttributeDefinitionBuilder("eviction-count",
+            ModelType.LONG, true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition[] METRICS = { ALIAS_COUNT, LOAD_TIME, HIT_COUNT, MISS_COUNT, EVICTION_COUNT };
+
+    // Constructors ----------------------------------------------------------
+
+    KeyStoreResourceDefinition() {
+        super(SecurityProvidersExtension.KEYSTORE_PATH, SecurityProvidersExtension
+                .getResourceDescriptionResolver(SecurityProvidersExtension.SUNPKCS11 + "."
+                        + SecurityProvidersExtension.KEYSTORE), KeyStoreAdd.INSTANCE, KeyStoreRemove.INSTANCE);
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Registers the keystore configuration attributes and the cache metrics.
+     *
+     * @param resourceRegistration
+     * @see org.jboss.as.controller.SimpleResourceDefinition#registerAttributes(org.jboss.as.controller.registry.ManagementResourceRegistration)
+     */
+    @Override
+    public void registerAttributes(ManagementResourceRegistration resourceRegistration) {
+        for (AttributeDefinition attribute : ATTRIBUTES) {
+            resourceRegistration.registerReadOnlyAttribute(attribute, null);
+        }
+        for (AttributeDefinition metric : METRICS) {
+            resourceRegistration.registerMetric(metric, KeyStoreMetricsHandler.INSTANCE);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.logging.Logger;
+import org.jboss.msc.inject.Injector;
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
+import org.jboss.msc.value.InjectedValue;
+
+/**
+ * The KeyStoreService loads the KeyStore of a SunPKCS11 provider registered by this subsystem once and provides it as a
+ * {@link TokenKeyStore} with cached key and certificate handles.
+ *
+ * @author Josef Cacek
+ */
+public class KeyStoreService implements Service<TokenKeyStore> {
+
+    private static final Logger LOGGER = Logger.getLogger(KeyStoreService.class);
+
+    /** Type of the KeyStore provided by the SunPKCS11 providers. */
+    private static final String KEYSTORE_TYPE = "PKCS11";
+
+    private final InjectedValue<ProviderServiceIndex> providerIndex = new InjectedValue<ProviderServiceIndex>();
+
+    private final String name;
+    private final char[] password;
+    private final int maxEntries;
+    private final long entryTtl;
+
+    private volatile TokenKeyStore keyStore;
+    private volatile long loadTime = -1L;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new KeyStoreService.
+     *
+     * @param name
+     * @param password PIN of the token, may be <code>null</code>
+     * @param maxEntries maximal number of cached key handles
+     * @param entryTtl time-to-live (milliseconds) of the cached handles, values less than 1 mean no expiration
+     */
+    public KeyStoreService(String name, String password, int maxEntries, long entryTtl) {
+        this.name = name;
+        this.password = password == null ? null : password.toCharArray();
+        this.maxEntries = maxEntries;
+        this.entryTtl = entryTtl;
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Creates a service name for the given keystore of the given SunPKCS11 provider.
+     *
+     * @param providerName
+     * @param keyStoreName
+     * @return
+     */
+    public static ServiceName createServiceName(final String providerName, final String keyStoreName) {
+        return SunPKCS11Service.createServiceName(providerName).append("keystore", keyStoreName);
+    }
+
+    /**
+     * Returns the loaded keystore.
+     *
+     * @return
+     * @throws IllegalStateException
+     * @throws IllegalArgumentException
+     * @see org.jboss.msc.value.Value#getValue()
+     */
+    public TokenKeyStore getValue() throws IllegalStateException, IllegalArgumentException {
+        final TokenKeyStore value = keyStore;
+        if (value == null) {
+            throw new IllegalStateException("Keystore " + name + " is not loaded");
+        }
+        return value;
+    }
+
+    /**
+     * Loads the keystore from the provider and indexes its aliases.
+     *
+     * @param context
+     * @throws StartException
+     * @see org.jboss.msc.service.Service#start(org.jboss.msc.service.StartContext)
+     */
+    public void start(StartContext context) throws StartException {
+        final ProviderServiceIndex index = providerIndex.getValue();
+        final long start = System.nanoTime();
+        final TokenKeyStore newKeyStore;
+        try {
+            newKeyStore = TokenKeyStore.load(index.getProvider(), KEYSTORE_TYPE, password, maxEntries, entryTtl);
+        } catch (Exception e) {
+            throw new StartException("Unable to load keystore " + name + " of provider " + index.getProviderName(), e);
+        }
+        loadTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOGGER.info("Keystore " + name + " of provider " + index.getProviderName() + " loaded in " + loadTime + " ms ("
+                + newKeyStore.getAliases().size() + " aliases)");
+        keyStore = newKeyStore;
+    }
+
+    /**
+     * Drops the keystore and its cached handles.
+     *
+     * @param context
+     * @see org.jboss.msc.service.Service#stop(org.jboss.msc.service.StopContext)
+     */
+    public void stop(StopContext context) {
+        final TokenKeyStore value = keyStore;
+        keyStore = null;
+        loadTime = -1L;
+        if (value != null) {
+            value.clear();
+        }
+    }
+
+    /**
+     * Returns injector for the service index of the provider.
+     *
+     * @return
+     */
+    public Injector<ProviderServiceIndex> getProviderIndexInjector() {
+        return providerIndex;
+    }
+
+    /**
+     * Returns time (milliseconds) spent by loading the keystore or -1 if it's not loaded.
+     *
+     * @return
+     */
+    public long getLoadTime() {
+        return loadTime;
+    }
+}
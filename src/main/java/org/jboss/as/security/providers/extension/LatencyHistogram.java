@@ -0,0 +1,186 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with fixed power-of-two buckets. The bucket <code>i</code> (i &gt; 0) counts the durations
+ * between <code>2^(i-1)</code> and <code>2^i - 1</code> nanoseconds, the last bucket counts all the longer durations.
+ * Recording a duration doesn't allocate and doesn't block, so the histogram can be updated on the hot path of crypto
+ * operations. The percentiles are approximated by the upper bounds of the buckets.
+ * <p>
+ * The histogram is reset without stopping the recorders, so a value recorded concurrently with the reset may be counted
+ * only partially (e.g. in the bucket, but not in the total time).
+ *
+ * @author Josef Cacek
+ */
+final class LatencyHistogram {
+
+    /** Number of buckets - the last one starts at 2^38 ns (about 4.5 minutes). */
+    static final int BUCKETS = 40;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalTime = new AtomicLong();
+    private final AtomicLong maxTime = new AtomicLong();
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new LatencyHistogram.
+     *
+     * @param name name of the measured operation
+     */
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Returns name of the measured operation.
+     *
+     * @return
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Records a single duration.
+     *
+     * @param nanos duration in nanoseconds, negative values are counted as zero
+     */
+    void record(long nanos) {
+        final long value = nanos < 0L ? 0L : nanos;
+        buckets.incrementAndGet(getBucket(value));
+        totalTime.addAndGet(value);
+        long max = maxTime.get();
+        while (value > max && !maxTime.compareAndSet(max, value)) {
+            max = maxTime.get();
+        }
+    }
+
+    /**
+     * Returns number of recorded durations.
+     *
+     * @return
+     */
+    long getCount() {
+        long result = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            result += buckets.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns sum of the recorded durations (nanoseconds).
+     *
+     * @return
+     */
+    long getTotalTime() {
+        return totalTime.get();
+    }
+
+    /**
+     * Returns the longest recorded duration (nanoseconds).
+     *
+     * @return
+     */
+    long getMaxTime() {
+        return maxTime.get();
+    }
+
+    /**
+     * Returns number of durations recorded in the given bucket.
+     *
+     * @param bucket
+     * @return
+     */
+    long getBucketCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * Returns an upper estimate of the given percentile (nanoseconds) - the upper bound of the bucket which contains it, but
+     * never more than the longest recorded duration.
+     *
+     * @param percentile percentile between 0 and 100
+     * @return the estimate or 0 if nothing was recorded
+     */
+    long getPercentile(double percentile) {
+        final long[] counts = new long[BUCKETS];
+        long count = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            count += counts[i];
+        }
+        if (count == 0L) {
+            return 0L;
+        }
+        final long rank = Math.max(1L, (long) Math.ceil(count * percentile / 100d));
+        long seen = 0L;
+        int bucket = 0;
+        while (bucket < BUCKETS - 1) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                break;
+            }
+            bucket++;
+        }
+        return Math.min(getUpperBound(bucket), maxTime.get());
+    }
+
+    /**
+     * Clears all the recorded values.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0L);
+        }
+        totalTime.set(0L);
+        maxTime.set(0L);
+    }
+
+    /**
+     * Returns index of the bucket which counts the given duration.
+     *
+     * @param nanos
+     * @return
+     */
+    static int getBucket(long nanos) {
+        return Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKETS - 1);
+    }
+
+    /**
+     * Returns the longest duration (nanoseconds) counted by the given bucket.
+     *
+     * @param bucket
+     * @return
+     */
+    static long getUpperBound(int bucket) {
+        return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1L;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.Provider;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Placeholder provider registered in the JCA provider list instead of a provider which is expensive to construct. It
+ * advertises the services from a {@link ProviderManifest} and constructs the real provider when one of them is requested
+ * for the first time. Then the services of the real provider are returned, so the SPI instances created by JCA belong to
+ * the real provider.
+ * <p>
+ * Lookups of services which are not in the manifest don't initialize the provider. Only the {@link #getService(String, String)}
+ * and {@link #getServices()} methods are delegated, the provider properties stay empty.
+ *
+ * @author Josef Cacek
+ */
+final class LazyProvider extends Provider {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = Logger.getLogger(LazyProvider.class);
+
+    private final transient ProviderManifest manifest;
+    private final transient Callable<Provider> factory;
+    private final transient Object lock = new Object();
+
+    private transient volatile Provider delegate;
+    private transient volatile boolean failed;
+    private transient boolean closed;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new LazyProvider.
+     *
+     * @param manifest
+     * @param factory constructs the real provider, it's called at most once
+     */
+    LazyProvider(ProviderManifest manifest, Callable<Provider> factory) {
+        super(manifest.getProviderName(), manifest.getVersion(), "Lazily initialized " + manifest.getProviderName());
+        this.manifest = manifest;
+        this.factory = factory;
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Returns the service of the real provider. The real provider is constructed if the service is in the manifest and the
+     * provider was not initialized yet.
+     *
+     * @param type
+     * @param algorithm
+     * @return
+     * @see java.security.Provider#getService(java.lang.String, java.lang.String)
+     */
+    @Override
+    public Service getService(String type, String algorithm) {
+        Provider provider = delegate;
+        if (provider == null) {
+            if (!manifest.supports(type, algorithm)) {
+                return null;
+            }
+            provider = initialize();
+            if (provider == null) {
+                return null;
+            }
+        }
+        return provider.getService(type, algorithm);
+    }
+
+    /**
+     * Returns services of the real provider. The real provider is constructed if it was not initialized yet.
+     *
+     * @return
+     * @see java.security.Provider#getServices()
+     */
+    @Override
+    public Set<Service> getServices() {
+        final Provider provider = initialize();
+        if (provider == null) {
+            return Collections.emptySet();
+        }
+        return provider.getServices();
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Returns the real provider, it's constructed if it was not initialized yet.
+     *
+     * @return the provider or <code>null</code> if the construction failed or the placeholder was closed
+     */
+    Provider initialize() {
+        Provider result = delegate;
+        if (result != null || failed) {
+            return result;
+        }
+        synchronized (lock) {
+            result = delegate;
+            if (result == null && !failed && !closed) {
+                try {
+                    result = factory.call();
+                    delegate = result;
+                } catch (Exception e) {
+                    failed = true;
+                    LOGGER.error("Lazy initialization of security provider " + getName() + " failed.", e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the real provider was constructed.
+     *
+     * @return
+     */
+    boolean isInitialized() {
+        return delegate != null;
+    }
+
+    /**
+     * Prevents further initialization attempts. If an initialization is in progress, it waits for it.
+     *
+     * @return the real provider or <code>null</code> if it was not constructed
+     */
+    Provider close() {
+        synchronized (lock) {
+            closed = true;
+            return delegate;
+        }
+    }
+}
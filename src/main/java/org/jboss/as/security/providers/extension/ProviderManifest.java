@@ -0,0 +1,147 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Immutable description of a provider - its name, version and the services it supports (including algorithm aliases). It
+ * allows registering a {@link LazyProvider} placeholder before the real provider is constructed.
+ *
+ * @author Josef Cacek
+ */
+final class ProviderManifest {
+
+    private final String providerName;
+    private final double version;
+    private final Set<String> services;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new ProviderManifest.
+     *
+     * @param providerName
+     * @param version
+     * @param services service keys in form <code>Type.Algorithm</code>
+     */
+    ProviderManifest(String providerName, double version, Collection<String> services) {
+        this.providerName = providerName;
+        this.version = version;
+        final Set<String> keys = new HashSet<String>();
+        for (String service : services) {
+            keys.add(toKey(service));
+        }
+        this.services = Collections.unmodifiableSet(keys);
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Creates manifest of the indexed provider.
+     *
+     * @param index
+     * @return
+     */
+    static ProviderManifest create(ProviderServiceIndex index) {
+        return new ProviderManifest(index.getProviderName(), index.getProvider().getVersion(), index.getServiceKeys());
+    }
+
+    /**
+     * Returns the provider name.
+     *
+     * @return
+     */
+    String getProviderName() {
+        return providerName;
+    }
+
+    /**
+     * Returns the provider version.
+     *
+     * @return
+     */
+    double getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the service keys (<code>TYPE.ALGORITHM</code>, upper case).
+     *
+     * @return
+     */
+    Set<String> getServices() {
+        return services;
+    }
+
+    /**
+     * Returns true if the provider supports the given type and algorithm (or alias).
+     *
+     * @param type
+     * @param algorithm
+     * @return
+     */
+    boolean supports(String type, String algorithm) {
+        return services.contains(toKey(type + "." + algorithm));
+    }
+
+    /**
+     * Manifests are equal if they describe the same provider name, version and services.
+     *
+     * @param obj
+     * @return
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ProviderManifest)) {
+            return false;
+        }
+        final ProviderManifest other = (ProviderManifest) obj;
+        return providerName.equals(other.providerName) && Double.compare(version, other.version) == 0
+                && services.equals(other.services);
+    }
+
+    /**
+     * Hash code computed from the provider name and the services.
+     *
+     * @return
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return 31 * providerName.hashCode() + services.hashCode();
+    }
+
+    // Private methods -------------------------------------------------------
+
+    private static String toKey(String service) {
+        return service.trim().toUpperCase(Locale.ENGLISH);
+    }
+}
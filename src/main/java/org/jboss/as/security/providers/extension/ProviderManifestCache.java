@@ -0,0 +1,278 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Process-wide cache of {@link ProviderManifest}s of the providers registered by this subsystem. When a provider service in
+ * the lazy mode is started again (e.g. after a reload), the cached manifest is used to advertise the provider services
+ * before the real provider is constructed.
+ * <p>
+ * If a directory is configured (the subsystem uses a subdirectory of the server data directory), the manifests are also
+ * persisted there, one file per manifest key hash. A manifest which is not cached in memory yet is loaded from the
+ * directory, so the lazy providers don't need an eager start after a server restart either.
+ *
+ * @author Josef Cacek
+ */
+final class ProviderManifestCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ProviderManifestCache.class);
+
+    private static final String FILE_SUFFIX = ".manifest";
+    private static final String PROP_KEY = "key";
+    private static final String PROP_PROVIDER_NAME = "provider-name";
+    private static final String PROP_VERSION = "version";
+    private static final String PROP_SERVICES = "services";
+
+    /** Cached manifests (manifest key -> manifest), guarded by the map itself. */
+    private static final Map<String, ProviderManifest> MANIFESTS = new HashMap<String, ProviderManifest>();
+
+    /** Directory of the persisted manifests or <code>null</code> if the manifests are not persisted. */
+    private static volatile File directory;
+
+    // Constructors ----------------------------------------------------------
+
+    private ProviderManifestCache() {
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Returns the cached manifest for given key or <code>null</code>. If the manifest is not cached in memory, the persisted
+     * one is loaded.
+     *
+     * @param key
+     * @return
+     */
+    static ProviderManifest get(String key) {
+        synchronized (MANIFESTS) {
+            final ProviderManifest manifest = MANIFESTS.get(key);
+            if (manifest != null) {
+                return manifest;
+            }
+        }
+        final ProviderManifest loaded = load(key);
+        if (loaded == null) {
+            return null;
+        }
+        synchronized (MANIFESTS) {
+            final ProviderManifest manifest = MANIFESTS.get(key);
+            if (manifest != null) {
+                return manifest;
+            }
+            MANIFESTS.put(key, loaded);
+            return loaded;
+        }
+    }
+
+    /**
+     * Caches the manifest under the given key.
+     *
+     * @param key
+     * @param manifest
+     */
+    static void put(String key, ProviderManifest manifest) {
+        synchronized (MANIFESTS) {
+            MANIFESTS.put(key, manifest);
+        }
+    }
+
+    /**
+     * Persists the manifest under the given key, unless the same manifest is persisted already. Does nothing if the
+     * manifests are not persisted.
+     *
+     * @param key
+     * @param manifest
+     * @return true if the manifest file was (re)written
+     * @throws IOException
+     */
+    static synchronized boolean store(String key, ProviderManifest manifest) throws IOException {
+        final File dir = directory;
+        if (dir == null) {
+            return false;
+        }
+        final File file = getFile(dir, key);
+        final ProviderManifest persisted = read(file, key);
+        if (manifest.equals(persisted)) {
+            return false;
+        }
+        if (persisted != null) {
+            LOGGER.info("Services of provider " + manifest.getProviderName() + " changed, updating its persisted manifest.");
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+        final List<String> services = new ArrayList<String>(manifest.getServices());
+        Collections.sort(services);
+        final StringBuilder sb = new StringBuilder();
+        for (String service : services) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(service);
+        }
+        final Properties properties = new Properties();
+        properties.setProperty(PROP_KEY, key);
+        properties.setProperty(PROP_PROVIDER_NAME, manifest.getProviderName());
+        properties.setProperty(PROP_VERSION, String.valueOf(manifest.getVersion()));
+        properties.setProperty(PROP_SERVICES, sb.toString());
+        // write to a temporary file first, so a reader never sees a partial manifest
+        final File tmpFile = new File(dir, file.getName() + ".tmp");
+        final OutputStream os = new FileOutputStream(tmpFile);
+        try {
+            properties.store(os, "Security provider manifest");
+        } finally {
+            os.close();
+        }
+        if (!tmpFile.renameTo(file)) {
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete();
+                throw new IOException("Unable to write " + file);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets the directory of the persisted manifests. The manifests are not persisted if it's <code>null</code>.
+     *
+     * @param dir
+     */
+    static void setDirectory(File dir) {
+        directory = dir;
+    }
+
+    /**
+     * Returns the directory of the persisted manifests or <code>null</code>.
+     *
+     * @return
+     */
+    static File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Removes all the manifests cached in memory. The persisted manifests are kept.
+     */
+    static void clear() {
+        synchronized (MANIFESTS) {
+            MANIFESTS.clear();
+        }
+    }
+
+    // Private methods -------------------------------------------------------
+
+    /**
+     * Loads the persisted manifest for given key.
+     *
+     * @param key
+     * @return the manifest or <code>null</code> if the manifests are not persisted or the manifest can't be read
+     */
+    private static ProviderManifest load(String key) {
+        final File dir = directory;
+        if (dir == null) {
+            return null;
+        }
+        try {
+            return read(getFile(dir, key), key);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read persisted provider manifest from " + dir, e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the manifest file.
+     *
+     * @param file
+     * @param key
+     * @return the manifest or <code>null</code> if the file doesn't exist or it belongs to another key
+     * @throws IOException
+     */
+    private static ProviderManifest read(File file, String key) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        final Properties properties = new Properties();
+        final InputStream is = new FileInputStream(file);
+        try {
+            properties.load(is);
+        } finally {
+            is.close();
+        }
+        final String name = properties.getProperty(PROP_PROVIDER_NAME);
+        final String services = properties.getProperty(PROP_SERVICES);
+        if (!key.equals(properties.getProperty(PROP_KEY)) || name == null || services == null) {
+            return null;
+        }
+        double version;
+        try {
+            version = Double.parseDouble(properties.getProperty(PROP_VERSION));
+        } catch (RuntimeException e) {
+            version = 1.0;
+        }
+        final List<String> serviceList = new ArrayList<String>();
+        for (String service : services.split(",")) {
+            if (service.trim().length() > 0) {
+                serviceList.add(service);
+            }
+        }
+        return new ProviderManifest(name, version, serviceList);
+    }
+
+    /**
+     * Returns the manifest file for given key. The file name is a hash of the key. It's not computed by a JCA message digest,
+     * because the lookup could initialize a lazy provider placeholder. Hash collisions are detected by the key stored in
+     * the file.
+     *
+     * @param dir
+     * @param key
+     * @return
+     */
+    private static File getFile(File dir, String key) {
+        final CRC32 crc = new CRC32();
+        try {
+            crc.update(key.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        final long hash = (crc.getValue() << 32) | (key.hashCode() & 0xffffffffL);
+        return new File(dir, String.format("%016x", Long.valueOf(hash)) + FILE_SUFFIX);
+    }
+}
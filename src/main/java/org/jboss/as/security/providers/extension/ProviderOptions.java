@@ -0,0 +1,230 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.dmr.ModelNode;
+import org.jboss.msc.service.ServiceController.Mode;
+
+/**
+ * Holder of the options common to all provider services (see {@link CommonAttributes#PROVIDER_ATTRIBUTES}).
+ *
+ * @author Josef Cacek
+ */
+public class ProviderOptions {
+
+    private boolean asyncStart;
+    private long startTimeout;
+    private Integer position;
+    private boolean lazy;
+    private List<String> lazyServices = new ArrayList<String>();
+    private boolean onDemand;
+    private List<String> warmupServices = new ArrayList<String>();
+    private int warmupIterations = 1000;
+    private boolean warmupBackground;
+    private boolean instrumented;
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Creates options from the given resource model.
+     *
+     * @param context
+     * @param model
+     * @return
+     * @throws OperationFailedException
+     */
+    static ProviderOptions resolve(OperationContext context, ModelNode model) throws OperationFailedException {
+        final ProviderOptions options = new ProviderOptions();
+        options.setAsyncStart(CommonAttributes.ASYNC_START.resolveModelAttribute(context, model).asBoolean());
+        final ModelNode startTimeout = CommonAttributes.START_TIMEOUT.resolveModelAttribute(context, model);
+        if (startTimeout.isDefined()) {
+            options.setStartTimeout(startTimeout.asLong());
+        }
+        final ModelNode position = CommonAttributes.POSITION.resolveModelAttribute(context, model);
+        if (position.isDefined()) {
+            options.setPosition(Integer.valueOf(position.asInt()));
+        }
+        options.setLazy(CommonAttributes.LAZY.resolveModelAttribute(context, model).asBoolean());
+        final ModelNode lazyServices = CommonAttributes.LAZY_SERVICES.resolveModelAttribute(context, model);
+        if (lazyServices.isDefined()) {
+            for (String service : lazyServices.asString().split(",")) {
+                if (service.trim().length() > 0) {
+                    options.getLazyServices().add(service.trim());
+                }
+            }
+        }
+        options.setOnDemand(CommonAttributes.ON_DEMAND.resolveModelAttribute(context, model).asBoolean());
+        final ModelNode warmupServices = CommonAttributes.WARMUP_SERVICES.resolveModelAttribute(context, model);
+        if (warmupServices.isDefined()) {
+            for (String service : warmupServices.asString().split(",")) {
+                if (service.trim().length() > 0) {
+                    options.getWarmupServices().add(service.trim());
+                }
+            }
+        }
+        options.setWarmupIterations(CommonAttributes.WARMUP_ITERATIONS.resolveModelAttribute(context, model).asInt());
+        options.setWarmupBackground(CommonAttributes.WARMUP_BACKGROUND.resolveModelAttribute(context, model).asBoolean());
+        return options;
+    }
+
+    /**
+     * Returns true if the provider should be started on the subsystem executor.
+     *
+     * @return
+     */
+    public boolean isAsyncStart() {
+        return asyncStart;
+    }
+
+    public void setAsyncStart(boolean asyncStart) {
+        this.asyncStart = asyncStart;
+    }
+
+    /**
+     * Returns maximal duration (milliseconds) of an asynchronous start, values less than 1 mean no limit.
+     *
+     * @return
+     */
+    public long getStartTimeout() {
+        return startTimeout;
+    }
+
+    public void setStartTimeout(long startTimeout) {
+        this.startTimeout = startTimeout;
+    }
+
+    /**
+     * Returns the preferred (1-based) position of the provider in the JCA provider list or <code>null</code> if the
+     * provider should be appended to the end of the list.
+     *
+     * @return
+     */
+    public Integer getPosition() {
+        return position;
+    }
+
+    public void setPosition(Integer position) {
+        this.position = position;
+    }
+
+    /**
+     * Returns true if a placeholder should be registered instead of the provider and the provider should be constructed on
+     * the first request for one of its services.
+     *
+     * @return
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Returns the services (in form <code>Type.Algorithm</code>) advertised by the placeholder in the lazy mode. If empty,
+     * the services of the previous provider start are used.
+     *
+     * @return
+     */
+    public List<String> getLazyServices() {
+        return lazyServices;
+    }
+
+    /**
+     * Returns true if the provider should be started only when a service which depends on it is started (e.g. a deployment
+     * which declares the provider).
+     *
+     * @return
+     */
+    public boolean isOnDemand() {
+        return onDemand;
+    }
+
+    public void setOnDemand(boolean onDemand) {
+        this.onDemand = onDemand;
+    }
+
+    /**
+     * Returns the services (in form <code>Type.Algorithm</code>) exercised on synthetic data when the provider is registered.
+     * If empty, the provider is not warmed up.
+     *
+     * @return
+     */
+    public List<String> getWarmupServices() {
+        return warmupServices;
+    }
+
+    /**
+     * Returns number of warm-up operations per service.
+     *
+     * @return
+     */
+    public int getWarmupIterations() {
+        return warmupIterations;
+    }
+
+    public void setWarmupIterations(int warmupIterations) {
+        this.warmupIterations = warmupIterations;
+    }
+
+    /**
+     * Returns true if the warm-up should run in the background after the provider service is started.
+     *
+     * @return
+     */
+    public boolean isWarmupBackground() {
+        return warmupBackground;
+    }
+
+    public void setWarmupBackground(boolean warmupBackground) {
+        this.warmupBackground = warmupBackground;
+    }
+
+    /**
+     * Returns true if an {@link InstrumentedProvider} wrapping the constructed provider should be registered, so the
+     * latencies of the provider operations are recorded.
+     *
+     * @return
+     */
+    public boolean isInstrumented() {
+        return instrumented;
+    }
+
+    public void setInstrumented(boolean instrumented) {
+        this.instrumented = instrumented;
+    }
+
+    /**
+     * Returns the initial mode of the provider service.
+     *
+     * @return {@link Mode#ON_DEMAND} if the provider is started on demand, {@link Mode#ACTIVE} otherwise
+     */
+    public Mode getInitialMode() {
+        return onDemand ? Mode.ON_DEMAND : Mode.ACTIVE;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.operations.validation.ModelTypeValidator;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.jboss.msc.service.ServiceName;
+
+/**
+ * Helper for attributes referencing a provider resource of this subsystem. The reference has the form of the resource path
+ * element - <code>sunpkcs11=&lt;name&gt;</code>, <code>sunpkcs11-group=&lt;name&gt;</code>,
+ * <code>hybrid-provider=&lt;name&gt;</code> or <code>simple-provider=&lt;class-name&gt;</code>.
+ *
+ * @author Josef Cacek
+ */
+final class ProviderReference {
+
+    /**
+     * Validator for (not nullable) attributes holding a provider reference.
+     */
+    static final ModelTypeValidator VALIDATOR = new ReferenceValidator(false);
+
+    /**
+     * Validator for optional attributes holding a provider reference.
+     */
+    static final ModelTypeValidator NULLABLE_VALIDATOR = new ReferenceValidator(true);
+
+    // Constructors ----------------------------------------------------------
+
+    private ProviderReference() {
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Returns name of the provider service referenced by the given value or <code>null</code> if the reference is not
+     * valid.
+     *
+     * @param reference
+     * @return
+     */
+    static ServiceName toServiceName(String reference) {
+        final int eq = reference == null ? -1 : reference.indexOf('=');
+        if (eq < 1 || eq == reference.length() - 1) {
+            return null;
+        }
+        final String type = reference.substring(0, eq).trim();
+        final String name = reference.substring(eq + 1).trim();
+        if (SecurityProvidersExtension.SUNPKCS11.equals(type)) {
+            return SunPKCS11Service.createServiceName(name);
+        } else if (SecurityProvidersExtension.SUNPKCS11_GROUP.equals(type)) {
+            return SunPKCS11GroupService.createServiceName(name);
+        } else if (SecurityProvidersExtension.SIMPLE_PROVIDER.equals(type)) {
+            return SimpleProviderService.createServiceName(name);
+        } else if (SecurityProvidersExtension.HYBRID_PROVIDER.equals(type)) {
+            return HybridProviderService.createServiceName(name);
+        }
+        return null;
+    }
+
+    /**
+     * Returns name of the provider service referenced by the given attribute value.
+     *
+     * @param reference
+     * @return
+     * @throws OperationFailedException if the reference is not valid
+     */
+    static ServiceName resolveServiceName(ModelNode reference) throws OperationFailedException {
+        final ServiceName serviceName = toServiceName(reference.asString());
+        if (serviceName == null) {
+            throw invalidReference(reference.asString());
+        }
+        return serviceName;
+    }
+
+    // Private methods -------------------------------------------------------
+
+    private static OperationFailedException invalidReference(String reference) {
+        final String message = "Invalid provider reference '" + reference + "', expected "
+                + SecurityProvidersExtension.SUNPKCS11 + "=<name>, " + SecurityProvidersExtension.SUNPKCS11_GROUP
+                + "=<name>, " + SecurityProvidersExtension.HYBRID_PROVIDER + "=<name> or "
+                + SecurityProvidersExtension.SIMPLE_PROVIDER + "=<class-name>";
+        return new OperationFailedException(message, new ModelNode().set(message));
+    }
+
+    // Embedded classes ------------------------------------------------------
+
+    /**
+     * Validates the provider reference format.
+     */
+    private static class ReferenceValidator extends ModelTypeValidator {
+
+        public ReferenceValidator(boolean nullable) {
+            super(ModelType.STRING, nullable, true);
+        }
+
+        @Override
+        public void validateParameter(String parameterName, ModelNode value) throws OperationFailedException {
+            super.validateParameter(parameterName, value);
+            if (value.isDefined() && value.getType() != ModelType.EXPRESSION && toServiceName(value.asString()) == null) {
+                throw invalidReference(value.asString());
+            }
+        }
+    }
+}
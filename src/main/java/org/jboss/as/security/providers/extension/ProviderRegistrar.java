@@ -0,0 +1,296 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.security.Provider;
+import java.security.Security;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Registers providers managed by this subsystem in the JCA provider list. All the changes of the list done by the subsystem
+ * go through this class, so the relative order of the managed providers follows their configured positions no matter in
+ * which order they are added or removed. Each change is reported as a
+ * {@link FlightRecorderEvents#PROVIDER_REGISTRATION} event while a flight recording is running.
+ *
+ * @author Josef Cacek
+ */
+final class ProviderRegistrar {
+
+    private static final Logger LOGGER = Logger.getLogger(ProviderRegistrar.class);
+
+    /** Configured positions of the registered managed providers (provider name -> position). */
+    private static final Map<String, Integer> POSITIONS = new HashMap<String, Integer>();
+
+    // Constructors ----------------------------------------------------------
+
+    private ProviderRegistrar() {
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Adds the provider to the JCA provider list. If the position is <code>null</code>, the provider is appended to the end
+     * of the list. Otherwise it's inserted to the given position, but never before a managed provider configured with a
+     * lower or equal position and never after a managed provider configured with a higher position.
+     *
+     * @param provider
+     * @param position preferred 1-based position or <code>null</code>
+     * @return the position where the provider was added or -1 if it was already installed
+     */
+    static synchronized int addProvider(final Provider provider, final Integer position) {
+        final Object event = FlightRecorderEvents.begin(FlightRecorderEvents.PROVIDER_REGISTRATION);
+        final int result;
+        try {
+            if (position == null) {
+                result = doPrivileged(new PrivilegedAction<Integer>() {
+                    public Integer run() {
+                        return Integer.valueOf(Security.addProvider(provider));
+                    }
+                });
+            } else {
+                final int index = computeIndex(position.intValue());
+                result = doPrivileged(new PrivilegedAction<Integer>() {
+                    public Integer run() {
+                        return Integer.valueOf(Security.insertProviderAt(provider, index));
+                    }
+                });
+            }
+        } catch (RuntimeException e) {
+            commitEvent(event, provider.getName(), "add", -1, e.toString());
+            throw e;
+        }
+        commitEvent(event, provider.getName(), "add", result, null);
+        if (result == -1) {
+            LOGGER.warn("Security provider " + provider.getName() + " is already installed.");
+        } else {
+            POSITIONS.put(provider.getName(), position);
+            LOGGER.debug("Security provider " + provider.getName() + " added at position " + result);
+        }
+        return result;
+    }
+
+    /**
+     * Removes the provider with given name from the JCA provider list.
+     *
+     * @param name
+     */
+    static synchronized void removeProvider(final String name) {
+        POSITIONS.remove(name);
+        final Object event = FlightRecorderEvents.begin(FlightRecorderEvents.PROVIDER_REGISTRATION);
+        try {
+            doPrivileged(new PrivilegedAction<Object>() {
+                public Object run() {
+                    Security.removeProvider(name);
+                    return null;
+                }
+            });
+        } catch (RuntimeException e) {
+            commitEvent(event, name, "remove", -1, e.toString());
+            throw e;
+        }
+        commitEvent(event, name, "remove", -1, null);
+    }
+
+    /**
+     * Replaces the installed provider with given name by a new provider at the same position of the JCA provider list. The
+     * configured position of the old provider is kept for the new one. If the providers have different names, the new
+     * provider is inserted before the old one is removed, so there is no moment when neither of them is installed.
+     * Otherwise the old provider has to be removed first and lookups done between the two list updates don't find the
+     * provider.
+     *
+     * @param oldName
+     * @param provider
+     * @return the position of the new provider or -1 if it couldn't be installed
+     */
+    static synchronized int replaceProvider(final String oldName, final Provider provider) {
+        final Integer configuredPosition = POSITIONS.get(oldName);
+        final int position = getPosition(oldName);
+        if (position == -1) {
+            return addProvider(provider, configuredPosition);
+        }
+        final boolean sameName = oldName.equals(provider.getName());
+        final Object event = FlightRecorderEvents.begin(FlightRecorderEvents.PROVIDER_REGISTRATION);
+        final int result;
+        try {
+            result = doPrivileged(new PrivilegedAction<Integer>() {
+                public Integer run() {
+                    if (sameName) {
+                        Security.removeProvider(oldName);
+                    }
+                    final int result = Security.insertProviderAt(provider, position);
+                    if (!sameName && result != -1) {
+                        Security.removeProvider(oldName);
+                    }
+                    return Integer.valueOf(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            commitEvent(event, provider.getName(), "replace", -1, e.toString());
+            throw e;
+        }
+        commitEvent(event, provider.getName(), "replace", result, null);
+        if (result == -1) {
+            if (sameName) {
+                POSITIONS.remove(oldName);
+            }
+            LOGGER.warn("Security provider " + provider.getName() + " is already installed.");
+        } else {
+            POSITIONS.remove(oldName);
+            POSITIONS.put(provider.getName(), configuredPosition);
+            LOGGER.debug("Security provider " + oldName + " replaced by " + provider.getName() + " at position " + result);
+        }
+        return result;
+    }
+
+    /**
+     * Moves the installed provider with given name right before the target provider in the JCA provider list, so it takes
+     * precedence in algorithm lookups. Nothing is done if the provider is already placed before the target. The configured
+     * position of the provider is kept, so {@link #restoreProvider(String)} can move it back.
+     *
+     * @param name
+     * @param targetName
+     * @return the new position of the provider or -1 if one of the providers is not installed
+     */
+    static synchronized int moveBefore(final String name, final String targetName) {
+        final int position = getPosition(name);
+        final int target = getPosition(targetName);
+        if (position == -1 || target == -1) {
+            return -1;
+        }
+        if (position < target) {
+            return position;
+        }
+        final Provider provider = Security.getProvider(name);
+        final int result = doPrivileged(new PrivilegedAction<Integer>() {
+            public Integer run() {
+                Security.removeProvider(name);
+                return Integer.valueOf(Security.insertProviderAt(provider, target));
+            }
+        });
+        LOGGER.debug("Security provider " + name + " moved before " + targetName + " to position " + result);
+        return result;
+    }
+
+    /**
+     * Moves the installed provider with given name back to the place given by its configured position (see
+     * {@link #addProvider(Provider, Integer)}). A provider without a configured position is moved to the end of the list.
+     *
+     * @param name
+     * @return the new position of the provider or -1 if it's not installed
+     */
+    static synchronized int restoreProvider(final String name) {
+        final Provider provider = Security.getProvider(name);
+        if (provider == null) {
+            return -1;
+        }
+        final Integer position = POSITIONS.get(name);
+        final int result = doPrivileged(new PrivilegedAction<Integer>() {
+            public Integer run() {
+                Security.removeProvider(name);
+                return Integer.valueOf(position == null ? Security.addProvider(provider) : Security.insertProviderAt(
+                        provider, computeIndex(position.intValue())));
+            }
+        });
+        LOGGER.debug("Security provider " + name + " restored at position " + result);
+        return result;
+    }
+
+    /**
+     * Returns the current (1-based) position of the provider with given name in the JCA provider list or -1 if it's not
+     * installed.
+     *
+     * @param name
+     * @return
+     */
+    static synchronized int getPosition(String name) {
+        final Provider[] providers = Security.getProviders();
+        for (int i = 0; i < providers.length; i++) {
+            if (providers[i].getName().equals(name)) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    // Private methods -------------------------------------------------------
+
+    /**
+     * Computes the index for {@link Security#insertProviderAt(Provider, int)} which respects the configured positions of the
+     * already registered managed providers.
+     *
+     * @param position
+     * @return
+     */
+    private static int computeIndex(int position) {
+        int index = position;
+        final Provider[] providers = Security.getProviders();
+        for (int i = 0; i < providers.length; i++) {
+            final Integer managedPosition = POSITIONS.get(providers[i].getName());
+            if (managedPosition == null) {
+                continue;
+            }
+            if (managedPosition.intValue() <= position) {
+                index = Math.max(index, i + 2);
+            } else {
+                index = Math.min(index, i + 1);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Commits the flight recorder event of a provider list change. A missing position of an added provider means it's
+     * already installed.
+     *
+     * @param event the event, may be <code>null</code>
+     * @param name provider name
+     * @param action
+     * @param position the new position of the provider or -1
+     * @param failure failure description or <code>null</code>
+     */
+    private static void commitEvent(Object event, String name, String action, int position, String failure) {
+        if (event == null) {
+            return;
+        }
+        final String eventFailure = failure == null && position == -1 && !"remove".equals(action) ? "Security provider "
+                + name + " is already installed" : failure;
+        FlightRecorderEvents.commit(event, name, action, Integer.valueOf(position), eventFailure);
+    }
+
+    /**
+     * Runs the action within a privileged block if a security manager is installed.
+     *
+     * @param action
+     * @return
+     */
+    private static <T> T doPrivileged(PrivilegedAction<T> action) {
+        if (System.getSecurityManager() != null) {
+            return AccessController.doPrivileged(action);
+        }
+        return action.run();
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Immutable index of services of a registered Java Security Provider. It maps (type, algorithm or alias) pairs to
+ * {@link Provider.Service} instances, so dependent services can look up the provider services (or create SPI instances)
+ * without walking the global JCA provider list. This is the value of the provider services installed by this subsystem.
+ *
+ * @author Josef Cacek
+ */
+public final class ProviderServiceIndex {
+
+    private static final String ALIAS_PREFIX = "Alg.Alias.";
+
+    private final Provider provider;
+    private final Map<String, Map<String, Provider.Service>> services;
+    private final int size;
+
+    // Constructors ----------------------------------------------------------
+
+    private ProviderServiceIndex(Provider provider, Map<String, Map<String, Provider.Service>> services, int size) {
+        this.provider = provider;
+        this.services = services;
+        this.size = size;
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Creates index of all services (including algorithm aliases) of the given provider.
+     *
+     * @param provider
+     * @return
+     */
+    public static ProviderServiceIndex create(Provider provider) {
+        final Map<String, Map<String, Provider.Service>> services = new HashMap<String, Map<String, Provider.Service>>();
+        int size = 0;
+        for (Provider.Service service : provider.getServices()) {
+            getTypeMap(services, service.getType()).put(toKey(service.getAlgorithm()), service);
+            size++;
+        }
+        for (Object key : provider.keySet().toArray()) {
+            if (!(key instanceof String) || !((String) key).startsWith(ALIAS_PREFIX)) {
+                continue;
+            }
+            final String typeAndAlias = ((String) key).substring(ALIAS_PREFIX.length());
+            final int dot = typeAndAlias.indexOf('.');
+            final Object algorithm = provider.get(key);
+            if (dot < 1 || !(algorithm instanceof String)) {
+                continue;
+            }
+            final Map<String, Provider.Service> typeMap = services.get(toKey(typeAndAlias.substring(0, dot)));
+            final Provider.Service service = typeMap == null ? null : typeMap.get(toKey((String) algorithm));
+            if (service != null) {
+                final String alias = toKey(typeAndAlias.substring(dot + 1));
+                if (!typeMap.containsKey(alias)) {
+                    typeMap.put(alias, service);
+                }
+            }
+        }
+        for (Map.Entry<String, Map<String, Provider.Service>> entry : services.entrySet()) {
+            entry.setValue(Collections.unmodifiableMap(entry.getValue()));
+        }
+        return new ProviderServiceIndex(provider, Collections.unmodifiableMap(services), size);
+    }
+
+    /**
+     * Returns the indexed provider.
+     *
+     * @return
+     */
+    public Provider getProvider() {
+        return provider;
+    }
+
+    /**
+     * Returns name of the indexed provider.
+     *
+     * @return
+     */
+    public String getProviderName() {
+        return provider.getName();
+    }
+
+    /**
+     * Returns the service for given type (e.g. "Cipher") and algorithm name or alias (case insensitive), or
+     * <code>null</code> if the provider doesn't support it.
+     *
+     * @param type
+     * @param algorithm
+     * @return
+     */
+    public Provider.Service getService(String type, String algorithm) {
+        final Map<String, Provider.Service> typeMap = services.get(toKey(type));
+        return typeMap == null ? null : typeMap.get(toKey(algorithm));
+    }
+
+    /**
+     * Creates a new SPI instance (e.g. {@link javax.crypto.CipherSpi}) for the given type and algorithm using
+     * {@link Provider.Service#newInstance(Object)}.
+     *
+     * @param type
+     * @param algorithm
+     * @param constructorParameter
+     * @return
+     * @throws NoSuchAlgorithmException if the provider doesn't support the algorithm or the instance can't be created
+     */
+    public Object newInstance(String type, String algorithm, Object constructorParameter) throws NoSuchAlgorithmException {
+        final Provider.Service service = getService(type, algorithm);
+        if (service == null) {
+            throw new NoSuchAlgorithmException(type + "." + algorithm + " is not supported by provider " + getProviderName());
+        }
+        return service.newInstance(constructorParameter);
+    }
+
+    /**
+     * Returns the service types supported by the provider (upper case).
+     *
+     * @return
+     */
+    public Set<String> getTypes() {
+        return services.keySet();
+    }
+
+    /**
+     * Returns the standard names of algorithms of the given type supported by the provider.
+     *
+     * @param type
+     * @return
+     */
+    public Set<String> getAlgorithms(String type) {
+        final Set<String> result = new TreeSet<String>();
+        final Map<String, Provider.Service> typeMap = services.get(toKey(type));
+        if (typeMap != null) {
+            for (Provider.Service service : typeMap.values()) {
+                result.add(service.getAlgorithm());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns number of services (without aliases) provided by the provider.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Returns keys of all the indexed services and aliases in form <code>TYPE.ALGORITHM</code> (upper case).
+     *
+     * @return
+     */
+    Set<String> getServiceKeys() {
+        final Set<String> result = new HashSet<String>();
+        for (Map.Entry<String, Map<String, Provider.Service>> entry : services.entrySet()) {
+            for (String algorithm : entry.getValue().keySet()) {
+                result.add(entry.getKey() + "." + algorithm);
+            }
+        }
+        return result;
+    }
+
+    // Private methods -------------------------------------------------------
+
+    private static Map<String, Provider.Service> getTypeMap(Map<String, Map<String, Provider.Service>> services, String type) {
+        final String key = toKey(type);
+        Map<String, Provider.Service> typeMap = services.get(key);
+        if (typeMap == null) {
+            typeMap = new HashMap<String, Provider.Service>();
+            services.put(key, typeMap);
+        }
+        return typeMap;
+    }
+
+    private static String toKey(String name) {
+        return name.toUpperCase(Locale.ENGLISH);
+    }
+}
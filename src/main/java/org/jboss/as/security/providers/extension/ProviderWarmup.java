@@ -0,0 +1,238 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Runs the configured operations of a provider on synthetic data, so the first real requests don't pay for the
+ * interpreted code, lazily built SPI tables or not yet opened token sessions. Each service (in form
+ * <code>Type.Algorithm</code>) is exercised the given number of times by the operation typical for its type - digest,
+ * MAC, encryption, signing and verification, key or random data generation. The keys are generated once per service.
+ * <p>
+ * A service which can't be warmed up is logged and skipped. The warm-up stops when the running thread is interrupted.
+ *
+ * @author Josef Cacek
+ */
+final class ProviderWarmup {
+
+    private static final Logger LOGGER = Logger.getLogger(ProviderWarmup.class);
+
+    private static final int DATA_SIZE = 1024;
+    private static final int ASYMMETRIC_DATA_SIZE = 32;
+
+    private final Provider provider;
+    private final List<String> services;
+    private final int iterations;
+    private final byte[] data = new byte[DATA_SIZE];
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new ProviderWarmup.
+     *
+     * @param provider the registered provider
+     * @param services services in form <code>Type.Algorithm</code>
+     * @param iterations number of operations per service
+     */
+    ProviderWarmup(Provider provider, List<String> services, int iterations) {
+        this.provider = provider;
+        this.services = services;
+        this.iterations = iterations;
+        new SecureRandom().nextBytes(data);
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Runs the warm-up operations of all the services.
+     *
+     * @return duration of the warm-up in milliseconds
+     */
+    long run() {
+        final long start = System.nanoTime();
+        for (String service : services) {
+            if (Thread.currentThread().isInterrupted()) {
+                LOGGER.debug("Warm-up of provider " + provider.getName() + " interrupted.");
+                break;
+            }
+            final int dot = service.indexOf('.');
+            if (dot < 1) {
+                LOGGER.warn("Invalid warm-up service " + service + " of provider " + provider.getName()
+                        + ", expected form is Type.Algorithm");
+                continue;
+            }
+            try {
+                warmUp(service.substring(0, dot), service.substring(dot + 1));
+            } catch (GeneralSecurityException e) {
+                LOGGER.warn("Warm-up of " + service + " in provider " + provider.getName() + " failed.", e);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Warm-up of " + service + " in provider " + provider.getName() + " failed.", e);
+            }
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    // Private methods -------------------------------------------------------
+
+    /**
+     * Runs the operations of a single service.
+     *
+     * @param type
+     * @param algorithm
+     * @throws GeneralSecurityException
+     */
+    private void warmUp(String type, String algorithm) throws GeneralSecurityException {
+        if ("MessageDigest".equalsIgnoreCase(type)) {
+            for (int i = 0; i < iterations; i++) {
+                MessageDigest.getInstance(algorithm, provider).digest(data);
+            }
+        } else if ("Mac".equalsIgnoreCase(type)) {
+            final SecretKey key = generateSecretKey(algorithm);
+            for (int i = 0; i < iterations; i++) {
+                final Mac mac = Mac.getInstance(algorithm, provider);
+                mac.init(key);
+                mac.doFinal(data);
+            }
+        } else if ("Cipher".equalsIgnoreCase(type)) {
+            warmUpCipher(algorithm);
+        } else if ("Signature".equalsIgnoreCase(type)) {
+            final KeyPair keyPair = generateKeyPair(getSignatureKeyAlgorithm(algorithm));
+            for (int i = 0; i < iterations; i++) {
+                final Signature signature = Signature.getInstance(algorithm, provider);
+                signature.initSign(keyPair.getPrivate());
+                signature.update(data);
+                final byte[] signed = signature.sign();
+                signature.initVerify(keyPair.getPublic());
+                signature.update(data);
+                signature.verify(signed);
+            }
+        } else if ("KeyGenerator".equalsIgnoreCase(type)) {
+            for (int i = 0; i < iterations; i++) {
+                KeyGenerator.getInstance(algorithm, provider).generateKey();
+            }
+        } else if ("KeyPairGenerator".equalsIgnoreCase(type)) {
+            for (int i = 0; i < iterations; i++) {
+                KeyPairGenerator.getInstance(algorithm, provider).generateKeyPair();
+            }
+        } else if ("SecureRandom".equalsIgnoreCase(type)) {
+            final SecureRandom random = SecureRandom.getInstance(algorithm, provider);
+            final byte[] bytes = new byte[ASYMMETRIC_DATA_SIZE];
+            for (int i = 0; i < iterations; i++) {
+                random.nextBytes(bytes);
+            }
+        } else {
+            throw new NoSuchAlgorithmException("Warm-up of " + type + " services is not supported");
+        }
+    }
+
+    /**
+     * Encrypts the synthetic data by the given transformation. A secret key is used if the key algorithm has a key
+     * generator, otherwise the public key of a generated key pair.
+     *
+     * @param transformation
+     * @throws GeneralSecurityException
+     */
+    private void warmUpCipher(String transformation) throws GeneralSecurityException {
+        final int slash = transformation.indexOf('/');
+        final String keyAlgorithm = slash < 0 ? transformation : transformation.substring(0, slash);
+        Key key;
+        byte[] input = data;
+        try {
+            key = generateSecretKey(keyAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            key = generateKeyPair(keyAlgorithm).getPublic();
+            input = new byte[ASYMMETRIC_DATA_SIZE];
+            System.arraycopy(data, 0, input, 0, input.length);
+        }
+        for (int i = 0; i < iterations; i++) {
+            final Cipher cipher = Cipher.getInstance(transformation, provider);
+            cipher.init(Cipher.ENCRYPT_MODE, key);
+            cipher.doFinal(input);
+        }
+    }
+
+    /**
+     * Generates a secret key by the warmed up provider or, if it doesn't support the algorithm, by any provider.
+     *
+     * @param algorithm
+     * @return
+     * @throws NoSuchAlgorithmException
+     */
+    private SecretKey generateSecretKey(String algorithm) throws NoSuchAlgorithmException {
+        try {
+            return KeyGenerator.getInstance(algorithm, provider).generateKey();
+        } catch (NoSuchAlgorithmException e) {
+            return KeyGenerator.getInstance(algorithm).generateKey();
+        }
+    }
+
+    /**
+     * Generates a key pair by the warmed up provider or, if it doesn't support the algorithm, by any provider.
+     *
+     * @param algorithm
+     * @return
+     * @throws NoSuchAlgorithmException
+     */
+    private KeyPair generateKeyPair(String algorithm) throws NoSuchAlgorithmException {
+        try {
+            return KeyPairGenerator.getInstance(algorithm, provider).generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            return KeyPairGenerator.getInstance(algorithm).generateKeyPair();
+        }
+    }
+
+    /**
+     * Returns the key algorithm of a signature algorithm, e.g. "RSA" for "SHA256withRSA" or "EC" for "SHA256withECDSA".
+     *
+     * @param algorithm
+     * @return
+     */
+    private static String getSignatureKeyAlgorithm(String algorithm) {
+        final int with = algorithm.toUpperCase(Locale.ENGLISH).indexOf("WITH");
+        String keyAlgorithm = with < 0 ? algorithm : algorithm.substring(with + 4);
+        final int and = keyAlgorithm.toUpperCase(Locale.ENGLISH).indexOf("AND");
+        if (and > 0) {
+            // e.g. SHA256withRSAandMGF1
+            keyAlgorithm = keyAlgorithm.substring(0, and);
+        }
+        return "ECDSA".equalsIgnoreCase(keyAlgorithm) ? "EC" : keyAlgorithm;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import org.jboss.as.controller.AbstractRuntimeOnlyHandler;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
+import org.jboss.dmr.ModelNode;
+import org.jboss.msc.service.ServiceController;
+
+/**
+ * Handler of the <code>sunpkcs11</code> operation which returns the slow provider operations recorded by the
+ * {@link SlowOperationLog} of the provider service. The result is undefined if the slow operations are not recorded.
+ *
+ * @author Josef Cacek
+ */
+class ReadSlowOperationsHandler extends AbstractRuntimeOnlyHandler {
+
+    public static final String OPERATION_NAME = "read-slow-operations";
+
+    public static final ReadSlowOperationsHandler INSTANCE = new ReadSlowOperationsHandler();
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Private ctor.
+     */
+    private ReadSlowOperationsHandler() {
+    }
+
+    // Protected methods -----------------------------------------------------
+
+    /**
+     * Sets the slow operations of the addressed provider as the operation result.
+     *
+     * @param context
+     * @param operation
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractRuntimeOnlyHandler#executeRuntimeStep(org.jboss.as.controller.OperationContext,
+     *      org.jboss.dmr.ModelNode)
+     */
+    @Override
+    protected void executeRuntimeStep(OperationContext context, ModelNode operation) throws OperationFailedException {
+        final String providerName = PathAddress.pathAddress(operation.get(ModelDescriptionConstants.OP_ADDR))
+                .getLastElement().getValue();
+        final ServiceController<?> controller = context.getServiceRegistry(false).getService(
+                SunPKCS11Service.createServiceName(providerName));
+        if (controller != null) {
+            setSlowOperations(context.getResult(), ((SunPKCS11Service) controller.getService()).getSlowOperations());
+        }
+        context.completeStep();
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Sets the entries of the given log as the result - a list with an object for each operation, the oldest first. The
+     * time is in milliseconds since the epoch, the duration in nanoseconds and the key size in bits (undefined if it's not
+     * known).
+     *
+     * @param result
+     * @param slowOperations the log, may be <code>null</code>
+     */
+    static void setSlowOperations(ModelNode result, SlowOperationLog slowOperations) {
+        if (slowOperations == null) {
+            return;
+        }
+        result.setEmptyList();
+        for (SlowOperationLog.Entry entry : slowOperations.getEntries()) {
+            final ModelNode node = new ModelNode();
+            node.get("time").set(entry.getTime());
+            node.get("operation").set(entry.getOperation());
+            if (entry.getKeySize() >= 0) {
+                node.get("key-size").set(entry.getKeySize());
+            }
+            node.get("duration").set(entry.getDuration());
+            node.get("thread").set(entry.getThreadName());
+            final ModelNode stack = node.get("stack").setEmptyList();
+            for (StackTraceElement frame : entry.getStack()) {
+                stack.add(frame.toString());
+            }
+            result.add(node);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import org.jboss.as.controller.AbstractRuntimeOnlyHandler;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.PathElement;
+import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
+import org.jboss.dmr.ModelNode;
+import org.jboss.msc.service.ServiceController;
+import org.jboss.msc.service.ServiceName;
+
+/**
+ * Handler of the <code>sunpkcs11</code> and <code>simple-provider</code> operation which clears the latency histograms
+ * recorded by an instrumented provider. Nothing is done if the provider is not registered or not instrumented.
+ *
+ * @author Josef Cacek
+ */
+class ResetLatencyHistogramsHandler extends AbstractRuntimeOnlyHandler {
+
+    public static final String OPERATION_NAME = "reset-latency-histograms";
+
+    public static final ResetLatencyHistogramsHandler INSTANCE = new ResetLatencyHistogramsHandler();
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Private ctor.
+     */
+    private ResetLatencyHistogramsHandler() {
+    }
+
+    // Protected methods -----------------------------------------------------
+
+    /**
+     * Resets the histograms of the provider registered by the addressed resource.
+     *
+     * @param context
+     * @param operation
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractRuntimeOnlyHandler#executeRuntimeStep(org.jboss.as.controller.OperationContext,
+     *      org.jboss.dmr.ModelNode)
+     */
+    @Override
+    protected void executeRuntimeStep(OperationContext context, ModelNode operation) throws OperationFailedException {
+        final PathElement element = PathAddress.pathAddress(operation.get(ModelDescriptionConstants.OP_ADDR))
+                .getLastElement();
+        final ServiceName serviceName = SecurityProvidersExtension.SIMPLE_PROVIDER.equals(element.getKey()) ?
+                SimpleProviderService.createServiceName(element.getValue()) : SunPKCS11Service.createServiceName(element
+                        .getValue());
+        final ServiceController<?> controller = context.getServiceRegistry(false).getService(serviceName);
+        if (controller != null && controller.getState() == ServiceController.State.UP) {
+            final InstrumentedProvider provider = ((AbstractProviderService) controller.getService())
+                    .getInstrumentedProvider();
+            if (provider != null) {
+                provider.resetHistograms();
+            }
+        }
+        context.completeStep();
+    }
+}
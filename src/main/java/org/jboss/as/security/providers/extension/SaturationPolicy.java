@@ -0,0 +1,45 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+/**
+ * Policies applied by {@link AsyncCrypto} when all its threads are busy and its queue is full.
+ *
+ * @author Josef Cacek
+ */
+public enum SaturationPolicy {
+
+    /**
+     * The operation is rejected with a {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    ABORT,
+
+    /**
+     * The operation runs in the calling thread, so the caller is slowed down by the token itself.
+     */
+    CALLER_RUNS,
+
+    /**
+     * The calling thread waits until there is a free place in the queue.
+     */
+    BLOCK
+}
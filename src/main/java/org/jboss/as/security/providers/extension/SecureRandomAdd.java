@@ -0,0 +1,111 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.List;
+
+import org.jboss.as.controller.AbstractAddStepHandler;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.ServiceVerificationHandler;
+import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
+import org.jboss.dmr.ModelNode;
+import org.jboss.msc.service.ServiceController;
+import org.jboss.msc.service.ServiceController.Mode;
+
+/**
+ * A handler for adding a secure random.
+ *
+ * @author Josef Cacek
+ */
+class SecureRandomAdd extends AbstractAddStepHandler {
+
+    public static final SecureRandomAdd INSTANCE = new SecureRandomAdd();
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Private ctor.
+     */
+    private SecureRandomAdd() {
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Model population.
+     *
+     * @param operation
+     * @param model
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractAddStepHandler#populateModel(org.jboss.dmr.ModelNode, org.jboss.dmr.ModelNode)
+     */
+    @Override
+    protected void populateModel(ModelNode operation, ModelNode model) throws OperationFailedException {
+        for (AttributeDefinition attribute : SecureRandomResourceDefinition.ATTRIBUTES) {
+            attribute.validateAndSet(operation, model);
+        }
+    }
+
+    /**
+     * Creates and registers {@link SecureRandomService} instance depending on the referenced provider service.
+     *
+     * @param context
+     * @param operation
+     * @param model
+     * @param verificationHandler
+     * @param newControllers
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractAddStepHandler#performRuntime(org.jboss.as.controller.OperationContext,
+     *      org.jboss.dmr.ModelNode, org.jboss.dmr.ModelNode, org.jboss.as.controller.ServiceVerificationHandler,
+     *      java.util.List)
+     */
+    @Override
+    protected void performRuntime(OperationContext context, ModelNode operation, ModelNode model,
+            ServiceVerificationHandler verificationHandler, List<ServiceController<?>> newControllers)
+            throws OperationFailedException {
+        final String randomName = PathAddress.pathAddress(operation.get(ModelDescriptionConstants.ADDRESS)).getLastElement()
+                .getValue();
+        final ModelNode provider = SecureRandomResourceDefinition.PROVIDER.resolveModelAttribute(context, model);
+        final ModelNode algorithm = SecureRandomResourceDefinition.ALGORITHM.resolveModelAttribute(context, model);
+        final ModelNode stripes = SecureRandomResourceDefinition.STRIPES.resolveModelAttribute(context, model);
+        final int bufferSize = SecureRandomResourceDefinition.BUFFER_SIZE.resolveModelAttribute(context, model).asInt();
+        final ModelNode threshold = SecureRandomResourceDefinition.REFILL_THRESHOLD.resolveModelAttribute(context, model);
+        final int refillThreshold = threshold.isDefined() ? threshold.asInt() : bufferSize / 2;
+        if (refillThreshold > bufferSize) {
+            final String message = "The refill-threshold (" + refillThreshold + ") of secure random " + randomName
+                    + " is greater than its buffer-size (" + bufferSize + ")";
+            throw new OperationFailedException(message, new ModelNode().set(message));
+        }
+        final SecureRandomService service = new SecureRandomService(randomName, algorithm.isDefined() ? algorithm.asString()
+                : null, stripes.isDefined() ? stripes.asInt() : Runtime.getRuntime().availableProcessors(), bufferSize,
+                refillThreshold);
+        ServiceController<StripedSecureRandom> controller = context.getServiceTarget()
+                .addService(SecureRandomService.createServiceName(randomName), service)
+                .addDependency(ProviderReference.resolveServiceName(provider), ProviderServiceIndex.class,
+                        service.getProviderIndexInjector()).addListener(verificationHandler).setInitialMode(Mode.ACTIVE)
+                .install();
+        newControllers.add(controller);
+    }
+}
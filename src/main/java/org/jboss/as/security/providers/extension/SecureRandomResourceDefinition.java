@@ -0,0 +1,108 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.SimpleResourceDefinition;
+import org.jboss.as.controller.client.helpers.MeasurementUnit;
+import org.jboss.as.controller.operations.validation.IntRangeValidator;
+import org.jboss.as.controller.registry.ManagementResourceRegistration;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+
+/**
+ * A ResourceDefinition for striped (and optionally prefetching) SecureRandom generators of a provider registered by this
+ * subsystem.
+ *
+ * @author Josef Cacek
+ */
+public class SecureRandomResourceDefinition extends SimpleResourceDefinition {
+
+    /** Reference to the provider resource - <code>sunpkcs11=&lt;name&gt;</code> or <code>simple-provider=&lt;class&gt;</code>. */
+    static final SimpleAttributeDefinition PROVIDER = new SimpleAttributeDefinitionBuilder("provider", ModelType.STRING, false)
+            .setAllowExpression(true).setValidator(ProviderReference.VALIDATOR).build();
+
+    /** SecureRandom algorithm, undefined means the first SecureRandom service of the provider. */
+    static final SimpleAttributeDefinition ALGORITHM = new SimpleAttributeDefinitionBuilder("algorithm", ModelType.STRING,
+            true).setAllowExpression(true).build();
+
+    /** Number of stripes, undefined means one stripe per available processor. */
+    static final SimpleAttributeDefinition STRIPES = new SimpleAttributeDefinitionBuilder("stripes", ModelType.INT, true)
+            .setAllowExpression(true).setValidator(new IntRangeValidator(1, true, true)).build();
+
+    /** Size of the prefetch buffer of a stripe, zero disables the prefetching. */
+    static final SimpleAttributeDefinition BUFFER_SIZE = new SimpleAttributeDefinitionBuilder("buffer-size", ModelType.INT,
+            true).setDefaultValue(new ModelNode(0)).setAllowExpression(true).setMeasurementUnit(MeasurementUnit.BYTES)
+            .setValidator(new IntRangeValidator(0, true, true)).build();
+
+    /** Number of available bytes below which a stripe buffer is refilled, undefined means half of the buffer size. */
+    static final SimpleAttributeDefinition REFILL_THRESHOLD = new SimpleAttributeDefinitionBuilder("refill-threshold",
+            ModelType.INT, true).setAllowExpression(true).setMeasurementUnit(MeasurementUnit.BYTES)
+            .setValidator(new IntRangeValidator(0, true, true)).build();
+
+    /**
+     * Configuration attributes, in the order they are marshalled to XML.
+     */
+    static final SimpleAttributeDefinition[] ATTRIBUTES = { PROVIDER, ALGORITHM, STRIPES, BUFFER_SIZE, REFILL_THRESHOLD };
+
+    static final SimpleAttributeDefinition CONSUMED_BYTES = new SimpleAttributeDefinitionBuilder("consumed-bytes",
+            ModelType.LONG, true).setStorageRuntime().setMeasurementUnit(MeasurementUnit.BYTES).build();
+
+    static final SimpleAttributeDefinition REFILL_COUNT = new SimpleAttributeDefinitionBuilder("refill-count", ModelType.LONG,
+            true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition DIRECT_COUNT = new SimpleAttributeDefinitionBuilder("direct-count", ModelType.LONG,
+            true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition AVAILABLE_BYTES = new SimpleAttributeDefinitionBuilder("available-bytes",
+            ModelType.INT, true).setStorageRuntime().setMeasurementUnit(MeasurementUnit.BYTES).build();
+
+    static final SimpleAttributeDefinition[] METRICS = { CONSUMED_BYTES, REFILL_COUNT, DIRECT_COUNT, AVAILABLE_BYTES };
+
+    // Constructors ----------------------------------------------------------
+
+    SecureRandomResourceDefinition() {
+        super(SecurityProvidersExtension.SECURE_RANDOM_PATH, SecurityProvidersExtension
+                .getResourceDescriptionResolver(SecurityProvidersExtension.SECURE_RANDOM), SecureRandomAdd.INSTANCE,
+                SecureRandomRemove.INSTANCE);
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Registers the configuration attributes and the buffer metrics.
+     *
+     * @param resourceRegistration
+     * @see org.jboss.as.controller.SimpleResourceDefinition#registerAttributes(org.jboss.as.controller.registry.ManagementResourceRegistration)
+     */
+    @Override
+    public void registerAttributes(ManagementResourceRegistration resourceRegistration) {
+        for (AttributeDefinition attribute : ATTRIBUTES) {
+            resourceRegistration.registerReadOnlyAttribute(attribute, null);
+        }
+        for (AttributeDefinition metric : METRICS) {
+            resourceRegistration.registerMetric(metric, SecureRandomMetricsHandler.INSTANCE);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.util.concurrent.ExecutorService;
+
+import org.jboss.logging.Logger;
+import org.jboss.msc.inject.Injector;
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
+import org.jboss.msc.value.InjectedValue;
+
+/**
+ * The SecureRandomService provides a {@link StripedSecureRandom} backed by a provider registered by this subsystem.
+ *
+ * @author Josef Cacek
+ */
+public class SecureRandomService implements Service<StripedSecureRandom> {
+
+    private static final Logger LOGGER = Logger.getLogger(SecureRandomService.class);
+
+    private static final String SERVICE_TYPE = "SecureRandom";
+
+    private final InjectedValue<ProviderServiceIndex> providerIndex = new InjectedValue<ProviderServiceIndex>();
+
+    private final String name;
+    private final String algorithm;
+    private final int stripes;
+    private final int bufferSize;
+    private final int refillThreshold;
+
+    private volatile StripedSecureRandom random;
+    private volatile ExecutorService refillExecutor;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new SecureRandomService.
+     *
+     * @param name
+     * @param algorithm SecureRandom algorithm or <code>null</code> for the first SecureRandom service of the provider
+     * @param stripes
+     * @param bufferSize
+     * @param refillThreshold
+     */
+    public SecureRandomService(String name, String algorithm, int stripes, int bufferSize, int refillThreshold) {
+        this.name = name;
+        this.algorithm = algorithm;
+        this.stripes = stripes;
+        this.bufferSize = bufferSize;
+        this.refillThreshold = refillThreshold;
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Returns the striped random.
+     *
+     * @return
+     * @throws IllegalStateException
+     * @throws IllegalArgumentException
+     * @see org.jboss.msc.value.Value#getValue()
+     */
+    public StripedSecureRandom getValue() throws IllegalStateException, IllegalArgumentException {
+        final StripedSecureRandom value = random;
+        if (value == null) {
+            throw new IllegalStateException("Secure random " + name + " is not started");
+        }
+        return value;
+    }
+
+    /**
+     * Creates the generators and schedules the initial fill of their buffers. The buffers are refilled on threads owned by
+     * this service (at most one per stripe), so slow token calls don't hold the threads shared by the subsystem services.
+     *
+     * @param context
+     * @throws StartException
+     * @see org.jboss.msc.service.Service#start(org.jboss.msc.service.StartContext)
+     */
+    public void start(StartContext context) throws StartException {
+        final ProviderServiceIndex index = providerIndex.getValue();
+        final String resolvedAlgorithm = algorithm != null ? algorithm : getDefaultAlgorithm(index.getProvider());
+        if (resolvedAlgorithm == null || index.getService(SERVICE_TYPE, resolvedAlgorithm) == null) {
+            throw new StartException(SERVICE_TYPE + "." + (algorithm != null ? algorithm : "*")
+                    + " is not supported by provider " + index.getProviderName());
+        }
+        LOGGER.debug("Starting secure random " + name + " for " + SERVICE_TYPE + "." + resolvedAlgorithm + " ("
+                + index.getProviderName() + ")");
+        final ExecutorService newRefillExecutor = SecurityProvidersExecutorService.newBoundedExecutor(stripes,
+                "security-providers-random-" + name + "-");
+        final StripedSecureRandom newRandom;
+        try {
+            newRandom = new StripedSecureRandom(resolvedAlgorithm, index.getProvider(), stripes, bufferSize,
+                    refillThreshold, newRefillExecutor);
+        } catch (GeneralSecurityException e) {
+            newRefillExecutor.shutdown();
+            throw new StartException("Unable to create " + SERVICE_TYPE + "." + resolvedAlgorithm, e);
+        }
+        newRandom.prefetch();
+        refillExecutor = newRefillExecutor;
+        random = newRandom;
+    }
+
+    /**
+     * Stops the buffer refills, wipes the buffers and shuts down the refill threads.
+     *
+     * @param context
+     * @see org.jboss.msc.service.Service#stop(org.jboss.msc.service.StopContext)
+     */
+    public void stop(StopContext context) {
+        LOGGER.debug("Stopping secure random " + name);
+        random.close();
+        random = null;
+        refillExecutor.shutdown();
+        refillExecutor = null;
+    }
+
+    /**
+     * Returns injector for the index of the provider of the generators.
+     *
+     * @return
+     */
+    public Injector<ProviderServiceIndex> getProviderIndexInjector() {
+        return providerIndex;
+    }
+
+    /**
+     * Creates a service name for the given secure random name.
+     *
+     * @param randomName
+     * @return
+     */
+    public static ServiceName createServiceName(final String randomName) {
+        return ServiceName.JBOSS.append("security-providers", "secure-random", randomName);
+    }
+
+    // Private methods -------------------------------------------------------
+
+    /**
+     * Returns the algorithm of the first SecureRandom service registered by the provider (i.e. the one preferred by
+     * <code>new SecureRandom()</code>) or <code>null</code> if there is none.
+     *
+     * @param provider
+     * @return
+     */
+    private static String getDefaultAlgorithm(Provider provider) {
+        for (Provider.Service service : provider.getServices()) {
+            if (SERVICE_TYPE.equals(service.getType())) {
+                return service.getAlgorithm();
+            }
+        }
+        return null;
+    }
+}
@@ -21,11 +21,10 @@
  */
 package org.jboss.as.security.providers.extension;
 
-import org.jboss.as.controller.AbstractAddStepHandler;
-import org.jboss.as.controller.AbstractRemoveStepHandler;
-import org.jboss.as.controller.OperationFailedException;
 import org.jboss.as.controller.SimpleResourceDefinition;
-import org.jboss.dmr.ModelNode;
+import org.jboss.as.controller.descriptions.DefaultOperationDescriptionProvider;
+import org.jboss.as.controller.registry.ManagementResourceRegistration;
+import org.jboss.dmr.ModelType;
 import org.jboss.logging.Logger;
 
 /**
@@ -46,13 +45,23 @@ public class SecuritProvidersDefinition extends SimpleResourceDefinition {
      */
     private SecuritProvidersDefinition() {
         super(SecurityProvidersExtension.SUBSYSTEM_PATH, SecurityProvidersExtension.getResourceDescriptionResolver(null),
-                new AbstractAddStepHandler() {
-                    @Override
-                    protected void populateModel(ModelNode operation, ModelNode model) throws OperationFailedException {
-                        model.setEmptyObject();
-                    }
-                }, new AbstractRemoveStepHandler() {
-                });
+                SecurityProvidersSubsystemAdd.INSTANCE, SecurityProvidersSubsystemRemove.INSTANCE);
         LOGGER.debug("Creating SecuritProvidersDefinition.");
     }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Registers the add and remove operations and the subsystem runtime operations.
+     * 
+     * @param resourceRegistration
+     * @see org.jboss.as.controller.SimpleResourceDefinition#registerOperations(org.jboss.as.controller.registry.ManagementResourceRegistration)
+     */
+    @Override
+    public void registerOperations(ManagementResourceRegistration resourceRegistration) {
+        super.registerOperations(resourceRegistration);
+        resourceRegistration.registerOperationHandler(EvictProviderCacheHandler.OPERATION_NAME,
+                EvictProviderCacheHandler.INSTANCE, new DefaultOperationDescriptionProvider(
+                        EvictProviderCacheHandler.OPERATION_NAME, getResourceDescriptionResolver(), ModelType.INT));
+    }
 }
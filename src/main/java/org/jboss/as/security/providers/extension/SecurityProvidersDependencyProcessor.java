@@ -0,0 +1,137 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.Manifest;
+
+import org.jboss.as.server.deployment.Attachments;
+import org.jboss.as.server.deployment.DeploymentPhaseContext;
+import org.jboss.as.server.deployment.DeploymentUnit;
+import org.jboss.as.server.deployment.DeploymentUnitProcessingException;
+import org.jboss.as.server.deployment.DeploymentUnitProcessor;
+import org.jboss.logging.Logger;
+import org.jboss.msc.service.ServiceName;
+
+/**
+ * Deployment unit processor which makes the deployments depend on the providers they declare in the
+ * <code>Security-Providers</code> manifest attribute. The attribute holds a comma separated list of provider resources in
+ * form <code>type=name</code>, e.g.:
+ *
+ * <pre>
+ * Security-Providers: sunpkcs11=NSS, simple-provider=org.bouncycastle.jce.provider.BouncyCastleProvider
+ * </pre>
+ *
+ * The provider services are added as dependencies of the next deployment phase, so the on-demand providers (see
+ * {@link CommonAttributes#ON_DEMAND}) are started before the deployment is installed and the deployment fails if a declared
+ * provider is not available.
+ *
+ * @author Josef Cacek
+ */
+class SecurityProvidersDependencyProcessor implements DeploymentUnitProcessor {
+
+    /**
+     * Name of the manifest attribute which lists the providers needed by the deployment.
+     */
+    public static final String MANIFEST_ATTRIBUTE = "Security-Providers";
+
+    /**
+     * Priority of the processor in the {@link org.jboss.as.server.deployment.Phase#DEPENDENCIES} phase.
+     */
+    public static final int PRIORITY = 0x0C60;
+
+    private static final Logger LOGGER = Logger.getLogger(SecurityProvidersDependencyProcessor.class);
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Adds dependencies on the providers declared in the deployment manifest.
+     *
+     * @param phaseContext
+     * @throws DeploymentUnitProcessingException
+     * @see org.jboss.as.server.deployment.DeploymentUnitProcessor#deploy(org.jboss.as.server.deployment.DeploymentPhaseContext)
+     */
+    public void deploy(DeploymentPhaseContext phaseContext) throws DeploymentUnitProcessingException {
+        final DeploymentUnit deploymentUnit = phaseContext.getDeploymentUnit();
+        final Manifest manifest = deploymentUnit.getAttachment(Attachments.MANIFEST);
+        if (manifest == null) {
+            return;
+        }
+        final String providers = manifest.getMainAttributes().getValue(MANIFEST_ATTRIBUTE);
+        if (providers == null) {
+            return;
+        }
+        for (ServiceName serviceName : parseProviders(providers)) {
+            LOGGER.debug("Deployment " + deploymentUnit.getName() + " depends on " + serviceName);
+            phaseContext.addToAttachmentList(Attachments.NEXT_PHASE_DEPS, serviceName);
+        }
+    }
+
+    /**
+     * Nothing to undeploy, the dependencies are removed together with the deployment phase services.
+     *
+     * @param context
+     * @see org.jboss.as.server.deployment.DeploymentUnitProcessor#undeploy(org.jboss.as.server.deployment.DeploymentUnit)
+     */
+    public void undeploy(DeploymentUnit context) {
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Converts the value of the {@value #MANIFEST_ATTRIBUTE} manifest attribute to the names of the provider services.
+     *
+     * @param providers comma separated list of provider resources in form <code>type=name</code>
+     * @return
+     * @throws DeploymentUnitProcessingException if an item is not a reference to a provider resource
+     */
+    static List<ServiceName> parseProviders(String providers) throws DeploymentUnitProcessingException {
+        final List<ServiceName> result = new ArrayList<ServiceName>();
+        for (String item : providers.split(",")) {
+            item = item.trim();
+            if (item.length() == 0) {
+                continue;
+            }
+            final int eq = item.indexOf('=');
+            final String type = eq < 0 ? "" : item.substring(0, eq).trim();
+            final String name = eq < 0 ? "" : item.substring(eq + 1).trim();
+            if (name.length() == 0) {
+                throw new DeploymentUnitProcessingException("Invalid " + MANIFEST_ATTRIBUTE + " item '" + item
+                        + "', expected form is type=name");
+            }
+            if (SecurityProvidersExtension.SUNPKCS11.equals(type)) {
+                result.add(SunPKCS11Service.createServiceName(name));
+            } else if (SecurityProvidersExtension.SIMPLE_PROVIDER.equals(type)) {
+                result.add(SimpleProviderService.createServiceName(name));
+            } else if (SecurityProvidersExtension.SUNPKCS11_GROUP.equals(type)) {
+                result.add(SunPKCS11GroupService.createServiceName(name));
+            } else if (SecurityProvidersExtension.HYBRID_PROVIDER.equals(type)) {
+                result.add(HybridProviderService.createServiceName(name));
+            } else {
+                throw new DeploymentUnitProcessingException("Unknown provider type '" + type + "' in " + MANIFEST_ATTRIBUTE
+                        + " item '" + item + "'");
+            }
+        }
+        return result;
+    }
+}
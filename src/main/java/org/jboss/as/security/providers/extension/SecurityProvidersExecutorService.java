@@ -0,0 +1,182 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.logging.Logger;
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
+
+/**
+ * The SecurityProvidersExecutorService provides a bounded scheduled executor shared by the services of this subsystem (e.g.
+ * for asynchronous provider start). The subsystem installs a second, single-threaded instance as the timer (see
+ * {@link #TIMER_SERVICE_NAME}), which only runs short non-blocking tasks like start timeouts, so they fire even when all the
+ * executor threads are blocked by providers hanging in their initialization.
+ *
+ * @author Josef Cacek
+ */
+public class SecurityProvidersExecutorService implements Service<ScheduledExecutorService> {
+
+    public static final ServiceName SERVICE_NAME = ServiceName.JBOSS.append("security-providers", "executor");
+
+    public static final ServiceName TIMER_SERVICE_NAME = ServiceName.JBOSS.append("security-providers", "timer");
+
+    private static final Logger LOGGER = Logger.getLogger(SecurityProvidersExecutorService.class);
+
+    private final int poolSize;
+    private final String threadNamePrefix;
+    private volatile ScheduledExecutorService executor;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new SecurityProvidersExecutorService with one thread per available processor.
+     */
+    public SecurityProvidersExecutorService() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a new SecurityProvidersExecutorService.
+     *
+     * @param poolSize maximal number of threads
+     */
+    public SecurityProvidersExecutorService(int poolSize) {
+        this(poolSize, "security-providers-");
+    }
+
+    /**
+     * Create a new SecurityProvidersExecutorService.
+     *
+     * @param poolSize maximal number of threads
+     * @param threadNamePrefix prefix of the thread names
+     */
+    public SecurityProvidersExecutorService(int poolSize, String threadNamePrefix) {
+        this.poolSize = poolSize;
+        this.threadNamePrefix = threadNamePrefix;
+    }
+
+    /**
+     * Creates the single-threaded timer service.
+     *
+     * @return
+     */
+    public static SecurityProvidersExecutorService createTimer() {
+        return new SecurityProvidersExecutorService(1, "security-providers-timer-");
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Returns the executor.
+     *
+     * @return
+     * @throws IllegalStateException
+     * @throws IllegalArgumentException
+     * @see org.jboss.msc.value.Value#getValue()
+     */
+    public ScheduledExecutorService getValue() throws IllegalStateException, IllegalArgumentException {
+        final ScheduledExecutorService value = executor;
+        if (value == null) {
+            throw new IllegalStateException("Executor is not started");
+        }
+        return value;
+    }
+
+    /**
+     * Creates the executor.
+     *
+     * @param context
+     * @throws StartException
+     * @see org.jboss.msc.service.Service#start(org.jboss.msc.service.StartContext)
+     */
+    public void start(StartContext context) throws StartException {
+        LOGGER.debug("Starting security providers executor with " + poolSize + " threads");
+        executor = new ScheduledThreadPoolExecutor(poolSize, new DaemonThreadFactory(threadNamePrefix));
+    }
+
+    /**
+     * Shuts down the executor.
+     *
+     * @param context
+     * @see org.jboss.msc.service.Service#stop(org.jboss.msc.service.StopContext)
+     */
+    public void stop(StopContext context) {
+        LOGGER.debug("Stopping security providers executor");
+        executor.shutdownNow();
+        executor = null;
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Creates an executor with at most the given number of daemon threads for the blocking work of a single service (e.g.
+     * token calls), so it doesn't hold the threads of the shared executor. Idle threads terminate after a minute.
+     *
+     * @param threads maximal number of threads
+     * @param threadNamePrefix prefix of the thread names
+     * @return
+     */
+    static ExecutorService newBoundedExecutor(int threads, String threadNamePrefix) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory(threadNamePrefix));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    // Embedded classes ------------------------------------------------------
+
+    /**
+     * Creates named daemon threads.
+     */
+    static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+        private final String prefix;
+
+        /**
+         * Create a new DaemonThreadFactory.
+         *
+         * @param prefix prefix of the thread names, a sequence number is appended to it
+         */
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
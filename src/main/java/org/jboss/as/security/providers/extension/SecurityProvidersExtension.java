@@ -23,6 +23,7 @@ package org.jboss.as.security.providers.extension;
 
 import static org.jboss.as.controller.descriptions.ModelDescriptionConstants.*;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -37,7 +38,7 @@ import org.jboss.as.controller.Extension;
 import org.jboss.as.controller.ExtensionContext;
 import org.jboss.as.controller.PathAddress;
 import org.jboss.as.controller.PathElement;
-import org.jboss.as.controller.SimpleResourceDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinition;
 import org.jboss.as.controller.SubsystemRegistration;
 import org.jboss.as.controller.descriptions.ResourceDescriptionResolver;
 import org.jboss.as.controller.descriptions.StandardResourceDescriptionResolver;
@@ -64,7 +65,13 @@ public class SecurityProvidersExtension implements Extension {
     /**
      * The name space used for the {@code substystem} element
      */
-    public static final String NAMESPACE = "urn:jboss:domain:security-providers:1.0";
+    public static final String NAMESPACE = "urn:jboss:domain:security-providers:1.1";
+
+    /**
+     * The name space of the original {@code substystem} schema, which only knows the {@code provider-class} and
+     * {@code sunpkcs11} elements
+     */
+    public static final String NAMESPACE_1_0 = "urn:jboss:domain:security-providers:1.0";
 
     /**
      * The name of our subsystem within the model.
@@ -79,7 +86,12 @@ public class SecurityProvidersExtension implements Extension {
     /**
      * The parser used for parsing our subsystem
      */
-    private final SubsystemParser parser = new SubsystemParser();
+    private final SubsystemParser parser = new SubsystemParser(NAMESPACE);
+
+    /**
+     * The parser used for parsing configurations in the 1.0 name space
+     */
+    private final SubsystemParser parser10 = new SubsystemParser(NAMESPACE_1_0);
 
     protected static final PathElement SUBSYSTEM_PATH = PathElement.pathElement(SUBSYSTEM, SUBSYSTEM_NAME);
 
@@ -97,6 +109,41 @@ public class SecurityProvidersExtension implements Extension {
 
     public static final PathElement SIMPLE_PROVIDER_PATH = PathElement.pathElement(SIMPLE_PROVIDER);
 
+    /** Model node name with SunPKCS11 provider group configuration */
+    public static final String SUNPKCS11_GROUP = "sunpkcs11-group";
+
+    public static final PathElement SUNPKCS11_GROUP_PATH = PathElement.pathElement(SUNPKCS11_GROUP);
+
+    /** Model node name with hybrid (hardware/software routing) provider configuration */
+    public static final String HYBRID_PROVIDER = "hybrid-provider";
+
+    public static final PathElement HYBRID_PROVIDER_PATH = PathElement.pathElement(HYBRID_PROVIDER);
+
+    /** Model node name with SunPKCS11 keystore configuration (child of sunpkcs11) */
+    public static final String KEYSTORE = "keystore";
+
+    public static final PathElement KEYSTORE_PATH = PathElement.pathElement(KEYSTORE);
+
+    /** Model node name with crypto pool configuration */
+    public static final String CRYPTO_POOL = "crypto-pool";
+
+    public static final PathElement CRYPTO_POOL_PATH = PathElement.pathElement(CRYPTO_POOL);
+
+    /** Model node name with striped SecureRandom configuration */
+    public static final String SECURE_RANDOM = "secure-random";
+
+    public static final PathElement SECURE_RANDOM_PATH = PathElement.pathElement(SECURE_RANDOM);
+
+    /** Model node name with key pair pool configuration */
+    public static final String KEYPAIR_POOL = "keypair-pool";
+
+    public static final PathElement KEYPAIR_POOL_PATH = PathElement.pathElement(KEYPAIR_POOL);
+
+    /** Model node name with batched signing pipeline configuration */
+    public static final String SIGNING_PIPELINE = "signing-pipeline";
+
+    public static final PathElement SIGNING_PIPELINE_PATH = PathElement.pathElement(SIGNING_PIPELINE);
+
     // Public methods --------------------------------------------------------
 
     /**
@@ -108,6 +155,7 @@ public class SecurityProvidersExtension implements Extension {
     @Override
     public void initializeParsers(ExtensionParsingContext context) {
         context.setSubsystemXmlMapping(SUBSYSTEM_NAME, NAMESPACE, parser);
+        context.setSubsystemXmlMapping(SUBSYSTEM_NAME, NAMESPACE_1_0, parser10);
     }
 
     /**
@@ -118,15 +166,19 @@ public class SecurityProvidersExtension implements Extension {
      */
     @Override
     public void initialize(ExtensionContext context) {
-        final SubsystemRegistration subsystem = context.registerSubsystem(SUBSYSTEM_NAME, 1, 0);
+        final SubsystemRegistration subsystem = context.registerSubsystem(SUBSYSTEM_NAME, 1, 1);
         final ManagementResourceRegistration registration = subsystem
                 .registerSubsystemModel(SecuritProvidersDefinition.INSTANCE);
         registration.registerOperationHandler(DESCRIBE, GenericSubsystemDescribeHandler.INSTANCE,
                 GenericSubsystemDescribeHandler.INSTANCE, false, OperationEntry.EntryType.PRIVATE);
-        registration.registerSubModel(new SimpleResourceDefinition(SecurityProvidersExtension.SIMPLE_PROVIDER_PATH,
-                SecurityProvidersExtension.getResourceDescriptionResolver(SecurityProvidersExtension.SIMPLE_PROVIDER),
-                SimpleProviderAdd.INSTANCE, SimpleProviderRemove.INSTANCE));
+        registration.registerSubModel(new SimpleProviderResourceDefinition());
         registration.registerSubModel(new SunPKCS11ResourceDefinition());
+        registration.registerSubModel(new SunPKCS11GroupResourceDefinition());
+        registration.registerSubModel(new HybridProviderResourceDefinition());
+        registration.registerSubModel(new CryptoPoolResourceDefinition());
+        registration.registerSubModel(new SecureRandomResourceDefinition());
+        registration.registerSubModel(new KeyPairPoolResourceDefinition());
+        registration.registerSubModel(new SigningPipelineResourceDefinition());
 
         subsystem.registerXMLElementWriter(parser);
     }
@@ -162,19 +214,48 @@ public class SecurityProvidersExtension implements Extension {
     // Embedded classes ------------------------------------------------------
 
     /**
-     * The subsystem parser, which uses STAX to read and write to and from XML.
+     * The subsystem parser, which uses STAX to read and write to and from XML. The parser reads the name space it was
+     * created for, the content is always written in the current {@link SecurityProvidersExtension#NAMESPACE}.
      */
-    private static class SubsystemParser implements XMLStreamConstants, XMLElementReader<List<ModelNode>>,
+    static class SubsystemParser implements XMLStreamConstants, XMLElementReader<List<ModelNode>>,
             XMLElementWriter<SubsystemMarshallingContext> {
 
         private static final String EL_SECURITY_PROVIDERS = "security-providers";
         private static final String EL_PROVIDER_CLASS = "provider-class";
         private static final String EL_SUNPKCS11 = "sunpkcs11";
         private static final String AT_SUNPKCS11_NAME = "name";
+        private static final String EL_SUNPKCS11_GROUP = "sunpkcs11-group";
+        private static final String EL_HYBRID_PROVIDER = "hybrid-provider";
+        private static final String AT_HYBRID_PROVIDER_NAME = "name";
+        private static final String EL_CRYPTO_POOL = "crypto-pool";
+        private static final String AT_CRYPTO_POOL_NAME = "name";
+        private static final String EL_SECURE_RANDOM = "secure-random";
+        private static final String AT_SECURE_RANDOM_NAME = "name";
+        private static final String EL_KEYPAIR_POOL = "keypair-pool";
+        private static final String AT_KEYPAIR_POOL_NAME = "name";
+        private static final String EL_SIGNING_PIPELINE = "signing-pipeline";
+        private static final String AT_SIGNING_PIPELINE_NAME = "name";
         private static final String EL_ATTRIBUTE = "attribute";
+        private static final String EL_KEYSTORE = "keystore";
+        private static final String AT_KEYSTORE_NAME = "name";
         private static final String AT_ATTRIBUTE_NAME = "name";
         private static final String AT_ATTRIBUTE_VALUE = "value";
 
+        private final String namespace;
+
+        // Constructors ----------------------------------------------------------
+
+        /**
+         * Creates a parser for the given name space.
+         * 
+         * @param namespace {@link SecurityProvidersExtension#NAMESPACE} or {@link SecurityProvidersExtension#NAMESPACE_1_0}
+         */
+        SubsystemParser(String namespace) {
+            this.namespace = namespace;
+        }
+
+        // Public methods --------------------------------------------------------
+
         /**
          * {@inheritDoc}
          */
@@ -188,6 +269,9 @@ public class SecurityProvidersExtension implements Extension {
                 for (Property property : simpleProviderNodes.asPropertyList()) {
                     //write each child element to xml
                     writer.writeStartElement(EL_PROVIDER_CLASS);
+                    writeProviderAttributes(writer, property.getValue());
+                    SimpleProviderResourceDefinition.SNAPSHOT.marshallAsAttribute(property.getValue(), false, writer);
+                    CommonAttributes.INSTRUMENTED.marshallAsAttribute(property.getValue(), false, writer);
                     writer.writeCharacters(property.getName());
                     //end EL_PROVIDER_CLASS
                     writer.writeEndElement();
@@ -201,22 +285,107 @@ public class SecurityProvidersExtension implements Extension {
                     writer.writeStartElement(EL_SUNPKCS11);
                     writer.writeAttribute(AT_SUNPKCS11_NAME, property.getName());
                     ModelNode sunpkcs11 = property.getValue();
-                    ModelNode attributes = sunpkcs11.get(ATTRIBUTES);
-                    if (attributes.isDefined()) {
-                        final List<ModelNode> attrList = attributes.asList();
-                        for (ModelNode option : attrList) {
-                            final Property asProperty = option.asProperty();
-                            writer.writeStartElement(EL_ATTRIBUTE);
-                            writer.writeAttribute(AT_ATTRIBUTE_NAME, asProperty.getName());
-                            writer.writeAttribute(AT_ATTRIBUTE_VALUE, asProperty.getValue().asString());
-                            //end EL_ATTRIBUTE
-                            writer.writeEndElement();
+                    writeProviderAttributes(writer, sunpkcs11);
+                    CommonAttributes.INSTRUMENTED.marshallAsAttribute(sunpkcs11, false, writer);
+                    for (SimpleAttributeDefinition definition : SunPKCS11ResourceDefinition.HEALTH_ATTRIBUTES) {
+                        definition.marshallAsAttribute(sunpkcs11, false, writer);
+                    }
+                    for (SimpleAttributeDefinition definition : SunPKCS11ResourceDefinition.ASYNC_ATTRIBUTES) {
+                        definition.marshallAsAttribute(sunpkcs11, false, writer);
+                    }
+                    for (SimpleAttributeDefinition definition : SunPKCS11ResourceDefinition.SLOW_OPERATION_ATTRIBUTES) {
+                        definition.marshallAsAttribute(sunpkcs11, false, writer);
+                    }
+                    writeSunPKCS11Attributes(writer, sunpkcs11);
+                    if (sunpkcs11.hasDefined(KEYSTORE)) {
+                        for (Property keyStore : sunpkcs11.get(KEYSTORE).asPropertyList()) {
+                            writer.writeEmptyElement(EL_KEYSTORE);
+                            writer.writeAttribute(AT_KEYSTORE_NAME, keyStore.getName());
+                            for (SimpleAttributeDefinition definition : KeyStoreResourceDefinition.ATTRIBUTES) {
+                                definition.marshallAsAttribute(keyStore.getValue(), false, writer);
+                            }
                         }
                     }
                     //end EL_SUNPKCS11
                     writer.writeEndElement();
                 }
             }
+            ModelNode groupNodes = node.get(SUNPKCS11_GROUP);
+            if (groupNodes.isDefined()) {
+                for (Property property : groupNodes.asPropertyList()) {
+                    writer.writeStartElement(EL_SUNPKCS11_GROUP);
+                    writer.writeAttribute(AT_SUNPKCS11_NAME, property.getName());
+                    ModelNode group = property.getValue();
+                    for (SimpleAttributeDefinition definition : SunPKCS11GroupResourceDefinition.GROUP_ATTRIBUTES) {
+                        definition.marshallAsAttribute(group, false, writer);
+                    }
+                    writeProviderAttributes(writer, group);
+                    writeSunPKCS11Attributes(writer, group);
+                    //end EL_SUNPKCS11_GROUP
+                    writer.writeEndElement();
+                }
+            }
+            ModelNode hybridNodes = node.get(HYBRID_PROVIDER);
+            if (hybridNodes.isDefined()) {
+                for (Property property : hybridNodes.asPropertyList()) {
+                    writer.writeStartElement(EL_HYBRID_PROVIDER);
+                    writer.writeAttribute(AT_HYBRID_PROVIDER_NAME, property.getName());
+                    for (SimpleAttributeDefinition definition : HybridProviderResourceDefinition.HYBRID_ATTRIBUTES) {
+                        definition.marshallAsAttribute(property.getValue(), false, writer);
+                    }
+                    writeProviderAttributes(writer, property.getValue());
+                    //end EL_HYBRID_PROVIDER
+                    writer.writeEndElement();
+                }
+            }
+            ModelNode cryptoPoolNodes = node.get(CRYPTO_POOL);
+            if (cryptoPoolNodes.isDefined()) {
+                for (Property property : cryptoPoolNodes.asPropertyList()) {
+                    writer.writeStartElement(EL_CRYPTO_POOL);
+                    writer.writeAttribute(AT_CRYPTO_POOL_NAME, property.getName());
+                    for (SimpleAttributeDefinition definition : CryptoPoolResourceDefinition.ATTRIBUTES) {
+                        definition.marshallAsAttribute(property.getValue(), false, writer);
+                    }
+                    //end EL_CRYPTO_POOL
+                    writer.writeEndElement();
+                }
+            }
+            ModelNode secureRandomNodes = node.get(SECURE_RANDOM);
+            if (secureRandomNodes.isDefined()) {
+                for (Property property : secureRandomNodes.asPropertyList()) {
+                    writer.writeStartElement(EL_SECURE_RANDOM);
+                    writer.writeAttribute(AT_SECURE_RANDOM_NAME, property.getName());
+                    for (SimpleAttributeDefinition definition : SecureRandomResourceDefinition.ATTRIBUTES) {
+                        definition.marshallAsAttribute(property.getValue(), false, writer);
+                    }
+                    //end EL_SECURE_RANDOM
+                    writer.writeEndElement();
+                }
+            }
+            ModelNode keyPairPoolNodes = node.get(KEYPAIR_POOL);
+            if (keyPairPoolNodes.isDefined()) {
+                for (Property property : keyPairPoolNodes.asPropertyList()) {
+                    writer.writeStartElement(EL_KEYPAIR_POOL);
+                    writer.writeAttribute(AT_KEYPAIR_POOL_NAME, property.getName());
+                    for (SimpleAttributeDefinition definition : KeyPairPoolResourceDefinition.ATTRIBUTES) {
+                        definition.marshallAsAttribute(property.getValue(), false, writer);
+                    }
+                    //end EL_KEYPAIR_POOL
+                    writer.writeEndElement();
+                }
+            }
+            ModelNode pipelineNodes = node.get(SIGNING_PIPELINE);
+            if (pipelineNodes.isDefined()) {
+                for (Property property : pipelineNodes.asPropertyList()) {
+                    writer.writeStartElement(EL_SIGNING_PIPELINE);
+                    writer.writeAttribute(AT_SIGNING_PIPELINE_NAME, property.getName());
+                    for (SimpleAttributeDefinition definition : SigningPipelineResourceDefinition.ATTRIBUTES) {
+                        definition.marshallAsAttribute(property.getValue(), false, writer);
+                    }
+                    //end EL_SIGNING_PIPELINE
+                    writer.writeEndElement();
+                }
+            }
             //End EL_PROVIDERS
             writer.writeEndElement();
             //end subsystem            
@@ -242,11 +411,45 @@ public class SecurityProvidersExtension implements Extension {
                         if (reader.getLocalName().equals(EL_PROVIDER_CLASS)) {
                             ModelNode addTypeOperation = new ModelNode();
                             addTypeOperation.get(OP).set(ADD);
+                            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                                if (isLegacy()) {
+                                    throw ParseUtils.unexpectedAttribute(reader, i);
+                                } else if (SimpleProviderResourceDefinition.SNAPSHOT.getXmlName().equals(
+                                        reader.getAttributeLocalName(i))) {
+                                    SimpleProviderResourceDefinition.SNAPSHOT.parseAndSetParameter(
+                                            reader.getAttributeValue(i), addTypeOperation, reader);
+                                } else if (CommonAttributes.INSTRUMENTED.getXmlName().equals(
+                                        reader.getAttributeLocalName(i))) {
+                                    CommonAttributes.INSTRUMENTED.parseAndSetParameter(reader.getAttributeValue(i),
+                                            addTypeOperation, reader);
+                                } else if (!readProviderAttribute(reader, i, addTypeOperation)) {
+                                    throw ParseUtils.unexpectedAttribute(reader, i);
+                                }
+                            }
                             final String providerClassName = reader.getElementText();
                             PathAddress addr = PathAddress.pathAddress(SUBSYSTEM_PATH,
                                     PathElement.pathElement(SIMPLE_PROVIDER, providerClassName));
                             addTypeOperation.get(OP_ADDR).set(addr.toModelNode());
                             list.add(addTypeOperation);
+                        } else if (isLegacy() && !reader.getLocalName().equals(EL_SUNPKCS11)) {
+                            throw ParseUtils.unexpectedElement(reader);
+                        } else if (reader.getLocalName().equals(EL_CRYPTO_POOL)) {
+                            readNamedResource(reader, list, CRYPTO_POOL, AT_CRYPTO_POOL_NAME,
+                                    CryptoPoolResourceDefinition.ATTRIBUTES, false);
+                        } else if (reader.getLocalName().equals(EL_HYBRID_PROVIDER)) {
+                            readNamedResource(reader, list, HYBRID_PROVIDER, AT_HYBRID_PROVIDER_NAME,
+                                    HybridProviderResourceDefinition.HYBRID_ATTRIBUTES, true);
+                        } else if (reader.getLocalName().equals(EL_SECURE_RANDOM)) {
+                            readNamedResource(reader, list, SECURE_RANDOM, AT_SECURE_RANDOM_NAME,
+                                    SecureRandomResourceDefinition.ATTRIBUTES, false);
+                        } else if (reader.getLocalName().equals(EL_KEYPAIR_POOL)) {
+                            readNamedResource(reader, list, KEYPAIR_POOL, AT_KEYPAIR_POOL_NAME,
+                                    KeyPairPoolResourceDefinition.ATTRIBUTES, false);
+                        } else if (reader.getLocalName().equals(EL_SIGNING_PIPELINE)) {
+                            readNamedResource(reader, list, SIGNING_PIPELINE, AT_SIGNING_PIPELINE_NAME,
+                                    SigningPipelineResourceDefinition.ATTRIBUTES, false);
+                        } else if (reader.getLocalName().equals(EL_SUNPKCS11_GROUP)) {
+                            readSunPKCS11Group(reader, list);
                         } else {
                             readSunPKCS11(reader, list);
                         }
@@ -268,7 +471,35 @@ public class SecurityProvidersExtension implements Extension {
                 String value = reader.getAttributeValue(i);
                 if (attr.equals(AT_SUNPKCS11_NAME)) {
                     sunPkcs11Name = value;
-                } else {
+                    continue;
+                }
+                if (isLegacy()) {
+                    throw ParseUtils.unexpectedAttribute(reader, i);
+                }
+                boolean recognized = readProviderAttribute(reader, i, addTypeOperation);
+                if (!recognized && CommonAttributes.INSTRUMENTED.getXmlName().equals(attr)) {
+                    CommonAttributes.INSTRUMENTED.parseAndSetParameter(value, addTypeOperation, reader);
+                    recognized = true;
+                }
+                for (SimpleAttributeDefinition definition : SunPKCS11ResourceDefinition.HEALTH_ATTRIBUTES) {
+                    if (!recognized && definition.getXmlName().equals(attr)) {
+                        definition.parseAndSetParameter(value, addTypeOperation, reader);
+                        recognized = true;
+                    }
+                }
+                for (SimpleAttributeDefinition definition : SunPKCS11ResourceDefinition.ASYNC_ATTRIBUTES) {
+                    if (!recognized && definition.getXmlName().equals(attr)) {
+                        definition.parseAndSetParameter(value, addTypeOperation, reader);
+                        recognized = true;
+                    }
+                }
+                for (SimpleAttributeDefinition definition : SunPKCS11ResourceDefinition.SLOW_OPERATION_ATTRIBUTES) {
+                    if (!recognized && definition.getXmlName().equals(attr)) {
+                        definition.parseAndSetParameter(value, addTypeOperation, reader);
+                        recognized = true;
+                    }
+                }
+                if (!recognized) {
                     throw ParseUtils.unexpectedAttribute(reader, i);
                 }
             }
@@ -276,10 +507,12 @@ public class SecurityProvidersExtension implements Extension {
                 throw ParseUtils.missingRequiredElement(reader, Collections.singleton(AT_SUNPKCS11_NAME));
             }
 
-            Map<String, String> sunPKCS11Attributes = readSunPKCS11Attributes(reader);
-
             //Add the 'add' operation for each 'sunpkcs11' child
             PathAddress addr = PathAddress.pathAddress(SUBSYSTEM_PATH, PathElement.pathElement(SUNPKCS11, sunPkcs11Name));
+            List<ModelNode> keyStoreOperations = new ArrayList<ModelNode>();
+            Map<String, String> sunPKCS11Attributes = readSunPKCS11Attributes(reader, addr,
+                    isLegacy() ? null : keyStoreOperations);
+
             addTypeOperation.get(OP_ADDR).set(addr.toModelNode());
             if (!sunPKCS11Attributes.isEmpty()) {
                 final ModelNode attributesNode = addTypeOperation.get(ATTRIBUTES);
@@ -290,18 +523,180 @@ public class SecurityProvidersExtension implements Extension {
                 }
             }
             list.add(addTypeOperation);
+            list.addAll(keyStoreOperations);
+        }
+
+        private void readSunPKCS11Group(XMLExtendedStreamReader reader, List<ModelNode> list) throws XMLStreamException {
+            ModelNode addTypeOperation = new ModelNode();
+            addTypeOperation.get(OP).set(ADD);
+
+            String groupName = null;
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                String attr = reader.getAttributeLocalName(i);
+                if (attr.equals(AT_SUNPKCS11_NAME)) {
+                    groupName = reader.getAttributeValue(i);
+                    continue;
+                }
+                boolean recognized = readProviderAttribute(reader, i, addTypeOperation);
+                for (SimpleAttributeDefinition definition : SunPKCS11GroupResourceDefinition.GROUP_ATTRIBUTES) {
+                    if (!recognized && definition.getXmlName().equals(attr)) {
+                        definition.parseAndSetParameter(reader.getAttributeValue(i), addTypeOperation, reader);
+                        recognized = true;
+                    }
+                }
+                if (!recognized) {
+                    throw ParseUtils.unexpectedAttribute(reader, i);
+                }
+            }
+            if (groupName == null) {
+                throw ParseUtils.missingRequired(reader, Collections.singleton(AT_SUNPKCS11_NAME));
+            }
+            if (!addTypeOperation.hasDefined(SunPKCS11GroupResourceDefinition.SLOTS.getName())) {
+                throw ParseUtils.missingRequired(reader,
+                        Collections.singleton(SunPKCS11GroupResourceDefinition.SLOTS.getXmlName()));
+            }
+
+            Map<String, String> sunPKCS11Attributes = readSunPKCS11Attributes(reader, null, null);
+            PathAddress addr = PathAddress.pathAddress(SUBSYSTEM_PATH, PathElement.pathElement(SUNPKCS11_GROUP, groupName));
+            addTypeOperation.get(OP_ADDR).set(addr.toModelNode());
+            for (final Map.Entry<String, String> entry : sunPKCS11Attributes.entrySet()) {
+                addTypeOperation.get(ATTRIBUTES, entry.getKey()).set(entry.getValue());
+            }
+            list.add(addTypeOperation);
         }
 
         /**
+         * Returns true if this parser reads the 1.0 name space, which doesn't know the provider attributes and the
+         * elements added later.
          * 
+         * @return
+         */
+        private boolean isLegacy() {
+            return NAMESPACE_1_0.equals(namespace);
+        }
+
+        /**
+         * Reads an empty element of a subsystem child resource (e.g. crypto-pool) which is configured only by attributes.
+         *
          * @param reader
          * @param list
+         * @param type resource type
+         * @param nameAttribute XML attribute holding the resource name
+         * @param attributes
+         * @param providerAttributes true if the resource is a provider, so it accepts also
+         *        {@link CommonAttributes#PROVIDER_ATTRIBUTES}
+         * @throws XMLStreamException
+         */
+        private void readNamedResource(XMLExtendedStreamReader reader, List<ModelNode> list, String type,
+                String nameAttribute, SimpleAttributeDefinition[] attributes, boolean providerAttributes)
+                throws XMLStreamException {
+            ModelNode addTypeOperation = new ModelNode();
+            addTypeOperation.get(OP).set(ADD);
+
+            String resourceName = null;
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                String attr = reader.getAttributeLocalName(i);
+                if (attr.equals(nameAttribute)) {
+                    resourceName = reader.getAttributeValue(i);
+                    continue;
+                }
+                boolean recognized = providerAttributes && readProviderAttribute(reader, i, addTypeOperation);
+                for (SimpleAttributeDefinition definition : attributes) {
+                    if (!recognized && definition.getXmlName().equals(attr)) {
+                        definition.parseAndSetParameter(reader.getAttributeValue(i), addTypeOperation, reader);
+                        recognized = true;
+                        break;
+                    }
+                }
+                if (!recognized) {
+                    throw ParseUtils.unexpectedAttribute(reader, i);
+                }
+            }
+            if (resourceName == null) {
+                throw ParseUtils.missingRequired(reader, Collections.singleton(nameAttribute));
+            }
+            ParseUtils.requireNoContent(reader);
+
+            PathAddress addr = PathAddress.pathAddress(SUBSYSTEM_PATH, PathElement.pathElement(type, resourceName));
+            addTypeOperation.get(OP_ADDR).set(addr.toModelNode());
+            list.add(addTypeOperation);
+        }
+
+        /**
+         * Reads the attribute on the given index if it's one of {@link CommonAttributes#PROVIDER_ATTRIBUTES} and sets it
+         * to the add operation.
+         * 
+         * @param reader
+         * @param index
+         * @param operation
+         * @return true if the attribute was recognized
+         * @throws XMLStreamException
+         */
+        private boolean readProviderAttribute(XMLExtendedStreamReader reader, int index, ModelNode operation)
+                throws XMLStreamException {
+            final String attr = reader.getAttributeLocalName(index);
+            for (SimpleAttributeDefinition definition : CommonAttributes.PROVIDER_ATTRIBUTES) {
+                if (definition.getXmlName().equals(attr)) {
+                    definition.parseAndSetParameter(reader.getAttributeValue(index), operation, reader);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Writes the SunPKCS11 configuration attributes of the given provider model as child elements.
+         * 
+         * @param writer
+         * @param provider
+         * @throws XMLStreamException
+         */
+        private void writeSunPKCS11Attributes(XMLExtendedStreamWriter writer, ModelNode provider) throws XMLStreamException {
+            ModelNode attributes = provider.get(ATTRIBUTES);
+            if (attributes.isDefined()) {
+                final List<ModelNode> attrList = attributes.asList();
+                for (ModelNode option : attrList) {
+                    final Property asProperty = option.asProperty();
+                    writer.writeStartElement(EL_ATTRIBUTE);
+                    writer.writeAttribute(AT_ATTRIBUTE_NAME, asProperty.getName());
+                    writer.writeAttribute(AT_ATTRIBUTE_VALUE, asProperty.getValue().asString());
+                    //end EL_ATTRIBUTE
+                    writer.writeEndElement();
+                }
+            }
+        }
+
+        /**
+         * Writes {@link CommonAttributes#PROVIDER_ATTRIBUTES} defined in the given provider model as XML attributes.
+         * 
+         * @param writer
+         * @param provider
+         * @throws XMLStreamException
+         */
+        private void writeProviderAttributes(XMLExtendedStreamWriter writer, ModelNode provider) throws XMLStreamException {
+            for (SimpleAttributeDefinition definition : CommonAttributes.PROVIDER_ATTRIBUTES) {
+                definition.marshallAsAttribute(provider, false, writer);
+            }
+        }
+
+        /**
+         * Reads the <code>attribute</code> child elements of a SunPKCS11 element. If the keystore operations list is not
+         * <code>null</code>, also <code>keystore</code> child elements are allowed and their add operations are added to it.
+         * 
+         * @param reader
+         * @param parentAddress address of the SunPKCS11 resource
+         * @param keyStoreOperations list for the keystore add operations or <code>null</code>
          * @return
          */
-        private Map<String, String> readSunPKCS11Attributes(XMLExtendedStreamReader reader) throws XMLStreamException {
+        private Map<String, String> readSunPKCS11Attributes(XMLExtendedStreamReader reader, PathAddress parentAddress,
+                List<ModelNode> keyStoreOperations) throws XMLStreamException {
             final Map<String, String> result = new HashMap<String, String>();
             while (reader.hasNext() && reader.nextTag() != END_ELEMENT) {
                 if (reader.isStartElement()) {
+                    if (keyStoreOperations != null && reader.getLocalName().equals(EL_KEYSTORE)) {
+                        keyStoreOperations.add(readKeyStore(reader, parentAddress));
+                        continue;
+                    }
                     if (!reader.getLocalName().equals(EL_ATTRIBUTE)) {
                         throw ParseUtils.unexpectedElement(reader);
                     }
@@ -334,6 +729,38 @@ public class SecurityProvidersExtension implements Extension {
             }
             return result;
         }
+
+        private ModelNode readKeyStore(XMLExtendedStreamReader reader, PathAddress parentAddress) throws XMLStreamException {
+            ModelNode addTypeOperation = new ModelNode();
+            addTypeOperation.get(OP).set(ADD);
+
+            String keyStoreName = null;
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                String attr = reader.getAttributeLocalName(i);
+                if (attr.equals(AT_KEYSTORE_NAME)) {
+                    keyStoreName = reader.getAttributeValue(i);
+                    continue;
+                }
+                boolean recognized = false;
+                for (SimpleAttributeDefinition definition : KeyStoreResourceDefinition.ATTRIBUTES) {
+                    if (definition.getXmlName().equals(attr)) {
+                        definition.parseAndSetParameter(reader.getAttributeValue(i), addTypeOperation, reader);
+                        recognized = true;
+                        break;
+                    }
+                }
+                if (!recognized) {
+                    throw ParseUtils.unexpectedAttribute(reader, i);
+                }
+            }
+            if (keyStoreName == null) {
+                throw ParseUtils.missingRequired(reader, Collections.singleton(AT_KEYSTORE_NAME));
+            }
+            ParseUtils.requireNoContent(reader);
+
+            addTypeOperation.get(OP_ADDR).set(parentAddress.append(PathElement.pathElement(KEYSTORE, keyStoreName)).toModelNode());
+            return addTypeOperation;
+        }
     }
 
 }
@@ -0,0 +1,141 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.jboss.as.controller.AbstractAddStepHandler;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.ServiceVerificationHandler;
+import org.jboss.as.server.AbstractDeploymentChainStep;
+import org.jboss.as.server.DeploymentProcessorTarget;
+import org.jboss.as.server.ServerEnvironment;
+import org.jboss.as.server.deployment.Phase;
+import org.jboss.dmr.ModelNode;
+import org.jboss.msc.service.ServiceBuilder;
+import org.jboss.msc.service.ServiceController;
+import org.jboss.msc.service.ServiceController.Mode;
+import org.jboss.msc.service.ServiceName;
+
+/**
+ * A handler for adding the security-providers subsystem. It installs the executor and the timer shared by the subsystem
+ * services and registers the {@link SecurityProvidersDependencyProcessor} during the boot.
+ *
+ * @author Josef Cacek
+ */
+class SecurityProvidersSubsystemAdd extends AbstractAddStepHandler {
+
+    public static final SecurityProvidersSubsystemAdd INSTANCE = new SecurityProvidersSubsystemAdd();
+
+    /** Subdirectory of the subsystem data directory with the persisted provider manifests. */
+    static final String MANIFESTS_DIR = "manifests";
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Private ctor.
+     */
+    private SecurityProvidersSubsystemAdd() {
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Model population.
+     *
+     * @param operation
+     * @param model
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractAddStepHandler#populateModel(org.jboss.dmr.ModelNode, org.jboss.dmr.ModelNode)
+     */
+    @Override
+    protected void populateModel(ModelNode operation, ModelNode model) throws OperationFailedException {
+        model.setEmptyObject();
+    }
+
+    /**
+     * Installs the {@link SecurityProvidersExecutorService} and, if the server is booting, adds the deployment processor
+     * which starts the providers declared by deployments.
+     *
+     * @param context
+     * @param operation
+     * @param model
+     * @param verificationHandler
+     * @param newControllers
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractAddStepHandler#performRuntime(org.jboss.as.controller.OperationContext,
+     *      org.jboss.dmr.ModelNode, org.jboss.dmr.ModelNode, org.jboss.as.controller.ServiceVerificationHandler,
+     *      java.util.List)
+     */
+    @Override
+    protected void performRuntime(OperationContext context, ModelNode operation, ModelNode model,
+            ServiceVerificationHandler verificationHandler, List<ServiceController<?>> newControllers)
+            throws OperationFailedException {
+        if (context.isBooting()) {
+            context.addStep(new AbstractDeploymentChainStep() {
+                protected void execute(DeploymentProcessorTarget processorTarget) {
+                    processorTarget.addDeploymentProcessor(Phase.DEPENDENCIES, SecurityProvidersDependencyProcessor.PRIORITY,
+                            new SecurityProvidersDependencyProcessor());
+                }
+            }, OperationContext.Stage.RUNTIME);
+        }
+        newControllers.addAll(installServices(context, verificationHandler));
+    }
+
+    /**
+     * Installs the subsystem level services. The provider manifests are persisted in the server data directory (if it's
+     * known).
+     *
+     * @param context
+     * @param verificationHandler verification handler, may be <code>null</code>
+     * @return controllers of the executor and the timer services
+     */
+    static List<ServiceController<?>> installServices(OperationContext context,
+            ServiceVerificationHandler verificationHandler) {
+        final String dataDir = System.getProperty(ServerEnvironment.SERVER_DATA_DIR);
+        if (dataDir != null) {
+            ProviderManifestCache.setDirectory(new File(dataDir, SecurityProvidersExtension.SUBSYSTEM_NAME + File.separator
+                    + MANIFESTS_DIR));
+        }
+        final List<ServiceController<?>> controllers = new ArrayList<ServiceController<?>>();
+        controllers.add(installExecutor(context, SecurityProvidersExecutorService.SERVICE_NAME,
+                new SecurityProvidersExecutorService(), verificationHandler));
+        controllers.add(installExecutor(context, SecurityProvidersExecutorService.TIMER_SERVICE_NAME,
+                SecurityProvidersExecutorService.createTimer(), verificationHandler));
+        return controllers;
+    }
+
+    // Private methods -------------------------------------------------------
+
+    private static ServiceController<?> installExecutor(OperationContext context, ServiceName name,
+            SecurityProvidersExecutorService service, ServiceVerificationHandler verificationHandler) {
+        final ServiceBuilder<ScheduledExecutorService> builder = context.getServiceTarget().addService(name, service);
+        if (verificationHandler != null) {
+            builder.addListener(verificationHandler);
+        }
+        return builder.setInitialMode(Mode.ACTIVE).install();
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects signing requests for the same key into micro-batches and signs each batch by a single {@link Signature}
+ * instance. A signature instance is initialized with the key once and stays initialized after
+ * {@link Signature#sign()}, so the following requests of the batch (and of the later batches for the same key) skip the
+ * engine creation and the key initialization - with SunPKCS11 these are the session acquire and the
+ * <code>C_SignInit</code> round-trips.
+ * <p>
+ * A batch is signed on the executor when it reaches the maximal batch size or when the linger time since its first
+ * request elapses. The linger time is measured by the timer, which only hands the batch over to the executor, so the
+ * signing never blocks the timer thread. If the timer rejects the flush, the batch is flushed right away. The callers get
+ * futures which are completed when their data is signed.
+ * <p>
+ * The initialized signature instances are kept for at most {@link #MAX_CACHED_KEYS} keys, the instances of the least
+ * recently used key are dropped when another key is used (e.g. with rotating or per-tenant keys).
+ *
+ * @author Josef Cacek
+ */
+public final class SigningPipeline {
+
+    /** Maximal number of keys with cached initialized signature instances. */
+    static final int MAX_CACHED_KEYS = 128;
+
+    private static final Callable<byte[]> NO_TASK = new Callable<byte[]>() {
+        public byte[] call() {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    private final String algorithm;
+    private final Provider provider;
+    private final int maxBatchSize;
+    private final long lingerTime;
+    private final ScheduledExecutorService timer;
+    private final Executor executor;
+
+    /** Batches collecting requests (key -> batch), guarded by this. */
+    private final Map<PrivateKey, Batch> openBatches = new HashMap<PrivateKey, Batch>();
+    /** Initialized idle signature instances (key -> instances) of the recently used keys. */
+    private final ExpiringLruCache<PrivateKey, Queue<Signature>> signatures = new ExpiringLruCache<PrivateKey, Queue<Signature>>(
+            MAX_CACHED_KEYS, 0L);
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong signed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong latencyNanos = new AtomicLong();
+
+    private volatile boolean closed;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new SigningPipeline.
+     *
+     * @param algorithm Signature algorithm
+     * @param provider
+     * @param maxBatchSize maximal number of requests signed in one batch
+     * @param lingerTime maximal time (milliseconds) a batch waits for more requests
+     * @param timer executor scheduling the flush of the lingering batches
+     * @param executor executor signing the batches
+     */
+    SigningPipeline(String algorithm, Provider provider, int maxBatchSize, long lingerTime, ScheduledExecutorService timer,
+            Executor executor) {
+        this.algorithm = algorithm;
+        this.provider = provider;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerTime = lingerTime;
+        this.timer = timer;
+        this.executor = executor;
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Adds the data to the batch of the given key.
+     *
+     * @param key
+     * @param data
+     * @return future of the signature bytes
+     * @throws RejectedExecutionException if the pipeline is closed
+     */
+    public Future<byte[]> sign(PrivateKey key, byte[] data) throws RejectedExecutionException {
+        final Request request = new Request(data);
+        Batch full = null;
+        Batch created = null;
+        synchronized (this) {
+            if (closed) {
+                throw new RejectedExecutionException("The signing pipeline for " + getDescription() + " is closed");
+            }
+            Batch batch = openBatches.get(key);
+            if (batch == null) {
+                batch = new Batch(key);
+                openBatches.put(key, batch);
+                created = batch;
+            }
+            batch.requests.add(request);
+            if (batch.requests.size() >= maxBatchSize) {
+                openBatches.remove(key);
+                full = batch;
+            }
+        }
+        if (full != null) {
+            executor.execute(full);
+        } else if (created != null) {
+            final Batch lingering = created;
+            try {
+                timer.schedule(new Runnable() {
+                    public void run() {
+                        flush(lingering);
+                    }
+                }, lingerTime, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // nothing would flush the batch later
+                flush(lingering);
+            }
+        }
+        return request;
+    }
+
+    /**
+     * Returns the maximal number of requests signed in one batch.
+     *
+     * @return
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Returns the maximal time (milliseconds) a batch waits for more requests.
+     *
+     * @return
+     */
+    public long getLingerTime() {
+        return lingerTime;
+    }
+
+    /**
+     * Returns number of signed batches.
+     *
+     * @return
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * Returns number of successfully signed requests.
+     *
+     * @return
+     */
+    public long getSignedCount() {
+        return signed.get();
+    }
+
+    /**
+     * Returns number of requests completed with an exception.
+     *
+     * @return
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Returns average number of requests in a signed batch or 0 if no batch was signed yet.
+     *
+     * @return
+     */
+    public double getAverageBatchSize() {
+        final long count = batches.get();
+        return count > 0L ? (double) (signed.get() + failed.get()) / count : 0d;
+    }
+
+    /**
+     * Returns average time (milliseconds) between a request submission and its completion or -1 if no request was
+     * completed yet.
+     *
+     * @return
+     */
+    public long getAverageLatency() {
+        final long count = signed.get() + failed.get();
+        return count > 0L ? TimeUnit.NANOSECONDS.toMillis(latencyNanos.get() / count) : -1L;
+    }
+
+    /**
+     * Returns number of requests waiting in the batches which are not submitted for signing yet.
+     *
+     * @return
+     */
+    public synchronized int getPendingCount() {
+        int result = 0;
+        for (Batch batch : openBatches.values()) {
+            result += batch.requests.size();
+        }
+        return result;
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Rejects new requests, signs the collected ones and drops the idle signature instances.
+     */
+    void close() {
+        final List<Batch> pending;
+        synchronized (this) {
+            closed = true;
+            pending = new ArrayList<Batch>(openBatches.values());
+            openBatches.clear();
+        }
+        for (Batch batch : pending) {
+            batch.run();
+        }
+        signatures.clear();
+    }
+
+    // Private methods -------------------------------------------------------
+
+    /**
+     * Submits the batch for signing if it's still collecting requests.
+     *
+     * @param batch
+     */
+    private void flush(Batch batch) {
+        synchronized (this) {
+            if (openBatches.get(batch.key) != batch) {
+                return;
+            }
+            openBatches.remove(batch.key);
+        }
+        try {
+            executor.execute(batch);
+        } catch (RejectedExecutionException e) {
+            batch.run();
+        }
+    }
+
+    private Signature borrowSignature(PrivateKey key) throws GeneralSecurityException {
+        final Queue<Signature> idle = signatures.get(key);
+        final Signature signature = idle == null ? null : idle.poll();
+        if (signature != null) {
+            return signature;
+        }
+        final Signature newSignature = Signature.getInstance(algorithm, provider);
+        newSignature.initSign(key);
+        return newSignature;
+    }
+
+    private void releaseSignature(PrivateKey key, Signature signature) {
+        if (closed) {
+            return;
+        }
+        Queue<Signature> idle;
+        // the cache methods are synchronized on the cache too
+        synchronized (signatures) {
+            idle = signatures.get(key);
+            if (idle == null) {
+                idle = new ConcurrentLinkedQueue<Signature>();
+                signatures.put(key, idle);
+            }
+        }
+        idle.offer(signature);
+    }
+
+    private String getDescription() {
+        return "Signature." + algorithm + " (" + provider.getName() + ")";
+    }
+
+    // Embedded classes ------------------------------------------------------
+
+    /**
+     * Requests for the same key signed together.
+     */
+    private class Batch implements Runnable {
+
+        private final PrivateKey key;
+        private final List<Request> requests = new ArrayList<Request>();
+
+        Batch(PrivateKey key) {
+            this.key = key;
+        }
+
+        public void run() {
+            batches.incrementAndGet();
+            Signature signature = null;
+            for (Request request : requests) {
+                byte[] result = null;
+                Throwable failure = null;
+                try {
+                    if (signature == null) {
+                        signature = borrowSignature(key);
+                    }
+                    signature.update(request.data);
+                    result = signature.sign();
+                } catch (Throwable e) {
+                    // the instance state is unknown after a failure, the next request gets a new one
+                    signature = null;
+                    failure = e;
+                }
+                // the statistics are updated before the caller is notified
+                latencyNanos.addAndGet(System.nanoTime() - request.submitted);
+                if (failure == null) {
+                    signed.incrementAndGet();
+                    request.complete(result);
+                } else {
+                    failed.incrementAndGet();
+                    request.fail(failure);
+                }
+            }
+            if (signature != null) {
+                releaseSignature(key, signature);
+            }
+        }
+    }
+
+    /**
+     * Future of a single signing request.
+     */
+    private static class Request extends FutureTask<byte[]> {
+
+        private final byte[] data;
+        private final long submitted = System.nanoTime();
+
+        Request(byte[] data) {
+            super(NO_TASK);
+            this.data = data;
+        }
+
+        @Override
+        public void run() {
+            // completed by the batch only
+        }
+
+        void complete(byte[] signature) {
+            set(signature);
+        }
+
+        void fail(Throwable cause) {
+            setException(cause);
+        }
+    }
+}
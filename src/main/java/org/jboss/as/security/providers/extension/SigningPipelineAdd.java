@@ -0,0 +1,104 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.jboss.as.controller.AbstractAddStepHandler;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.ServiceVerificationHandler;
+import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
+import org.jboss.dmr.ModelNode;
+import org.jboss.msc.service.ServiceController;
+import org.jboss.msc.service.ServiceController.Mode;
+
+/**
+ * A handler for adding a signing pipeline.
+ *
+ * @author Josef Cacek
+ */
+class SigningPipelineAdd extends AbstractAddStepHandler {
+
+    public static final SigningPipelineAdd INSTANCE = new SigningPipelineAdd();
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Private ctor.
+     */
+    private SigningPipelineAdd() {
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Model population.
+     *
+     * @param operation
+     * @param model
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractAddStepHandler#populateModel(org.jboss.dmr.ModelNode, org.jboss.dmr.ModelNode)
+     */
+    @Override
+    protected void populateModel(ModelNode operation, ModelNode model) throws OperationFailedException {
+        for (AttributeDefinition attribute : SigningPipelineResourceDefinition.ATTRIBUTES) {
+            attribute.validateAndSet(operation, model);
+        }
+    }
+
+    /**
+     * Creates and registers {@link SigningPipelineService} instance depending on the referenced provider service.
+     *
+     * @param context
+     * @param operation
+     * @param model
+     * @param verificationHandler
+     * @param newControllers
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractAddStepHandler#performRuntime(org.jboss.as.controller.OperationContext,
+     *      org.jboss.dmr.ModelNode, org.jboss.dmr.ModelNode, org.jboss.as.controller.ServiceVerificationHandler,
+     *      java.util.List)
+     */
+    @Override
+    protected void performRuntime(OperationContext context, ModelNode operation, ModelNode model,
+            ServiceVerificationHandler verificationHandler, List<ServiceController<?>> newControllers)
+            throws OperationFailedException {
+        final String pipelineName = PathAddress.pathAddress(operation.get(ModelDescriptionConstants.ADDRESS))
+                .getLastElement().getValue();
+        final ModelNode provider = SigningPipelineResourceDefinition.PROVIDER.resolveModelAttribute(context, model);
+        final SigningPipelineService service = new SigningPipelineService(pipelineName,
+                SigningPipelineResourceDefinition.ALGORITHM.resolveModelAttribute(context, model).asString(),
+                SigningPipelineResourceDefinition.MAX_BATCH_SIZE.resolveModelAttribute(context, model).asInt(),
+                SigningPipelineResourceDefinition.LINGER_TIME.resolveModelAttribute(context, model).asLong());
+        ServiceController<SigningPipeline> controller = context.getServiceTarget()
+                .addService(SigningPipelineService.createServiceName(pipelineName), service)
+                .addDependency(ProviderReference.resolveServiceName(provider), ProviderServiceIndex.class,
+                        service.getProviderIndexInjector())
+                .addDependency(SecurityProvidersExecutorService.TIMER_SERVICE_NAME, ScheduledExecutorService.class,
+                        service.getTimerInjector()).addListener(verificationHandler).setInitialMode(Mode.ACTIVE).install();
+        newControllers.add(controller);
+    }
+}
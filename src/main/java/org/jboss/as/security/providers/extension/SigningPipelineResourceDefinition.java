@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.SimpleResourceDefinition;
+import org.jboss.as.controller.client.helpers.MeasurementUnit;
+import org.jboss.as.controller.operations.validation.IntRangeValidator;
+import org.jboss.as.controller.operations.validation.LongRangeValidator;
+import org.jboss.as.controller.registry.ManagementResourceRegistration;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+
+/**
+ * A ResourceDefinition for a pipeline signing micro-batches of requests by a provider registered by this subsystem.
+ *
+ * @author Josef Cacek
+ */
+public class SigningPipelineResourceDefinition extends SimpleResourceDefinition {
+
+    /** Reference to the provider resource - <code>sunpkcs11=&lt;name&gt;</code> or <code>simple-provider=&lt;class&gt;</code>. */
+    static final SimpleAttributeDefinition PROVIDER = new SimpleAttributeDefinitionBuilder("provider", ModelType.STRING, false)
+            .setAllowExpression(true).setValidator(ProviderReference.VALIDATOR).build();
+
+    static final SimpleAttributeDefinition ALGORITHM = new SimpleAttributeDefinitionBuilder("algorithm", ModelType.STRING,
+            false).setAllowExpression(true).build();
+
+    /** Maximal number of requests signed in one batch. */
+    static final SimpleAttributeDefinition MAX_BATCH_SIZE = new SimpleAttributeDefinitionBuilder("max-batch-size",
+            ModelType.INT, true).setDefaultValue(new ModelNode(32)).setAllowExpression(true)
+            .setValidator(new IntRangeValidator(1, true, true)).build();
+
+    /** Maximal time a batch waits for more requests. */
+    static final SimpleAttributeDefinition LINGER_TIME = new SimpleAttributeDefinitionBuilder("linger-time", ModelType.LONG,
+            true).setDefaultValue(new ModelNode(2L)).setAllowExpression(true).setMeasurementUnit(MeasurementUnit.MILLISECONDS)
+            .setValidator(new LongRangeValidator(0, Long.MAX_VALUE, true, true)).build();
+
+    /**
+     * Configuration attributes, in the order they are marshalled to XML.
+     */
+    static final SimpleAttributeDefinition[] ATTRIBUTES = { PROVIDER, ALGORITHM, MAX_BATCH_SIZE, LINGER_TIME };
+
+    static final SimpleAttributeDefinition BATCH_COUNT = new SimpleAttributeDefinitionBuilder("batch-count", ModelType.LONG,
+            true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition SIGNED_COUNT = new SimpleAttributeDefinitionBuilder("signed-count", ModelType.LONG,
+            true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition FAILED_COUNT = new SimpleAttributeDefinitionBuilder("failed-count", ModelType.LONG,
+            true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition AVERAGE_BATCH_SIZE = new SimpleAttributeDefinitionBuilder("average-batch-size",
+            ModelType.DOUBLE, true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition AVERAGE_LATENCY = new SimpleAttributeDefinitionBuilder("average-latency",
+            ModelType.LONG, true).setStorageRuntime().setMeasurementUnit(MeasurementUnit.MILLISECONDS).build();
+
+    static final SimpleAttributeDefinition PENDING_COUNT = new SimpleAttributeDefinitionBuilder("pending-count", ModelType.INT,
+            true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition[] METRICS = { BATCH_COUNT, SIGNED_COUNT, FAILED_COUNT, AVERAGE_BATCH_SIZE,
+            AVERAGE_LATENCY, PENDING_COUNT };
+
+    // Constructors ----------------------------------------------------------
+
+    SigningPipelineResourceDefinition() {
+        super(SecurityProvidersExtension.SIGNING_PIPELINE_PATH, SecurityProvidersExtension
+                .getResourceDescriptionResolver(SecurityProvidersExtension.SIGNING_PIPELINE), SigningPipelineAdd.INSTANCE,
+                SigningPipelineRemove.INSTANCE);
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Registers the configuration attributes and the batching metrics.
+     *
+     * @param resourceRegistration
+     * @see org.jboss.as.controller.SimpleResourceDefinition#registerAttributes(org.jboss.as.controller.registry.ManagementResourceRegistration)
+     */
+    @Override
+    public void registerAttributes(ManagementResourceRegistration resourceRegistration) {
+        for (AttributeDefinition attribute : ATTRIBUTES) {
+            resourceRegistration.registerReadOnlyAttribute(attribute, null);
+        }
+        for (AttributeDefinition metric : METRICS) {
+            resourceRegistration.registerMetric(metric, SigningPipelineMetricsHandler.INSTANCE);
+        }
+    }
+}
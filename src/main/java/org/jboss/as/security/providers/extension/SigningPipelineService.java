@@ -0,0 +1,158 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.jboss.logging.Logger;
+import org.jboss.msc.inject.Injector;
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
+import org.jboss.msc.value.InjectedValue;
+
+/**
+ * The SigningPipelineService provides a {@link SigningPipeline} which signs micro-batches of requests by a provider
+ * registered by this subsystem.
+ *
+ * @author Josef Cacek
+ */
+public class SigningPipelineService implements Service<SigningPipeline> {
+
+    private static final Logger LOGGER = Logger.getLogger(SigningPipelineService.class);
+
+    private static final String SERVICE_TYPE = "Signature";
+
+    private final InjectedValue<ProviderServiceIndex> providerIndex = new InjectedValue<ProviderServiceIndex>();
+    private final InjectedValue<ScheduledExecutorService> timer = new InjectedValue<ScheduledExecutorService>();
+
+    private final String name;
+    private final String algorithm;
+    private final int maxBatchSize;
+    private final long lingerTime;
+
+    private volatile SigningPipeline pipeline;
+    private volatile ExecutorService signingExecutor;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new SigningPipelineService.
+     *
+     * @param name
+     * @param algorithm Signature algorithm
+     * @param maxBatchSize maximal number of requests signed in one batch
+     * @param lingerTime maximal time (milliseconds) a batch waits for more requests
+     */
+    public SigningPipelineService(String name, String algorithm, int maxBatchSize, long lingerTime) {
+        this.name = name;
+        this.algorithm = algorithm;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerTime = lingerTime;
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Returns the pipeline.
+     *
+     * @return
+     * @throws IllegalStateException
+     * @throws IllegalArgumentException
+     * @see org.jboss.msc.value.Value#getValue()
+     */
+    public SigningPipeline getValue() throws IllegalStateException, IllegalArgumentException {
+        final SigningPipeline value = pipeline;
+        if (value == null) {
+            throw new IllegalStateException("Signing pipeline " + name + " is not started");
+        }
+        return value;
+    }
+
+    /**
+     * Creates the pipeline. The batches are signed on threads owned by this service (at most one per available processor),
+     * so slow token calls don't hold the threads shared by the subsystem services.
+     *
+     * @param context
+     * @throws StartException
+     * @see org.jboss.msc.service.Service#start(org.jboss.msc.service.StartContext)
+     */
+    public void start(StartContext context) throws StartException {
+        final ProviderServiceIndex index = providerIndex.getValue();
+        if (index.getService(SERVICE_TYPE, algorithm) == null) {
+            throw new StartException(SERVICE_TYPE + "." + algorithm + " is not supported by provider "
+                    + index.getProviderName());
+        }
+        LOGGER.debug("Starting signing pipeline " + name + " for " + SERVICE_TYPE + "." + algorithm + " ("
+                + index.getProviderName() + ")");
+        final ExecutorService newSigningExecutor = SecurityProvidersExecutorService.newBoundedExecutor(Runtime.getRuntime()
+                .availableProcessors(), "security-providers-signing-" + name + "-");
+        signingExecutor = newSigningExecutor;
+        pipeline = new SigningPipeline(algorithm, index.getProvider(), maxBatchSize, lingerTime, timer.getValue(),
+                newSigningExecutor);
+    }
+
+    /**
+     * Signs the collected requests, stops the pipeline and shuts down the signing threads.
+     *
+     * @param context
+     * @see org.jboss.msc.service.Service#stop(org.jboss.msc.service.StopContext)
+     */
+    public void stop(StopContext context) {
+        LOGGER.debug("Stopping signing pipeline " + name);
+        pipeline.close();
+        pipeline = null;
+        signingExecutor.shutdown();
+        signingExecutor = null;
+    }
+
+    /**
+     * Returns injector for the index of the signing provider.
+     *
+     * @return
+     */
+    public Injector<ProviderServiceIndex> getProviderIndexInjector() {
+        return providerIndex;
+    }
+
+    /**
+     * Returns injector for the subsystem timer.
+     *
+     * @return
+     */
+    public Injector<ScheduledExecutorService> getTimerInjector() {
+        return timer;
+    }
+
+    /**
+     * Creates a service name for the given signing pipeline name.
+     *
+     * @param pipelineName
+     * @return
+     */
+    public static ServiceName createServiceName(final String pipelineName) {
+        return ServiceName.JBOSS.append("security-providers", "signing-pipeline", pipelineName);
+    }
+}
@@ -22,8 +22,10 @@
 package org.jboss.as.security.providers.extension;
 
 import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.jboss.as.controller.AbstractAddStepHandler;
+import org.jboss.as.controller.AttributeDefinition;
 import org.jboss.as.controller.OperationContext;
 import org.jboss.as.controller.OperationFailedException;
 import org.jboss.as.controller.PathAddress;
@@ -31,7 +33,6 @@ import org.jboss.as.controller.ServiceVerificationHandler;
 import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
 import org.jboss.dmr.ModelNode;
 import org.jboss.msc.service.ServiceController;
-import org.jboss.msc.service.ServiceController.Mode;
 import org.jboss.msc.service.ServiceName;
 
 /**
@@ -63,6 +64,11 @@ class SimpleProviderAdd extends AbstractAddStepHandler {
      */
     @Override
     protected void populateModel(ModelNode operation, ModelNode model) throws OperationFailedException {
+        for (AttributeDefinition attribute : CommonAttributes.PROVIDER_ATTRIBUTES) {
+            attribute.validateAndSet(operation, model);
+        }
+        SimpleProviderResourceDefinition.SNAPSHOT.validateAndSet(operation, model);
+        CommonAttributes.INSTRUMENTED.validateAndSet(operation, model);
     }
 
     /**
@@ -84,10 +90,18 @@ class SimpleProviderAdd extends AbstractAddStepHandler {
             throws OperationFailedException {
         String providerClassName = PathAddress.pathAddress(operation.get(ModelDescriptionConstants.ADDRESS)).getLastElement()
                 .getValue();
-        SimpleProviderService service = new SimpleProviderService(providerClassName);
+        final ProviderOptions options = ProviderOptions.resolve(context, model);
+        options.setInstrumented(CommonAttributes.INSTRUMENTED.resolveModelAttribute(context, model).asBoolean());
+        SimpleProviderService service = new SimpleProviderService(providerClassName, options,
+                SimpleProviderResourceDefinition.SNAPSHOT.resolveModelAttribute(
+                        context, model).asBoolean());
         ServiceName name = SimpleProviderService.createServiceName(providerClassName);
-        ServiceController<SimpleProviderService> controller = context.getServiceTarget().addService(name, service)
-                .addListener(verificationHandler).setInitialMode(Mode.ACTIVE).install();
+        ServiceController<ProviderServiceIndex> controller = context.getServiceTarget().addService(name, service)
+                .addDependency(SecurityProvidersExecutorService.SERVICE_NAME, ScheduledExecutorService.class,
+                        service.getExecutorInjector())
+                .addDependency(SecurityProvidersExecutorService.TIMER_SERVICE_NAME, ScheduledExecutorService.class,
+                        service.getTimerInjector()).addListener(verificationHandler)
+                .setInitialMode(options.getInitialMode()).install();
         newControllers.add(controller);
     }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.SimpleResourceDefinition;
+import org.jboss.as.controller.descriptions.DefaultOperationDescriptionProvider;
+import org.jboss.as.controller.registry.ManagementResourceRegistration;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+
+/**
+ * A ResourceDefinition for simple security providers (i.e. providers with a public constructor without parameters).
+ *
+ * @author Josef Cacek
+ */
+public class SimpleProviderResourceDefinition extends SimpleResourceDefinition {
+
+    /**
+     * If true, an immutable copy of the provider service table is registered instead of the provider, so the service
+     * lookups don't take the provider lock.
+     */
+    static final SimpleAttributeDefinition SNAPSHOT = new SimpleAttributeDefinitionBuilder("snapshot", ModelType.BOOLEAN, true)
+            .setDefaultValue(new ModelNode(false)).setAllowExpression(true).build();
+
+    static final SimpleAttributeDefinition[] METRICS = { SunPKCS11ResourceDefinition.INIT_TIME,
+            SunPKCS11ResourceDefinition.WARMUP_TIME, SunPKCS11ResourceDefinition.WARMED_UP,
+            SunPKCS11ResourceDefinition.SERVICE_COUNT };
+
+    // Constructors ----------------------------------------------------------
+
+    SimpleProviderResourceDefinition() {
+        super(SecurityProvidersExtension.SIMPLE_PROVIDER_PATH, SecurityProvidersExtension
+                .getResourceDescriptionResolver(SecurityProvidersExtension.SIMPLE_PROVIDER), SimpleProviderAdd.INSTANCE,
+                SimpleProviderRemove.INSTANCE);
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Registers the attributes common for all providers, the snapshot and instrumented attributes and the provider metrics.
+     *
+     * @param resourceRegistration
+     * @see org.jboss.as.controller.SimpleResourceDefinition#registerAttributes(org.jboss.as.controller.registry.ManagementResourceRegistration)
+     */
+    @Override
+    public void registerAttributes(ManagementResourceRegistration resourceRegistration) {
+        for (AttributeDefinition attribute : CommonAttributes.PROVIDER_ATTRIBUTES) {
+            resourceRegistration.registerReadOnlyAttribute(attribute, null);
+        }
+        resourceRegistration.registerReadOnlyAttribute(SNAPSHOT, null);
+        resourceRegistration.registerReadOnlyAttribute(CommonAttributes.INSTRUMENTED, null);
+        for (AttributeDefinition metric : METRICS) {
+            resourceRegistration.registerMetric(metric, SimpleProviderMetricsHandler.INSTANCE);
+        }
+        resourceRegistration.registerMetric(SunPKCS11ResourceDefinition.LATENCY_HISTOGRAMS,
+                SimpleProviderMetricsHandler.INSTANCE);
+    }
+
+    /**
+     * Registers the add and remove operations and the operation which resets the latency histograms.
+     *
+     * @param resourceRegistration
+     * @see org.jboss.as.controller.SimpleResourceDefinition#registerOperations(org.jboss.as.controller.registry.ManagementResourceRegistration)
+     */
+    @Override
+    public void registerOperations(ManagementResourceRegistration resourceRegistration) {
+        super.registerOperations(resourceRegistration);
+        resourceRegistration.registerOperationHandler(ResetLatencyHistogramsHandler.OPERATION_NAME,
+                ResetLatencyHistogramsHandler.INSTANCE, new DefaultOperationDescriptionProvider(
+                        ResetLatencyHistogramsHandler.OPERATION_NAME, getResourceDescriptionResolver()));
+    }
+}
@@ -21,18 +21,10 @@
  */
 package org.jboss.as.security.providers.extension;
 
-import java.security.AccessController;
-import java.security.PrivilegedAction;
-import java.security.PrivilegedExceptionAction;
 import java.security.Provider;
-import java.security.Security;
 
 import org.jboss.logging.Logger;
-import org.jboss.msc.service.Service;
 import org.jboss.msc.service.ServiceName;
-import org.jboss.msc.service.StartContext;
-import org.jboss.msc.service.StartException;
-import org.jboss.msc.service.StopContext;
 
 /**
  * The SimpleProviderService instance registers and removes a Java Security Provider which has public constructor without
@@ -40,92 +32,49 @@ import org.jboss.msc.service.StopContext;
  * 
  * @author Josef Cacek
  */
-public class SimpleProviderService implements Service<SimpleProviderService> {
+public class SimpleProviderService extends AbstractProviderService {
 
     private static final Logger LOGGER = Logger.getLogger(SimpleProviderService.class);
 
     private final String providerClassName;
-    private String providerName;
+    private final boolean snapshot;
 
     // Constructors ----------------------------------------------------------
 
     /**
-     * Create a new SunPKCS11Service.
+     * Create a new SimpleProviderService.
      * 
      * @param className
      */
     public SimpleProviderService(final String className) {
-        super();
-        LOGGER.debug("Creating SimpleProvider service for " + className);
-        this.providerClassName = className;
+        this(className, null);
     }
 
-    // Public methods --------------------------------------------------------
-
     /**
-     * Returns this instance.
+     * Create a new SimpleProviderService.
      * 
-     * @return
-     * @throws IllegalStateException
-     * @throws IllegalArgumentException
-     * @see org.jboss.msc.value.Value#getValue()
+     * @param className
+     * @param options
      */
-    public SimpleProviderService getValue() throws IllegalStateException, IllegalArgumentException {
-        return this;
+    public SimpleProviderService(final String className, ProviderOptions options) {
+        this(className, options, false);
     }
 
     /**
-     * Adds (registers) a Java Security Provider.
+     * Create a new SimpleProviderService.
      * 
-     * @param context
-     * @throws StartException
-     * @see org.jboss.msc.service.Service#start(org.jboss.msc.service.StartContext)
+     * @param className
+     * @param options
+     * @param snapshot if true, a {@link SnapshotProvider} wrapping the provider is registered
      */
-    public void start(StartContext context) throws StartException {
-        LOGGER.info("Adding Java Security Provider: " + providerClassName);
-        try {
-            SecurityManager sm = System.getSecurityManager();
-            if (sm != null) {
-                AccessController.doPrivileged(new PrivilegedExceptionAction<Object>() {
-                    public Object run() throws Exception {
-                        final Provider provider = (Provider) Class.forName(providerClassName).getConstructor().newInstance();
-                        Security.addProvider(provider);
-                        providerName = provider.getName();
-                        return null;
-                    }
-                });
-            } else {
-                final Provider provider = (Provider) Class.forName(providerClassName).getConstructor().newInstance();
-                Security.addProvider(provider);
-                providerName = provider.getName();
-            }
-        } catch (Exception e) {
-            LOGGER.error("Adding SunPKCS11 security provider " + providerClassName + " failed.", e);
-            new StartException("Unable to register SunPKCS11 provider", e);
-        }
+    public SimpleProviderService(final String className, ProviderOptions options, boolean snapshot) {
+        super(options);
+        LOGGER.debug("Creating SimpleProvider service for " + className);
+        this.providerClassName = className;
+        this.snapshot = snapshot;
     }
 
-    /**
-     * Removes the SunPKCS11 security provider.
-     * 
-     * @param context
-     * @see org.jboss.msc.service.Service#stop(org.jboss.msc.service.StopContext)
-     */
-    public void stop(StopContext context) {
-        LOGGER.info("Removing Java Security Provider " + providerName + " (" + providerClassName + ")");
-        SecurityManager sm = System.getSecurityManager();
-        if (sm != null) {
-            AccessController.doPrivileged(new PrivilegedAction<Object>() {
-                public Object run() {
-                    Security.removeProvider(providerName);
-                    return null;
-                }
-            });
-        } else {
-            Security.removeProvider(providerName);
-        }
-
-    }
+    // Public methods --------------------------------------------------------
 
     /**
      * Creates a service name for the given simple provider class name.
@@ -137,4 +86,28 @@ public class SimpleProviderService implements Service<SimpleProviderService> {
         return ServiceName.JBOSS.append("security-providers", "simple-provider", className);
     }
 
+    // Protected methods -----------------------------------------------------
+
+    /**
+     * Creates a new instance of the configured provider class. In the snapshot mode the instance is wrapped by a
+     * {@link SnapshotProvider}.
+     * 
+     * @return
+     * @throws Exception
+     * @see org.jboss.as.security.providers.extension.AbstractProviderService#createProvider()
+     */
+    @Override
+    protected Provider createProvider() throws Exception {
+        final Provider provider = (Provider) Class.forName(providerClassName).getConstructor().newInstance();
+        return snapshot ? new SnapshotProvider(provider) : provider;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String getDescription() {
+        return "Java Security Provider " + providerClassName;
+    }
+
 }
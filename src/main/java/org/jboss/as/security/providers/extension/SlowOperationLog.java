@@ -0,0 +1,258 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.Key;
+import java.security.interfaces.DSAKey;
+import java.security.interfaces.ECKey;
+import java.security.interfaces.RSAKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.crypto.interfaces.DHKey;
+
+/**
+ * Bounded in-memory ring of the crypto operations which took longer than a threshold. The operations are timed by an
+ * {@link InstrumentedProvider}, which compares each duration with {@link #getThreshold()}, so the operations below the
+ * threshold cost a single comparison. For a slow operation the algorithm, key size, duration and the stack of the calling
+ * thread (without the JCA frames) are captured and the oldest entry is overwritten when the ring is full. Recording is
+ * lock-free.
+ * <p>
+ * Only the types timed by the {@link InstrumentedProvider} reach the log (MessageDigest, Signature, KeyPairGenerator).
+ * The JCE operations - encryption, decryption, key wrapping and unwrapping, MAC computation - are never recorded, even
+ * when they are slow, as a JDK which requires signed JCE providers rejects their wrappers.
+ *
+ * @author Josef Cacek
+ */
+final class SlowOperationLog {
+
+    /** Maximal number of captured stack frames. */
+    static final int MAX_STACK_DEPTH = 32;
+
+    private static final String[] SKIPPED_PACKAGES = { "java.security.", "javax.crypto.", "sun.security." };
+    private static final String[] SKIPPED_CLASSES = { Thread.class.getName(), InstrumentedProvider.class.getName(),
+            SlowOperationLog.class.getName() };
+
+    private final long threshold;
+    private final AtomicReferenceArray<Entry> entries;
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new SlowOperationLog.
+     *
+     * @param thresholdMillis operations longer than this number of milliseconds are recorded
+     * @param capacity maximal number of kept entries
+     */
+    SlowOperationLog(long thresholdMillis, int capacity) {
+        this.threshold = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.entries = new AtomicReferenceArray<Entry>(capacity);
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Returns the threshold (in nanoseconds) - longer operations are recorded.
+     *
+     * @return
+     */
+    long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Records a slow operation done by the calling thread.
+     *
+     * @param operation operation in form <code>Type.Algorithm.operation</code>
+     * @param key the key used by the operation, may be <code>null</code>
+     * @param duration duration in nanoseconds
+     */
+    void record(String operation, Key key, long duration) {
+        final long id = sequence.getAndIncrement();
+        entries.set((int) (id % entries.length()), new Entry(id, System.currentTimeMillis(), operation, getKeySize(key),
+                duration, Thread.currentThread().getName(), getCallerStack()));
+    }
+
+    /**
+     * Returns the kept entries, the oldest first.
+     *
+     * @return
+     */
+    List<Entry> getEntries() {
+        final List<Entry> result = new ArrayList<Entry>(entries.length());
+        for (int i = 0; i < entries.length(); i++) {
+            final Entry entry = entries.get(i);
+            if (entry != null) {
+                result.add(entry);
+            }
+        }
+        Collections.sort(result, new Comparator<Entry>() {
+            public int compare(Entry o1, Entry o2) {
+                return o1.id < o2.id ? -1 : (o1.id == o2.id ? 0 : 1);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns total number of the recorded slow operations (including the overwritten ones).
+     *
+     * @return
+     */
+    long getCount() {
+        return sequence.get();
+    }
+
+    /**
+     * Returns the key size in bits taken from the parameters of an RSA, EC, DSA or DH key, or -1 (unknown) otherwise. The
+     * key material is never read, so opaque keys (e.g. secret or sensitive token keys) are reported as unknown.
+     *
+     * @param key
+     * @return
+     */
+    static int getKeySize(Key key) {
+        if (key instanceof RSAKey) {
+            return ((RSAKey) key).getModulus().bitLength();
+        } else if (key instanceof ECKey && ((ECKey) key).getParams() != null) {
+            return ((ECKey) key).getParams().getOrder().bitLength();
+        } else if (key instanceof DSAKey && ((DSAKey) key).getParams() != null) {
+            return ((DSAKey) key).getParams().getP().bitLength();
+        } else if (key instanceof DHKey && ((DHKey) key).getParams() != null) {
+            return ((DHKey) key).getParams().getP().bitLength();
+        }
+        return -1;
+    }
+
+    // Private methods -------------------------------------------------------
+
+    /**
+     * Returns the stack of the calling thread starting with the first frame outside JCA and this subsystem's wrappers.
+     *
+     * @return
+     */
+    private static StackTraceElement[] getCallerStack() {
+        final StackTraceElement[] stack = new Throwable().getStackTrace();
+        int first = 0;
+        while (first < stack.length && isSkipped(stack[first].getClassName())) {
+            first++;
+        }
+        return Arrays.copyOfRange(stack, first, Math.min(stack.length, first + MAX_STACK_DEPTH));
+    }
+
+    private static boolean isSkipped(String className) {
+        for (String prefix : SKIPPED_PACKAGES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        // the skipped classes with their nested classes, not other classes with the same name prefix
+        for (String skipped : SKIPPED_CLASSES) {
+            if (className.equals(skipped) || className.startsWith(skipped + "$")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Embedded classes ------------------------------------------------------
+
+    /**
+     * A recorded slow operation.
+     */
+    static final class Entry {
+
+        private final long id;
+        private final long time;
+        private final String operation;
+        private final int keySize;
+        private final long duration;
+        private final String threadName;
+        private final StackTraceElement[] stack;
+
+        Entry(long id, long time, String operation, int keySize, long duration, String threadName,
+                StackTraceElement[] stack) {
+            this.id = id;
+            this.time = time;
+            this.operation = operation;
+            this.keySize = keySize;
+            this.duration = duration;
+            this.threadName = threadName;
+            this.stack = stack;
+        }
+
+        /**
+         * Returns the time (milliseconds since the epoch) when the operation finished.
+         *
+         * @return
+         */
+        long getTime() {
+            return time;
+        }
+
+        /**
+         * Returns the operation in form <code>Type.Algorithm.operation</code>.
+         *
+         * @return
+         */
+        String getOperation() {
+            return operation;
+        }
+
+        /**
+         * Returns the key size in bits or -1 if it's not known.
+         *
+         * @return
+         */
+        int getKeySize() {
+            return keySize;
+        }
+
+        /**
+         * Returns the operation duration in nanoseconds.
+         *
+         * @return
+         */
+        long getDuration() {
+            return duration;
+        }
+
+        String getThreadName() {
+            return threadName;
+        }
+
+        /**
+         * Returns the captured frames of the caller.
+         *
+         * @return
+         */
+        StackTraceElement[] getStack() {
+            return stack.clone();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.Provider;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-optimized immutable copy of a provider registered in the JCA provider list instead of the provider. Some legacy
+ * providers synchronize inside {@link Provider#getService(String, String)} and {@link Provider#getServices()}, so
+ * concurrent engine lookups (e.g. <code>Cipher.getInstance()</code>) contend on the provider monitor. The service table of
+ * the wrapped provider is copied to a {@link ProviderServiceIndex} once and the lookups don't take any lock. Lookups by
+ * the exact names or aliases (the common case) are served by a plain map without converting the names to upper case.
+ * <p>
+ * The returned services belong to the wrapped provider, so the SPI instances created by JCA belong to it too. Services
+ * added to the wrapped provider later are not visible.
+ *
+ * @author Josef Cacek
+ */
+final class SnapshotProvider extends Provider {
+
+    private static final long serialVersionUID = 1L;
+    private static final String ALIAS_PREFIX = "Alg.Alias.";
+
+    private final transient Provider delegate;
+    private final transient ProviderServiceIndex index;
+    private final transient Map<String, Map<String, Service>> exactServices;
+    private final transient Set<Service> services;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new SnapshotProvider with the name, version and properties of the given provider.
+     *
+     * @param delegate
+     */
+    SnapshotProvider(Provider delegate) {
+        super(delegate.getName(), delegate.getVersion(), delegate.getInfo());
+        this.delegate = delegate;
+        this.index = ProviderServiceIndex.create(delegate);
+        this.services = Collections.unmodifiableSet(new LinkedHashSet<Service>(delegate.getServices()));
+        this.exactServices = new HashMap<String, Map<String, Service>>();
+        for (Service service : services) {
+            Map<String, Service> typeMap = exactServices.get(service.getType());
+            if (typeMap == null) {
+                typeMap = new HashMap<String, Service>();
+                exactServices.put(service.getType(), typeMap);
+            }
+            typeMap.put(service.getAlgorithm(), service);
+        }
+        for (Map.Entry<Object, Object> entry : delegate.entrySet()) {
+            final Object key = entry.getKey();
+            if (!(key instanceof String) || !((String) key).startsWith(ALIAS_PREFIX)) {
+                continue;
+            }
+            final String typeAndAlias = ((String) key).substring(ALIAS_PREFIX.length());
+            final int dot = typeAndAlias.indexOf('.');
+            final Map<String, Service> typeMap = dot < 1 ? null : exactServices.get(typeAndAlias.substring(0, dot));
+            final Service service = typeMap == null ? null : typeMap.get(entry.getValue());
+            if (service != null && !typeMap.containsKey(typeAndAlias.substring(dot + 1))) {
+                typeMap.put(typeAndAlias.substring(dot + 1), service);
+            }
+        }
+        // the properties are used by the provider filters, e.g. Security.getProviders("Cipher.AES")
+        putAll(delegate);
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Returns the service of the wrapped provider from the snapshot. The exact name or alias is tried first, names in other
+     * case are resolved by the index.
+     *
+     * @param type
+     * @param algorithm
+     * @return
+     * @see java.security.Provider#getService(java.lang.String, java.lang.String)
+     */
+    @Override
+    public Service getService(String type, String algorithm) {
+        final Map<String, Service> typeMap = exactServices.get(type);
+        final Service service = typeMap == null ? null : typeMap.get(algorithm);
+        return service != null ? service : index.getService(type, algorithm);
+    }
+
+    /**
+     * Returns all the services of the wrapped provider from the snapshot.
+     *
+     * @return
+     * @see java.security.Provider#getServices()
+     */
+    @Override
+    public Set<Service> getServices() {
+        return services;
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Returns the wrapped provider.
+     *
+     * @return
+     */
+    Provider getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Source of random bytes backed by several {@link SecureRandom} instances of a single provider. The instances (stripes) are
+ * selected by the calling thread, so concurrent threads rarely compete for the same generator.
+ * <p>
+ * If the buffer size is positive, each stripe prefetches random bytes to a ring buffer. The buffer is refilled on the
+ * executor in a single large batch when the number of available bytes drops below the refill threshold, so small requests
+ * are served from memory without calling the generator (which is a native round-trip for SunPKCS11). Requests larger than
+ * the buffer and requests which find the buffer empty are served by the stripe generator directly.
+ *
+ * @author Josef Cacek
+ */
+public final class StripedSecureRandom {
+
+    private static final Logger LOGGER = Logger.getLogger(StripedSecureRandom.class);
+
+    private final String algorithm;
+    private final Provider provider;
+    private final Stripe[] stripes;
+    private final int refillThreshold;
+    private final Executor executor;
+
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong refills = new AtomicLong();
+    private final AtomicLong directs = new AtomicLong();
+
+    private volatile boolean closed;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new StripedSecureRandom.
+     *
+     * @param algorithm SecureRandom algorithm
+     * @param provider
+     * @param stripes number of stripes
+     * @param bufferSize size (bytes) of the prefetch buffer of a stripe, zero disables the prefetching
+     * @param refillThreshold number of available bytes in a stripe buffer below which the buffer is refilled
+     * @param executor executor of the buffer refills
+     * @throws GeneralSecurityException if the SecureRandom instances can't be created
+     */
+    StripedSecureRandom(String algorithm, Provider provider, int stripes, int bufferSize, int refillThreshold,
+            Executor executor) throws GeneralSecurityException {
+        this.algorithm = algorithm;
+        this.provider = provider;
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe(SecureRandom.getInstance(algorithm, provider), bufferSize);
+        }
+        this.refillThreshold = refillThreshold;
+        this.executor = executor;
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Fills the given array with random bytes.
+     *
+     * @param bytes
+     */
+    public void nextBytes(byte[] bytes) {
+        final Stripe stripe = getStripe();
+        final int length = bytes.length;
+        int offset = 0;
+        if (length > 0 && length <= stripe.buffer.length) {
+            boolean refill = false;
+            synchronized (stripe) {
+                offset = stripe.read(bytes);
+                if (!stripe.refilling && stripe.available < refillThreshold && !closed) {
+                    stripe.refilling = true;
+                    refill = true;
+                }
+            }
+            if (offset > 0) {
+                consumed.addAndGet(offset);
+            }
+            if (refill) {
+                scheduleRefill(stripe);
+            }
+        }
+        if (offset < length) {
+            directs.incrementAndGet();
+            if (offset == 0) {
+                stripe.random.nextBytes(bytes);
+            } else {
+                final byte[] rest = new byte[length - offset];
+                stripe.random.nextBytes(rest);
+                System.arraycopy(rest, 0, bytes, offset, rest.length);
+            }
+        }
+    }
+
+    /**
+     * Returns a new array with the given number of random bytes.
+     *
+     * @param length
+     * @return
+     */
+    public byte[] nextBytes(int length) {
+        final byte[] bytes = new byte[length];
+        nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the generator of the current thread's stripe, e.g. for {@link javax.crypto.Cipher#init(int, java.security.Key,
+     * SecureRandom)}. Bytes taken directly from the generator bypass the prefetch buffer.
+     *
+     * @return
+     */
+    public SecureRandom getSecureRandom() {
+        return getStripe().random;
+    }
+
+    /**
+     * Returns the SecureRandom algorithm.
+     *
+     * @return
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Returns the provider of the generators.
+     *
+     * @return
+     */
+    public Provider getProvider() {
+        return provider;
+    }
+
+    /**
+     * Returns number of bytes served from the prefetch buffers.
+     *
+     * @return
+     */
+    public long getConsumedBytes() {
+        return consumed.get();
+    }
+
+    /**
+     * Returns number of completed buffer refills.
+     *
+     * @return
+     */
+    public long getRefillCount() {
+        return refills.get();
+    }
+
+    /**
+     * Returns number of requests (at least partly) served by a generator directly.
+     *
+     * @return
+     */
+    public long getDirectCount() {
+        return directs.get();
+    }
+
+    /**
+     * Returns number of prefetched bytes available in all the stripe buffers.
+     *
+     * @return
+     */
+    public int getAvailableBytes() {
+        int result = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                result += stripe.available;
+            }
+        }
+        return result;
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Schedules the initial fill of the stripe buffers.
+     */
+    void prefetch() {
+        for (Stripe stripe : stripes) {
+            if (stripe.buffer.length == 0) {
+                continue;
+            }
+            synchronized (stripe) {
+                if (stripe.refilling) {
+                    continue;
+                }
+                stripe.refilling = true;
+            }
+            scheduleRefill(stripe);
+        }
+    }
+
+    /**
+     * Stops the refills and wipes the prefetched bytes. The generators can be still used directly.
+     */
+    void close() {
+        closed = true;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                Arrays.fill(stripe.buffer, (byte) 0);
+                stripe.available = 0;
+            }
+        }
+    }
+
+    // Private methods -------------------------------------------------------
+
+    private Stripe getStripe() {
+        return stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+    }
+
+    private void scheduleRefill(final Stripe stripe) {
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    refill(stripe);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Refill of the random buffer rejected", e);
+            synchronized (stripe) {
+                stripe.refilling = false;
+            }
+        }
+    }
+
+    /**
+     * Generates the missing bytes of the stripe buffer outside of the stripe lock and appends them to the buffer.
+     *
+     * @param stripe
+     */
+    private void refill(Stripe stripe) {
+        try {
+            final int missing;
+            synchronized (stripe) {
+                missing = stripe.buffer.length - stripe.available;
+            }
+            if (missing > 0 && !closed) {
+                final byte[] batch = new byte[missing];
+                stripe.random.nextBytes(batch);
+                synchronized (stripe) {
+                    if (!closed) {
+                        stripe.write(batch);
+                    }
+                }
+                Arrays.fill(batch, (byte) 0);
+                refills.incrementAndGet();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Refill of the random buffer (" + algorithm + ", " + provider.getName() + ") failed", e);
+        } finally {
+            synchronized (stripe) {
+                stripe.refilling = false;
+            }
+        }
+    }
+
+    // Embedded classes ------------------------------------------------------
+
+    /**
+     * Generator with its prefetch ring buffer - the stripe instance itself guards the buffer.
+     */
+    private static class Stripe {
+        private final SecureRandom random;
+        private final byte[] buffer;
+        private int readIndex;
+        private int available;
+        private boolean refilling;
+
+        Stripe(SecureRandom random, int bufferSize) {
+            this.random = random;
+            buffer = new byte[bufferSize];
+        }
+
+        /**
+         * Moves up to <code>bytes.length</code> available bytes to the given array and wipes them in the buffer.
+         *
+         * @param bytes
+         * @return number of bytes read
+         */
+        int read(byte[] bytes) {
+            final int count = Math.min(bytes.length, available);
+            final int first = Math.min(count, buffer.length - readIndex);
+            System.arraycopy(buffer, readIndex, bytes, 0, first);
+            Arrays.fill(buffer, readIndex, readIndex + first, (byte) 0);
+            if (first < count) {
+                System.arraycopy(buffer, 0, bytes, first, count - first);
+                Arrays.fill(buffer, 0, count - first, (byte) 0);
+            }
+            readIndex = (readIndex + count) % buffer.length;
+            available -= count;
+            return count;
+        }
+
+        /**
+         * Appends the batch to the free part of the buffer. The free part only grows between the start of a refill and the
+         * write, so it's never overwritten.
+         *
+         * @param batch
+         */
+        void write(byte[] batch) {
+            final int length = Math.min(batch.length, buffer.length - available);
+            final int writeIndex = (readIndex + available) % buffer.length;
+            final int first = Math.min(length, buffer.length - writeIndex);
+            System.arraycopy(batch, 0, buffer, writeIndex, first);
+            System.arraycopy(batch, first, buffer, 0, length - first);
+            available += length;
+        }
+    }
+}
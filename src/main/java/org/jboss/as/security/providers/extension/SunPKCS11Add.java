@@ -24,8 +24,10 @@ package org.jboss.as.security.providers.extension;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.jboss.as.controller.AbstractAddStepHandler;
+import org.jboss.as.controller.AttributeDefinition;
 import org.jboss.as.controller.OperationContext;
 import org.jboss.as.controller.OperationFailedException;
 import org.jboss.as.controller.PathAddress;
@@ -33,6 +35,7 @@ import org.jboss.as.controller.ServiceVerificationHandler;
 import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
 import org.jboss.dmr.ModelNode;
 import org.jboss.dmr.Property;
+import org.jboss.msc.service.ServiceBuilder;
 import org.jboss.msc.service.ServiceController;
 import org.jboss.msc.service.ServiceController.Mode;
 import org.jboss.msc.service.ServiceName;
@@ -67,10 +70,24 @@ class SunPKCS11Add extends AbstractAddStepHandler {
     @Override
     protected void populateModel(ModelNode operation, ModelNode model) throws OperationFailedException {
         SunPKCS11ResourceDefinition.ATTRIBUTES.validateAndSet(operation, model);
+        for (AttributeDefinition attribute : CommonAttributes.PROVIDER_ATTRIBUTES) {
+            attribute.validateAndSet(operation, model);
+        }
+        CommonAttributes.INSTRUMENTED.validateAndSet(operation, model);
+        for (AttributeDefinition attribute : SunPKCS11ResourceDefinition.HEALTH_ATTRIBUTES) {
+            attribute.validateAndSet(operation, model);
+        }
+        for (AttributeDefinition attribute : SunPKCS11ResourceDefinition.ASYNC_ATTRIBUTES) {
+            attribute.validateAndSet(operation, model);
+        }
+        for (AttributeDefinition attribute : SunPKCS11ResourceDefinition.SLOW_OPERATION_ATTRIBUTES) {
+            attribute.validateAndSet(operation, model);
+        }
     }
 
     /**
-     * Creates and registers {@link SunPKCS11Service} instance with the given configuration.
+     * Creates and registers {@link SunPKCS11Service} instance with the given configuration and the
+     * {@link AsyncCryptoService} bound to it if the asynchronous executor is configured.
      * 
      * @param context
      * @param operation
@@ -88,20 +105,62 @@ class SunPKCS11Add extends AbstractAddStepHandler {
             throws OperationFailedException {
         String providerName = PathAddress.pathAddress(operation.get(ModelDescriptionConstants.ADDRESS)).getLastElement()
                 .getValue();
-        Map<String, String> attributeMap = null;
-        final ModelNode resolvedModelAttribute = SunPKCS11ResourceDefinition.ATTRIBUTES.resolveModelAttribute(context, model);
-        if (resolvedModelAttribute.isDefined()) {
-            attributeMap = new HashMap<String, String>();
-            final List<ModelNode> attrList = resolvedModelAttribute.asList();
-            for (ModelNode option : attrList) {
-                final Property asProperty = option.asProperty();
-                attributeMap.put(asProperty.getName(), asProperty.getValue().asString());
-            }
-        }
-        SunPKCS11Service service = new SunPKCS11Service(providerName, attributeMap);
+        final Map<String, String> attributeMap = toAttributeMap(SunPKCS11ResourceDefinition.ATTRIBUTES.resolveModelAttribute(
+                context, model));
+        final HealthCheckOptions healthOptions = HealthCheckOptions.resolve(context, model);
+        final ProviderOptions options = ProviderOptions.resolve(context, model);
+        options.setInstrumented(CommonAttributes.INSTRUMENTED.resolveModelAttribute(context, model).asBoolean());
+        final ModelNode slowThreshold = SunPKCS11ResourceDefinition.SLOW_OPERATION_THRESHOLD.resolveModelAttribute(context,
+                model);
+        final SlowOperationLog slowOperations = slowThreshold.isDefined() ? new SlowOperationLog(slowThreshold.asLong(),
+                SunPKCS11ResourceDefinition.SLOW_OPERATION_CAPACITY.resolveModelAttribute(context, model).asInt()) : null;
+        SunPKCS11Service service = new SunPKCS11Service(providerName, attributeMap, options, healthOptions, slowOperations);
         ServiceName name = SunPKCS11Service.createServiceName(providerName);
-        ServiceController<SunPKCS11Service> controller = context.getServiceTarget().addService(name, service)
-                .addListener(verificationHandler).setInitialMode(Mode.ACTIVE).install();
+        ServiceBuilder<ProviderServiceIndex> builder = context.getServiceTarget().addService(name, service)
+                .addDependency(SecurityProvidersExecutorService.SERVICE_NAME, ScheduledExecutorService.class,
+                        service.getExecutorInjector())
+                .addDependency(SecurityProvidersExecutorService.TIMER_SERVICE_NAME, ScheduledExecutorService.class,
+                        service.getTimerInjector());
+        if (service.getFallbackServiceName() != null) {
+            // the fallback is looked up when needed, so a fallback without a registered provider doesn't fail this service
+            builder.addDependency(service.getFallbackServiceName());
+        }
+        ServiceController<ProviderServiceIndex> controller = builder.addListener(verificationHandler)
+                .setInitialMode(options.getInitialMode()).install();
         newControllers.add(controller);
+
+        final ModelNode asyncThreads = SunPKCS11ResourceDefinition.ASYNC_THREADS.resolveModelAttribute(context, model);
+        if (asyncThreads.isDefined()) {
+            final AsyncCryptoService asyncService = new AsyncCryptoService(providerName, asyncThreads.asInt(),
+                    SunPKCS11ResourceDefinition.ASYNC_QUEUE_SIZE.resolveModelAttribute(context, model).asInt(),
+                    SaturationPolicy.valueOf(SunPKCS11ResourceDefinition.SATURATION_POLICY.resolveModelAttribute(context,
+                            model).asString()));
+            // not verified - a provider which can't be registered doesn't fail the operation, so its executor shouldn't either;
+            // the executor of an on-demand provider is passive, so it doesn't start the provider
+            newControllers.add(context.getServiceTarget()
+                    .addService(AsyncCryptoService.createServiceName(providerName), asyncService)
+                    .addDependency(name, ProviderServiceIndex.class, asyncService.getProviderIndexInjector())
+                    .setInitialMode(options.isOnDemand() ? Mode.PASSIVE : Mode.ACTIVE).install());
+        }
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Converts the resolved value of the "attributes" attribute to a map of the provider configuration attributes.
+     * 
+     * @param resolvedAttributes
+     * @return the map or <code>null</code> if the value is undefined
+     */
+    static Map<String, String> toAttributeMap(ModelNode resolvedAttributes) {
+        if (!resolvedAttributes.isDefined()) {
+            return null;
+        }
+        final Map<String, String> attributeMap = new HashMap<String, String>();
+        for (ModelNode option : resolvedAttributes.asList()) {
+            final Property asProperty = option.asProperty();
+            attributeMap.put(asProperty.getName(), asProperty.getValue().asString());
+        }
+        return attributeMap;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,202 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import org.jboss.as.controller.AbstractWriteAttributeHandler;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.PathElement;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
+import org.jboss.as.controller.registry.Resource;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.Property;
+import org.jboss.msc.service.ServiceController;
+import org.jboss.msc.service.ServiceName;
+
+/**
+ * Handler for writing the "attributes" attribute of a SunPKCS11 provider. If no other resource uses the provider, the new
+ * configuration is applied without the service restart - see {@link SunPKCS11Service#reconfigure(java.util.Map)}.
+ * Otherwise a reload is required: the dependent services (crypto pools, keystores, the async executor, hybrid providers,
+ * ...) obtained the provider when they started, so a replaced provider would stay in use by them.
+ *
+ * @author Josef Cacek
+ */
+class SunPKCS11AttributesWriteHandler extends AbstractWriteAttributeHandler<Boolean> {
+
+    public static final SunPKCS11AttributesWriteHandler INSTANCE = new SunPKCS11AttributesWriteHandler();
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Private ctor.
+     */
+    private SunPKCS11AttributesWriteHandler() {
+        super(SunPKCS11ResourceDefinition.ATTRIBUTES);
+    }
+
+    // Protected methods -----------------------------------------------------
+
+    /**
+     * Reconfigures the running provider service, unless another resource of the subsystem uses the provider.
+     *
+     * @param context
+     * @param operation
+     * @param attributeName
+     * @param resolvedValue
+     * @param currentValue
+     * @param handbackHolder
+     * @return <code>true</code> if the provider has dependents and the reload is required
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractWriteAttributeHandler#applyUpdateToRuntime(org.jboss.as.controller.OperationContext,
+     *      org.jboss.dmr.ModelNode, java.lang.String, org.jboss.dmr.ModelNode, org.jboss.dmr.ModelNode,
+     *      org.jboss.as.controller.AbstractWriteAttributeHandler.HandbackHolder)
+     */
+    @Override
+    protected boolean applyUpdateToRuntime(OperationContext context, ModelNode operation, String attributeName,
+            ModelNode resolvedValue, ModelNode currentValue, HandbackHolder<Boolean> handbackHolder)
+            throws OperationFailedException {
+        final String providerName = getProviderName(operation);
+        if (hasDependents(context, providerName)) {
+            return true;
+        }
+        reconfigure(context, providerName, resolvedValue);
+        handbackHolder.setHandback(Boolean.TRUE);
+        return false;
+    }
+
+    /**
+     * Reconfigures the running provider service back to the original configuration, if it was reconfigured.
+     *
+     * @param context
+     * @param operation
+     * @param attributeName
+     * @param valueToRestore
+     * @param valueToRevert
+     * @param handback
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractWriteAttributeHandler#revertUpdateToRuntime(org.jboss.as.controller.OperationContext,
+     *      org.jboss.dmr.ModelNode, java.lang.String, org.jboss.dmr.ModelNode, org.jboss.dmr.ModelNode, java.lang.Object)
+     */
+    @Override
+    protected void revertUpdateToRuntime(OperationContext context, ModelNode operation, String attributeName,
+            ModelNode valueToRestore, ModelNode valueToRevert, Boolean handback) throws OperationFailedException {
+        if (handback != null) {
+            reconfigure(context, getProviderName(operation), context.resolveExpressions(valueToRestore));
+        }
+    }
+
+    // Private methods -------------------------------------------------------
+
+    private static String getProviderName(ModelNode operation) {
+        return PathAddress.pathAddress(operation.get(ModelDescriptionConstants.ADDRESS)).getLastElement().getValue();
+    }
+
+    /**
+     * Returns true if a service of another resource depends on the given SunPKCS11 provider - a keystore or the async
+     * executor of the provider, or a resource referencing the provider (crypto pool, keypair pool, secure random, signing
+     * pipeline, hybrid provider). The fallback reference of a health check is not a dependency, the fallback provider is
+     * looked up when it's promoted.
+     *
+     * @param context
+     * @param providerName
+     * @return
+     * @throws OperationFailedException
+     */
+    private boolean hasDependents(OperationContext context, String providerName) throws OperationFailedException {
+        final Resource subsystem = context.readResourceFromRoot(PathAddress.pathAddress(PathElement.pathElement(
+                ModelDescriptionConstants.SUBSYSTEM, SecurityProvidersExtension.SUBSYSTEM_NAME)));
+        final Resource provider = subsystem.getChild(PathElement.pathElement(SecurityProvidersExtension.SUNPKCS11,
+                providerName));
+        if (provider != null
+                && (provider.hasChildren(SecurityProvidersExtension.KEYSTORE) || provider.getModel().hasDefined(
+                        SunPKCS11ResourceDefinition.ASYNC_THREADS.getName()))) {
+            return true;
+        }
+        final ServiceName serviceName = SunPKCS11Service.createServiceName(providerName);
+        final ModelNode model = Resource.Tools.readModel(subsystem);
+        return references(context, model, SecurityProvidersExtension.CRYPTO_POOL, CryptoPoolResourceDefinition.PROVIDER,
+                serviceName)
+                || references(context, model, SecurityProvidersExtension.KEYPAIR_POOL,
+                        KeyPairPoolResourceDefinition.PROVIDER, serviceName)
+                || references(context, model, SecurityProvidersExtension.SECURE_RANDOM,
+                        SecureRandomResourceDefinition.PROVIDER, serviceName)
+                || references(context, model, SecurityProvidersExtension.SIGNING_PIPELINE,
+                        SigningPipelineResourceDefinition.PROVIDER, serviceName)
+                || references(context, model, SecurityProvidersExtension.HYBRID_PROVIDER,
+                        HybridProviderResourceDefinition.HARDWARE, serviceName)
+                || references(context, model, SecurityProvidersExtension.HYBRID_PROVIDER,
+                        HybridProviderResourceDefinition.SOFTWARE, serviceName);
+    }
+
+    /**
+     * Returns true if a resource of the given type references the given provider service by the given attribute.
+     *
+     * @param context
+     * @param subsystemModel
+     * @param type
+     * @param attribute
+     * @param serviceName
+     * @return
+     * @throws OperationFailedException
+     */
+    private boolean references(OperationContext context, ModelNode subsystemModel, String type,
+            SimpleAttributeDefinition attribute, ServiceName serviceName) throws OperationFailedException {
+        if (!subsystemModel.hasDefined(type)) {
+            return false;
+        }
+        for (Property resource : subsystemModel.get(type).asPropertyList()) {
+            final ModelNode reference = attribute.resolveModelAttribute(context, resource.getValue());
+            if (reference.isDefined() && serviceName.equals(ProviderReference.toServiceName(reference.asString()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Applies the given (resolved) provider attributes to the service of the addressed SunPKCS11 resource.
+     *
+     * @param context
+     * @param providerName
+     * @param attributes
+     * @throws OperationFailedException
+     */
+    private void reconfigure(OperationContext context, String providerName, ModelNode attributes)
+            throws OperationFailedException {
+        final ServiceController<?> controller = context.getServiceRegistry(true).getService(
+                SunPKCS11Service.createServiceName(providerName));
+        if (controller == null) {
+            return;
+        }
+        try {
+            ((SunPKCS11Service) controller.getService()).reconfigure(SunPKCS11Add.toAttributeMap(attributes));
+        } catch (RejectedExecutionException e) {
+            final String message = "Unable to reconfigure SunPKCS11 provider " + providerName
+                    + ", the subsystem executor is shut down";
+            throw new OperationFailedException(message, new ModelNode().set(message));
+        }
+    }
+}
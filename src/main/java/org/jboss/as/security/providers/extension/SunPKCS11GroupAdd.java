@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.jboss.as.controller.AbstractAddStepHandler;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.ServiceVerificationHandler;
+import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
+import org.jboss.dmr.ModelNode;
+import org.jboss.msc.service.ServiceController;
+import org.jboss.msc.service.ServiceName;
+
+/**
+ * A handler for adding a SunPKCS11 provider group.
+ *
+ * @author Josef Cacek
+ */
+class SunPKCS11GroupAdd extends AbstractAddStepHandler {
+
+    public static final SunPKCS11GroupAdd INSTANCE = new SunPKCS11GroupAdd();
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Private ctor.
+     */
+    private SunPKCS11GroupAdd() {
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Model population.
+     *
+     * @param operation
+     * @param model
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractAddStepHandler#populateModel(org.jboss.dmr.ModelNode, org.jboss.dmr.ModelNode)
+     */
+    @Override
+    protected void populateModel(ModelNode operation, ModelNode model) throws OperationFailedException {
+        SunPKCS11ResourceDefinition.ATTRIBUTES.validateAndSet(operation, model);
+        for (AttributeDefinition attribute : SunPKCS11GroupResourceDefinition.GROUP_ATTRIBUTES) {
+            attribute.validateAndSet(operation, model);
+        }
+        for (AttributeDefinition attribute : CommonAttributes.PROVIDER_ATTRIBUTES) {
+            attribute.validateAndSet(operation, model);
+        }
+    }
+
+    /**
+     * Creates and registers {@link SunPKCS11GroupService} instance with the given configuration.
+     *
+     * @param context
+     * @param operation
+     * @param model
+     * @param verificationHandler
+     * @param newControllers
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractAddStepHandler#performRuntime(org.jboss.as.controller.OperationContext,
+     *      org.jboss.dmr.ModelNode, org.jboss.dmr.ModelNode, org.jboss.as.controller.ServiceVerificationHandler,
+     *      java.util.List)
+     */
+    @Override
+    protected void performRuntime(OperationContext context, ModelNode operation, ModelNode model,
+            ServiceVerificationHandler verificationHandler, List<ServiceController<?>> newControllers)
+            throws OperationFailedException {
+        final String groupName = PathAddress.pathAddress(operation.get(ModelDescriptionConstants.ADDRESS)).getLastElement()
+                .getValue();
+        final List<String> slots = SunPKCS11GroupResourceDefinition.toSlotList(SunPKCS11GroupResourceDefinition.SLOTS
+                .resolveModelAttribute(context, model));
+        if (slots.isEmpty()) {
+            final String message = "No slot is configured for SunPKCS11 provider group " + groupName;
+            throw new OperationFailedException(message, new ModelNode().set(message));
+        }
+        final ProviderOptions options = ProviderOptions.resolve(context, model);
+        final SunPKCS11GroupService service = new SunPKCS11GroupService(groupName, SunPKCS11Add.toAttributeMap(
+                SunPKCS11ResourceDefinition.ATTRIBUTES.resolveModelAttribute(context, model)), slots,
+                SunPKCS11GroupResourceDefinition.SLOT_ATTRIBUTE.resolveModelAttribute(context, model).asString(),
+                BalancingPolicy.valueOf(SunPKCS11GroupResourceDefinition.BALANCING.resolveModelAttribute(context, model)
+                        .asString()), options);
+        final ServiceName name = SunPKCS11GroupService.createServiceName(groupName);
+        final ServiceController<ProviderServiceIndex> controller = context.getServiceTarget().addService(name, service)
+                .addDependency(SecurityProvidersExecutorService.SERVICE_NAME, ScheduledExecutorService.class,
+                        service.getExecutorInjector())
+                .addDependency(SecurityProvidersExecutorService.TIMER_SERVICE_NAME, ScheduledExecutorService.class,
+                        service.getTimerInjector()).addListener(verificationHandler)
+                .setInitialMode(options.getInitialMode()).install();
+        newControllers.add(controller);
+    }
+}
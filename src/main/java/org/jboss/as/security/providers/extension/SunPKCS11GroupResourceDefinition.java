@@ -0,0 +1,197 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.ListAttributeDefinition;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.SimpleResourceDefinition;
+import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
+import org.jboss.as.controller.descriptions.ResourceDescriptionResolver;
+import org.jboss.as.controller.operations.validation.AllowedValuesValidator;
+import org.jboss.as.controller.operations.validation.EnumValidator;
+import org.jboss.as.controller.operations.validation.ModelTypeValidator;
+import org.jboss.as.controller.registry.AttributeAccess;
+import org.jboss.as.controller.registry.ManagementResourceRegistration;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+
+/**
+ * A ResourceDefinition for a group of SunPKCS11 providers bound to different slots of a token, which is registered as a
+ * single provider.
+ *
+ * @author Josef Cacek
+ */
+public class SunPKCS11GroupResourceDefinition extends SimpleResourceDefinition {
+
+    /** Comma separated slot identifiers, one member provider is constructed for each of them. */
+    static final SimpleAttributeDefinition SLOTS = new SimpleAttributeDefinitionBuilder("slots", ModelType.STRING, false)
+            .setAllowExpression(true).build();
+
+    /** Name of the SunPKCS11 configuration attribute which holds the slot identifier. */
+    static final SimpleAttributeDefinition SLOT_ATTRIBUTE = new SimpleAttributeDefinitionBuilder("slot-attribute",
+            ModelType.STRING, true).setDefaultValue(new ModelNode("slotListIndex")).setAllowExpression(true)
+            .setValidator(new SlotAttributeValidator()).build();
+
+    static final SimpleAttributeDefinition BALANCING = new SimpleAttributeDefinitionBuilder("balancing", ModelType.STRING,
+            true).setDefaultValue(new ModelNode(BalancingPolicy.ROUND_ROBIN.name())).setAllowExpression(true)
+            .setValidator(new EnumValidator<BalancingPolicy>(BalancingPolicy.class, true, true)).build();
+
+    /**
+     * Group specific configuration attributes, in the order they are marshalled to XML.
+     */
+    static final SimpleAttributeDefinition[] GROUP_ATTRIBUTES = { SLOTS, SLOT_ATTRIBUTE, BALANCING };
+
+    static final AttributeDefinition DISPATCH_COUNTS = new DispatchCountsAttributeDefinition();
+
+    static final AttributeDefinition[] METRICS = { SunPKCS11ResourceDefinition.INIT_TIME,
+            SunPKCS11ResourceDefinition.WARMUP_TIME, SunPKCS11ResourceDefinition.WARMED_UP,
+            SunPKCS11ResourceDefinition.SERVICE_COUNT, DISPATCH_COUNTS };
+
+    // Constructors ----------------------------------------------------------
+
+    SunPKCS11GroupResourceDefinition() {
+        super(SecurityProvidersExtension.SUNPKCS11_GROUP_PATH, SecurityProvidersExtension
+                .getResourceDescriptionResolver(SecurityProvidersExtension.SUNPKCS11_GROUP), SunPKCS11GroupAdd.INSTANCE,
+                SunPKCS11GroupRemove.INSTANCE);
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Registers the "attributes" attribute, the group attributes, the attributes common for all providers and the group
+     * metrics.
+     *
+     * @param resourceRegistration
+     * @see org.jboss.as.controller.SimpleResourceDefinition#registerAttributes(org.jboss.as.controller.registry.ManagementResourceRegistration)
+     */
+    @Override
+    public void registerAttributes(ManagementResourceRegistration resourceRegistration) {
+        resourceRegistration.registerReadOnlyAttribute(SunPKCS11ResourceDefinition.ATTRIBUTES, null);
+        for (AttributeDefinition attribute : GROUP_ATTRIBUTES) {
+            resourceRegistration.registerReadOnlyAttribute(attribute, null);
+        }
+        for (AttributeDefinition attribute : CommonAttributes.PROVIDER_ATTRIBUTES) {
+            resourceRegistration.registerReadOnlyAttribute(attribute, null);
+        }
+        for (AttributeDefinition metric : METRICS) {
+            resourceRegistration.registerMetric(metric, SunPKCS11GroupMetricsHandler.INSTANCE);
+        }
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Splits the resolved value of the {@link #SLOTS} attribute.
+     *
+     * @param slots
+     * @return
+     */
+    static List<String> toSlotList(ModelNode slots) {
+        final List<String> result = new ArrayList<String>();
+        for (String slot : slots.asString().split(",")) {
+            if (slot.trim().length() > 0) {
+                result.add(slot.trim());
+            }
+        }
+        return result;
+    }
+
+    // Embedded classes ------------------------------------------------------
+
+    /**
+     * Runtime list of the per-member dispatch counts.
+     */
+    private static class DispatchCountsAttributeDefinition extends ListAttributeDefinition {
+
+        public DispatchCountsAttributeDefinition() {
+            super("dispatch-counts", true, new ModelTypeValidator(ModelType.LONG), AttributeAccess.Flag.STORAGE_RUNTIME);
+        }
+
+        @Override
+        protected void addValueTypeDescription(ModelNode node, ResourceBundle bundle) {
+            node.get(ModelDescriptionConstants.VALUE_TYPE).set(ModelType.LONG);
+        }
+
+        @Override
+        protected void addAttributeValueTypeDescription(ModelNode node, ResourceDescriptionResolver resolver, Locale locale,
+                ResourceBundle bundle) {
+            node.get(ModelDescriptionConstants.VALUE_TYPE).set(ModelType.LONG);
+        }
+
+        @Override
+        protected void addOperationParameterValueTypeDescription(ModelNode node, String operationName,
+                ResourceDescriptionResolver resolver, Locale locale, ResourceBundle bundle) {
+            node.get(ModelDescriptionConstants.VALUE_TYPE).set(ModelType.LONG);
+        }
+
+        /**
+         * Runtime attribute, it's never marshalled.
+         *
+         * @see org.jboss.as.controller.AttributeDefinition#marshallAsElement(org.jboss.dmr.ModelNode,
+         *      javax.xml.stream.XMLStreamWriter)
+         */
+        @Override
+        public void marshallAsElement(ModelNode resourceModel, XMLStreamWriter writer) throws XMLStreamException {
+        }
+    }
+
+    /**
+     * Validates the slot attribute names.
+     */
+    private static class SlotAttributeValidator extends ModelTypeValidator implements AllowedValuesValidator {
+
+        private static final String[] ALLOWED = { "slot", "slotListIndex" };
+
+        public SlotAttributeValidator() {
+            super(ModelType.STRING, true, true);
+        }
+
+        @Override
+        public void validateParameter(String parameterName, ModelNode value) throws OperationFailedException {
+            super.validateParameter(parameterName, value);
+            if (value.isDefined() && value.getType() != ModelType.EXPRESSION && !getAllowedValues().contains(value)) {
+                final String message = "Invalid value " + value.asString() + " for " + parameterName + "; legal values are "
+                        + getAllowedValues();
+                throw new OperationFailedException(message, new ModelNode().set(message));
+            }
+        }
+
+        public List<ModelNode> getAllowedValues() {
+            final List<ModelNode> result = new ArrayList<ModelNode>();
+            for (String allowed : ALLOWED) {
+                result.add(new ModelNode(allowed));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.security.Provider;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.jboss.logging.Logger;
+import org.jboss.msc.service.ServiceName;
+
+/**
+ * The SunPKCS11GroupService instance constructs one SunPKCS11 provider for each configured slot and registers a
+ * {@link DispatchingProvider} which spreads the SPI instances over them. The member providers are not registered in the
+ * JCA provider list.
+ *
+ * @author Josef Cacek
+ */
+public class SunPKCS11GroupService extends AbstractProviderService {
+
+    private static final Logger LOGGER = Logger.getLogger(SunPKCS11GroupService.class);
+
+    private final String name;
+    private final Map<String, String> attributes;
+    private final List<String> slots;
+    private final String slotAttribute;
+    private final BalancingPolicy policy;
+
+    private volatile List<String> memberKeys = Collections.emptyList();
+    private volatile DispatchingProvider dispatcher;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new SunPKCS11GroupService.
+     *
+     * @param name
+     * @param attributes configuration attributes common to all the members
+     * @param slots slot identifiers, one member provider is constructed for each of them
+     * @param slotAttribute name of the configuration attribute which holds the slot identifier (<code>slot</code> or
+     *        <code>slotListIndex</code>)
+     * @param policy
+     * @param options
+     */
+    public SunPKCS11GroupService(String name, Map<String, String> attributes, List<String> slots, String slotAttribute,
+            BalancingPolicy policy, ProviderOptions options) {
+        super(options);
+        LOGGER.debug("Creating SunPKCS11 group service: " + name);
+        this.name = name;
+        this.attributes = new HashMap<String, String>();
+        if (attributes != null) {
+            this.attributes.putAll(attributes);
+        }
+        this.slots = new ArrayList<String>(slots);
+        this.slotAttribute = slotAttribute;
+        this.policy = policy;
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Creates a service name for the given SunPKCS11 group name.
+     *
+     * @param groupName
+     * @return
+     */
+    public static ServiceName createServiceName(final String groupName) {
+        return ServiceName.JBOSS.append("security-providers", "sunpkcs11-group", groupName);
+    }
+
+    /**
+     * Returns number of SPI instances created by each member provider or <code>null</code> if the group provider is not
+     * registered.
+     *
+     * @return
+     */
+    public long[] getDispatchCounts() {
+        final DispatchingProvider provider = dispatcher;
+        return provider == null ? null : provider.getDispatchCounts();
+    }
+
+    // Protected methods -----------------------------------------------------
+
+    /**
+     * Constructs (or reuses from the {@link SunPKCS11ProviderCache}) the member providers and returns the front
+     * {@link DispatchingProvider}.
+     *
+     * @return
+     * @throws Exception
+     * @see org.jboss.as.security.providers.extension.AbstractProviderService#createProvider()
+     */
+    @Override
+    protected Provider createProvider() throws Exception {
+        final List<Provider> members = new ArrayList<Provider>();
+        final List<String> keys = new ArrayList<String>();
+        try {
+            for (String slot : slots) {
+                final String memberName = name + "-slot" + slot;
+                final Map<String, String> config = new HashMap<String, String>(attributes);
+                config.put(slotAttribute, slot);
+                final String key = SunPKCS11ProviderCache.createKey(memberName, config);
+                members.add(SunPKCS11ProviderCache.acquire(key, new Callable<Provider>() {
+                    public Provider call() throws Exception {
+                        return SunPKCS11Service.newProvider(memberName, config);
+                    }
+                }));
+                keys.add(key);
+            }
+        } catch (Exception e) {
+            for (String key : keys) {
+                SunPKCS11ProviderCache.release(key);
+            }
+            throw e;
+        }
+        memberKeys = keys;
+        return new DispatchingProvider(getExpectedProviderName(), "SunPKCS11 provider group " + name + " ("
+                + members.size() + " slots, " + policy + ")", members, policy);
+    }
+
+    /**
+     * Returns the member provider references to the {@link SunPKCS11ProviderCache}.
+     *
+     * @param provider
+     * @see org.jboss.as.security.providers.extension.AbstractProviderService#releaseProvider(java.security.Provider)
+     */
+    @Override
+    protected void releaseProvider(Provider provider) {
+        for (String key : memberKeys) {
+            SunPKCS11ProviderCache.release(key);
+        }
+        memberKeys = Collections.emptyList();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String getDescription() {
+        return "SunPKCS11 provider group " + name;
+    }
+
+    /**
+     * Returns the group provider name - the configured name with the "SunPKCS11-" prefix.
+     *
+     * @return
+     * @see org.jboss.as.security.providers.extension.AbstractProviderService#getExpectedProviderName()
+     */
+    @Override
+    protected String getExpectedProviderName() {
+        return "SunPKCS11-" + name;
+    }
+
+    /**
+     * Returns a hash of the group configuration.
+     *
+     * @return
+     * @see org.jboss.as.security.providers.extension.AbstractProviderService#getManifestKey()
+     */
+    @Override
+    protected String getManifestKey() {
+        final Map<String, String> config = new HashMap<String, String>(attributes);
+        config.put(slotAttribute, slots.toString());
+        return SunPKCS11ProviderCache.createKey(getExpectedProviderName(), config);
+    }
+
+    /**
+     * Keeps the registered provider for the metrics.
+     *
+     * @param provider
+     * @see org.jboss.as.security.providers.extension.AbstractProviderService#providerRegistered(java.security.Provider)
+     */
+    @Override
+    protected void providerRegistered(Provider provider) {
+        if (provider instanceof DispatchingProvider) {
+            dispatcher = (DispatchingProvider) provider;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void providerRemoved() {
+        dispatcher = null;
+    }
+}
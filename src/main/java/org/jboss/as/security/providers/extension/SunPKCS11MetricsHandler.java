@@ -0,0 +1,208 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.util.Map;
+
+import org.jboss.as.controller.AbstractRuntimeOnlyHandler;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
+import org.jboss.dmr.ModelNode;
+import org.jboss.msc.service.ServiceController;
+
+/**
+ * Reads the runtime metrics of a SunPKCS11 provider.
+ *
+ * @author Josef Cacek
+ */
+class SunPKCS11MetricsHandler extends AbstractRuntimeOnlyHandler {
+
+    public static final SunPKCS11MetricsHandler INSTANCE = new SunPKCS11MetricsHandler();
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Private ctor.
+     */
+    private SunPKCS11MetricsHandler() {
+    }
+
+    // Protected methods -----------------------------------------------------
+
+    /**
+     * Sets the requested metric of the registered provider as the operation result. The result is undefined if the
+     * provider is not registered or the metric is not available.
+     *
+     * @param context
+     * @param operation
+     * @throws OperationFailedException
+     * @see org.jboss.as.controller.AbstractRuntimeOnlyHandler#executeRuntimeStep(org.jboss.as.controller.OperationContext,
+     *      org.jboss.dmr.ModelNode)
+     */
+    @Override
+    protected void executeRuntimeStep(OperationContext context, ModelNode operation) throws OperationFailedException {
+        final String providerName = PathAddress.pathAddress(operation.get(ModelDescriptionConstants.OP_ADDR))
+                .getLastElement().getValue();
+        final String metric = operation.require(ModelDescriptionConstants.NAME).asString();
+        if (metric.startsWith("async-")) {
+            setAsyncMetric(context, metric, providerName);
+            context.completeStep();
+            return;
+        }
+        final ServiceController<?> controller = context.getServiceRegistry(false).getService(
+                SunPKCS11Service.createServiceName(providerName));
+        if (controller != null && controller.getState() == ServiceController.State.UP) {
+            final SunPKCS11Service service = (SunPKCS11Service) controller.getService();
+            final ModelNode result = context.getResult();
+            if (SunPKCS11ResourceDefinition.INIT_TIME.getName().equals(metric)) {
+                final long startDuration = service.getStartDuration();
+                if (startDuration >= 0L) {
+                    result.set(startDuration);
+                }
+            } else if (SunPKCS11ResourceDefinition.WARMUP_TIME.getName().equals(metric)) {
+                final long warmupDuration = service.getWarmupDuration();
+                if (warmupDuration >= 0L) {
+                    result.set(warmupDuration);
+                }
+            } else if (SunPKCS11ResourceDefinition.WARMED_UP.getName().equals(metric)) {
+                result.set(service.isWarmedUp());
+            } else if (SunPKCS11ResourceDefinition.SERVICE_COUNT.getName().equals(metric)) {
+                final int serviceCount = service.getServiceCount();
+                if (serviceCount >= 0) {
+                    result.set(serviceCount);
+                }
+            } else if (SunPKCS11ResourceDefinition.LATENCY_HISTOGRAMS.getName().equals(metric)) {
+                setLatencyHistograms(result, service.getInstrumentedProvider());
+            } else if (SunPKCS11ResourceDefinition.SESSION_EXHAUSTION_COUNT.getName().equals(metric)) {
+                result.set(service.getSessionExhaustionCount());
+            } else if (metric.startsWith("breaker-") || metric.startsWith("probe-")) {
+                setBreakerMetric(result, metric, service.getCircuitBreaker());
+            } else {
+                setStatistics(result, metric, service.getStatistics());
+            }
+        }
+        context.completeStep();
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Sets the summaries of the latency histograms recorded by the given provider as the result - a list with an object
+     * for each operation. The times are in nanoseconds, the percentiles are upper estimates and the buckets map the upper
+     * bounds of the non-empty buckets to their counts. The result is undefined if the provider is not instrumented.
+     *
+     * @param result
+     * @param provider instrumented provider, may be <code>null</code>
+     */
+    static void setLatencyHistograms(ModelNode result, InstrumentedProvider provider) {
+        if (provider == null) {
+            return;
+        }
+        result.setEmptyList();
+        for (Map.Entry<String, LatencyHistogram> entry : provider.getHistograms().entrySet()) {
+            final LatencyHistogram histogram = entry.getValue();
+            final long count = histogram.getCount();
+            final ModelNode node = new ModelNode();
+            node.get("operation").set(entry.getKey());
+            node.get("count").set(count);
+            node.get("mean-time").set(count == 0L ? 0L : histogram.getTotalTime() / count);
+            node.get("max-time").set(histogram.getMaxTime());
+            node.get("p50").set(histogram.getPercentile(50d));
+            node.get("p90").set(histogram.getPercentile(90d));
+            node.get("p99").set(histogram.getPercentile(99d));
+            final ModelNode buckets = node.get("buckets").setEmptyObject();
+            for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+                final long bucketCount = histogram.getBucketCount(i);
+                if (bucketCount > 0L) {
+                    buckets.get(String.valueOf(LatencyHistogram.getUpperBound(i))).set(bucketCount);
+                }
+            }
+            result.add(node);
+        }
+    }
+
+    // Private methods -------------------------------------------------------
+
+    private void setStatistics(ModelNode result, String metric, SunPKCS11Statistics statistics) {
+        if (statistics == null) {
+            return;
+        }
+        if (SunPKCS11ResourceDefinition.ACTIVE_SESSIONS.getName().equals(metric)) {
+            setCount(result, statistics.getActiveSessions());
+        } else if (SunPKCS11ResourceDefinition.IDLE_SESSIONS.getName().equals(metric)) {
+            setCount(result, statistics.getIdleSessions());
+        } else if (SunPKCS11ResourceDefinition.LOGGED_IN.getName().equals(metric)) {
+            result.set(statistics.isLoggedIn());
+        }
+    }
+
+    private void setBreakerMetric(ModelNode result, String metric, CircuitBreaker breaker) {
+        if (breaker == null) {
+            return;
+        }
+        if (SunPKCS11ResourceDefinition.BREAKER_STATE.getName().equals(metric)) {
+            result.set(breaker.getState().name());
+        } else if (SunPKCS11ResourceDefinition.BREAKER_TRANSITION_COUNT.getName().equals(metric)) {
+            result.set(breaker.getTransitionCount());
+        } else if (SunPKCS11ResourceDefinition.BREAKER_LAST_TRANSITION.getName().equals(metric)) {
+            final long time = breaker.getLastTransitionTime();
+            if (time >= 0L) {
+                result.set(time);
+            }
+        } else if (SunPKCS11ResourceDefinition.PROBE_FAILURE_COUNT.getName().equals(metric)) {
+            result.set(breaker.getFailureCount());
+        }
+    }
+
+    private void setAsyncMetric(OperationContext context, String metric, String providerName) {
+        final ServiceController<?> controller = context.getServiceRegistry(false).getService(
+                AsyncCryptoService.createServiceName(providerName));
+        final AsyncCrypto asyncCrypto = controller == null ? null : ((AsyncCryptoService) controller.getService())
+                .getAsyncCrypto();
+        if (asyncCrypto == null) {
+            return;
+        }
+        final ModelNode result = context.getResult();
+        if (SunPKCS11ResourceDefinition.ASYNC_QUEUE_DEPTH.getName().equals(metric)) {
+            result.set(asyncCrypto.getQueueDepth());
+        } else if (SunPKCS11ResourceDefinition.ASYNC_ACTIVE_COUNT.getName().equals(metric)) {
+            result.set(asyncCrypto.getActiveCount());
+        } else if (SunPKCS11ResourceDefinition.ASYNC_SATURATION_COUNT.getName().equals(metric)) {
+            result.set(asyncCrypto.getSaturationCount());
+        } else if (SunPKCS11ResourceDefinition.ASYNC_AVERAGE_WAIT_TIME.getName().equals(metric)) {
+            final long time = asyncCrypto.getAverageWaitTime();
+            if (time >= 0L) {
+                result.set(time);
+            }
+        } else if (SunPKCS11ResourceDefinition.ASYNC_MAX_WAIT_TIME.getName().equals(metric)) {
+            result.set(asyncCrypto.getMaxWaitTime());
+        }
+    }
+
+    private void setCount(ModelNode result, int count) {
+        if (count >= 0) {
+            result.set(count);
+        }
+    }
+}
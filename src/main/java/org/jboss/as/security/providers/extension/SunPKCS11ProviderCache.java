@@ -0,0 +1,216 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Provider;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Process-wide cache of initialized SunPKCS11 providers keyed by a hash of their canonical configuration. When a sunpkcs11
+ * resource is re-added (or the server is reloaded) with an identical configuration, the already initialized provider is
+ * reused instead of loading the native library and enumerating the token mechanisms again.
+ * <p>
+ * The entries are reference counted. An entry which is not used by any service stays in the cache until it's removed by
+ * {@link #evictUnused()}, unless its last reference is released by {@link #release(String, boolean)} with eviction (e.g.
+ * a provider replaced by a reconfiguration, whose configuration is not expected to come back).
+ *
+ * @author Josef Cacek
+ */
+final class SunPKCS11ProviderCache {
+
+    private static final Logger LOGGER = Logger.getLogger(SunPKCS11ProviderCache.class);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** Cache entries (config hash -> entry), guarded by the map itself. */
+    private static final Map<String, Entry> ENTRIES = new HashMap<String, Entry>();
+
+    // Constructors ----------------------------------------------------------
+
+    private SunPKCS11ProviderCache() {
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Creates the cache key for the given provider configuration. Attribute names and values are trimmed and the attributes
+     * are sorted by name. Whitespace inside the values is significant (e.g. in paths or PINs).
+     * <p>
+     * The canonical configuration is hashed by the SUN provider, a JCA lookup could initialize a lazy placeholder or call a
+     * hung provider placed earlier in the provider list.
+     *
+     * @param name
+     * @param attributes
+     * @return
+     */
+    static String createKey(String name, Map<String, String> attributes) {
+        final Map<String, String> sorted = new TreeMap<String, String>();
+        for (Map.Entry<String, String> attr : attributes.entrySet()) {
+            sorted.put(attr.getKey().trim(), normalize(attr.getValue()));
+        }
+        final StringBuilder sb = new StringBuilder();
+        sb.append("name=").append(normalize(name)).append('\n');
+        for (Map.Entry<String, String> attr : sorted.entrySet()) {
+            sb.append(attr.getKey()).append('=').append(attr.getValue()).append('\n');
+        }
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256", "SUN").digest(sb.toString().getBytes("UTF-8"));
+            final char[] result = new char[hash.length * 2];
+            for (int i = 0; i < hash.length; i++) {
+                result[2 * i] = HEX[(hash[i] >> 4) & 0xf];
+                result[2 * i + 1] = HEX[hash[i] & 0xf];
+            }
+            return new String(result);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (NoSuchProviderException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the cached provider for the given key or creates it by the factory. The reference has to be returned by
+     * {@link #release(String)}.
+     *
+     * @param key
+     * @param factory
+     * @return
+     * @throws Exception if the provider creation fails
+     */
+    static Provider acquire(String key, Callable<Provider> factory) throws Exception {
+        final Entry entry;
+        synchronized (ENTRIES) {
+            Entry cached = ENTRIES.get(key);
+            if (cached == null) {
+                cached = new Entry();
+                ENTRIES.put(key, cached);
+            }
+            cached.references++;
+            entry = cached;
+        }
+        try {
+            // the entry lock guards the provider creation, so providers with different configurations are created in parallel
+            synchronized (entry) {
+                if (entry.provider == null) {
+                    entry.provider = factory.call();
+                } else {
+                    LOGGER.debug("Reusing cached provider " + entry.provider.getName());
+                }
+                return entry.provider;
+            }
+        } catch (Exception e) {
+            release(key);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a reference acquired by {@link #acquire(String, Callable)}. The provider stays cached.
+     *
+     * @param key
+     */
+    static void release(String key) {
+        release(key, false);
+    }
+
+    /**
+     * Returns a reference acquired by {@link #acquire(String, Callable)}. If it was the last reference and the evict flag
+     * is set, the provider is removed from the cache.
+     *
+     * @param key
+     * @param evict
+     */
+    static void release(String key, boolean evict) {
+        synchronized (ENTRIES) {
+            final Entry entry = ENTRIES.get(key);
+            if (entry == null) {
+                return;
+            }
+            entry.references--;
+            // without a provider the creation failed, there is nothing to keep
+            if (entry.references <= 0 && (evict || entry.provider == null)) {
+                ENTRIES.remove(key);
+                if (evict && entry.provider != null) {
+                    LOGGER.debug("Evicted unused provider " + entry.provider.getName() + " from the SunPKCS11 provider cache");
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all the cached providers which are not used by any service.
+     *
+     * @return number of evicted providers
+     */
+    static int evictUnused() {
+        int result = 0;
+        synchronized (ENTRIES) {
+            for (Iterator<Entry> it = ENTRIES.values().iterator(); it.hasNext();) {
+                if (it.next().references <= 0) {
+                    it.remove();
+                    result++;
+                }
+            }
+        }
+        LOGGER.debug("Evicted " + result + " unused provider(s) from the SunPKCS11 provider cache");
+        return result;
+    }
+
+    /**
+     * Returns number of cached providers.
+     *
+     * @return
+     */
+    static int size() {
+        synchronized (ENTRIES) {
+            return ENTRIES.size();
+        }
+    }
+
+    // Private methods -------------------------------------------------------
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim();
+    }
+
+    // Embedded classes ------------------------------------------------------
+
+    /**
+     * Cache entry. The references are guarded by {@link SunPKCS11ProviderCache#ENTRIES}, the provider by the entry itself.
+     */
+    private static class Entry {
+        private int references;
+        private volatile Provider provider;
+    }
+}
@@ -49,7 +49,7 @@ class SunPKCS11Remove extends AbstractRemoveStepHandler {
     // Public methods --------------------------------------------------------
 
     /**
-     * Removes a {@link SunPKCS11Service} instance.
+     * Removes a {@link SunPKCS11Service} instance and its {@link AsyncCryptoService}.
      * 
      * @param context
      * @param operation
@@ -64,6 +64,9 @@ class SunPKCS11Remove extends AbstractRemoveStepHandler {
         final String providerName = PathAddress.pathAddress(operation.get(ModelDescriptionConstants.ADDRESS)).getLastElement()
                 .getValue();
         final ServiceName serviceName = SunPKCS11Service.createServiceName(providerName);
+        if (SunPKCS11ResourceDefinition.ASYNC_THREADS.resolveModelAttribute(context, model).isDefined()) {
+            context.removeService(AsyncCryptoService.createServiceName(providerName));
+        }
         context.removeService(serviceName);
     }
 
@@ -28,11 +28,20 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
 import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.ListAttributeDefinition;
 import org.jboss.as.controller.MapAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
 import org.jboss.as.controller.SimpleResourceDefinition;
+import org.jboss.as.controller.client.helpers.MeasurementUnit;
+import org.jboss.as.controller.descriptions.DefaultOperationDescriptionProvider;
 import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
 import org.jboss.as.controller.descriptions.ResourceDescriptionResolver;
+import org.jboss.as.controller.operations.validation.EnumValidator;
+import org.jboss.as.controller.operations.validation.IntRangeValidator;
+import org.jboss.as.controller.operations.validation.LongRangeValidator;
 import org.jboss.as.controller.operations.validation.ModelTypeValidator;
+import org.jboss.as.controller.registry.AttributeAccess;
 import org.jboss.as.controller.registry.ManagementResourceRegistration;
 import org.jboss.dmr.ModelNode;
 import org.jboss.dmr.ModelType;
@@ -47,6 +56,128 @@ public class SunPKCS11ResourceDefinition extends SimpleResourceDefinition {
 
     protected static final AttributeDefinition ATTRIBUTES = new AttributesAttributeDefinition();
 
+    static final SimpleAttributeDefinition INIT_TIME = new SimpleAttributeDefinitionBuilder("init-time", ModelType.LONG, true)
+            .setMeasurementUnit(MeasurementUnit.MILLISECONDS).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition WARMUP_TIME = new SimpleAttributeDefinitionBuilder("warmup-time", ModelType.LONG,
+            true).setMeasurementUnit(MeasurementUnit.MILLISECONDS).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition WARMED_UP = new SimpleAttributeDefinitionBuilder("warmed-up", ModelType.BOOLEAN,
+            true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition SERVICE_COUNT = new SimpleAttributeDefinitionBuilder("service-count", ModelType.INT,
+            true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition ACTIVE_SESSIONS = new SimpleAttributeDefinitionBuilder("active-sessions",
+            ModelType.INT, true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition IDLE_SESSIONS = new SimpleAttributeDefinitionBuilder("idle-sessions", ModelType.INT,
+            true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition SESSION_EXHAUSTION_COUNT = new SimpleAttributeDefinitionBuilder(
+            "session-exhaustion-count", ModelType.LONG, true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition LOGGED_IN = new SimpleAttributeDefinitionBuilder("logged-in", ModelType.BOOLEAN,
+            true).setStorageRuntime().build();
+
+    /**
+     * Period (in milliseconds) of the provider health probes. Undefined means the health check is disabled.
+     */
+    static final SimpleAttributeDefinition HEALTH_CHECK_INTERVAL = new SimpleAttributeDefinitionBuilder(
+            "health-check-interval", ModelType.LONG, true).setAllowExpression(true)
+            .setMeasurementUnit(MeasurementUnit.MILLISECONDS).setValidator(new LongRangeValidator(1, Long.MAX_VALUE, true, true))
+            .build();
+
+    static final SimpleAttributeDefinition HEALTH_CHECK_TIMEOUT = new SimpleAttributeDefinitionBuilder("health-check-timeout",
+            ModelType.LONG, true).setDefaultValue(new ModelNode(5000L)).setAllowExpression(true)
+            .setMeasurementUnit(MeasurementUnit.MILLISECONDS).setValidator(new LongRangeValidator(1, Long.MAX_VALUE, true, true))
+            .build();
+
+    static final SimpleAttributeDefinition FAILURE_THRESHOLD = new SimpleAttributeDefinitionBuilder("failure-threshold",
+            ModelType.INT, true).setDefaultValue(new ModelNode(3)).setAllowExpression(true)
+            .setValidator(new IntRangeValidator(1, true, true)).build();
+
+    /**
+     * Reference to the provider resource promoted ahead of this provider while the health check fails.
+     */
+    static final SimpleAttributeDefinition FALLBACK = new SimpleAttributeDefinitionBuilder("fallback", ModelType.STRING, true)
+            .setAllowExpression(true).setValidator(ProviderReference.NULLABLE_VALIDATOR).build();
+
+    static final SimpleAttributeDefinition[] HEALTH_ATTRIBUTES = { HEALTH_CHECK_INTERVAL, HEALTH_CHECK_TIMEOUT,
+            FAILURE_THRESHOLD, FALLBACK };
+
+    /**
+     * Number of threads of the asynchronous executor. Undefined means the asynchronous executor is not created.
+     */
+    static final SimpleAttributeDefinition ASYNC_THREADS = new SimpleAttributeDefinitionBuilder("async-threads", ModelType.INT,
+            true).setAllowExpression(true).setValidator(new IntRangeValidator(1, true, true)).build();
+
+    static final SimpleAttributeDefinition ASYNC_QUEUE_SIZE = new SimpleAttributeDefinitionBuilder("async-queue-size",
+            ModelType.INT, true).setDefaultValue(new ModelNode(64)).setAllowExpression(true)
+            .setValidator(new IntRangeValidator(0, true, true)).build();
+
+    static final SimpleAttributeDefinition SATURATION_POLICY = new SimpleAttributeDefinitionBuilder("saturation-policy",
+            ModelType.STRING, true).setDefaultValue(new ModelNode(SaturationPolicy.ABORT.name())).setAllowExpression(true)
+            .setValidator(new EnumValidator<SaturationPolicy>(SaturationPolicy.class, true, true)).build();
+
+    static final SimpleAttributeDefinition[] ASYNC_ATTRIBUTES = { ASYNC_THREADS, ASYNC_QUEUE_SIZE, SATURATION_POLICY };
+
+    /**
+     * Operations longer than this number of milliseconds are recorded with their caller stacks. Undefined means the slow
+     * operations are not recorded.
+     */
+    static final SimpleAttributeDefinition SLOW_OPERATION_THRESHOLD = new SimpleAttributeDefinitionBuilder(
+            "slow-operation-threshold", ModelType.LONG, true).setAllowExpression(true)
+            .setMeasurementUnit(MeasurementUnit.MILLISECONDS).setValidator(new LongRangeValidator(0, Long.MAX_VALUE, true, true))
+            .build();
+
+    static final SimpleAttributeDefinition SLOW_OPERATION_CAPACITY = new SimpleAttributeDefinitionBuilder(
+            "slow-operation-capacity", ModelType.INT, true).setDefaultValue(new ModelNode(100)).setAllowExpression(true)
+            .setValidator(new IntRangeValidator(1, true, true)).build();
+
+    static final SimpleAttributeDefinition[] SLOW_OPERATION_ATTRIBUTES = { SLOW_OPERATION_THRESHOLD,
+            SLOW_OPERATION_CAPACITY };
+
+    static final SimpleAttributeDefinition BREAKER_STATE = new SimpleAttributeDefinitionBuilder("breaker-state",
+            ModelType.STRING, true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition BREAKER_TRANSITION_COUNT = new SimpleAttributeDefinitionBuilder(
+            "breaker-transition-count", ModelType.LONG, true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition BREAKER_LAST_TRANSITION = new SimpleAttributeDefinitionBuilder(
+            "breaker-last-transition", ModelType.LONG, true).setMeasurementUnit(MeasurementUnit.EPOCH_MILLISECONDS)
+            .setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition PROBE_FAILURE_COUNT = new SimpleAttributeDefinitionBuilder("probe-failure-count",
+            ModelType.LONG, true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition ASYNC_QUEUE_DEPTH = new SimpleAttributeDefinitionBuilder("async-queue-depth",
+            ModelType.INT, true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition ASYNC_ACTIVE_COUNT = new SimpleAttributeDefinitionBuilder("async-active-count",
+            ModelType.INT, true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition ASYNC_SATURATION_COUNT = new SimpleAttributeDefinitionBuilder(
+            "async-saturation-count", ModelType.LONG, true).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition ASYNC_AVERAGE_WAIT_TIME = new SimpleAttributeDefinitionBuilder(
+            "async-average-wait-time", ModelType.LONG, true).setMeasurementUnit(MeasurementUnit.MILLISECONDS)
+            .setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition ASYNC_MAX_WAIT_TIME = new SimpleAttributeDefinitionBuilder("async-max-wait-time",
+            ModelType.LONG, true).setMeasurementUnit(MeasurementUnit.MILLISECONDS).setStorageRuntime().build();
+
+    static final SimpleAttributeDefinition[] METRICS = { INIT_TIME, WARMUP_TIME, WARMED_UP, SERVICE_COUNT, ACTIVE_SESSIONS,
+            IDLE_SESSIONS,
+            SESSION_EXHAUSTION_COUNT, LOGGED_IN, BREAKER_STATE, BREAKER_TRANSITION_COUNT, BREAKER_LAST_TRANSITION,
+            PROBE_FAILURE_COUNT, ASYNC_QUEUE_DEPTH, ASYNC_ACTIVE_COUNT, ASYNC_SATURATION_COUNT, ASYNC_AVERAGE_WAIT_TIME,
+            ASYNC_MAX_WAIT_TIME };
+
+    /**
+     * Runtime list of the latency histogram summaries of an instrumented provider (one object per operation).
+     */
+    static final AttributeDefinition LATENCY_HISTOGRAMS = new LatencyHistogramsAttributeDefinition();
+
     // Constructors ----------------------------------------------------------
 
     SunPKCS11ResourceDefinition() {
@@ -58,18 +189,119 @@ public class SunPKCS11ResourceDefinition extends SimpleResourceDefinition {
     // Public methods --------------------------------------------------------
 
     /**
-     * Registers the "attributes" attribute.
+     * Registers the writable "attributes" attribute, the attributes common for all providers, the instrumented attribute,
+     * the health check attributes, the asynchronous executor attributes, the slow operation attributes and the provider
+     * metrics.
      * 
      * @param resourceRegistration
      * @see org.jboss.as.controller.SimpleResourceDefinition#registerAttributes(org.jboss.as.controller.registry.ManagementResourceRegistration)
      */
     @Override
     public void registerAttributes(ManagementResourceRegistration resourceRegistration) {
-        resourceRegistration.registerReadOnlyAttribute(ATTRIBUTES, null);
+        resourceRegistration.registerReadWriteAttribute(ATTRIBUTES, null, SunPKCS11AttributesWriteHandler.INSTANCE);
+        for (AttributeDefinition attribute : CommonAttributes.PROVIDER_ATTRIBUTES) {
+            resourceRegistration.registerReadOnlyAttribute(attribute, null);
+        }
+        resourceRegistration.registerReadOnlyAttribute(CommonAttributes.INSTRUMENTED, null);
+        for (AttributeDefinition attribute : HEALTH_ATTRIBUTES) {
+            resourceRegistration.registerReadOnlyAttribute(attribute, null);
+        }
+        for (AttributeDefinition attribute : ASYNC_ATTRIBUTES) {
+            resourceRegistration.registerReadOnlyAttribute(attribute, null);
+        }
+        for (AttributeDefinition attribute : SLOW_OPERATION_ATTRIBUTES) {
+            resourceRegistration.registerReadOnlyAttribute(attribute, null);
+        }
+        for (AttributeDefinition metric : METRICS) {
+            resourceRegistration.registerMetric(metric, SunPKCS11MetricsHandler.INSTANCE);
+        }
+        resourceRegistration.registerMetric(LATENCY_HISTOGRAMS, SunPKCS11MetricsHandler.INSTANCE);
+    }
+
+    /**
+     * Registers the add and remove operations, the operation which resets the latency histograms and the operation which
+     * reads the slow operations.
+     * 
+     * @param resourceRegistration
+     * @see org.jboss.as.controller.SimpleResourceDefinition#registerOperations(org.jboss.as.controller.registry.ManagementResourceRegistration)
+     */
+    @Override
+    public void registerOperations(ManagementResourceRegistration resourceRegistration) {
+        super.registerOperations(resourceRegistration);
+        resourceRegistration.registerOperationHandler(ResetLatencyHistogramsHandler.OPERATION_NAME,
+                ResetLatencyHistogramsHandler.INSTANCE, new DefaultOperationDescriptionProvider(
+                        ResetLatencyHistogramsHandler.OPERATION_NAME, getResourceDescriptionResolver()));
+        resourceRegistration.registerOperationHandler(ReadSlowOperationsHandler.OPERATION_NAME,
+                ReadSlowOperationsHandler.INSTANCE, new ObjectListOperationDescriptionProvider(
+                        ReadSlowOperationsHandler.OPERATION_NAME, getResourceDescriptionResolver()));
+    }
+
+    /**
+     * Registers the keystore child resource.
+     * 
+     * @param resourceRegistration
+     * @see org.jboss.as.controller.SimpleResourceDefinition#registerChildren(org.jboss.as.controller.registry.ManagementResourceRegistration)
+     */
+    @Override
+    public void registerChildren(ManagementResourceRegistration resourceRegistration) {
+        resourceRegistration.registerSubModel(new KeyStoreResourceDefinition());
     }
 
     // Embedded classes ------------------------------------------------------
 
+    /**
+     * Description of an operation which replies with a list of objects.
+     */
+    private static class ObjectListOperationDescriptionProvider extends DefaultOperationDescriptionProvider {
+
+        public ObjectListOperationDescriptionProvider(String operationName, ResourceDescriptionResolver descriptionResolver) {
+            super(operationName, descriptionResolver, ModelType.LIST, ModelType.OBJECT);
+        }
+
+        @Override
+        protected ModelNode getReplyValueTypeDescription(ResourceDescriptionResolver descriptionResolver, Locale locale,
+                ResourceBundle bundle) {
+            return new ModelNode(ModelType.OBJECT);
+        }
+    }
+
+    /**
+     * Runtime list of the latency histogram summaries.
+     */
+    private static class LatencyHistogramsAttributeDefinition extends ListAttributeDefinition {
+
+        public LatencyHistogramsAttributeDefinition() {
+            super("latency-histograms", true, new ModelTypeValidator(ModelType.OBJECT), AttributeAccess.Flag.STORAGE_RUNTIME);
+        }
+
+        @Override
+        protected void addValueTypeDescription(ModelNode node, ResourceBundle bundle) {
+            node.get(ModelDescriptionConstants.VALUE_TYPE).set(ModelType.OBJECT);
+        }
+
+        @Override
+        protected void addAttributeValueTypeDescription(ModelNode node, ResourceDescriptionResolver resolver, Locale locale,
+                ResourceBundle bundle) {
+            node.get(ModelDescriptionConstants.VALUE_TYPE).set(ModelType.OBJECT);
+        }
+
+        @Override
+        protected void addOperationParameterValueTypeDescription(ModelNode node, String operationName,
+                ResourceDescriptionResolver resolver, Locale locale, ResourceBundle bundle) {
+            node.get(ModelDescriptionConstants.VALUE_TYPE).set(ModelType.OBJECT);
+        }
+
+        /**
+         * Runtime attribute, it's never marshalled.
+         * 
+         * @see org.jboss.as.controller.AttributeDefinition#marshallAsElement(org.jboss.dmr.ModelNode,
+         *      javax.xml.stream.XMLStreamWriter)
+         */
+        @Override
+        public void marshallAsElement(ModelNode resourceModel, XMLStreamWriter writer) throws XMLStreamException {
+        }
+    }
+
     /**
      * A AttributesAttributeDefinition.
      */
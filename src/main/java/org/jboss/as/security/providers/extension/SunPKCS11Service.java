@@ -22,34 +22,57 @@
 package org.jboss.as.security.providers.extension;
 
 import java.io.ByteArrayInputStream;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
-import java.security.PrivilegedExceptionAction;
+import java.lang.reflect.InvocationTargetException;
 import java.security.Provider;
-import java.security.Security;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jboss.logging.Logger;
-import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceController;
 import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.ServiceRegistry;
 import org.jboss.msc.service.StartContext;
 import org.jboss.msc.service.StartException;
-import org.jboss.msc.service.StopContext;
 
 /**
  * The SunPKCS11Service instance registers and removes a SunPKCS11 security provider.
  * 
  * @author Josef Cacek
  */
-public class SunPKCS11Service implements Service<SunPKCS11Service> {
+public class SunPKCS11Service extends AbstractProviderService {
 
     private static final String SUN_PKCS11_CLASS_NAME = "sun.security.pkcs11.SunPKCS11";
     private static final Logger LOGGER = Logger.getLogger(SunPKCS11Service.class);
 
+    /** Period (milliseconds) of the session usage sampling. */
+    private static final long SAMPLING_PERIOD = 1000L;
+
+    /** Time (milliseconds) for which a provider replaced by {@link #reconfigure(Map)} is kept before it's released. */
+    static final long DRAIN_PERIOD = 30000L;
+
     private final String name;
-    private final Map<String, String> attributes;
-    private String providerName;
+    private volatile Map<String, String> attributes;
+    /** Cache keys of the providers acquired from the {@link SunPKCS11ProviderCache}, guarded by the map itself. */
+    private final Map<Provider, String> acquiredKeys = new IdentityHashMap<Provider, String>();
+    /** Number of the requested reconfigurations, guarded by this service. Only the latest one is applied. */
+    private long reconfigurations;
+    private final AtomicLong sessionExhaustionCount = new AtomicLong();
+    private final HealthCheckOptions healthOptions;
+    private final CircuitBreaker breaker;
+    private final ServiceName fallbackServiceName;
+    private final SlowOperationLog slowOperations;
+
+    private volatile SunPKCS11Statistics statistics;
+    private volatile ScheduledFuture<?> samplingTask;
+    private volatile HealthMonitor healthMonitor;
+    private volatile ServiceRegistry serviceRegistry;
+    private boolean exhausted;
 
     // Constructors ----------------------------------------------------------
 
@@ -60,105 +83,498 @@ public class SunPKCS11Service implements Service<SunPKCS11Service> {
      * @param attributes
      */
     public SunPKCS11Service(String name, Map<String, String> attributes) {
-        super();
+        this(name, attributes, null);
+    }
+
+    /**
+     * Create a new SunPKCS11Service.
+     * 
+     * @param name
+     * @param attributes
+     * @param options
+     */
+    public SunPKCS11Service(String name, Map<String, String> attributes, ProviderOptions options) {
+        this(name, attributes, options, null);
+    }
+
+    /**
+     * Create a new SunPKCS11Service.
+     * 
+     * @param name
+     * @param attributes
+     * @param options
+     * @param healthOptions health check options, may be <code>null</code> (health check disabled)
+     */
+    public SunPKCS11Service(String name, Map<String, String> attributes, ProviderOptions options,
+            HealthCheckOptions healthOptions) {
+        this(name, attributes, options, healthOptions, null);
+    }
+
+    /**
+     * Create a new SunPKCS11Service.
+     * 
+     * @param name
+     * @param attributes
+     * @param options
+     * @param healthOptions health check options, may be <code>null</code> (health check disabled)
+     * @param slowOperations log of the slow provider operations, may be <code>null</code> (slow operations not recorded)
+     */
+    SunPKCS11Service(String name, Map<String, String> attributes, ProviderOptions options, HealthCheckOptions healthOptions,
+            SlowOperationLog slowOperations) {
+        super(options);
         LOGGER.debug("Creating SunPKCS11 service: " + name);
         this.name = name;
-        this.attributes = new HashMap<String, String>();
-        if (attributes != null) {
-            this.attributes.putAll(attributes);
-        }
+        this.attributes = copyAttributes(attributes);
+        this.healthOptions = healthOptions != null ? healthOptions : new HealthCheckOptions();
+        this.breaker = this.healthOptions.isEnabled() ? new CircuitBreaker(this.healthOptions.getFailureThreshold(),
+                new CircuitBreaker.Listener() {
+                    public void stateChanged(CircuitBreaker.State from, CircuitBreaker.State to) {
+                        breakerStateChanged(from, to);
+                    }
+                }) : null;
+        this.fallbackServiceName = ProviderReference.toServiceName(this.healthOptions.getFallback());
+        this.slowOperations = slowOperations;
     }
 
     // Public methods --------------------------------------------------------
 
     /**
-     * Returns this instance.
+     * Creates a service name for the given SunPKCS11 provider name.
+     * 
+     * @param providerName
+     * @return
+     */
+    public static ServiceName createServiceName(final String providerName) {
+        return ServiceName.JBOSS.append("security-providers", "sunpkcs11", providerName);
+    }
+
+    /**
+     * Applies a new provider configuration. If a provider is registered by this service, a provider with the new
+     * configuration is constructed on the subsystem executor (while the current provider still serves the requests) and
+     * then it replaces the current provider at the same position of the JCA provider list; the service lock is held just
+     * for the replacement. The replaced provider is released after the {@link #DRAIN_PERIOD}, so the operations started
+     * with it can complete, and it's evicted from the {@link SunPKCS11ProviderCache} if no other service uses it. If the
+     * new provider can't be constructed or installed, the error is logged and the current provider stays registered. A
+     * construction superseded by a later reconfiguration is discarded. If no provider is registered, the new configuration
+     * is used by the next start of the service.
+     * <p>
+     * Services which already obtained the service value keep the replaced provider, so the caller has to make sure there
+     * are none.
+     * 
+     * @param newAttributes
+     * @throws RejectedExecutionException if the subsystem executor is shut down
+     */
+    public void reconfigure(Map<String, String> newAttributes) {
+        final Map<String, String> newConfig = copyAttributes(newAttributes);
+        final String newKey = SunPKCS11ProviderCache.createKey(name, newConfig);
+        final long reconfiguration;
+        synchronized (this) {
+            reconfiguration = ++reconfigurations;
+            if (newKey.equals(SunPKCS11ProviderCache.createKey(name, attributes))) {
+                return;
+            }
+            if (getProviderName() == null) {
+                attributes = newConfig;
+                return;
+            }
+        }
+        LOGGER.info("Reconfiguring " + getDescription());
+        getExecutor().execute(new Runnable() {
+            public void run() {
+                applyConfiguration(reconfiguration, newKey, newConfig);
+            }
+        });
+    }
+
+    /**
+     * Returns session and token statistics of the registered provider or <code>null</code> if no provider is registered or
+     * its internals are not accessible.
      * 
      * @return
-     * @throws IllegalStateException
-     * @throws IllegalArgumentException
-     * @see org.jboss.msc.value.Value#getValue()
      */
-    public SunPKCS11Service getValue() throws IllegalStateException, IllegalArgumentException {
-        return this;
+    SunPKCS11Statistics getStatistics() {
+        return statistics;
     }
 
     /**
-     * Adds (registers) a SunPKCS11 security provider.
+     * Keeps the service registry, so the fallback provider service can be looked up when the circuit breaker opens.
      * 
      * @param context
      * @throws StartException
-     * @see org.jboss.msc.service.Service#start(org.jboss.msc.service.StartContext)
+     * @see org.jboss.as.security.providers.extension.AbstractProviderService#start(org.jboss.msc.service.StartContext)
      */
+    @Override
     public void start(StartContext context) throws StartException {
-        LOGGER.info("Adding SunPKCS11 security provider: " + name);
+        serviceRegistry = context.getController().getServiceContainer();
+        super.start(context);
+    }
+
+    /**
+     * Returns name of the fallback provider service or <code>null</code> if no fallback is configured.
+     * 
+     * @return
+     */
+    public ServiceName getFallbackServiceName() {
+        return fallbackServiceName;
+    }
+
+    /**
+     * Returns the circuit breaker driven by the health check or <code>null</code> if the health check is disabled.
+     * 
+     * @return
+     */
+    CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    /**
+     * Returns how many times the sampling found all the provider sessions in use.
+     * 
+     * @return
+     */
+    public long getSessionExhaustionCount() {
+        return sessionExhaustionCount.get();
+    }
+
+    // Protected methods -----------------------------------------------------
+
+    /**
+     * Returns the provider cache key, so the cached manifest changes with the configuration.
+     * 
+     * @return
+     * @see org.jboss.as.security.providers.extension.AbstractProviderService#getManifestKey()
+     */
+    @Override
+    protected String getManifestKey() {
+        return SunPKCS11ProviderCache.createKey(name, attributes);
+    }
+
+    /**
+     * Returns the SunPKCS11 provider name - the configured name with the "SunPKCS11-" prefix.
+     * 
+     * @return
+     * @see org.jboss.as.security.providers.extension.AbstractProviderService#getExpectedProviderName()
+     */
+    @Override
+    protected String getExpectedProviderName() {
+        return "SunPKCS11-" + name;
+    }
+
+    /**
+     * Returns the SunPKCS11 provider for the configuration - the provider is reused from the
+     * {@link SunPKCS11ProviderCache} if it was already initialized with an identical configuration.
+     * 
+     * @return
+     * @throws Exception
+     * @see org.jboss.as.security.providers.extension.AbstractProviderService#createProvider()
+     */
+    @Override
+    protected Provider createProvider() throws Exception {
+        final Map<String, String> config = attributes;
+        return acquireProvider(SunPKCS11ProviderCache.createKey(name, config), config);
+    }
+
+    /**
+     * Returns the provider reference to the {@link SunPKCS11ProviderCache} - the key under which the given provider was
+     * acquired is released, even if the configuration changed since then.
+     * 
+     * @param provider
+     * @see org.jboss.as.security.providers.extension.AbstractProviderService#releaseProvider(java.security.Provider)
+     */
+    @Override
+    protected void releaseProvider(Provider provider) {
+        final String key = removeAcquiredKey(provider);
+        if (key != null) {
+            SunPKCS11ProviderCache.release(key);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String getDescription() {
+        return "SunPKCS11 security provider " + name;
+    }
+
+    /**
+     * Wraps the provider by an {@link InstrumentedProvider} recording to the slow operation log if it's configured,
+     * otherwise the default wrapping is used. The latency histograms are recorded only in the instrumented mode.
+     * 
+     * @param provider
+     * @return
+     * @see org.jboss.as.security.providers.extension.AbstractProviderService#wrapProvider(java.security.Provider)
+     */
+    @Override
+    protected Provider wrapProvider(Provider provider) {
+        return slowOperations != null ? new InstrumentedProvider(provider, getOptions().isInstrumented(), slowOperations)
+                : super.wrapProvider(provider);
+    }
+
+    /**
+     * Starts the session usage sampling on the subsystem executor and the health check (if enabled) scheduled by the
+     * subsystem timer. Both work with the SunPKCS11 provider itself, so the health probes are not recorded by an
+     * {@link InstrumentedProvider}.
+     * 
+     * @param registeredProvider
+     * @see org.jboss.as.security.providers.extension.AbstractProviderService#providerRegistered(java.security.Provider)
+     */
+    @Override
+    protected void providerRegistered(Provider registeredProvider) {
+        final Provider provider = InstrumentedProvider.unwrap(registeredProvider);
+        final SunPKCS11Statistics newStatistics = SunPKCS11Statistics.create(provider);
+        statistics = newStatistics;
+        if (newStatistics != null) {
+            samplingTask = getExecutor().scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    sampleSessions(newStatistics);
+                }
+            }, SAMPLING_PERIOD, SAMPLING_PERIOD, TimeUnit.MILLISECONDS);
+        }
+        if (breaker != null) {
+            final HealthMonitor monitor = new HealthMonitor(provider, breaker, getTimer(), healthOptions.getTimeout());
+            monitor.start(healthOptions.getInterval());
+            healthMonitor = monitor;
+        }
+    }
+
+    /**
+     * Stops the session usage sampling and the health check. The circuit breaker is closed, so a promoted fallback
+     * provider is moved back.
+     * 
+     * @see org.jboss.as.security.providers.extension.AbstractProviderService#providerRemoved()
+     */
+    @Override
+    protected void providerRemoved() {
+        final ScheduledFuture<?> task = samplingTask;
+        if (task != null) {
+            task.cancel(false);
+            samplingTask = null;
+        }
+        statistics = null;
+        final HealthMonitor monitor = healthMonitor;
+        if (monitor != null) {
+            monitor.stop();
+            healthMonitor = null;
+            breaker.reset();
+        }
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Returns the log of the slow provider operations or <code>null</code> if they're not recorded.
+     * 
+     * @return
+     */
+    SlowOperationLog getSlowOperations() {
+        return slowOperations;
+    }
+
+    /**
+     * Creates a new SunPKCS11 provider instance with the given name from the given configuration attributes.
+     * 
+     * @param name
+     * @param config
+     * @return
+     * @throws Exception
+     */
+    static Provider newProvider(String name, Map<String, String> config) throws Exception {
         final StringBuilder sb = new StringBuilder();
         appendConfigLine(sb, "name", name);
-        if (attributes != null) {
-            for (Map.Entry<String, String> attr : attributes.entrySet()) {
-                appendConfigLine(sb, attr.getKey(), attr.getValue());
+        for (Map.Entry<String, String> attr : config.entrySet()) {
+            appendConfigLine(sb, attr.getKey(), attr.getValue());
+        }
+        return (Provider) Class.forName(SUN_PKCS11_CLASS_NAME).getConstructor(java.io.InputStream.class)
+                .newInstance(new ByteArrayInputStream(sb.toString().getBytes()));
+    }
+
+    // Private methods -------------------------------------------------------
+
+    /**
+     * Acquires the provider for the given configuration from the {@link SunPKCS11ProviderCache} and remembers the key, so
+     * {@link #releaseProvider(Provider)} releases exactly this reference.
+     * 
+     * @param key
+     * @param config
+     * @return
+     * @throws Exception
+     */
+    private Provider acquireProvider(String key, final Map<String, String> config) throws Exception {
+        final Provider provider = SunPKCS11ProviderCache.acquire(key, new Callable<Provider>() {
+            public Provider call() throws Exception {
+                return newProvider(name, config);
             }
+        });
+        synchronized (acquiredKeys) {
+            acquiredKeys.put(provider, key);
+        }
+        return provider;
+    }
+
+    /**
+     * Returns the cache key under which the given (possibly wrapped) provider was acquired and forgets it.
+     * 
+     * @param provider
+     * @return the key or <code>null</code> if the provider was not acquired by this service
+     */
+    private String removeAcquiredKey(Provider provider) {
+        synchronized (acquiredKeys) {
+            return acquiredKeys.remove(InstrumentedProvider.unwrap(provider));
         }
+    }
+
+    /**
+     * Constructs the provider for the given configuration and replaces the registered provider with it, unless the
+     * reconfiguration was superseded by a later one or the service stopped in the meantime.
+     * 
+     * @param reconfiguration sequence number of the reconfiguration
+     * @param key
+     * @param config
+     */
+    private void applyConfiguration(long reconfiguration, String key, Map<String, String> config) {
+        final Provider provider;
         try {
-            SecurityManager sm = System.getSecurityManager();
-
-            if (sm != null) {
-                AccessController.doPrivileged(new PrivilegedExceptionAction<Object>() {
-                    public Object run() throws Exception {
-                        final Provider sunPKCS11Provider = (Provider) Class.forName(SUN_PKCS11_CLASS_NAME)
-                                .getConstructor(java.io.InputStream.class)
-                                .newInstance(new ByteArrayInputStream(sb.toString().getBytes()));
-                        Security.addProvider(sunPKCS11Provider);
-                        providerName = sunPKCS11Provider.getName();
-                        return null;
-                    }
-                });
-            } else {
-                final Provider sunPKCS11Provider = (Provider) Class.forName(SUN_PKCS11_CLASS_NAME)
-                        .getConstructor(java.io.InputStream.class)
-                        .newInstance(new ByteArrayInputStream(sb.toString().getBytes()));
-                Security.addProvider(sunPKCS11Provider);
-                providerName = sunPKCS11Provider.getName();
-            }
+            provider = acquireProvider(key, config);
         } catch (Exception e) {
-            LOGGER.error("Adding SunPKCS11 security provider " + name + " failed.", e);
-            new StartException("Unable to register SunPKCS11 provider", e);
+            final Throwable cause = e instanceof InvocationTargetException && e.getCause() != null ? e.getCause() : e;
+            LOGGER.error("Unable to reconfigure " + getDescription() + ", the current provider stays registered", cause);
+            return;
+        }
+        final Provider oldProvider;
+        synchronized (this) {
+            if (reconfiguration != reconfigurations) {
+                LOGGER.debug("Reconfiguration of " + getDescription() + " superseded");
+                releaseProvider(provider);
+                return;
+            }
+            if (getProviderName() == null) {
+                // stopped while the provider was constructed
+                attributes = config;
+                releaseProvider(provider);
+                return;
+            }
+            try {
+                oldProvider = replaceProvider(provider);
+            } catch (RuntimeException e) {
+                LOGGER.error("Unable to reconfigure " + getDescription() + ", the current provider stays registered", e);
+                releaseProvider(provider);
+                return;
+            }
+            attributes = config;
+        }
+        if (oldProvider != null) {
+            // null means a lazy placeholder which was not initialized yet
+            releaseLater(oldProvider);
         }
     }
 
     /**
-     * Removes the SunPKCS11 security provider.
+     * Releases the provider cache reference of the given replaced provider after the {@link #DRAIN_PERIOD}. If no other
+     * service uses the provider then, it's evicted from the cache.
      * 
-     * @param context
-     * @see org.jboss.msc.service.Service#stop(org.jboss.msc.service.StopContext)
-     */
-    public void stop(StopContext context) {
-        LOGGER.info("Removing SunPKCS11 security provider: " + name);
-        SecurityManager sm = System.getSecurityManager();
-        if (sm != null) {
-            AccessController.doPrivileged(new PrivilegedAction<Object>() {
-                public Object run() {
-                    Security.removeProvider(providerName);
-                    return null;
+     * @param provider
+     */
+    private void releaseLater(Provider provider) {
+        final String key = removeAcquiredKey(provider);
+        if (key == null) {
+            return;
+        }
+        try {
+            getExecutor().schedule(new Runnable() {
+                public void run() {
+                    SunPKCS11ProviderCache.release(key, true);
                 }
-            });
-        } else {
-            Security.removeProvider(providerName);
+            }, DRAIN_PERIOD, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            SunPKCS11ProviderCache.release(key, true);
+        }
+    }
+
+    /**
+     * Promotes the fallback provider ahead of this provider when the circuit breaker opens and moves it back when the
+     * breaker closes.
+     * 
+     * @param from
+     * @param to
+     */
+    private void breakerStateChanged(CircuitBreaker.State from, CircuitBreaker.State to) {
+        switch (to) {
+            case OPEN:
+                LOGGER.warn(getDescription() + " failed the health check, circuit breaker is open");
+                break;
+            case HALF_OPEN:
+                LOGGER.info(getDescription() + " passed a health probe, circuit breaker is half-open");
+                break;
+            default:
+                LOGGER.info(getDescription() + " is healthy, circuit breaker is closed");
         }
+        final String fallbackName = getFallbackProviderName();
+        final String providerName = getProviderName();
+        if (fallbackName == null || providerName == null) {
+            return;
+        }
+        if (from == CircuitBreaker.State.CLOSED && to == CircuitBreaker.State.OPEN) {
+            final int position = ProviderRegistrar.moveBefore(fallbackName, providerName);
+            if (position != -1) {
+                LOGGER.info("Fallback provider " + fallbackName + " promoted to position " + position);
+            }
+        } else if (to == CircuitBreaker.State.CLOSED) {
+            final int position = ProviderRegistrar.restoreProvider(fallbackName);
+            if (position != -1) {
+                LOGGER.info("Fallback provider " + fallbackName + " moved back to position " + position);
+            }
+        }
+    }
 
+    /**
+     * Returns name of the provider registered by the fallback provider service or <code>null</code> if no fallback is
+     * configured or it has no provider registered.
+     * 
+     * @return
+     */
+    private String getFallbackProviderName() {
+        final ServiceRegistry registry = serviceRegistry;
+        if (fallbackServiceName == null || registry == null) {
+            return null;
+        }
+        final ServiceController<?> controller = registry.getService(fallbackServiceName);
+        if (controller == null || !(controller.getService() instanceof AbstractProviderService)) {
+            return null;
+        }
+        return ((AbstractProviderService) controller.getService()).getProviderName();
     }
 
     /**
-     * Creates a service name for the given SunPKCS11 provider name.
+     * Returns a copy of the configuration attributes.
      * 
-     * @param providerName
+     * @param attributes
      * @return
      */
-    public static ServiceName createServiceName(final String providerName) {
-        return ServiceName.JBOSS.append("security-providers", "sunpkcs11", providerName);
+    private static Map<String, String> copyAttributes(Map<String, String> attributes) {
+        final Map<String, String> result = new HashMap<String, String>();
+        if (attributes != null) {
+            result.putAll(attributes);
+        }
+        return result;
     }
 
-    // Private methods -------------------------------------------------------
+    /**
+     * Counts a session exhaustion event when all the sessions are in use and the previous sample was not exhausted.
+     * Called only from the sampling task.
+     * 
+     * @param stats
+     */
+    private void sampleSessions(SunPKCS11Statistics stats) {
+        final int maxSessions = stats.getMaxSessions();
+        final boolean nowExhausted = maxSessions > 0 && stats.getIdleSessions() == 0
+                && stats.getOpenSessions() >= maxSessions;
+        if (nowExhausted && !exhausted) {
+            sessionExhaustionCount.incrementAndGet();
+            LOGGER.debug("All " + maxSessions + " sessions of " + getDescription() + " are in use");
+        }
+        exhausted = nowExhausted;
+    }
 
     /**
      * Adds a config line (name=value pair) to the given {@link StringBuilder} instance.
@@ -167,7 +583,7 @@ public class SunPKCS11Service implements Service<SunPKCS11Service> {
      * @param name
      * @param value
      */
-    private void appendConfigLine(StringBuilder sb, String name, String value) {
+    private static void appendConfigLine(StringBuilder sb, String name, String value) {
         sb.append(name).append("=").append(value).append("\n");
     }
 }
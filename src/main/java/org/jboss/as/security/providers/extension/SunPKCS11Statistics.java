@@ -0,0 +1,199 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.lang.reflect.Field;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.security.Provider;
+import java.util.Collection;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Reads the session and token state of a SunPKCS11 provider. The state is not available through a public API, so it's read
+ * by reflection from the provider internals (<code>SunPKCS11.token</code>, <code>Token.sessionManager</code>, ...). If the
+ * internals are not accessible (e.g. on another JDK implementation), {@link #create(Provider)} returns <code>null</code>.
+ *
+ * @author Josef Cacek
+ */
+final class SunPKCS11Statistics {
+
+    private static final Logger LOGGER = Logger.getLogger(SunPKCS11Statistics.class);
+
+    private static final Fields FIELDS = AccessController.doPrivileged(new PrivilegedAction<Fields>() {
+        public Fields run() {
+            try {
+                return new Fields();
+            } catch (Exception e) {
+                LOGGER.debug("SunPKCS11 internals are not accessible, session metrics are not available.", e);
+                return null;
+            }
+        }
+    });
+
+    private final Provider provider;
+
+    // Constructors ----------------------------------------------------------
+
+    private SunPKCS11Statistics(Provider provider) {
+        this.provider = provider;
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Creates statistics reader for the given SunPKCS11 provider.
+     *
+     * @param provider
+     * @return statistics reader or <code>null</code> if the provider internals are not accessible
+     */
+    static SunPKCS11Statistics create(Provider provider) {
+        if (FIELDS == null || !FIELDS.providerClass.isInstance(provider)) {
+            return null;
+        }
+        return new SunPKCS11Statistics(provider);
+    }
+
+    /**
+     * Returns number of sessions opened by the provider which are in use, or -1 if there is no token.
+     *
+     * @return
+     */
+    int getActiveSessions() {
+        final int open = getOpenSessions();
+        final int idle = getIdleSessions();
+        return open < 0 || idle < 0 ? -1 : Math.max(open - idle, 0);
+    }
+
+    /**
+     * Returns number of sessions opened by the provider (both idle and in use), or -1 if there is no token.
+     *
+     * @return
+     */
+    int getOpenSessions() {
+        final Object sessionManager = getSessionManager();
+        if (sessionManager == null) {
+            return -1;
+        }
+        final Object activeSessions = get(FIELDS.activeSessions, sessionManager);
+        // AtomicInteger in recent JDKs, int in the older ones
+        return activeSessions instanceof Number ? ((Number) activeSessions).intValue() : -1;
+    }
+
+    /**
+     * Returns number of opened sessions which are not in use, or -1 if there is no token.
+     *
+     * @return
+     */
+    int getIdleSessions() {
+        final Object sessionManager = getSessionManager();
+        if (sessionManager == null) {
+            return -1;
+        }
+        return poolSize(get(FIELDS.objSessions, sessionManager)) + poolSize(get(FIELDS.opSessions, sessionManager));
+    }
+
+    /**
+     * Returns maximal number of sessions the provider opens, or -1 if there is no token.
+     *
+     * @return
+     */
+    int getMaxSessions() {
+        final Object sessionManager = getSessionManager();
+        if (sessionManager == null) {
+            return -1;
+        }
+        final Object maxSessions = get(FIELDS.maxSessions, sessionManager);
+        return maxSessions instanceof Number ? ((Number) maxSessions).intValue() : -1;
+    }
+
+    /**
+     * Returns the last known login state of the token.
+     *
+     * @return
+     */
+    boolean isLoggedIn() {
+        final Object token = get(FIELDS.token, provider);
+        return token != null && Boolean.TRUE.equals(get(FIELDS.loggedIn, token));
+    }
+
+    // Private methods -------------------------------------------------------
+
+    private Object getSessionManager() {
+        final Object token = get(FIELDS.token, provider);
+        return token == null ? null : get(FIELDS.sessionManager, token);
+    }
+
+    private static int poolSize(Object pool) {
+        if (pool == null) {
+            return 0;
+        }
+        final Object sessions = get(FIELDS.poolSessions, pool);
+        return sessions instanceof Collection<?> ? ((Collection<?>) sessions).size() : 0;
+    }
+
+    private static Object get(Field field, Object target) {
+        try {
+            return field.get(target);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    // Embedded classes ------------------------------------------------------
+
+    /**
+     * Accessible fields of the SunPKCS11 internal classes.
+     */
+    private static class Fields {
+        private final Class<?> providerClass;
+        private final Field token;
+        private final Field sessionManager;
+        private final Field loggedIn;
+        private final Field activeSessions;
+        private final Field maxSessions;
+        private final Field objSessions;
+        private final Field opSessions;
+        private final Field poolSessions;
+
+        Fields() throws Exception {
+            providerClass = Class.forName("sun.security.pkcs11.SunPKCS11");
+            token = field(providerClass, "token");
+            final Class<?> tokenClass = Class.forName("sun.security.pkcs11.Token");
+            sessionManager = field(tokenClass, "sessionManager");
+            loggedIn = field(tokenClass, "loggedIn");
+            final Class<?> sessionManagerClass = Class.forName("sun.security.pkcs11.SessionManager");
+            activeSessions = field(sessionManagerClass, "activeSessions");
+            maxSessions = field(sessionManagerClass, "maxSessions");
+            objSessions = field(sessionManagerClass, "objSessions");
+            opSessions = field(sessionManagerClass, "opSessions");
+            poolSessions = field(Class.forName("sun.security.pkcs11.SessionManager$Pool"), "pool");
+        }
+
+        private static Field field(Class<?> clazz, String name) throws NoSuchFieldException {
+            final Field field = clazz.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        }
+    }
+}
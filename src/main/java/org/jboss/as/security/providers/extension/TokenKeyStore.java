@@ -0,0 +1,255 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.security.providers.extension;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.cert.Certificate;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * KeyStore of a token loaded once and shared by the deployments. Its aliases are indexed when it's loaded, so lookups of
+ * unknown aliases don't touch the token, and the key and certificate handles are cached in size bounded LRU caches with an
+ * optional time-to-live. This is the value of the keystore services installed by this subsystem.
+ * <p>
+ * Keys and certificates added to the token after the keystore was loaded are not visible until the keystore service is
+ * restarted.
+ *
+ * @author Josef Cacek
+ */
+public final class TokenKeyStore {
+
+    private static final Certificate[] NO_CERTIFICATES = new Certificate[0];
+
+    private final KeyStore keyStore;
+    private final char[] password;
+    /** Indexed aliases (alias -> true for key entries). */
+    private final Map<String, Boolean> aliases;
+    private final ExpiringLruCache<String, Key> keys;
+    private final ExpiringLruCache<String, Certificate[]> certificates;
+
+    // Constructors ----------------------------------------------------------
+
+    /**
+     * Create a new TokenKeyStore for the given loaded keystore.
+     *
+     * @param keyStore
+     * @param password password used for key entries, may be <code>null</code>
+     * @param maxEntries maximal number of cached keys (and of cached certificate chains)
+     * @param ttl time-to-live (milliseconds) of the cached handles, values less than 1 mean no expiration
+     * @throws KeyStoreException
+     */
+    TokenKeyStore(KeyStore keyStore, char[] password, int maxEntries, long ttl) throws KeyStoreException {
+        this.keyStore = keyStore;
+        this.password = password;
+        final Map<String, Boolean> index = new HashMap<String, Boolean>();
+        for (Enumeration<String> e = keyStore.aliases(); e.hasMoreElements();) {
+            final String alias = e.nextElement();
+            index.put(alias, Boolean.valueOf(keyStore.isKeyEntry(alias)));
+        }
+        this.aliases = Collections.unmodifiableMap(index);
+        this.keys = new ExpiringLruCache<String, Key>(maxEntries, ttl);
+        this.certificates = new ExpiringLruCache<String, Certificate[]>(maxEntries, ttl);
+    }
+
+    // Public methods --------------------------------------------------------
+
+    /**
+     * Loads the KeyStore of given type from the provider and indexes it.
+     *
+     * @param provider
+     * @param type KeyStore type (e.g. "PKCS11")
+     * @param password PIN of the token, may be <code>null</code>
+     * @param maxEntries
+     * @param ttl
+     * @return
+     * @throws GeneralSecurityException
+     * @throws IOException
+     */
+    public static TokenKeyStore load(Provider provider, String type, char[] password, int maxEntries, long ttl)
+            throws GeneralSecurityException, IOException {
+        final KeyStore keyStore = KeyStore.getInstance(type, provider);
+        keyStore.load(null, password);
+        return new TokenKeyStore(keyStore, password, maxEntries, ttl);
+    }
+
+    /**
+     * Returns the underlying (loaded) KeyStore. Lookups done directly on it are not cached.
+     *
+     * @return
+     */
+    public KeyStore getKeyStore() {
+        return keyStore;
+    }
+
+    /**
+     * Returns the aliases indexed when the keystore was loaded.
+     *
+     * @return
+     */
+    public Set<String> getAliases() {
+        return aliases.keySet();
+    }
+
+    public boolean containsAlias(String alias) {
+        return aliases.containsKey(alias);
+    }
+
+    public boolean isKeyEntry(String alias) {
+        return Boolean.TRUE.equals(aliases.get(alias));
+    }
+
+    /**
+     * Returns the (cached) key with given alias or <code>null</code> if the alias doesn't identify a key entry.
+     *
+     * @param alias
+     * @return
+     * @throws GeneralSecurityException
+     */
+    public Key getKey(String alias) throws GeneralSecurityException {
+        if (!isKeyEntry(alias)) {
+            return null;
+        }
+        Key key = keys.get(alias);
+        if (key == null) {
+            key = keyStore.getKey(alias, password);
+            if (key != null) {
+                keys.put(alias, key);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Returns the (cached) private key with given alias or <code>null</code> if the alias doesn't identify a private key.
+     *
+     * @param alias
+     * @return
+     * @throws GeneralSecurityException
+     */
+    public PrivateKey getPrivateKey(String alias) throws GeneralSecurityException {
+        final Key key = getKey(alias);
+        return key instanceof PrivateKey ? (PrivateKey) key : null;
+    }
+
+    /**
+     * Returns the (cached) certificate with given alias - the first certificate of the chain for key entries - or
+     * <code>null</code> if there is no such certificate.
+     *
+     * @param alias
+     * @return
+     * @throws KeyStoreException
+     */
+    public Certificate getCertificate(String alias) throws KeyStoreException {
+        final Certificate[] chain = getChain(alias);
+        return chain.length > 0 ? chain[0] : null;
+    }
+
+    /**
+     * Returns the (cached) certificate chain of the key entry with given alias or <code>null</code> if there is no such
+     * chain.
+     *
+     * @param alias
+     * @return
+     * @throws KeyStoreException
+     */
+    public Certificate[] getCertificateChain(String alias) throws KeyStoreException {
+        final Certificate[] chain = getChain(alias);
+        return chain.length > 0 && isKeyEntry(alias) ? chain.clone() : null;
+    }
+
+    /**
+     * Returns number of lookups served from the caches.
+     *
+     * @return
+     */
+    public long getHitCount() {
+        return keys.getHitCount() + certificates.getHitCount();
+    }
+
+    /**
+     * Returns number of lookups of indexed aliases which had to go to the token.
+     *
+     * @return
+     */
+    public long getMissCount() {
+        return keys.getMissCount() + certificates.getMissCount();
+    }
+
+    /**
+     * Returns number of cached handles evicted because of the size limit or the time-to-live.
+     *
+     * @return
+     */
+    public long getEvictionCount() {
+        return keys.getEvictionCount() + certificates.getEvictionCount();
+    }
+
+    // Package protected methods ---------------------------------------------
+
+    /**
+     * Drops the cached handles.
+     */
+    void clear() {
+        keys.clear();
+        certificates.clear();
+    }
+
+    // Private methods -------------------------------------------------------
+
+    /**
+     * Returns the certificate chain of a key entry or the single certificate of a certificate entry, an empty array if
+     * there is none.
+     *
+     * @param alias
+     * @return
+     * @throws KeyStoreException
+     */
+    private Certificate[] getChain(String alias) throws KeyStoreException {
+        if (!aliases.containsKey(alias)) {
+            return NO_CERTIFICATES;
+        }
+        Certificate[] chain = certificates.get(alias);
+        if (chain == null) {
+            if (isKeyEntry(alias)) {
+                chain = keyStore.getCertificateChain(alias);
+            } else {
+                final Certificate certificate = keyStore.getCertificate(alias);
+                chain = certificate == null ? null : new Certificate[] { certificate };
+            }
+            if (chain == null) {
+                chain = NO_CERTIFICATES;
+            }
+            certificates.put(alias, chain);
+        }
+        return chain;
+    }
+}
@@ -0,0 +1,173 @@
+package org.jboss.as.security.providers.extension;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Security;
+import java.security.Signature;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests borrowing, reusing and evicting the instances of a {@link CryptoPool}.
+ * 
+ * @author Josef Cacek
+ */
+public class CryptoPoolTestCase {
+
+    /**
+     * Tests that the stripe is exhausted by the borrowed instances and that the released instance is reused
+     */
+    @Test
+    public void testBorrow() throws Exception {
+        CryptoPool<Cipher> pool = createPool(0L);
+        CryptoPool.PooledInstance<Cipher> cipher = pool.borrow();
+        Assert.assertEquals("SunJCE", cipher.get().getProvider().getName());
+        try {
+            pool.borrow();
+            Assert.fail("The pool stripe should be exhausted");
+        } catch (GeneralSecurityException expected) {
+        }
+        cipher.release();
+        Assert.assertSame(cipher, pool.borrow());
+        cipher.release();
+        try {
+            cipher.release();
+            Assert.fail("The instance was already returned");
+        } catch (IllegalStateException expected) {
+        }
+        Assert.assertEquals(1L, pool.getHitCount());
+        Assert.assertEquals(1L, pool.getMissCount());
+        Assert.assertEquals(1L, pool.getWaitCount());
+        Assert.assertEquals(1, pool.getIdleCount());
+    }
+
+    /**
+     * Tests that an invalidated instance frees its permit but isn't reused
+     */
+    @Test
+    public void testInvalidate() throws Exception {
+        CryptoPool<Cipher> pool = createPool(0L);
+        CryptoPool.PooledInstance<Cipher> cipher = pool.borrow();
+        cipher.invalidate();
+        Assert.assertEquals(0, pool.getIdleCount());
+        Assert.assertNotSame(cipher, pool.borrow());
+        Assert.assertEquals(2L, pool.getMissCount());
+        Assert.assertEquals(0L, pool.getWaitCount());
+    }
+
+    /**
+     * Tests the eviction of the idle instances and closing of the pool
+     */
+    @Test
+    public void testEvictAndClose() throws Exception {
+        CryptoPool<Cipher> pool = createPool(0L);
+        pool.borrow().release();
+        Assert.assertEquals(0, pool.evictIdle());
+        Assert.assertEquals(1, pool.getIdleCount());
+
+        pool = createPool(1L);
+        pool.borrow().release();
+        Thread.sleep(10L);
+        Assert.assertEquals(1, pool.evictIdle());
+        Assert.assertEquals(0, pool.getIdleCount());
+
+        CryptoPool.PooledInstance<Cipher> cipher = pool.borrow();
+        pool.close();
+        cipher.release();
+        Assert.assertEquals(0, pool.getIdleCount());
+        try {
+            pool.borrow();
+            Assert.fail("The pool is closed");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    /**
+     * Tests that the keyed borrows reuse the instances initialized with the same key
+     */
+    @Test
+    public void testBorrowInitialized() throws Exception {
+        CryptoPool<Mac> pool = new CryptoPool<Mac>(Mac.class, EngineType.MAC, "HmacSHA256", Security.getProvider("SunJCE"), 1,
+                2, 0L, 0L);
+        SecretKey key1 = new SecretKeySpec(new byte[32], "HmacSHA256");
+        SecretKey key2 = new SecretKeySpec(new byte[] { 1 }, "HmacSHA256");
+        CryptoPool.PooledInstance<Mac> mac1 = pool.borrow(key1);
+        CryptoPool.PooledInstance<Mac> mac2 = pool.borrow(key2);
+        byte[] expected = mac1.get().doFinal(new byte[10]);
+        mac1.release();
+        mac2.release();
+        Assert.assertEquals(2L, pool.getInitCount());
+
+        // the instance initialized with key1 is found although it's not the most recently returned one
+        CryptoPool.PooledInstance<Mac> mac = pool.borrow(key1);
+        Assert.assertSame(mac1, mac);
+        Assert.assertTrue(Arrays.equals(expected, mac.get().doFinal(new byte[10])));
+        mac.release();
+        Assert.assertEquals(2L, pool.getInitCount());
+
+        // an instance borrowed without a key is initialized by the caller, so it's initialized again for a keyed borrow
+        mac = pool.borrow();
+        mac.get().init(key2);
+        mac.release();
+        Assert.assertSame(mac, pool.borrow(key1));
+        Assert.assertEquals(3L, pool.getInitCount());
+
+        CryptoPool<Signature> signatures = new CryptoPool<Signature>(Signature.class, EngineType.SIGNATURE, "SHA256withRSA",
+                Security.getProvider("SunRsaSign"), 1, 1, 0L, 0L);
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        KeyPair keyPair = generator.generateKeyPair();
+        CryptoPool.PooledInstance<Signature> signature = signatures.borrow(keyPair.getPrivate());
+        signature.get().update(new byte[10]);
+        byte[] signed = signature.get().sign();
+        signature.release();
+        signature = signatures.borrow(keyPair.getPublic());
+        signature.get().update(new byte[10]);
+        Assert.assertTrue(signature.get().verify(signed));
+        signature.release();
+        Assert.assertEquals(2L, signatures.getInitCount());
+        try {
+            signatures.borrow(key1);
+            Assert.fail("Signature can't be initialized with a secret key");
+        } catch (InvalidKeyException expectedException) {
+        }
+        // the instance failed to initialize is dropped
+        Assert.assertEquals(0, signatures.getIdleCount());
+
+        try {
+            createPool(0L).borrow(key1);
+            Assert.fail("Cipher instances can't be borrowed initialized");
+        } catch (UnsupportedOperationException expectedException) {
+        }
+    }
+
+    /**
+     * Tests the typed view of the pool
+     */
+    @Test
+    public void testAs() throws Exception {
+        CryptoPool<Cipher> pool = createPool(0L);
+        Assert.assertSame(pool, pool.as(Cipher.class));
+        try {
+            pool.as(MessageDigest.class);
+            Assert.fail("The pool holds Cipher instances");
+        } catch (ClassCastException expected) {
+        }
+    }
+
+    private CryptoPool<Cipher> createPool(long idleTimeout) {
+        return new CryptoPool<Cipher>(Cipher.class, EngineType.CIPHER, "AES/CBC/PKCS5Padding", Security.getProvider("SunJCE"), 1,
+                1, 0L, idleTimeout);
+    }
+}
@@ -0,0 +1,104 @@
+package org.jboss.as.security.providers.extension;
+
+import java.security.Key;
+import java.security.KeyStore;
+
+import javax.crypto.KeyGenerator;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests the size limit, the time-to-live and the counters of the {@link ExpiringLruCache} and the key handle cache of the
+ * {@link TokenKeyStore}.
+ * 
+ * @author Josef Cacek
+ */
+public class ExpiringLruCacheTestCase {
+
+    /**
+     * Tests that the least recently used entry is evicted when the cache is full
+     */
+    @Test
+    public void testSizeLimit() throws Exception {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<String, String>(2, 0L);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        Assert.assertEquals("A", cache.get("a"));
+        cache.put("c", "C");
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1L, cache.getEvictionCount());
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals("A", cache.get("a"));
+        Assert.assertEquals("C", cache.get("c"));
+        Assert.assertEquals(3L, cache.getHitCount());
+        Assert.assertEquals(1L, cache.getMissCount());
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+    }
+
+    /**
+     * Tests that the expired entries are evicted on access
+     */
+    @Test
+    public void testTimeToLive() throws Exception {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<String, String>(10, 1L);
+        cache.put("a", "A");
+        Thread.sleep(10L);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0L, cache.getHitCount());
+        Assert.assertEquals(1L, cache.getMissCount());
+        Assert.assertEquals(1L, cache.getEvictionCount());
+    }
+
+    /**
+     * Tests that the zero size disables the caching
+     */
+    @Test
+    public void testDisabled() throws Exception {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<String, String>(0, 0L);
+        cache.put("a", "A");
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0L, cache.getEvictionCount());
+    }
+
+    /**
+     * Tests that the token keystore indexes the aliases and caches the key handles with the size limit and the time-to-live
+     */
+    @Test
+    public void testTokenKeyStore() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JCEKS");
+        keyStore.load(null, null);
+        char[] password = "secret".toCharArray();
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyStore.setEntry("key1", new KeyStore.SecretKeyEntry(keyGenerator.generateKey()), new KeyStore.PasswordProtection(
+                password));
+        keyStore.setEntry("key2", new KeyStore.SecretKeyEntry(keyGenerator.generateKey()), new KeyStore.PasswordProtection(
+                password));
+
+        TokenKeyStore tokenKeyStore = new TokenKeyStore(keyStore, password, 1, 0L);
+        Assert.assertEquals(2, tokenKeyStore.getAliases().size());
+        Assert.assertNull(tokenKeyStore.getKey("unknown"));
+        Assert.assertEquals(0L, tokenKeyStore.getMissCount());
+        Key key1 = tokenKeyStore.getKey("key1");
+        Assert.assertEquals(keyStore.getKey("key1", password), key1);
+        Assert.assertSame(key1, tokenKeyStore.getKey("key1"));
+        Assert.assertEquals(1L, tokenKeyStore.getHitCount());
+        Assert.assertEquals(1L, tokenKeyStore.getMissCount());
+        tokenKeyStore.getKey("key2");
+        Assert.assertEquals(1L, tokenKeyStore.getEvictionCount());
+        Assert.assertNull(tokenKeyStore.getCertificate("key1"));
+        Assert.assertNull(tokenKeyStore.getPrivateKey("key1"));
+
+        tokenKeyStore = new TokenKeyStore(keyStore, password, 10, 1L);
+        tokenKeyStore.getKey("key1");
+        Thread.sleep(10L);
+        tokenKeyStore.getKey("key1");
+        Assert.assertEquals(0L, tokenKeyStore.getHitCount());
+        Assert.assertEquals(2L, tokenKeyStore.getMissCount());
+        Assert.assertEquals(1L, tokenKeyStore.getEvictionCount());
+    }
+}
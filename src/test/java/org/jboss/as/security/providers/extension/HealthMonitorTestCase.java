@@ -0,0 +1,170 @@
+package org.jboss.as.security.providers.extension;
+
+import java.security.MessageDigest;
+import java.security.MessageDigestSpi;
+import java.security.Provider;
+import java.security.ProviderException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import junit.framework.Assert;
+
+import org.jboss.as.security.providers.extension.SubsystemParsingTestCase.IndexTestProvider;
+import org.junit.Test;
+
+/**
+ * Tests the {@link CircuitBreaker} driven by the {@link HealthMonitor} probes and the promotion of a fallback provider.
+ * 
+ * @author Josef Cacek
+ */
+public class HealthMonitorTestCase {
+
+    /**
+     * Tests that the circuit breaker opens after consecutive failed probes and closes after two successful ones
+     */
+    @Test
+    public void testFailingProbe() throws Exception {
+        final List<CircuitBreaker.State> transitions = new ArrayList<CircuitBreaker.State>();
+        CircuitBreaker breaker = new CircuitBreaker(2, createListener(transitions));
+        ScheduledExecutorService inlineExecutor = new ScheduledThreadPoolExecutor(1) {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        try {
+            HealthMonitor monitor = new HealthMonitor(new HealthTestProvider(), breaker, inlineExecutor, inlineExecutor, 60000L);
+            HealthTestDigest.FAIL = true;
+            monitor.check();
+            Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+            monitor.check();
+            Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+            HealthTestDigest.FAIL = false;
+            monitor.check();
+            Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+            monitor.check();
+            Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+            Assert.assertEquals(2L, breaker.getFailureCount());
+            Assert.assertEquals(3L, breaker.getTransitionCount());
+            Assert.assertEquals(Arrays.asList(CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN,
+                    CircuitBreaker.State.CLOSED), transitions);
+        } finally {
+            HealthTestDigest.FAIL = false;
+            inlineExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Tests that a hanging probe blocks only the probe thread of the monitor and opens the circuit breaker
+     */
+    @Test
+    public void testHangingProbe() throws Exception {
+        final List<CircuitBreaker.State> transitions = new ArrayList<CircuitBreaker.State>();
+        CircuitBreaker breaker = new CircuitBreaker(2, createListener(transitions));
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+        CountDownLatch hang = new CountDownLatch(1);
+        HealthTestDigest.HANG = hang;
+        try {
+            HealthMonitor monitor = new HealthMonitor(new HealthTestProvider(), breaker, executor, 1L);
+            monitor.check();
+            Thread.sleep(50L);
+            monitor.check();
+            monitor.check();
+            Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+            hang.countDown();
+            monitor.stop();
+            Assert.assertEquals(2L, breaker.getFailureCount());
+            Assert.assertEquals(Arrays.asList(CircuitBreaker.State.OPEN), transitions);
+        } finally {
+            HealthTestDigest.HANG = null;
+            hang.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests that a fallback provider can be promoted ahead of the failed provider and moved back
+     */
+    @Test
+    public void testFallbackPromotion() throws Exception {
+        Provider primary = new HealthTestProvider();
+        Provider fallback = new IndexTestProvider();
+        try {
+            ProviderRegistrar.addProvider(primary, null);
+            ProviderRegistrar.addProvider(fallback, null);
+            Assert.assertTrue(ProviderRegistrar.getPosition(fallback.getName()) > ProviderRegistrar.getPosition(primary.getName()));
+            ProviderRegistrar.moveBefore(fallback.getName(), primary.getName());
+            Assert.assertEquals(ProviderRegistrar.getPosition(primary.getName()) - 1,
+                    ProviderRegistrar.getPosition(fallback.getName()));
+            Assert.assertSame(fallback, MessageDigest.getInstance("TD").getProvider());
+            ProviderRegistrar.restoreProvider(fallback.getName());
+            Assert.assertTrue(ProviderRegistrar.getPosition(fallback.getName()) > ProviderRegistrar.getPosition(primary.getName()));
+        } finally {
+            ProviderRegistrar.removeProvider(primary.getName());
+            ProviderRegistrar.removeProvider(fallback.getName());
+        }
+    }
+
+    private CircuitBreaker.Listener createListener(final List<CircuitBreaker.State> transitions) {
+        return new CircuitBreaker.Listener() {
+            public void stateChanged(CircuitBreaker.State from, CircuitBreaker.State to) {
+                transitions.add(to);
+            }
+        };
+    }
+
+    /**
+     * Provider with a SHA-256 digest which can be made to fail or hang.
+     */
+    public static class HealthTestProvider extends Provider {
+
+        private static final long serialVersionUID = 1L;
+
+        public HealthTestProvider() {
+            super("HealthTest", 1.0, "Provider for the health check test");
+            put("MessageDigest.SHA-256", HealthTestDigest.class.getName());
+        }
+    }
+
+    /**
+     * Digest for the {@link HealthTestProvider}.
+     */
+    public static class HealthTestDigest extends MessageDigestSpi {
+
+        static volatile boolean FAIL;
+        static volatile CountDownLatch HANG;
+
+        @Override
+        protected void engineUpdate(byte input) {
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int len) {
+        }
+
+        @Override
+        protected byte[] engineDigest() {
+            final CountDownLatch hang = HANG;
+            if (hang != null) {
+                try {
+                    hang.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (FAIL) {
+                throw new ProviderException("Token failure");
+            }
+            return new byte[32];
+        }
+
+        @Override
+        protected void engineReset() {
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.jboss.as.security.providers.extension;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Provider;
+import java.security.Security;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link LatencyHistogram} and the histograms recorded by the {@link InstrumentedProvider}.
+ * 
+ * @author Josef Cacek
+ */
+public class LatencyHistogramTestCase {
+
+    /**
+     * Tests the power-of-two buckets
+     */
+    @Test
+    public void testBuckets() throws Exception {
+        Assert.assertEquals(0, LatencyHistogram.getBucket(0L));
+        Assert.assertEquals(10, LatencyHistogram.getBucket(1000L));
+        Assert.assertEquals(1023L, LatencyHistogram.getUpperBound(10));
+        Assert.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.getBucket(Long.MAX_VALUE));
+        Assert.assertEquals(Long.MAX_VALUE, LatencyHistogram.getUpperBound(LatencyHistogram.BUCKETS - 1));
+    }
+
+    /**
+     * Tests recording, the percentile estimates and the reset
+     */
+    @Test
+    public void testRecord() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        Assert.assertEquals(0L, histogram.getPercentile(99d));
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1000L);
+        }
+        histogram.record(5000L);
+        histogram.record(-1L);
+        Assert.assertEquals(101L, histogram.getCount());
+        Assert.assertEquals(99L, histogram.getBucketCount(10));
+        Assert.assertEquals(1L, histogram.getBucketCount(0));
+        Assert.assertEquals(99L * 1000L + 5000L, histogram.getTotalTime());
+        Assert.assertEquals(5000L, histogram.getMaxTime());
+        Assert.assertEquals(1023L, histogram.getPercentile(50d));
+        Assert.assertEquals(5000L, histogram.getPercentile(100d));
+
+        histogram.reset();
+        Assert.assertEquals(0L, histogram.getCount());
+        Assert.assertEquals(0L, histogram.getTotalTime());
+        Assert.assertEquals(0L, histogram.getMaxTime());
+    }
+
+    /**
+     * Tests the histograms of the instrumented signatures and key pair generators, the providers don't have to be registered
+     */
+    @Test
+    public void testInstrumentedProvider() throws Exception {
+        InstrumentedProvider sunRsaSign = new InstrumentedProvider(Security.getProvider("SunRsaSign"));
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA", sunRsaSign);
+        generator.initialize(1024);
+        KeyPair keyPair = generator.generateKeyPair();
+        Signature signature = Signature.getInstance("SHA256withRSA", sunRsaSign);
+        signature.initSign(keyPair.getPrivate());
+        signature.update(new byte[100]);
+        byte[] signed = signature.sign();
+        signature.initVerify(keyPair.getPublic());
+        signature.update(new byte[100]);
+        Assert.assertTrue(signature.verify(signed));
+        Map<String, LatencyHistogram> histograms = sunRsaSign.getHistograms();
+        Assert.assertEquals(1L, histograms.get("KeyPairGenerator.RSA.generate").getCount());
+        Assert.assertEquals(1L, histograms.get("Signature.SHA256withRSA.sign").getCount());
+        Assert.assertEquals(1L, histograms.get("Signature.SHA256withRSA.verify").getCount());
+
+        // a failed operation is not recorded and the next one is measured from its own start
+        try {
+            signature.verify(new byte[1]);
+            Assert.fail("Verification of a malformed signature should fail");
+        } catch (SignatureException e) {
+            // expected
+        }
+        signature.update(new byte[100]);
+        Assert.assertTrue(signature.verify(signed));
+        Assert.assertEquals(2L, histograms.get("Signature.SHA256withRSA.verify").getCount());
+
+        // JCE types are not wrapped, their services belong to the wrapped provider
+        Provider sunJce = Security.getProvider("SunJCE");
+        InstrumentedProvider instrumentedSunJce = new InstrumentedProvider(sunJce);
+        Assert.assertSame(sunJce, instrumentedSunJce.getService("Mac", "HmacSHA256").getProvider());
+        Assert.assertSame(sunJce, instrumentedSunJce.getService("Cipher", "AES").getProvider());
+    }
+
+    /**
+     * Tests the time spent by the caller between the engine calls is not recorded
+     */
+    @Test
+    public void testEngineCallsMeasured() throws Exception {
+        InstrumentedProvider sun = new InstrumentedProvider(Security.getProvider("SUN"));
+        MessageDigest digest = MessageDigest.getInstance("SHA-256", sun);
+        digest.update(new byte[100]);
+        Thread.sleep(500L);
+        digest.update(new byte[100]);
+        digest.digest();
+        LatencyHistogram histogram = sun.getHistograms().get("MessageDigest.SHA-256.digest");
+        Assert.assertEquals(1L, histogram.getCount());
+        Assert.assertTrue("The pause between updates was recorded", histogram.getMaxTime() < 250000000L);
+    }
+}
@@ -0,0 +1,83 @@
+package org.jboss.as.security.providers.extension;
+
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Security;
+import java.security.Signature;
+import java.util.List;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import junit.framework.Assert;
+
+import org.jboss.dmr.ModelNode;
+import org.junit.Test;
+
+/**
+ * Tests the {@link SlowOperationLog} filled by the {@link InstrumentedProvider}.
+ * 
+ * @author Josef Cacek
+ */
+public class SlowOperationLogTestCase {
+
+    /**
+     * Tests that the operations over the threshold are recorded with their key sizes and caller stacks in a bounded ring
+     */
+    @Test
+    public void testSlowOperations() throws Exception {
+        // everything is slow with the zero threshold, the ring keeps the last two operations
+        SlowOperationLog log = new SlowOperationLog(0L, 2);
+        InstrumentedProvider sunRsaSign = new InstrumentedProvider(Security.getProvider("SunRsaSign"), true, log);
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        Signature signature = Signature.getInstance("SHA256withRSA", sunRsaSign);
+        signature.initSign(generator.generateKeyPair().getPrivate());
+        for (int i = 0; i < 3; i++) {
+            signature.update(new byte[100]);
+            signature.sign();
+        }
+        Assert.assertEquals(3L, log.getCount());
+        Assert.assertEquals(3L, sunRsaSign.getHistograms().get("Signature.SHA256withRSA.sign").getCount());
+        List<SlowOperationLog.Entry> entries = log.getEntries();
+        Assert.assertEquals(2, entries.size());
+        Assert.assertTrue(entries.get(0).getTime() <= entries.get(1).getTime());
+        Assert.assertEquals("Signature.SHA256withRSA.sign", entries.get(0).getOperation());
+        Assert.assertEquals(1024, entries.get(0).getKeySize());
+        Assert.assertEquals(getClass().getName(), entries.get(0).getStack()[0].getClassName());
+        Assert.assertEquals("testSlowOperations", entries.get(0).getStack()[0].getMethodName());
+
+        ModelNode result = new ModelNode();
+        ReadSlowOperationsHandler.setSlowOperations(result, log);
+        Assert.assertEquals(2, result.asList().size());
+        Assert.assertEquals(1024, result.get(1).get("key-size").asInt());
+        Assert.assertEquals(Thread.currentThread().getName(), result.get(1).get("thread").asString());
+        Assert.assertTrue(result.get(1).get("duration").asLong() > 0L);
+        Assert.assertTrue(result.get(1).get("stack").get(0).asString().startsWith(getClass().getName()));
+    }
+
+    /**
+     * Tests that the fast operations are not recorded and that the histograms are not filled without instrumentation
+     */
+    @Test
+    public void testFastOperations() throws Exception {
+        SlowOperationLog highThreshold = new SlowOperationLog(60000L, 2);
+        InstrumentedProvider sun = new InstrumentedProvider(Security.getProvider("SUN"), false, highThreshold);
+        MessageDigest.getInstance("SHA-256", sun).digest(new byte[100]);
+        Assert.assertEquals(0L, highThreshold.getCount());
+        Assert.assertTrue(highThreshold.getEntries().isEmpty());
+        Assert.assertFalse(sun.isRecordingHistograms());
+        Assert.assertEquals(0L, sun.getHistograms().get("MessageDigest.SHA-256.digest").getCount());
+    }
+
+    /**
+     * Tests that the key size is taken from the key parameters and the secret key material is not read
+     */
+    @Test
+    public void testKeySize() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        Assert.assertEquals(256, SlowOperationLog.getKeySize(generator.generateKeyPair().getPublic()));
+        Assert.assertEquals(-1, SlowOperationLog.getKeySize(null));
+        Assert.assertEquals(-1, SlowOperationLog.getKeySize(new SecretKeySpec(new byte[16], "AES")));
+    }
+}
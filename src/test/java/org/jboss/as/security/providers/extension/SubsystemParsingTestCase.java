@@ -2,15 +2,51 @@ package org.jboss.as.security.providers.extension;
 
 import static org.jboss.as.controller.descriptions.ModelDescriptionConstants.*;
 
+import java.io.File;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.security.Signature;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.xml.stream.XMLStreamException;
 
 import junit.framework.Assert;
 
 import org.jboss.as.controller.PathAddress;
 import org.jboss.as.controller.PathElement;
+import org.jboss.as.server.deployment.DeploymentUnitProcessingException;
 import org.jboss.as.subsystem.test.AbstractSubsystemTest;
 import org.jboss.as.subsystem.test.KernelServices;
 import org.jboss.dmr.ModelNode;
+import org.jboss.msc.service.AbstractService;
+import org.jboss.msc.service.ServiceController;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.StartContext;
 import org.junit.Test;
 
 /**
@@ -63,6 +99,62 @@ public class SubsystemParsingTestCase extends AbstractSubsystemTest {
         Assert.assertEquals("test", element.getValue());
     }
 
+    /**
+     * Tests that the common provider attributes are parsed into the add operations
+     */
+    @Test
+    public void testParseProviderAttributes() throws Exception {
+        String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE + "\">" + "  <security-providers>"
+                + "    <provider-class async-start='true'>com.sun.crypto.provider.SunJCE</provider-class>"
+                + "    <sunpkcs11 name='test' position='2' async-start='true' start-timeout='1000'><attribute name='library' value='/tmp/lib'/></sunpkcs11>"
+                + "  </security-providers>" + "</subsystem>";
+        List<ModelNode> operations = super.parse(subsystemXml);
+        Assert.assertEquals(3, operations.size());
+
+        ModelNode addSimple = operations.get(1);
+        Assert.assertEquals("com.sun.crypto.provider.SunJCE", PathAddress.pathAddress(addSimple.get(OP_ADDR)).getLastElement()
+                .getValue());
+        Assert.assertTrue(addSimple.get("async-start").asBoolean());
+        Assert.assertFalse(addSimple.hasDefined("start-timeout"));
+        Assert.assertFalse(addSimple.hasDefined("position"));
+
+        ModelNode addSunPKCS11 = operations.get(2);
+        Assert.assertTrue(addSunPKCS11.get("async-start").asBoolean());
+        Assert.assertEquals(1000L, addSunPKCS11.get("start-timeout").asLong());
+        Assert.assertEquals(2, addSunPKCS11.get("position").asInt());
+    }
+
+    /**
+     * Tests that configurations in the 1.0 name space are still parsed and that they don't accept the 1.1 additions
+     */
+    @Test
+    public void testParseLegacyNamespace() throws Exception {
+        String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE_1_0 + "\">" + "  <security-providers>"
+                + "    <provider-class>com.sun.crypto.provider.SunJCE</provider-class>"
+                + "    <sunpkcs11 name='test'><attribute name='library' value='/tmp/lib'/></sunpkcs11>"
+                + "  </security-providers>" + "</subsystem>";
+        List<ModelNode> operations = super.parse(subsystemXml);
+        Assert.assertEquals(3, operations.size());
+        Assert.assertEquals("com.sun.crypto.provider.SunJCE", PathAddress.pathAddress(operations.get(1).get(OP_ADDR))
+                .getLastElement().getValue());
+        Assert.assertEquals("/tmp/lib", operations.get(2).get(SecurityProvidersExtension.ATTRIBUTES, "library").asString());
+
+        String[] invalidXmls = {
+                "<provider-class async-start='true'>com.sun.crypto.provider.SunJCE</provider-class>",
+                "<sunpkcs11 name='test' position='2'><attribute name='library' value='/tmp/lib'/></sunpkcs11>",
+                "<sunpkcs11 name='test'><keystore name='ks'/></sunpkcs11>",
+                "<crypto-pool name='pool' algorithm='SHA-256'/>" };
+        for (String invalidXml : invalidXmls) {
+            try {
+                super.parse("<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE_1_0 + "\"><security-providers>"
+                        + invalidXml + "</security-providers></subsystem>");
+                Assert.fail("1.0 configuration should be rejected: " + invalidXml);
+            } catch (XMLStreamException e) {
+                // expected
+            }
+        }
+    }
+
     /**
      * Test that the model created from the xml looks as expected
      */
@@ -133,7 +225,8 @@ public class SubsystemParsingTestCase extends AbstractSubsystemTest {
         describeOp.get(OP_ADDR).set(
                 PathAddress.pathAddress(PathElement.pathElement(SUBSYSTEM, SecurityProvidersExtension.SUBSYSTEM_NAME))
                         .toModelNode());
-        List<ModelNode> operations = super.checkResultAndGetContents(servicesA.executeOperation(describeOp)).asList();
+        List<ModelNode> operations = AbstractSubsystemTest.checkResultAndGetContents(servicesA.executeOperation(describeOp))
+                .asList();
 
         //Install the describe options from the first controller into a second controller
         KernelServices servicesB = super.installInController(operations);
@@ -143,6 +236,800 @@ public class SubsystemParsingTestCase extends AbstractSubsystemTest {
         super.compare(modelA, modelB);
     }
 
+    /**
+     * Tests that the provider service value indexes the provider services including aliases
+     */
+    @Test
+    public void testProviderServiceIndex() throws Exception {
+        String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE + "\">" + "  <security-providers>"
+                + "    <provider-class>" + IndexTestProvider.class.getName() + "</provider-class>"
+                + "  </security-providers>" + "</subsystem>";
+        try {
+            KernelServices services = super.installInController(subsystemXml);
+            ProviderServiceIndex index = (ProviderServiceIndex) services.getContainer()
+                    .getRequiredService(SimpleProviderService.createServiceName(IndexTestProvider.class.getName())).getValue();
+            Assert.assertEquals(IndexTestProvider.NAME, index.getProviderName());
+            Assert.assertEquals(1, index.size());
+            Assert.assertNotNull(index.getService("MessageDigest", "test-digest"));
+            Assert.assertSame(index.getService("MessageDigest", "TEST-DIGEST"), index.getService("messagedigest", "TD"));
+            Assert.assertNull(index.getService("Cipher", "TEST-DIGEST"));
+            Assert.assertEquals(1, index.getAlgorithms("MessageDigest").size());
+        } finally {
+            Security.removeProvider(IndexTestProvider.NAME);
+        }
+    }
+
+    /**
+     * Tests that the snapshot mode registers an immutable copy of the provider services
+     */
+    @Test
+    public void testSnapshotProvider() throws Exception {
+        String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE + "\">" + "  <security-providers>"
+                + "    <provider-class snapshot='true'>" + IndexTestProvider.class.getName() + "</provider-class>"
+                + "  </security-providers>" + "</subsystem>";
+        Assert.assertTrue(super.parse(subsystemXml).get(1).get("snapshot").asBoolean());
+        try {
+            super.installInController(subsystemXml);
+            Provider registered = Security.getProvider(IndexTestProvider.NAME);
+            Assert.assertTrue(registered instanceof SnapshotProvider);
+            Provider delegate = ((SnapshotProvider) registered).getDelegate();
+            Assert.assertTrue(delegate instanceof IndexTestProvider);
+            Assert.assertSame(delegate, MessageDigest.getInstance("TD", registered).getProvider());
+            Assert.assertSame(delegate.getService("MessageDigest", "Test-Digest"),
+                    registered.getService("MessageDigest", "test-digest"));
+            Assert.assertEquals(1, registered.getServices().size());
+            Assert.assertTrue(Arrays.asList(Security.getProviders("MessageDigest.Test-Digest")).contains(registered));
+            delegate.put("MessageDigest.Late-Digest", "sun.security.provider.SHA");
+            Assert.assertNull(registered.getService("MessageDigest", "Late-Digest"));
+        } finally {
+            Security.removeProvider(IndexTestProvider.NAME);
+        }
+    }
+
+    /**
+     * Tests the latency histograms recorded by an instrumented provider, the histograms metric and the reset operation.
+     * The warm-up operations are not recorded.
+     */
+    @Test
+    public void testInstrumentedProvider() throws Exception {
+        String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE + "\">" + "  <security-providers>"
+                + "    <provider-class instrumented='true' warmup-services='MessageDigest.Test-Digest' warmup-iterations='10'>"
+                + IndexTestProvider.class.getName() + "</provider-class>" + "  </security-providers>" + "</subsystem>";
+        Assert.assertTrue(super.parse(subsystemXml).get(1).get(CommonAttributes.INSTRUMENTED.getName()).asBoolean());
+        String indexProvider = IndexTestProvider.class.getName();
+        String histogramsMetric = SunPKCS11ResourceDefinition.LATENCY_HISTOGRAMS.getName();
+        try {
+            KernelServices services = super.installInController(subsystemXml);
+            Provider registered = Security.getProvider(IndexTestProvider.NAME);
+            Assert.assertTrue(registered instanceof InstrumentedProvider);
+            MessageDigest digest = MessageDigest.getInstance("TD", registered);
+            Assert.assertSame(registered, digest.getProvider());
+            byte[] expected = MessageDigest.getInstance("SHA").digest(new byte[100]);
+            for (int i = 0; i < 3; i++) {
+                digest.update(new byte[100]);
+                Assert.assertTrue(Arrays.equals(expected, digest.digest()));
+            }
+            ModelNode histograms = readAttribute(services, SecurityProvidersExtension.SIMPLE_PROVIDER, indexProvider,
+                    histogramsMetric);
+            Assert.assertEquals(1, histograms.asList().size());
+            Assert.assertEquals("MessageDigest.Test-Digest.digest", histograms.get(0).get("operation").asString());
+            Assert.assertEquals(3L, histograms.get(0).get("count").asLong());
+            Assert.assertTrue(histograms.get(0).get("p99").asLong() >= histograms.get(0).get("p50").asLong());
+            Assert.assertTrue(histograms.get(0).get("max-time").asLong() >= histograms.get(0).get("p99").asLong());
+
+            ModelNode operation = new ModelNode();
+            operation.get(OP).set(ResetLatencyHistogramsHandler.OPERATION_NAME);
+            operation.get(OP_ADDR).set(
+                    PathAddress.pathAddress(PathElement.pathElement(SUBSYSTEM, SecurityProvidersExtension.SUBSYSTEM_NAME),
+                            PathElement.pathElement(SecurityProvidersExtension.SIMPLE_PROVIDER, indexProvider))
+                            .toModelNode());
+            Assert.assertEquals(SUCCESS, services.executeOperation(operation).get(OUTCOME).asString());
+            Assert.assertEquals(0L, readAttribute(services, SecurityProvidersExtension.SIMPLE_PROVIDER, indexProvider,
+                    histogramsMetric).get(0).get("count").asLong());
+        } finally {
+            Security.removeProvider(IndexTestProvider.NAME);
+        }
+
+    }
+
+    /**
+     * Tests the slow operation attributes and that the slow operations are readable by the management operation
+     */
+    @Test
+    public void testSlowOperations() throws Exception {
+        String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE + "\">" + "  <security-providers>"
+                + "    <sunpkcs11 name='test' slow-operation-threshold='0' slow-operation-capacity='2'>"
+                + "      <attribute name='library' value='/tmp/lib'/>" + "    </sunpkcs11>" + "  </security-providers>"
+                + "</subsystem>";
+        ModelNode add = super.parse(subsystemXml).get(1);
+        Assert.assertEquals(0L, add.get(SunPKCS11ResourceDefinition.SLOW_OPERATION_THRESHOLD.getName()).asLong());
+        Assert.assertEquals(2, add.get(SunPKCS11ResourceDefinition.SLOW_OPERATION_CAPACITY.getName()).asInt());
+        KernelServices services = super.installInController(subsystemXml);
+        ModelNode operation = new ModelNode();
+        operation.get(OP).set(ReadSlowOperationsHandler.OPERATION_NAME);
+        operation.get(OP_ADDR).set(
+                PathAddress.pathAddress(PathElement.pathElement(SUBSYSTEM, SecurityProvidersExtension.SUBSYSTEM_NAME),
+                        PathElement.pathElement(SecurityProvidersExtension.SUNPKCS11, "test")).toModelNode());
+        Assert.assertEquals(0, AbstractSubsystemTest.checkResultAndGetContents(services.executeOperation(operation)).asList()
+                .size());
+    }
+
+    /**
+     * Tests that the provider construction, registration and the instrumented operations are recorded as flight recorder
+     * events while a recording is running. The flight recorder API is used through reflection as in the subsystem.
+     */
+    @Test
+    public void testFlightRecorderEvents() throws Exception {
+        final Class<?> recordingClass;
+        try {
+            recordingClass = Class.forName("jdk.jfr.Recording");
+        } catch (ClassNotFoundException e) {
+            // JDK without the flight recorder
+            return;
+        }
+        Assert.assertFalse(FlightRecorderEvents.isRecording());
+        Assert.assertNull(FlightRecorderEvents.begin(FlightRecorderEvents.CRYPTO_OPERATION));
+        String prefix = "org.jboss.as.security.providers.";
+        Map<String, String> settings = new HashMap<String, String>();
+        for (String event : new String[] { "ProviderConstruction", "ProviderRegistration", "CryptoOperation" }) {
+            settings.put(prefix + event + "#enabled", "true");
+            settings.put(prefix + event + "#threshold", "0 ns");
+        }
+        Object recording = recordingClass.newInstance();
+        recordingClass.getMethod("setSettings", Map.class).invoke(recording, settings);
+        recordingClass.getMethod("start").invoke(recording);
+        File file = File.createTempFile("security-providers", ".jfr");
+        try {
+            Assert.assertTrue(FlightRecorderEvents.isRecording());
+            String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE + "\">"
+                    + "  <security-providers>" + "    <provider-class instrumented='true'>" + IndexTestProvider.class.getName()
+                    + "</provider-class>" + "  </security-providers>" + "</subsystem>";
+            try {
+                super.installInController(subsystemXml);
+                MessageDigest.getInstance("TD", Security.getProvider(IndexTestProvider.NAME)).digest(new byte[100]);
+            } finally {
+                Security.removeProvider(IndexTestProvider.NAME);
+            }
+            recordingClass.getMethod("stop").invoke(recording);
+            Class<?> pathClass = Class.forName("java.nio.file.Path");
+            Object path = File.class.getMethod("toPath").invoke(file);
+            recordingClass.getMethod("dump", pathClass).invoke(recording, path);
+            Class<?> recordingFile = Class.forName("jdk.jfr.consumer.RecordingFile");
+            Class<?> recordedEvent = Class.forName("jdk.jfr.consumer.RecordedEvent");
+            Set<String> recorded = new HashSet<String>();
+            for (Object event : (List<?>) recordingFile.getMethod("readAllEvents", pathClass)
+                    .invoke(null, path)) {
+                Object eventType = recordedEvent.getMethod("getEventType").invoke(event);
+                String name = (String) eventType.getClass().getMethod("getName").invoke(eventType);
+                if (name.startsWith(prefix)) {
+                    recorded.add(name + " " + recordedEvent.getMethod("getValue", String.class).invoke(event, "provider"));
+                }
+                if ((prefix + "CryptoOperation").equals(name)) {
+                    Assert.assertEquals("MessageDigest.Test-Digest.digest",
+                            recordedEvent.getMethod("getValue", String.class).invoke(event, "operation"));
+                    Assert.assertEquals(Integer.valueOf(-1),
+                            recordedEvent.getMethod("getValue", String.class).invoke(event, "keySize"));
+                }
+            }
+            Assert.assertTrue(recorded.toString(), recorded.contains(prefix + "ProviderConstruction " + IndexTestProvider.NAME));
+            Assert.assertTrue(recorded.toString(), recorded.contains(prefix + "ProviderRegistration " + IndexTestProvider.NAME));
+            Assert.assertTrue(recorded.toString(), recorded.contains(prefix + "CryptoOperation " + IndexTestProvider.NAME));
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+            file.delete();
+        }
+        Assert.assertFalse(FlightRecorderEvents.isRecording());
+    }
+
+    /**
+     * Tests that an on-demand provider is started only when a service depends on it and the parsing of the provider
+     * dependencies declared by deployments
+     */
+    @Test
+    public void testOnDemandProvider() throws Exception {
+        String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE + "\">" + "  <security-providers>"
+                + "    <provider-class on-demand='true'>" + IndexTestProvider.class.getName() + "</provider-class>"
+                + "    <provider-class on-demand='true'>com.sun.crypto.provider.SunJCE</provider-class>"
+                + "    <crypto-pool name='aes' provider='simple-provider=com.sun.crypto.provider.SunJCE' type='Cipher'"
+                + "      algorithm='AES/CBC/PKCS5Padding'/>" + "  </security-providers>" + "</subsystem>";
+        Assert.assertTrue(super.parse(subsystemXml).get(1).get(CommonAttributes.ON_DEMAND.getName()).asBoolean());
+        try {
+            KernelServices services = super.installInController(subsystemXml);
+            ServiceName name = SimpleProviderService.createServiceName(IndexTestProvider.class.getName());
+            ServiceController<?> controller = services.getContainer().getRequiredService(name);
+            Assert.assertEquals(ServiceController.Mode.ON_DEMAND, controller.getMode());
+            Assert.assertEquals(ServiceController.State.DOWN, controller.getState());
+            Assert.assertNull(Security.getProvider(IndexTestProvider.NAME));
+            // the crypto pool demands its provider
+            Assert.assertEquals(ServiceController.State.UP,
+                    services.getContainer().getRequiredService(CryptoPoolService.createServiceName("aes")).getState());
+
+            final CountDownLatch started = new CountDownLatch(1);
+            services.getContainer().addService(ServiceName.of("test", "deployment"), new AbstractService<Void>() {
+                @Override
+                public void start(StartContext context) {
+                    started.countDown();
+                }
+            }).addDependency(name).install();
+            Assert.assertTrue(started.await(10L, TimeUnit.SECONDS));
+            Assert.assertEquals(ServiceController.State.UP, controller.getState());
+            Assert.assertNotNull(Security.getProvider(IndexTestProvider.NAME));
+        } finally {
+            Security.removeProvider(IndexTestProvider.NAME);
+        }
+
+        Assert.assertEquals(
+                Arrays.asList(SunPKCS11Service.createServiceName("NSS"),
+                        SimpleProviderService.createServiceName("org.bouncycastle.jce.provider.BouncyCastleProvider")),
+                SecurityProvidersDependencyProcessor
+                        .parseProviders(" sunpkcs11=NSS, simple-provider=org.bouncycastle.jce.provider.BouncyCastleProvider,"));
+        try {
+            SecurityProvidersDependencyProcessor.parseProviders("keystore=test");
+            Assert.fail("Keystore is not a provider");
+        } catch (DeploymentUnitProcessingException expected) {
+        }
+    }
+
+    /**
+     * Tests that the provider manifest is persisted and that a lazy provider uses the persisted manifest when the manifest
+     * is not cached in memory (e.g. after a server restart)
+     */
+    @Test
+    public void testPersistentManifest() throws Exception {
+        String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE + "\">" + "  <security-providers>"
+                + "    <provider-class lazy='true'>" + IndexTestProvider.class.getName() + "</provider-class>"
+                + "  </security-providers>" + "</subsystem>";
+        File dir = File.createTempFile("manifests", "");
+        dir.delete();
+        ProviderManifestCache.clear();
+        ProviderManifestCache.setDirectory(dir);
+        try {
+            KernelServices services = super.installInController(subsystemXml);
+            Assert.assertTrue(Security.getProvider(IndexTestProvider.NAME) instanceof IndexTestProvider);
+            for (int i = 0; i < 500 && (dir.list() == null || dir.list().length == 0); i++) {
+                Thread.sleep(10L);
+            }
+            Assert.assertEquals(1, dir.list().length);
+            services.shutdown();
+
+            ProviderManifestCache.clear();
+            super.installInController(subsystemXml);
+            Provider placeholder = Security.getProvider(IndexTestProvider.NAME);
+            Assert.assertTrue(placeholder instanceof LazyProvider);
+            Assert.assertTrue(MessageDigest.getInstance("TD", placeholder).getProvider() instanceof IndexTestProvider);
+        } finally {
+            Security.removeProvider(IndexTestProvider.NAME);
+            ProviderManifestCache.setDirectory(null);
+            ProviderManifestCache.clear();
+            if (dir.isDirectory()) {
+                for (File file : dir.listFiles()) {
+                    file.delete();
+                }
+                dir.delete();
+            }
+        }
+    }
+
+    /**
+     * Tests the provider warm-up during the service start and in the background and the warm-up metrics
+     */
+    @Test
+    public void testProviderWarmup() throws Exception {
+        String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE + "\">" + "  <security-providers>"
+                + "    <provider-class warmup-services='MessageDigest.Test-Digest, Cipher.Unsupported' warmup-iterations='10'>"
+                + IndexTestProvider.class.getName() + "</provider-class>"
+                + "    <provider-class warmup-services='Mac.HmacSHA256,Cipher.AES/GCM/NoPadding' warmup-background='true'>"
+                + "com.sun.crypto.provider.SunJCE</provider-class>" + "  </security-providers>" + "</subsystem>";
+        Assert.assertEquals(10, super.parse(subsystemXml).get(1).get(CommonAttributes.WARMUP_ITERATIONS.getName()).asInt());
+        try {
+            KernelServices services = super.installInController(subsystemXml);
+            String indexProvider = IndexTestProvider.class.getName();
+            Assert.assertTrue(readAttribute(services, SecurityProvidersExtension.SIMPLE_PROVIDER, indexProvider,
+                    SunPKCS11ResourceDefinition.WARMED_UP.getName()).asBoolean());
+            Assert.assertTrue(readAttribute(services, SecurityProvidersExtension.SIMPLE_PROVIDER, indexProvider,
+                    SunPKCS11ResourceDefinition.WARMUP_TIME.getName()).isDefined());
+            Assert.assertEquals(1, readAttribute(services, SecurityProvidersExtension.SIMPLE_PROVIDER, indexProvider,
+                    SunPKCS11ResourceDefinition.SERVICE_COUNT.getName()).asInt());
+
+            String sunJce = "com.sun.crypto.provider.SunJCE";
+            for (int i = 0; i < 500
+                    && !readAttribute(services, SecurityProvidersExtension.SIMPLE_PROVIDER, sunJce,
+                            SunPKCS11ResourceDefinition.WARMED_UP.getName()).asBoolean(); i++) {
+                Thread.sleep(10L);
+            }
+            Assert.assertTrue(readAttribute(services, SecurityProvidersExtension.SIMPLE_PROVIDER, sunJce,
+                    SunPKCS11ResourceDefinition.WARMUP_TIME.getName()).isDefined());
+        } finally {
+            Security.removeProvider(IndexTestProvider.NAME);
+        }
+    }
+
+    /**
+     * Tests that a lazy provider is constructed eagerly when its services are not known and that after a restart only a
+     * placeholder is registered, which constructs the provider on the first request for one of the cached services
+     */
+    @Test
+    public void testLazyProvider() throws Exception {
+        String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE + "\">" + "  <security-providers>"
+                + "    <provider-class lazy='true'>" + LazyTestProvider.class.getName() + "</provider-class>"
+                + "  </security-providers>" + "</subsystem>";
+        try {
+            KernelServices services = super.installInController(subsystemXml);
+            Assert.assertEquals(1, LazyTestProvider.INSTANCES.get());
+            Assert.assertTrue(Security.getProvider(LazyTestProvider.NAME) instanceof LazyTestProvider);
+            services.shutdown();
+            Assert.assertNull(Security.getProvider(LazyTestProvider.NAME));
+
+            services = super.installInController(subsystemXml);
+            Provider placeholder = Security.getProvider(LazyTestProvider.NAME);
+            Assert.assertTrue(placeholder instanceof LazyProvider);
+            Assert.assertEquals(1, LazyTestProvider.INSTANCES.get());
+            try {
+                MessageDigest.getInstance("Not-Advertised-Digest");
+                Assert.fail("The algorithm is not supported");
+            } catch (NoSuchAlgorithmException expected) {
+            }
+            Assert.assertEquals(1, LazyTestProvider.INSTANCES.get());
+            MessageDigest digest = MessageDigest.getInstance("LD");
+            Assert.assertTrue(digest.getProvider() instanceof LazyTestProvider);
+            Assert.assertSame(digest.getProvider(), MessageDigest.getInstance("Lazy-Digest", LazyTestProvider.NAME).getProvider());
+            Assert.assertEquals(2, LazyTestProvider.INSTANCES.get());
+        } finally {
+            Security.removeProvider(LazyTestProvider.NAME);
+        }
+    }
+
+    /**
+     * Tests that the dispatching provider offers the services of its members and spreads the SPI instances over them
+     */
+    @Test
+    public void testDispatchingProvider() throws Exception {
+        List<Provider> members = new ArrayList<Provider>();
+        members.add(new IndexTestProvider());
+        members.add(new IndexTestProvider());
+        DispatchingProvider provider = new DispatchingProvider("DispatchingTest", "Dispatching test", members,
+                BalancingPolicy.ROUND_ROBIN);
+        Assert.assertEquals(1, provider.getServices().size());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertSame(provider, MessageDigest.getInstance("TD", provider).getProvider());
+        }
+        long[] counts = provider.getDispatchCounts();
+        Assert.assertEquals(2, counts.length);
+        Assert.assertEquals(2L, counts[0]);
+        Assert.assertEquals(2L, counts[1]);
+
+        // JCE services are served by the (signed) members themselves
+        members = new ArrayList<Provider>();
+        members.add(Security.getProvider("SunJCE"));
+        members.add(Security.getProvider("SunJCE"));
+        provider = new DispatchingProvider("DispatchingTest", "Dispatching test", members, BalancingPolicy.ROUND_ROBIN);
+        Assert.assertSame(members.get(0), Cipher.getInstance("AES/CBC/PKCS5Padding", provider).getProvider());
+        Assert.assertSame(members.get(1), Mac.getInstance("HmacSHA256", provider).getProvider());
+        counts = provider.getDispatchCounts();
+        Assert.assertEquals(1L, counts[0]);
+        Assert.assertEquals(1L, counts[1]);
+    }
+
+    /**
+     * Tests the crypto pool service and the pool metrics
+     */
+    @Test
+    public void testCryptoPool() throws Exception {
+        String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE + "\">" + "  <security-providers>"
+                + "    <provider-class>com.sun.crypto.provider.SunJCE</provider-class>"
+                + "    <crypto-pool name='aes' provider='simple-provider=com.sun.crypto.provider.SunJCE' type='Cipher'"
+                + "      algorithm='AES/CBC/PKCS5Padding' stripes='1' stripe-size='1' borrow-timeout='0'/>"
+                + "  </security-providers>" + "</subsystem>";
+        KernelServices services = super.installInController(subsystemXml);
+        ServiceController<?> controller = services.getContainer().getRequiredService(CryptoPoolService.createServiceName("aes"));
+        CryptoPool<Cipher> pool = ((CryptoPool<?>) controller.getValue()).as(Cipher.class);
+
+        CryptoPool.PooledInstance<Cipher> cipher = pool.borrow();
+        Assert.assertEquals("SunJCE", cipher.get().getProvider().getName());
+        try {
+            pool.borrow();
+            Assert.fail("The pool stripe should be exhausted");
+        } catch (GeneralSecurityException expected) {
+        }
+        cipher.release();
+        Assert.assertSame(cipher, pool.borrow());
+        cipher.release();
+
+        Assert.assertEquals(1L, readCryptoPoolMetric(services, "hit-count"));
+        Assert.assertEquals(1L, readCryptoPoolMetric(services, "miss-count"));
+        Assert.assertEquals(1L, readCryptoPoolMetric(services, "wait-count"));
+    }
+
+    /**
+     * Tests the striped secure random service, its buffer refills and metrics
+     */
+    @Test
+    public void testSecureRandom() throws Exception {
+        String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE + "\">" + "  <security-providers>"
+                + "    <provider-class>sun.security.provider.Sun</provider-class>"
+                + "    <secure-random name='rng' provider='simple-provider=sun.security.provider.Sun' algorithm='SHA1PRNG'"
+                + "      stripes='2' buffer-size='64' refill-threshold='16'/>" + "  </security-providers>" + "</subsystem>";
+        KernelServices services = super.installInController(subsystemXml);
+        ServiceController<?> controller = services.getContainer().getRequiredService(
+                SecureRandomService.createServiceName("rng"));
+        StripedSecureRandom serviceRandom = (StripedSecureRandom) controller.getValue();
+        Assert.assertEquals("SHA1PRNG", serviceRandom.getSecureRandom().getAlgorithm());
+        Assert.assertEquals(100, serviceRandom.nextBytes(100).length);
+        Assert.assertEquals(1L, readAttribute(services, SecurityProvidersExtension.SECURE_RANDOM, "rng", "direct-count")
+                .asLong());
+        for (String metric : new String[] { "consumed-bytes", "refill-count", "available-bytes" }) {
+            Assert.assertTrue(metric, readAttribute(services, SecurityProvidersExtension.SECURE_RANDOM, "rng", metric)
+                    .isDefined());
+        }
+
+        Executor inlineExecutor = new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        StripedSecureRandom random = new StripedSecureRandom("SHA1PRNG", Security.getProvider("SUN"), 1, 64, 16,
+                inlineExecutor);
+        random.prefetch();
+        Assert.assertEquals(1L, random.getRefillCount());
+        Assert.assertEquals(64, random.getAvailableBytes());
+        random.nextBytes(new byte[40]);
+        Assert.assertEquals(24, random.getAvailableBytes());
+        // 14 bytes left is below the threshold, so the buffer is refilled
+        random.nextBytes(new byte[10]);
+        Assert.assertEquals(2L, random.getRefillCount());
+        Assert.assertEquals(64, random.getAvailableBytes());
+        Assert.assertEquals(50L, random.getConsumedBytes());
+        Assert.assertEquals(0L, random.getDirectCount());
+        // larger than the buffer
+        random.nextBytes(new byte[65]);
+        Assert.assertEquals(1L, random.getDirectCount());
+        Assert.assertEquals(64, random.getAvailableBytes());
+        random.close();
+        Assert.assertEquals(0, random.getAvailableBytes());
+        random.nextBytes(new byte[8]);
+        Assert.assertEquals(2L, random.getRefillCount());
+        Assert.assertEquals(2L, random.getDirectCount());
+    }
+
+    /**
+     * Tests taking key pairs from a key pair pool, its background refill and metrics
+     */
+    @Test
+    public void testKeyPairPool() throws Exception {
+        String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE + "\">" + "  <security-providers>"
+                + "    <provider-class>sun.security.ec.SunEC</provider-class>"
+                + "    <keypair-pool name='ec' provider='simple-provider=sun.security.ec.SunEC' algorithm='EC' key-size='256'"
+                + "      capacity='2' take-timeout='0'/>" + "  </security-providers>" + "</subsystem>";
+        KernelServices services = super.installInController(subsystemXml);
+        ServiceController<?> controller = services.getContainer().getRequiredService(
+                KeyPairPoolService.createServiceName("ec"));
+        KeyPair serviceKeyPair = ((KeyPairPool) controller.getValue()).take();
+        Assert.assertEquals("EC", serviceKeyPair.getPublic().getAlgorithm());
+        for (String metric : new String[] { "pool-depth", "generated-count", "generation-rate", "wait-count", "inline-count" }) {
+            Assert.assertTrue(metric, readAttribute(services, SecurityProvidersExtension.KEYPAIR_POOL, "ec", metric)
+                    .isDefined());
+        }
+
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        Executor queueingExecutor = new Executor() {
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        };
+        KeyPairPool pool = new KeyPairPool("EC", 256, Security.getProvider("SunEC"), 3, 1, 2, 0L, queueingExecutor);
+        pool.startWorkers();
+        Assert.assertEquals(2, tasks.size());
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+        Assert.assertEquals(3, pool.getDepth());
+        Assert.assertEquals(3L, pool.getGeneratedCount());
+        Assert.assertTrue(pool.getAverageGenerationTime() >= 0L);
+
+        KeyPair first = pool.take();
+        Assert.assertNotSame(first, pool.take());
+        // 1 pair left is not below the low-water mark
+        Assert.assertTrue(tasks.isEmpty());
+        pool.take();
+        Assert.assertEquals(2, tasks.size());
+        Assert.assertEquals(0L, pool.getWaitCount());
+        // the pool is empty and the take timeout is zero, so the pair is generated inline
+        Assert.assertNotNull(pool.take());
+        Assert.assertEquals(1L, pool.getWaitCount());
+        Assert.assertEquals(1L, pool.getInlineCount());
+        pool.close();
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+        Assert.assertEquals(0, pool.getDepth());
+        Assert.assertEquals(3L, pool.getGeneratedCount());
+    }
+
+    /**
+     * Tests signing of the micro-batches by the signing pipeline
+     */
+    @Test
+    public void testSigningPipeline() throws Exception {
+        String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE + "\">" + "  <security-providers>"
+                + "    <provider-class>sun.security.rsa.SunRsaSign</provider-class>"
+                + "    <signing-pipeline name='rsa' provider='simple-provider=sun.security.rsa.SunRsaSign' algorithm='SHA256withRSA'"
+                + "      max-batch-size='2' linger-time='0'/>" + "  </security-providers>" + "</subsystem>";
+        KernelServices services = super.installInController(subsystemXml);
+        ServiceController<?> controller = services.getContainer().getRequiredService(
+                SigningPipelineService.createServiceName("rsa"));
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        KeyPair keyPair = generator.generateKeyPair();
+        byte[] data = new byte[] { 1, 2, 3 };
+        byte[] signed = ((SigningPipeline) controller.getValue()).sign(keyPair.getPrivate(), data).get();
+        Signature verifier = Signature.getInstance("SHA256withRSA");
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(data);
+        Assert.assertTrue(verifier.verify(signed));
+        Assert.assertEquals(1L, readAttribute(services, SecurityProvidersExtension.SIGNING_PIPELINE, "rsa", "signed-count")
+                .asLong());
+        Assert.assertTrue(readAttribute(services, SecurityProvidersExtension.SIGNING_PIPELINE, "rsa", "average-latency")
+                .isDefined());
+
+        ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1);
+        SigningPipeline pipeline = new SigningPipeline("SHA256withRSA", Security.getProvider("SunRsaSign"), 3, 60000L,
+                executor, executor);
+        try {
+            List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+            for (int i = 0; i < 3; i++) {
+                futures.add(pipeline.sign(keyPair.getPrivate(), data));
+            }
+            // the full batch doesn't wait for the linger time
+            for (Future<byte[]> future : futures) {
+                Assert.assertTrue(Arrays.equals(signed, future.get()));
+            }
+            Assert.assertEquals(1L, pipeline.getBatchCount());
+            Assert.assertEquals(3d, pipeline.getAverageBatchSize(), 0d);
+
+            Future<byte[]> lingering = pipeline.sign(keyPair.getPrivate(), data);
+            Assert.assertEquals(1, pipeline.getPendingCount());
+            pipeline.close();
+            Assert.assertTrue(Arrays.equals(signed, lingering.get()));
+            Assert.assertEquals(0, pipeline.getPendingCount());
+            Assert.assertEquals(4L, pipeline.getSignedCount());
+            try {
+                pipeline.sign(keyPair.getPrivate(), data);
+                Assert.fail("The closed pipeline should reject the request");
+            } catch (RejectedExecutionException e) {
+                // expected
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // a batch whose flush the timer rejects is flushed right away
+        ScheduledExecutorService stoppedTimer = new ScheduledThreadPoolExecutor(1);
+        stoppedTimer.shutdown();
+        pipeline = new SigningPipeline("SHA256withRSA", Security.getProvider("SunRsaSign"), 3, 60000L, stoppedTimer,
+                new Executor() {
+                    public void execute(Runnable command) {
+                        command.run();
+                    }
+                });
+        Future<byte[]> flushed = pipeline.sign(keyPair.getPrivate(), data);
+        Assert.assertTrue(flushed.isDone());
+        Assert.assertTrue(Arrays.equals(signed, flushed.get()));
+        Assert.assertEquals(0, pipeline.getPendingCount());
+    }
+
+    /**
+     * Tests routing of the hybrid provider operations between the hardware and software providers
+     */
+    @Test
+    public void testHybridProvider() throws Exception {
+        String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE + "\">" + "  <security-providers>"
+                + "    <provider-class>sun.security.rsa.SunRsaSign</provider-class>"
+                + "    <provider-class>sun.security.provider.Sun</provider-class>"
+                + "    <hybrid-provider name='h' hardware='simple-provider=sun.security.rsa.SunRsaSign'"
+                + "      software='simple-provider=sun.security.provider.Sun'/>" + "  </security-providers>" + "</subsystem>";
+        KernelServices services = super.installInController(subsystemXml);
+        try {
+            ProviderServiceIndex index = (ProviderServiceIndex) services.getContainer()
+                    .getRequiredService(HybridProviderService.createServiceName("h")).getValue();
+            Assert.assertEquals("Hybrid-h", index.getProviderName());
+            Assert.assertNotNull(index.getService("Signature", "SHA256withRSA"));
+            Assert.assertEquals(0L, readAttribute(services, SecurityProvidersExtension.HYBRID_PROVIDER, "h", "software-count")
+                    .asLong());
+        } finally {
+            super.assertRemoveSubsystemResources(services);
+        }
+
+        HybridProvider hybrid = new HybridProvider("Hybrid-test", new HybridTestProvider("HybridHardware"),
+                new HybridTestProvider("HybridSoftware"), Collections.singleton("MessageDigest"));
+        Assert.assertNotNull(MessageDigest.getInstance("SHA-256", hybrid).digest(new byte[1]));
+        Assert.assertEquals(1L, hybrid.getSoftwareCount());
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        final KeyPair keyPair = generator.generateKeyPair();
+        final RSAPrivateKey privateKey = (RSAPrivateKey) keyPair.getPrivate();
+        // a key implemented in the package of the hardware provider is token-resident, its encoded form is not read
+        RSAPrivateKey tokenKey = new RSAPrivateKey() {
+            private static final long serialVersionUID = 1L;
+
+            public BigInteger getModulus() {
+                return privateKey.getModulus();
+            }
+
+            public BigInteger getPrivateExponent() {
+                return privateKey.getPrivateExponent();
+            }
+
+            public String getAlgorithm() {
+                return "RSA";
+            }
+
+            public String getFormat() {
+                return null;
+            }
+
+            public byte[] getEncoded() {
+                throw new AssertionError("The key material should not be read");
+            }
+        };
+        Signature signature = Signature.getInstance("SHA256withRSA", hybrid);
+        signature.initSign(tokenKey);
+        signature.update(new byte[] { 1, 2, 3 });
+        byte[] signed = signature.sign();
+        Assert.assertEquals(1L, hybrid.getHardwareCount());
+        signature.initVerify(keyPair.getPublic());
+        signature.update(new byte[] { 1, 2, 3 });
+        Assert.assertTrue(signature.verify(signed));
+        Assert.assertEquals(2L, hybrid.getSoftwareCount());
+        signature.initSign(privateKey);
+        Assert.assertEquals(3L, hybrid.getSoftwareCount());
+        Assert.assertEquals(1L, hybrid.getHardwareCount());
+
+        // the JCE services are not offered
+        hybrid = new HybridProvider("Hybrid-test", Security.getProvider("SunJCE"), Security.getProvider("SUN"),
+                Collections.singleton("MessageDigest"));
+        Assert.assertNull(hybrid.getService("Cipher", "AES"));
+        Assert.assertNull(hybrid.getService("Mac", "HmacSHA256"));
+        Assert.assertNotNull(hybrid.getService("KeyPairGenerator", "DiffieHellman"));
+    }
+
+    /**
+     * Tests the asynchronous executor configuration, its saturation policies and metrics
+     */
+    @Test
+    public void testAsyncCrypto() throws Exception {
+        String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE + "\">" + "  <security-providers>"
+                + "    <sunpkcs11 name='test' async-threads='2' saturation-policy='BLOCK'><attribute name='library' value='/tmp/lib'/></sunpkcs11>"
+                + "  </security-providers>" + "</subsystem>";
+        List<ModelNode> operations = super.parse(subsystemXml);
+        Assert.assertEquals(2, operations.get(1).get("async-threads").asInt());
+        Assert.assertEquals("BLOCK", operations.get(1).get("saturation-policy").asString());
+        // the provider can't be registered, but it doesn't fail the boot
+        KernelServices services = super.installInController(subsystemXml);
+        Assert.assertFalse(readAttribute(services, SecurityProvidersExtension.SUNPKCS11, "test", "async-queue-depth")
+                .isDefined());
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<Thread> blocker = new Callable<Thread>() {
+            public Thread call() throws Exception {
+                release.await();
+                return Thread.currentThread();
+            }
+        };
+        AsyncCrypto asyncCrypto = new AsyncCrypto("test", Security.getProvider("SunRsaSign"), 1, 1, SaturationPolicy.ABORT);
+        try {
+            Future<Thread> running = asyncCrypto.submit(blocker);
+            Future<Thread> queued = asyncCrypto.submit(blocker);
+            Assert.assertEquals(1, asyncCrypto.getQueueDepth());
+            try {
+                asyncCrypto.submit(blocker);
+                Assert.fail("The saturated executor should reject the operation");
+            } catch (RejectedExecutionException e) {
+                // expected
+            }
+            Assert.assertEquals(1L, asyncCrypto.getSaturationCount());
+            release.countDown();
+            Assert.assertNotSame(Thread.currentThread(), running.get());
+            Assert.assertSame(running.get(), queued.get());
+
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(1024);
+            KeyPair keyPair = generator.generateKeyPair();
+            byte[] data = new byte[] { 1, 2, 3 };
+            byte[] signature = asyncCrypto.sign("SHA256withRSA", keyPair.getPrivate(), data).get();
+            Assert.assertTrue(asyncCrypto.verify("SHA256withRSA", keyPair.getPublic(), data, signature).get().booleanValue());
+            Assert.assertTrue(asyncCrypto.getAverageWaitTime() >= 0L);
+        } finally {
+            asyncCrypto.close();
+        }
+        try {
+            asyncCrypto.submit(blocker);
+            Assert.fail("The closed executor should reject the operation");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        final CountDownLatch hold = new CountDownLatch(1);
+        asyncCrypto = new AsyncCrypto("test", Security.getProvider("SunRsaSign"), 1, 0, SaturationPolicy.CALLER_RUNS);
+        try {
+            asyncCrypto.submit(new Callable<Thread>() {
+                public Thread call() throws Exception {
+                    hold.await();
+                    return Thread.currentThread();
+                }
+            });
+            // the only thread is busy and there is no queue
+            Assert.assertSame(Thread.currentThread(), asyncCrypto.submit(blocker).get());
+            Assert.assertEquals(1L, asyncCrypto.getSaturationCount());
+        } finally {
+            hold.countDown();
+            asyncCrypto.close();
+        }
+    }
+
+    /**
+     * Tests that the SunPKCS11 metrics are readable (and undefined) when the provider could not be registered
+     */
+    @Test
+    public void testSunPKCS11Metrics() throws Exception {
+        String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE + "\">" + "  <security-providers>"
+                + "    <sunpkcs11 name='test'><attribute name='library' value='/tmp/lib'/></sunpkcs11>"
+                + "  </security-providers>" + "</subsystem>";
+        KernelServices services = super.installInController(subsystemXml);
+        // the library doesn't exist, so the provider can't be registered and the service fails
+        ServiceController<?> controller = services.getContainer().getRequiredService(SunPKCS11Service.createServiceName("test"));
+        Assert.assertEquals(ServiceController.State.START_FAILED, controller.getState());
+        Assert.assertTrue(controller.getStartException().getMessage().startsWith("Unable to register"));
+        for (String metric : new String[] { "init-time", "service-count", "active-sessions", "idle-sessions", "logged-in",
+                "session-exhaustion-count" }) {
+            Assert.assertFalse(metric, readAttribute(services, SecurityProvidersExtension.SUNPKCS11, "test", metric).isDefined());
+        }
+    }
+
+    /**
+     * Tests that the SunPKCS11 provider attributes can be written without a reload when the provider is not used by other
+     * resources, and that a reload is required if it is (by a keystore or a crypto pool)
+     */
+    @Test
+    public void testWriteSunPKCS11Attributes() throws Exception {
+        String subsystemXml = "<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE + "\">" + "  <security-providers>"
+                + "    <sunpkcs11 name='test'><attribute name='library' value='/tmp/lib'/></sunpkcs11>"
+                + "    <sunpkcs11 name='stored'><attribute name='library' value='/tmp/lib'/><keystore name='ks'/></sunpkcs11>"
+                + "    <sunpkcs11 name='pooled'><attribute name='library' value='/tmp/lib'/></sunpkcs11>"
+                + "    <crypto-pool name='aes' provider='sunpkcs11=pooled' type='Cipher' algorithm='AES/CBC/PKCS5Padding'/>"
+                + "  </security-providers>" + "</subsystem>";
+        KernelServices services = super.installInController(subsystemXml);
+        ModelNode result = services.executeOperation(createWriteAttributesOperation("test"));
+        Assert.assertEquals(result.toString(), SUCCESS, result.get(OUTCOME).asString());
+        Assert.assertFalse(result.get(RESPONSE_HEADERS).hasDefined(OPERATION_REQUIRES_RELOAD));
+
+        ModelNode attributes = readAttribute(services, SecurityProvidersExtension.SUNPKCS11, "test", "attributes");
+        Assert.assertEquals(2, attributes.asPropertyList().size());
+        Assert.assertEquals("/tmp/lib2", attributes.get("library").asString());
+
+        for (String providerName : new String[] { "stored", "pooled" }) {
+            result = services.executeOperation(createWriteAttributesOperation(providerName));
+            Assert.assertEquals(result.toString(), SUCCESS, result.get(OUTCOME).asString());
+            Assert.assertTrue(providerName, result.get(RESPONSE_HEADERS, OPERATION_REQUIRES_RELOAD).asBoolean());
+        }
+    }
+
+    /**
+     * Tests that the unused SunPKCS11 providers can be evicted by the management operation
+     */
+    @Test
+    public void testSunPKCS11ProviderCache() throws Exception {
+        KernelServices services = super.installInController("<subsystem xmlns=\"" + SecurityProvidersExtension.NAMESPACE
+                + "\"/>");
+        ModelNode evict = new ModelNode();
+        evict.get(OP).set("evict-provider-cache");
+        evict.get(OP_ADDR).set(
+                PathAddress.pathAddress(PathElement.pathElement(SUBSYSTEM, SecurityProvidersExtension.SUBSYSTEM_NAME))
+                        .toModelNode());
+        AbstractSubsystemTest.checkResultAndGetContents(services.executeOperation(evict));
+        Assert.assertEquals(0, SunPKCS11ProviderCache.size());
+    }
+
     /**
      * Tests that the subsystem can be removed
      */
@@ -167,4 +1054,78 @@ public class SubsystemParsingTestCase extends AbstractSubsystemTest {
         } catch (Exception expected) {
         }
     }
+
+    private ModelNode createWriteAttributesOperation(String providerName) {
+        ModelNode operation = new ModelNode();
+        operation.get(OP).set(WRITE_ATTRIBUTE_OPERATION);
+        operation.get(OP_ADDR).set(
+                PathAddress.pathAddress(PathElement.pathElement(SUBSYSTEM, SecurityProvidersExtension.SUBSYSTEM_NAME),
+                        PathElement.pathElement(SecurityProvidersExtension.SUNPKCS11, providerName)).toModelNode());
+        operation.get(NAME).set("attributes");
+        operation.get(VALUE, "library").set("/tmp/lib2");
+        operation.get(VALUE, "slotListIndex").set("1");
+        return operation;
+    }
+
+    private long readCryptoPoolMetric(KernelServices services, String name) {
+        return readAttribute(services, SecurityProvidersExtension.CRYPTO_POOL, "aes", name).asLong();
+    }
+
+    private ModelNode readAttribute(KernelServices services, String type, String resourceName, String name) {
+        ModelNode operation = new ModelNode();
+        operation.get(OP).set(READ_ATTRIBUTE_OPERATION);
+        operation.get(OP_ADDR).set(
+                PathAddress.pathAddress(PathElement.pathElement(SUBSYSTEM, SecurityProvidersExtension.SUBSYSTEM_NAME),
+                        PathElement.pathElement(type, resourceName)).toModelNode());
+        operation.get(NAME).set(name);
+        ModelNode result = services.executeOperation(operation);
+        Assert.assertEquals(result.toString(), SUCCESS, result.get(OUTCOME).asString());
+        return result.get(RESULT);
+    }
+
+    /**
+     * Provider with a single (dummy) service and an alias.
+     */
+    public static class IndexTestProvider extends Provider {
+
+        private static final long serialVersionUID = 1L;
+        static final String NAME = "IndexTest";
+
+        public IndexTestProvider() {
+            super(NAME, 1.0, "Provider for the ProviderServiceIndex test");
+            put("MessageDigest.Test-Digest", "sun.security.provider.SHA");
+            put("Alg.Alias.MessageDigest.TD", "Test-Digest");
+        }
+    }
+
+    /**
+     * Provider with the JDK SHA-256 digest and SHA256withRSA signature under a custom name.
+     */
+    public static class HybridTestProvider extends Provider {
+
+        private static final long serialVersionUID = 1L;
+
+        public HybridTestProvider(String name) {
+            super(name, 1.0, "Provider for the hybrid provider test");
+            put("MessageDigest.SHA-256", "sun.security.provider.SHA2$SHA256");
+            put("Signature.SHA256withRSA", "sun.security.rsa.RSASignature$SHA256withRSA");
+        }
+    }
+
+    /**
+     * Provider which counts its instances.
+     */
+    public static class LazyTestProvider extends Provider {
+
+        private static final long serialVersionUID = 1L;
+        static final String NAME = "LazyTest";
+        static final AtomicInteger INSTANCES = new AtomicInteger();
+
+        public LazyTestProvider() {
+            super(NAME, 1.0, "Provider for the lazy provider test");
+            put("MessageDigest.Lazy-Digest", "sun.security.provider.SHA");
+            put("Alg.Alias.MessageDigest.LD", "Lazy-Digest");
+            INSTANCES.incrementAndGet();
+        }
+    }
 }
@@ -0,0 +1,89 @@
+package org.jboss.as.security.providers.extension;
+
+import java.security.Provider;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import junit.framework.Assert;
+
+import org.jboss.as.security.providers.extension.SubsystemParsingTestCase.IndexTestProvider;
+import org.junit.Test;
+
+/**
+ * Tests the keys, the reference counting and the eviction of the {@link SunPKCS11ProviderCache}.
+ * 
+ * @author Josef Cacek
+ */
+public class SunPKCS11ProviderCacheTestCase {
+
+    /**
+     * Tests that the cache key doesn't depend on the attribute order and the leading and trailing whitespace, but it does
+     * depend on the whitespace inside the values
+     */
+    @Test
+    public void testCreateKey() throws Exception {
+        Map<String, String> reordered = new HashMap<String, String>();
+        reordered.put(" attributes", "compatibility ");
+        reordered.put("library", "  /usr/lib/libsofthsm.so");
+        String key = SunPKCS11ProviderCache.createKey("test", createAttributes());
+        Assert.assertEquals(key, SunPKCS11ProviderCache.createKey("test", reordered));
+        Assert.assertFalse(key.equals(SunPKCS11ProviderCache.createKey("test2", createAttributes())));
+        Map<String, String> spaced = createAttributes();
+        spaced.put("library", "/usr/lib/soft  hsm.so");
+        Map<String, String> singleSpaced = createAttributes();
+        singleSpaced.put("library", "/usr/lib/soft hsm.so");
+        Assert.assertFalse(SunPKCS11ProviderCache.createKey("test", spaced).equals(
+                SunPKCS11ProviderCache.createKey("test", singleSpaced)));
+    }
+
+    /**
+     * Tests that the service releases the key under which it acquired the provider, even after a reconfiguration
+     */
+    @Test
+    public void testReleaseAfterReconfiguration() throws Exception {
+        Map<String, String> attributes = createAttributes();
+        String key = SunPKCS11ProviderCache.createKey("test", attributes);
+        Callable<Provider> factory = createFactory(new IndexTestProvider());
+        Provider cached = SunPKCS11ProviderCache.acquire(key, factory);
+        SunPKCS11Service service = new SunPKCS11Service("test", attributes);
+        Provider provider = service.createProvider();
+        Assert.assertSame(cached, provider);
+        service.reconfigure(Collections.singletonMap("library", "/usr/lib/other.so"));
+        service.releaseProvider(provider);
+        SunPKCS11ProviderCache.release(key);
+        Assert.assertEquals(1, SunPKCS11ProviderCache.evictUnused());
+        Assert.assertEquals(0, SunPKCS11ProviderCache.size());
+    }
+
+    /**
+     * Tests that the last reference released with eviction (a drained provider) removes the entry
+     */
+    @Test
+    public void testReleaseWithEviction() throws Exception {
+        String key = SunPKCS11ProviderCache.createKey("test", createAttributes());
+        Callable<Provider> factory = createFactory(new IndexTestProvider());
+        SunPKCS11ProviderCache.acquire(key, factory);
+        SunPKCS11ProviderCache.acquire(key, factory);
+        SunPKCS11ProviderCache.release(key, true);
+        Assert.assertEquals(1, SunPKCS11ProviderCache.size());
+        SunPKCS11ProviderCache.release(key, true);
+        Assert.assertEquals(0, SunPKCS11ProviderCache.size());
+    }
+
+    private Map<String, String> createAttributes() {
+        Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put("library", "/usr/lib/libsofthsm.so");
+        attributes.put("attributes", "compatibility");
+        return attributes;
+    }
+
+    private Callable<Provider> createFactory(final Provider provider) {
+        return new Callable<Provider>() {
+            public Provider call() throws Exception {
+                return provider;
+            }
+        };
+    }
+}